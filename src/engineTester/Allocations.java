@@ -0,0 +1,26 @@
+package engineTester;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures how much memory the current thread allocates, for the benchmarks.
+ */
+class Allocations
+{
+	/**
+	 * Get the number of bytes allocated by the current thread so far, if the JVM
+	 * supports measuring it.
+	 *
+	 * @return The allocated bytes, or 0 if not supported
+	 */
+	static long allocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return 0;
+	}
+}
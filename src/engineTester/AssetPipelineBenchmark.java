@@ -0,0 +1,115 @@
+package engineTester;
+
+import models.RawModel;
+import renderEngine.AssetPipeline;
+import renderEngine.AssetUploader;
+import textures.CompressedTextureData;
+import textures.TextureData;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>Measures how the startup time of the asset pipeline scales with the number of
+ * worker threads.</p>
+ *
+ * <p>A manifest with every model and texture in the res folder is loaded a number
+ * of times, first with one worker and then with more workers, up to the number of
+ * cores. The uploader is a stub that doesn't touch OpenGL, so this runs headless.</p>
+ *
+ * <p>Usage: AssetPipelineBenchmark [manifest repeats]</p>
+ */
+public class AssetPipelineBenchmark
+{
+	private static final String[] MODELS = { "stall" };
+	private static final String[] TEXTURES = { "stallTexture", "brick-texture", "white" };
+
+	public static void main(String[] args)
+	{
+		int repeats = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		AssetUploader uploader = new StubUploader();
+
+		// Warm up, this also makes sure the mesh cache files exist.
+		loadManifest(uploader, cores, repeats);
+
+		long baseline = 0;
+		for (int workers = 1; workers <= cores; workers *= 2) {
+			long nanos = loadManifest(uploader, workers, repeats);
+			if (workers == 1) {
+				baseline = nanos;
+			}
+
+			System.out.printf(
+				"%2d workers: %8.2f ms for %d assets, speedup %.2fx%n",
+				workers, nanos / 1e6, repeats * (MODELS.length + TEXTURES.length), (double) baseline / nanos
+			);
+		}
+	}
+
+	/**
+	 * Load the manifest a number of times and wait for all of it.
+	 *
+	 * @param  uploader  The uploader to use
+	 * @param  workers   The number of worker threads
+	 * @param  repeats   The number of times to load the manifest
+	 * @return The time it took in nanoseconds
+	 */
+	private static long loadManifest(AssetUploader uploader, int workers, int repeats)
+	{
+		AssetPipeline pipeline = new AssetPipeline(uploader, workers, AssetPipeline.DEFAULT_UPLOAD_BUDGET);
+		List<CompletableFuture<?>> futures = new ArrayList<>();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < repeats; i++) {
+			for (String model : MODELS) {
+				futures.add(pipeline.loadModel(model));
+			}
+			for (String texture : TEXTURES) {
+				futures.add(pipeline.loadTexture(texture));
+			}
+		}
+
+		pipeline.finishAll();
+		long nanos = System.nanoTime() - start;
+
+		// Make sure nothing failed.
+		futures.forEach(CompletableFuture::join);
+		pipeline.cleanUp();
+
+		return nanos;
+	}
+
+	/**
+	 * An uploader that only pretends to upload.
+	 */
+	private static class StubUploader implements AssetUploader
+	{
+		@Override
+		public RawModel loadToVAO(float[] positions, float[] textureCoords, float[] normals, int[] indices)
+		{
+			return new RawModel(0, indices.length);
+		}
+
+		@Override
+		public RawModel loadToVAO(ByteBuffer positions, ByteBuffer textureCoords, ByteBuffer normals, ByteBuffer indices)
+		{
+			return new RawModel(0, indices.remaining() / 4);
+		}
+
+		@Override
+		public int loadTexture(TextureData texture)
+		{
+			return 0;
+		}
+
+		@Override
+		public int loadCompressedTexture(CompressedTextureData texture)
+		{
+			return 0;
+		}
+	}
+}
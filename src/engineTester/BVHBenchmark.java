@@ -0,0 +1,198 @@
+package engineTester;
+
+import entities.Camera;
+import entities.Entity;
+import entities.EntityStore;
+import models.RawModel;
+import models.TexturedModel;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import renderEngine.EntityBVH;
+import textures.ModelTexture;
+import toolbox.Frustum;
+import toolbox.Maths;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>Compares frustum queries on an EntityBVH with testing every entity one by one.</p>
+ *
+ * <p>For every entity count a field of static entities is built, and the camera
+ * turns around in the middle of it. Both the linear scan and the hierarchy have to
+ * find exactly the same number of visible entities for every view. After that the
+ * time of a single query is reported for both, together with the time to build and
+ * refit the hierarchy.</p>
+ *
+ * <p>No OpenGL is needed: the entities use a model that only has bounds.</p>
+ *
+ * <p>Usage: BVHBenchmark [queries]</p>
+ */
+public class BVHBenchmark
+{
+	private static final int[] ENTITY_COUNTS = {1000, 10000, 100000};
+
+	private static final int VIEWS = 64;
+
+	private static final float FOV = 70;
+	private static final float NEAR_PLANE = 0.1f;
+	private static final float FAR_PLANE = 1000;
+
+	public static void main(String[] args)
+	{
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+		// The bounds of the stall model, roughly.
+		RawModel model = new RawModel(0, 0);
+		model.setBounds(new float[] {-4, 0, -3, 4, 7, 3});
+		TexturedModel texturedModel = new TexturedModel(model, new ModelTexture(0));
+
+		Frustum[] frustums = createViews();
+
+		for (int entityCount : ENTITY_COUNTS) {
+			List<Entity> entities = createEntities(texturedModel, entityCount);
+
+			long start = System.nanoTime();
+			EntityBVH tree = new EntityBVH(entities);
+			double buildMillis = (System.nanoTime() - start) / 1e6;
+
+			float[] spheres = storeSpheres(entities);
+			List<Entity> visible = new ArrayList<>(entityCount);
+			check(tree, frustums, spheres, entities, visible);
+
+			double linearMicros = 0;
+			double treeMicros = 0;
+			for (int run = 0; run < 2; run++) {
+				start = System.nanoTime();
+				for (int i = 0; i < queries; i++) {
+					visible.clear();
+					linearScan(frustums[i % VIEWS], spheres, entities, visible);
+				}
+				linearMicros = (System.nanoTime() - start) / 1e3 / queries;
+
+				start = System.nanoTime();
+				for (int i = 0; i < queries; i++) {
+					visible.clear();
+					tree.query(frustums[i % VIEWS], visible);
+				}
+				treeMicros = (System.nanoTime() - start) / 1e3 / queries;
+			}
+
+			// Move a tenth of the entities a little, and fit the tree around them again.
+			for (int i = 0; i < entityCount; i += 10) {
+				entities.get(i).increasePosition(1, 0, 1);
+			}
+			start = System.nanoTime();
+			tree.refit();
+			double refitMillis = (System.nanoTime() - start) / 1e6;
+			check(tree, frustums, storeSpheres(entities), entities, visible);
+
+			System.out.printf(
+				"%6d entities: linear %9.2f us/query, bvh %8.2f us/query (%.1fx), build %.2f ms, refit %.2f ms, %d nodes%n",
+				entityCount, linearMicros, treeMicros, linearMicros / treeMicros, buildMillis, refitMillis, tree.getNodeCount()
+			);
+		}
+	}
+
+	/**
+	 * Make sure the hierarchy finds as many entities as the linear scan for every view.
+	 */
+	private static void check(EntityBVH tree, Frustum[] frustums, float[] spheres, List<Entity> entities, List<Entity> visible)
+	{
+		for (Frustum frustum : frustums) {
+			visible.clear();
+			int expected = linearScan(frustum, spheres, entities, visible);
+			visible.clear();
+			tree.query(frustum, visible);
+
+			if (visible.size() != expected) {
+				System.err.println("The hierarchy found " + visible.size() + " entities instead of " + expected);
+				System.exit(-1);
+			}
+		}
+	}
+
+	private static float[] storeSpheres(List<Entity> entities)
+	{
+		float[] spheres = new float[entities.size() * 4];
+		for (int i = 0; i < entities.size(); i++) {
+			entities.get(i).storeBoundingSphere(spheres, i * 4);
+		}
+
+		return spheres;
+	}
+
+	/**
+	 * Test every entity against the frustum.
+	 *
+	 * @return The number of visible entities
+	 */
+	private static int linearScan(Frustum frustum, float[] spheres, List<Entity> entities, List<Entity> visible)
+	{
+		for (int i = 0; i < entities.size(); i++) {
+			int s = i * 4;
+			if (frustum.intersectsSphere(spheres[s], spheres[s + 1], spheres[s + 2], spheres[s + 3])) {
+				visible.add(entities.get(i));
+			}
+		}
+
+		return visible.size();
+	}
+
+	/**
+	 * Scatter entities over a square field around the origin. The field grows with
+	 * the number of entities, so they are equally dense every time.
+	 */
+	private static List<Entity> createEntities(TexturedModel model, int count)
+	{
+		Random random = new Random(42);
+		float size = (float) Math.sqrt(count) * 20;
+
+		EntityStore store = new EntityStore(count);
+		List<Entity> entities = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Vector3f position = new Vector3f(
+				random.nextFloat() * size - size / 2,
+				random.nextFloat() * 20 - 10,
+				random.nextFloat() * size - size / 2
+			);
+			entities.add(new Entity(store, model, position, 0, random.nextFloat() * 360, 0, 1));
+		}
+
+		return entities;
+	}
+
+	/**
+	 * Create the frustums of a camera turning around at the origin.
+	 */
+	private static Frustum[] createViews()
+	{
+		Matrix4f projectionMatrix = new Matrix4f();
+		float aspectRatio = 16f / 9f;
+		float yScale = (float) ((1f / Math.tan(Math.toRadians(FOV / 2f))) * aspectRatio);
+		float xScale = yScale / aspectRatio;
+		float frustumLength = FAR_PLANE - NEAR_PLANE;
+
+		projectionMatrix.m00 = xScale;
+		projectionMatrix.m11 = yScale;
+		projectionMatrix.m22 = -((FAR_PLANE + NEAR_PLANE) / frustumLength);
+		projectionMatrix.m23 = -1;
+		projectionMatrix.m32 = -((2 * NEAR_PLANE * FAR_PLANE) / frustumLength);
+		projectionMatrix.m33 = 0;
+
+		Camera camera = new Camera();
+		Matrix4f viewMatrix = new Matrix4f();
+		Frustum[] frustums = new Frustum[VIEWS];
+		for (int i = 0; i < VIEWS; i++) {
+			camera.setYaw(360f * i / VIEWS);
+			camera.setPitch(10);
+			Maths.createViewMatrix(camera, viewMatrix);
+
+			frustums[i] = new Frustum();
+			frustums[i].update(projectionMatrix, viewMatrix);
+		}
+
+		return frustums;
+	}
+}
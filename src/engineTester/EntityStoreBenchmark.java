@@ -0,0 +1,295 @@
+package engineTester;
+
+import entities.Entity;
+import entities.EntityStore;
+import models.RawModel;
+import models.TexturedModel;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import textures.ModelTexture;
+import toolbox.Maths;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>Compares the EntityStore with an object per entity.</p>
+ *
+ * <p>The object layout is the way entities used to be stored: an object with a
+ * Vector3f position and a Matrix4f of its own, in a list. Two kinds of work are
+ * timed on both layouts: moving every entity (iteration), and calculating every
+ * transformation matrix again (transforms). The object list is timed in the order
+ * the objects were created, and shuffled, which is what a list looks like after
+ * entities have come and gone for a while. The store is timed through its arrays,
+ * and through the Entity views.</p>
+ *
+ * <p>First the store is checked: its matrices have to be the same as the ones of the
+ * object layout, and removed entities have to leave the handles of the others
+ * working. No OpenGL is needed.</p>
+ *
+ * <p>Usage: EntityStoreBenchmark [entity count] [rounds]</p>
+ */
+public class EntityStoreBenchmark
+{
+	private static final int WARMUP_ROUNDS = 20;
+
+	/**
+	 * An entity the way it used to be stored.
+	 */
+	private static class ObjectEntity
+	{
+		Vector3f position;
+		float rotX, rotY, rotZ;
+		float scale;
+		Matrix4f transformationMatrix = new Matrix4f();
+		boolean transformDirty = true;
+
+		ObjectEntity(Vector3f position, float rotY, float scale)
+		{
+			this.position = position;
+			this.rotY = rotY;
+			this.scale = scale;
+		}
+	}
+
+	/**
+	 * Something to time, with a result that is printed so the JIT can't drop it.
+	 */
+	private interface Work
+	{
+		float run();
+	}
+
+	public static void main(String[] args)
+	{
+		int entityCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+		TexturedModel model = new TexturedModel(new RawModel(1, 3), new ModelTexture(1));
+		Random random = new Random(42);
+
+		List<ObjectEntity> objects = new ArrayList<>();
+		EntityStore store = new EntityStore(entityCount);
+		List<Entity> views = new ArrayList<>();
+		for (int i = 0; i < entityCount; i++) {
+			Vector3f position = new Vector3f(random.nextFloat() * 400 - 200, random.nextFloat() * 20, random.nextFloat() * -400);
+			float rotY = random.nextFloat() * 360;
+			float scale = 0.5f + random.nextFloat();
+
+			objects.add(new ObjectEntity(position, rotY, scale));
+			views.add(new Entity(store, model, position, 0, rotY, 0, scale));
+		}
+
+		List<ObjectEntity> shuffled = new ArrayList<>(objects);
+		Collections.shuffle(shuffled, new Random(7));
+
+		checkMatrices(objects, store);
+		checkHandles(model);
+
+		System.out.printf("%d entities, %d rounds, ms per round%n", entityCount, rounds);
+		System.out.printf("%-22s %10s %10s%n", "", "iteration", "transforms");
+		report("objects", rounds, () -> moveObjects(objects), () -> transformObjects(objects));
+		report("objects (shuffled)", rounds, () -> moveObjects(shuffled), () -> transformObjects(shuffled));
+		report("store arrays", rounds, () -> moveStore(store), () -> transformStore(store));
+		report("store through views", rounds, () -> moveViews(views), () -> transformViews(views));
+	}
+
+	private static void report(String label, int rounds, Work iteration, Work transforms)
+	{
+		System.out.printf("%-22s %10.3f %10.3f%n", label, time(iteration, rounds), time(transforms, rounds));
+	}
+
+	private static double time(Work work, int rounds)
+	{
+		float result = 0;
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			result += work.run();
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			result += work.run();
+		}
+		long nanos = System.nanoTime() - start;
+
+		if (result == 42) {
+			System.out.println();
+		}
+
+		return nanos / 1e6 / rounds;
+	}
+
+	private static float moveObjects(List<ObjectEntity> objects)
+	{
+		float sum = 0;
+		for (int i = 0; i < objects.size(); i++) {
+			ObjectEntity entity = objects.get(i);
+			entity.position.x += 0.01f;
+			entity.position.z -= 0.01f;
+			entity.transformDirty = true;
+			sum += entity.position.y;
+		}
+
+		return sum;
+	}
+
+	private static float transformObjects(List<ObjectEntity> objects)
+	{
+		float sum = 0;
+		for (int i = 0; i < objects.size(); i++) {
+			ObjectEntity entity = objects.get(i);
+			entity.rotY += 0.5f;
+			Maths.createTransformationMatrix(entity.position, entity.rotX, entity.rotY, entity.rotZ, entity.scale, entity.transformationMatrix);
+			sum += entity.transformationMatrix.m30;
+		}
+
+		return sum;
+	}
+
+	private static float moveStore(EntityStore store)
+	{
+		float[] positions = store.getPositions();
+		int end = store.size() * 3;
+
+		float sum = 0;
+		for (int i = 0; i < end; i += 3) {
+			positions[i] += 0.01f;
+			positions[i + 2] -= 0.01f;
+			sum += positions[i + 1];
+		}
+		store.markAllDirty();
+
+		return sum;
+	}
+
+	private static float transformStore(EntityStore store)
+	{
+		float[] rotations = store.getRotations();
+		int end = store.size() * 3;
+		for (int i = 1; i < end; i += 3) {
+			rotations[i] += 0.5f;
+		}
+		store.markAllDirty();
+
+		return store.updateTransformationMatrices();
+	}
+
+	private static float moveViews(List<Entity> views)
+	{
+		Vector3f position = new Vector3f();
+		float sum = 0;
+		for (int i = 0; i < views.size(); i++) {
+			Entity entity = views.get(i);
+			entity.increasePosition(0.01f, 0, -0.01f);
+			sum += entity.storePosition(position).y;
+		}
+
+		return sum;
+	}
+
+	private static float transformViews(List<Entity> views)
+	{
+		float sum = 0;
+		for (int i = 0; i < views.size(); i++) {
+			Entity entity = views.get(i);
+			entity.increaseRotation(0, 0.5f, 0);
+			if (entity.updateTransformationMatrix()) {
+				sum++;
+			}
+		}
+
+		return sum;
+	}
+
+	/**
+	 * The matrices in the store have to be exactly the matrices Matrix4f gets.
+	 */
+	private static void checkMatrices(List<ObjectEntity> objects, EntityStore store)
+	{
+		store.updateTransformationMatrices();
+		FloatBuffer expected = BufferUtils.createFloatBuffer(16);
+		FloatBuffer actual = BufferUtils.createFloatBuffer(16);
+
+		for (int i = 0; i < objects.size(); i++) {
+			ObjectEntity entity = objects.get(i);
+			Maths.createTransformationMatrix(entity.position, entity.rotX, entity.rotY, entity.rotZ, entity.scale, entity.transformationMatrix);
+
+			expected.clear();
+			entity.transformationMatrix.store(expected);
+			expected.flip();
+			actual.clear();
+			store.storeTransformationMatrix(i, actual);
+			actual.flip();
+
+			check(expected.equals(actual), "the matrix of entity " + i + " is the same in both layouts");
+		}
+	}
+
+	/**
+	 * Remove entities from the front, middle and back, and check the handles of the
+	 * others still lead to the same entities, and that stale handles are refused.
+	 */
+	private static void checkHandles(TexturedModel model)
+	{
+		EntityStore store = new EntityStore(4);
+		int[] handles = new int[10];
+		for (int i = 0; i < handles.length; i++) {
+			handles[i] = store.create(model, i, 0, 0, 0, 0, 0, 1);
+		}
+		check(store.size() == 10, "the store grew to 10 entities");
+
+		store.remove(handles[0]);
+		store.remove(handles[5]);
+		store.remove(handles[9]);
+		check(store.size() == 7, "removed entities are gone");
+
+		for (int i = 0; i < handles.length; i++) {
+			boolean removed = i == 0 || i == 5 || i == 9;
+			check(store.isAlive(handles[i]) != removed, "entity " + i + " is alive unless it was removed");
+			if (! removed) {
+				check(store.getPositions()[store.indexOf(handles[i]) * 3] == i, "entity " + i + " kept its position");
+			}
+		}
+
+		// The slots of removed entities are reused, with a new generation.
+		int reused = store.create(model, 42, 0, 0, 0, 0, 0, 1);
+		check(reused != handles[0] && reused != handles[5] && reused != handles[9], "a reused slot gets a new handle");
+		check(! store.isAlive(handles[9]) && ! store.isAlive(handles[5]) && ! store.isAlive(handles[0]), "old handles stay dead");
+		check(store.getPositions()[store.indexOf(reused) * 3] == 42, "the new entity is found by its handle");
+		check(! store.isAlive(EntityStore.NO_HANDLE), "NO_HANDLE is never alive");
+
+		Entity view = store.getEntity(handles[3]);
+		check(view == store.getEntity(handles[3]), "an entity has a single view");
+		check(view.storePosition(new Vector3f()).x == 3, "the view reads the store");
+		view.remove();
+		check(! view.isAlive(), "a removed view is not alive");
+
+		boolean refused = false;
+		try {
+			view.storePosition(new Vector3f());
+		} catch (IllegalStateException e) {
+			refused = true;
+		}
+		check(refused, "a removed view can't be used");
+
+		// Entities created without a store go to the store the scene set.
+		EntityStore scene = new EntityStore();
+		EntityStore.setDefault(scene);
+		Entity entity = new Entity(model, new Vector3f(1, 2, 3), 0, 0, 0, 1);
+		check(entity.getStore() == scene && scene.size() == 1, "an entity without a store is added to the default store");
+		EntityStore.setDefault(null);
+		check(EntityStore.getDefault() != scene, "a new default store replaces the old one");
+	}
+
+	private static void check(boolean condition, String description)
+	{
+		if (! condition) {
+			System.err.println("Check failed: " + description);
+			System.exit(-1);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package engineTester;
+
+import entities.Camera;
+import org.lwjgl.util.vector.Matrix4f;
+import toolbox.Frustum;
+import toolbox.Maths;
+
+/**
+ * <p>Checks the frustum planes and the sphere and box tests on the CPU.</p>
+ *
+ * <p>The projection is built like the renderer builds it, with the same near and
+ * far plane, but with a field of view of 90 degrees and a square screen. Then the
+ * side planes are at x = -z, x = z, y = -z and y = z in view space, so the points
+ * just inside and outside them are easy to work out by hand. The camera is moved
+ * and turned, so the view matrix is checked as well. No OpenGL is needed.</p>
+ *
+ * <p>Usage: FrustumCheck</p>
+ */
+public class FrustumCheck
+{
+	private static final float NEAR_PLANE = 0.1f;
+	private static final float FAR_PLANE = 1000f;
+
+	// The camera position, so view space is world space moved by this.
+	private static final float CAMERA_X = 10;
+	private static final float CAMERA_Y = 5;
+	private static final float CAMERA_Z = 20;
+
+	private static int checks;
+
+	public static void main(String[] args)
+	{
+		Matrix4f projection = createProjectionMatrix();
+		Camera camera = new Camera();
+		camera.getPosition().set(CAMERA_X, CAMERA_Y, CAMERA_Z);
+
+		Frustum frustum = new Frustum();
+		frustum.update(projection, Maths.createViewMatrix(camera));
+		checkSpheres(frustum);
+		checkBoxes(frustum);
+
+		// Turned 90 degrees to the right, the camera looks along +x instead of -z.
+		camera.setYaw(90);
+		frustum.update(projection, Maths.createViewMatrix(camera));
+		checkTurned(frustum);
+
+		System.out.println("All " + checks + " frustum checks passed");
+	}
+
+	private static void checkSpheres(Frustum frustum)
+	{
+		check("a point in front of the camera", true, sphere(frustum, 0, 0, -10, 0));
+		check("a point behind the camera", false, sphere(frustum, 0, 0, 10, 0));
+		check("a sphere behind the camera", false, sphere(frustum, 0, 0, 5, 4));
+		check("a sphere around the near plane", true, sphere(frustum, 0, 0, 0.5f, 1));
+
+		// The far plane loses some precision, with near and far so far apart.
+		check("a point before the far plane", true, sphere(frustum, 0, 0, -(FAR_PLANE - 10), 0));
+		check("a sphere past the far plane", false, sphere(frustum, 0, 0, -(FAR_PLANE + 10), 1));
+		check("a sphere around the far plane", true, sphere(frustum, 0, 0, -(FAR_PLANE + 5), 10));
+
+		// At 10 in front of the camera the side planes are at 10 to the sides. A point
+		// 0.5 past one is 0.5 / sqrt(2) = 0.354 away from it.
+		float[][] outside = {{10.5f, 0}, {-10.5f, 0}, {0, 10.5f}, {0, -10.5f}};
+		String[] sides = {"right", "left", "top", "bottom"};
+		for (int i = 0; i < outside.length; i++) {
+			float x = outside[i][0];
+			float y = outside[i][1];
+			check("a point just inside the " + sides[i] + " plane", true, sphere(frustum, x * 0.9f, y * 0.9f, -10, 0));
+			check("a sphere just outside the " + sides[i] + " plane", false, sphere(frustum, x, y, -10, 0.3f));
+			check("a sphere through the " + sides[i] + " plane", true, sphere(frustum, x, y, -10, 0.4f));
+		}
+	}
+
+	private static void checkBoxes(Frustum frustum)
+	{
+		check("a box in front of the camera", Frustum.INSIDE, box(frustum, -1, -1, -11, 1, 1, -9));
+		check("a box behind the camera", Frustum.OUTSIDE, box(frustum, -1, -1, 9, 1, 1, 11));
+		check("a box through the right plane", Frustum.INTERSECTING, box(frustum, 9, -1, -11, 11, 1, -9));
+		check("a box past the far plane", Frustum.OUTSIDE, box(frustum, -1, -1, -(FAR_PLANE + 20), 1, 1, -(FAR_PLANE + 10)));
+	}
+
+	private static void checkTurned(Frustum frustum)
+	{
+		check("a point in front of the turned camera", true, sphere(frustum, 10, 0, 0, 0));
+		check("a point behind the turned camera", false, sphere(frustum, -10, 0, 0, 0));
+		check("a point where the camera looked before", false, sphere(frustum, 0, 0, -10, 0));
+		check("a sphere just outside the turned left plane", false, sphere(frustum, 10, 0, -10.5f, 0.3f));
+		check("a sphere through the turned left plane", true, sphere(frustum, 10, 0, -10.5f, 0.4f));
+	}
+
+	/**
+	 * Test a sphere with its center relative to the camera.
+	 */
+	private static boolean sphere(Frustum frustum, float x, float y, float z, float radius)
+	{
+		return frustum.intersectsSphere(CAMERA_X + x, CAMERA_Y + y, CAMERA_Z + z, radius);
+	}
+
+	/**
+	 * Classify a box with its corners relative to the camera.
+	 */
+	private static int box(Frustum frustum, float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+	{
+		return frustum.classifyBox(
+			CAMERA_X + minX, CAMERA_Y + minY, CAMERA_Z + minZ, CAMERA_X + maxX, CAMERA_Y + maxY, CAMERA_Z + maxZ
+		);
+	}
+
+	/**
+	 * The projection matrix of the renderer, with a field of view of 90 degrees on a
+	 * square screen: 1 / tan(45) is 1.
+	 */
+	private static Matrix4f createProjectionMatrix()
+	{
+		float frustumLength = FAR_PLANE - NEAR_PLANE;
+
+		Matrix4f projection = new Matrix4f();
+		projection.m00 = 1;
+		projection.m11 = 1;
+		projection.m22 = -((FAR_PLANE + NEAR_PLANE) / frustumLength);
+		projection.m23 = -1;
+		projection.m32 = -((2 * NEAR_PLANE * FAR_PLANE) / frustumLength);
+		projection.m33 = 0;
+
+		return projection;
+	}
+
+	private static void check(String description, Object expected, Object actual)
+	{
+		checks++;
+		if (! expected.equals(actual)) {
+			System.err.println("Check failed: " + description + ": expected " + expected + ", got " + actual);
+			System.exit(-1);
+		}
+	}
+}
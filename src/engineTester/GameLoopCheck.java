@@ -0,0 +1,244 @@
+package engineTester;
+
+import renderEngine.Clock;
+import renderEngine.GameLoop;
+
+import java.util.Random;
+
+/**
+ * <p>Checks the fixed timestep scheduling of the GameLoop.</p>
+ *
+ * <p>The loop is driven by a fake clock that is moved forward by hand, so frames of
+ * any length can be simulated without waiting for them. The simulation has to run
+ * at the same speed whatever the frame rate is, the accumulator has to carry the
+ * time that is left over to the next frame, and the interpolated state has to
+ * move smoothly, exactly one tick behind the real time. No OpenGL is needed.</p>
+ *
+ * <p>Usage: GameLoopCheck</p>
+ */
+public class GameLoopCheck
+{
+	/**
+	 * 100 ticks per second makes a tick exactly 10 ms, so the expected numbers are
+	 * easy to work out by hand.
+	 */
+	private static final int TICK_RATE = 100;
+	private static final long TICK = 10000000L;
+	private static final long MILLISECOND = 1000000L;
+
+	private static int checks;
+
+	/**
+	 * A clock that only moves when it is told to.
+	 */
+	private static class FakeClock implements Clock
+	{
+		private long time = 123456789L;
+
+		@Override
+		public long nanoTime()
+		{
+			return time;
+		}
+
+		void advance(long nanos)
+		{
+			time += nanos;
+		}
+	}
+
+	/**
+	 * An object that moves at a constant speed of 1 unit per second, and remembers
+	 * where it was at the tick before.
+	 */
+	private static class Mover implements GameLoop.Simulation
+	{
+		double position;
+		double previousPosition;
+
+		@Override
+		public void tick(float delta)
+		{
+			previousPosition = position;
+			position += delta;
+		}
+
+		double interpolate(float alpha)
+		{
+			return previousPosition + (position - previousPosition) * alpha;
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		checkAccumulator();
+		checkFrameRates();
+		checkInterpolation();
+		checkStall();
+		checkFrameTime();
+
+		checkTrue("a tick rate of 0 is refused", throwsIllegalArgument(0));
+		checkTrue("a negative tick rate is refused", throwsIllegalArgument(-60));
+
+		System.out.println("All " + checks + " game loop checks passed");
+	}
+
+	private static void checkAccumulator()
+	{
+		FakeClock clock = new FakeClock();
+		GameLoop loop = new GameLoop(clock, TICK_RATE);
+		Mover mover = new Mover();
+
+		check("ticks in the first frame", 0, loop.runFrame(mover));
+
+		clock.advance(25 * MILLISECOND);
+		check("ticks in 25 ms", 2, loop.runFrame(mover));
+		check("alpha after 25 ms", 0.5f, loop.getAlpha());
+
+		// The 5 ms that were left over make this frame 30 ms.
+		clock.advance(25 * MILLISECOND);
+		check("ticks in the next 25 ms", 3, loop.runFrame(mover));
+		check("alpha after 50 ms", 0, loop.getAlpha());
+
+		clock.advance(4 * MILLISECOND);
+		check("ticks in 4 ms", 0, loop.runFrame(mover));
+		check("alpha after 4 ms", 0.4f, loop.getAlpha());
+
+		check("tick count", 5, loop.getTickCount());
+		check("frame count", 4, loop.getFrameCount());
+		check("tick length", 0.01f, loop.getTickSeconds());
+	}
+
+	/**
+	 * Simulate ten seconds at different frame rates, and with random frame times,
+	 * and check the simulation ends up in the same place every time.
+	 */
+	private static void checkFrameRates()
+	{
+		long duration = 10 * 1000 * MILLISECOND;
+		Random random = new Random(42);
+
+		for (int framesPerSecond : new int[] {24, 30, 60, 75, 144, 500}) {
+			long frameTime = 1000000000L / framesPerSecond;
+			long frames = duration / frameTime;
+
+			FakeClock clock = new FakeClock();
+			GameLoop loop = new GameLoop(clock, TICK_RATE);
+			Mover mover = new Mover();
+			loop.start();
+			for (long frame = 0; frame < frames; frame++) {
+				clock.advance(frameTime);
+				loop.runFrame(mover);
+			}
+
+			long elapsed = frames * frameTime;
+			check("ticks at " + framesPerSecond + " fps", elapsed / TICK, loop.getTickCount());
+			check("position at " + framesPerSecond + " fps", (float) (elapsed / TICK) / TICK_RATE, (float) mover.position);
+		}
+
+		FakeClock clock = new FakeClock();
+		GameLoop loop = new GameLoop(clock, TICK_RATE);
+		Mover mover = new Mover();
+		loop.start();
+		long elapsed = 0;
+		while (elapsed < duration) {
+			long frameTime = MILLISECOND + (long) (random.nextDouble() * 40 * MILLISECOND);
+			clock.advance(frameTime);
+			elapsed += frameTime;
+			loop.runFrame(mover);
+		}
+		check("ticks with random frame times", elapsed / TICK, loop.getTickCount());
+	}
+
+	/**
+	 * With interpolation, the rendered position follows the real time exactly, just
+	 * one tick late, even when the frames and ticks don't line up at all.
+	 */
+	private static void checkInterpolation()
+	{
+		FakeClock clock = new FakeClock();
+		GameLoop loop = new GameLoop(clock, TICK_RATE);
+		Mover mover = new Mover();
+		loop.start();
+
+		long elapsed = 0;
+		for (int frame = 0; frame < 1000; frame++) {
+			// 7 ms frames never line up with the 10 ms ticks.
+			clock.advance(7 * MILLISECOND);
+			elapsed += 7 * MILLISECOND;
+			loop.runFrame(mover);
+
+			if (elapsed >= TICK) {
+				float expected = (float) (elapsed - TICK) / 1e9f;
+				check("interpolated position after " + elapsed / MILLISECOND + " ms", expected, (float) mover.interpolate(loop.getAlpha()));
+			}
+		}
+	}
+
+	/**
+	 * A very long frame doesn't make the simulation catch up all of it, only the
+	 * longest frame time.
+	 */
+	private static void checkStall()
+	{
+		FakeClock clock = new FakeClock();
+		GameLoop loop = new GameLoop(clock, TICK_RATE);
+		Mover mover = new Mover();
+		loop.start();
+
+		clock.advance(5000 * MILLISECOND);
+		check("ticks after a 5 second stall", 25, loop.runFrame(mover));
+
+		clock.advance(TICK);
+		check("ticks after the stall", 1, loop.runFrame(mover));
+	}
+
+	private static void checkFrameTime()
+	{
+		FakeClock clock = new FakeClock();
+		GameLoop loop = new GameLoop(clock, TICK_RATE);
+		Mover mover = new Mover();
+		loop.start();
+
+		clock.advance(16 * MILLISECOND);
+		loop.runFrame(mover);
+		check("frame time", 16, loop.getFrameTime());
+		check("average of one frame", 16, loop.getAverageFrameTime());
+
+		for (int frame = 0; frame < 1000; frame++) {
+			clock.advance(frame % 2 == 0 ? 10 * MILLISECOND : 30 * MILLISECOND);
+			loop.runFrame(mover);
+		}
+		check("frame time of the last frame", 30, loop.getFrameTime());
+		checkTrue("average of uneven frames is close to 20 ms", Math.abs(loop.getAverageFrameTime() - 20) < 1);
+	}
+
+	private static boolean throwsIllegalArgument(int tickRate)
+	{
+		try {
+			new GameLoop(new FakeClock(), tickRate);
+			return false;
+		} catch (IllegalArgumentException e) {
+			return true;
+		}
+	}
+
+	private static void check(String description, long expected, long actual)
+	{
+		checkTrue(description + ": expected " + expected + ", got " + actual, expected == actual);
+	}
+
+	private static void check(String description, float expected, float actual)
+	{
+		checkTrue(description + ": expected " + expected + ", got " + actual, Math.abs(expected - actual) <= 1e-4f);
+	}
+
+	private static void checkTrue(String description, boolean condition)
+	{
+		checks++;
+		if (! condition) {
+			System.err.println("Check failed: " + description);
+			System.exit(-1);
+		}
+	}
+}
@@ -0,0 +1,355 @@
+package engineTester;
+
+import models.RawModel;
+import org.lwjgl.util.vector.Matrix4f;
+import renderEngine.*;
+import shaders.StaticShader;
+import textures.ModelTexture;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>Edits shaders, a texture and a model while frames are running, and checks
+ * that the HotReloader picks up every edit.</p>
+ *
+ * <p>The files are copies in a temporary folder in res. A frame is simulated by
+ * calling processChanges(), sleeping for the rest of the frame and calling
+ * frameShown(), like the game loop does. The checks: a shader that doesn't compile keeps the old program, a
+ * shader that does gets a new program with the uniform values of the old one, an
+ * edited texture and model replace the old ones and delete them, a broken model
+ * keeps the old one, and a model and texture of a ResidencyManager are reloaded
+ * through the manager, which only loads a model that is resident.</p>
+ *
+ * <p>Uniforms the compiler removed (location -1) are checked as well: they are
+ * never uploaded or counted, and once a reload makes them active they don't get
+ * the value of another uniform.</p>
+ *
+ * <p>Then the shader is edited a number of times, and the time from writing the
+ * file to the end of the frame that reloaded it is measured: the edit-to-screen
+ * latency.</p>
+ *
+ * <p>Usage: HotReloadBenchmark [edits]</p>
+ */
+public class HotReloadBenchmark
+{
+	private static final String FOLDER = "hotreload";
+
+	private static final long FRAME_MILLIS = 16;
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	// A tetrahedron, to replace the stall with.
+	private static final String TETRAHEDRON =
+		"v 0 1 0\nv -1 -1 1\nv 1 -1 1\nv 0 -1 -1\n"
+			+ "vt 0 0\nvt 1 0\nvt 0 1\n"
+			+ "vn 0 1 0\nvn 0 -1 0\n"
+			+ "f 1/1/1 2/2/1 3/3/1\nf 1/1/1 3/2/1 4/3/1\nf 1/1/1 4/2/1 2/3/1\nf 2/1/2 4/2/2 3/3/2\n";
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		int edits = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+
+		File folder = new File("res/" + FOLDER);
+		try {
+			createFiles(folder);
+
+			RecordingBackend gl = new RecordingBackend();
+			DisplayManager.createDisplay(gl);
+
+			Loader loader = new Loader(gl);
+			HotReloader reloader = new HotReloader();
+
+			StaticShader shader = checkShaders(gl, reloader, folder);
+			checkInactiveUniforms(gl, folder);
+			checkTexture(loader, reloader, folder);
+			checkModel(loader, reloader, folder);
+			checkManaged(loader, reloader, folder);
+			System.out.println("Hot reload checks passed");
+
+			measureLatency(reloader, shader, new File(folder, "fragmentShader.fsh"), edits);
+
+			reloader.cleanUp();
+			shader.cleanUp();
+			loader.cleanUp();
+			DisplayManager.closeDisplay();
+		} finally {
+			deleteFolder(folder);
+		}
+	}
+
+	private static StaticShader checkShaders(RecordingBackend gl, HotReloader reloader, File folder) throws IOException, InterruptedException
+	{
+		File vertexFile = new File(folder, "vertexShader.vsh");
+		File fragmentFile = new File(folder, "fragmentShader.fsh");
+		StaticShader shader = new StaticShader(gl, vertexFile.getPath(), fragmentFile.getPath()) {};
+		reloader.watchShader(shader);
+
+		shader.start();
+		shader.loadShineVariables(10, 0.5f);
+		shader.stop();
+		int programID = shader.getProgramID();
+
+		// The game keeps drawing with the old program while the shader has errors.
+		gl.setShaderErrors(true);
+		int failed = reloader.getFailedCount();
+		append(fragmentFile, "// an edit with an error\n");
+		waitForReload(reloader);
+		check(reloader.getFailedCount() > failed, "a shader with errors is not used");
+		check(shader.getProgramID() == programID, "a shader with errors keeps the old program");
+
+		// Fixing the error gets a new program.
+		gl.setShaderErrors(false);
+		gl.endFrame();
+		long uploads = gl.getTotal(RecordingBackend.Counter.UNIFORM_UPLOADS);
+		append(fragmentFile, "// the fixed edit\n");
+		waitForReload(reloader);
+		gl.endFrame();
+		check(shader.getProgramID() != programID, "a fixed shader gets a new program");
+		check(gl.getTotal(RecordingBackend.Counter.UNIFORM_UPLOADS) >= uploads + 2, "the new program gets the uniform values of the old one");
+
+		// The values are known, so loading them again is skipped.
+		long hits = shader.getUniformHits("shineDamper");
+		shader.start();
+		shader.loadShineVariables(10, 0.5f);
+		shader.stop();
+		check(shader.getUniformHits("shineDamper") == hits + 1, "the uniform cache survives a reload");
+
+		return shader;
+	}
+
+	private static void checkInactiveUniforms(RecordingBackend gl, File folder)
+	{
+		// The instanced shader has these as attributes instead of uniforms.
+		gl.setInactiveUniforms("transformationMatrix", "textureRegion");
+		StaticShader shader = new StaticShader(
+			gl, new File(folder, "vertexShader.vsh").getPath(), new File(folder, "fragmentShader.fsh").getPath()
+		) {};
+		gl.setInactiveUniforms();
+
+		gl.endFrame();
+		shader.start();
+		shader.loadTransformationMatrix(new Matrix4f());
+		shader.loadTextureRegion(new float[] {0, 0, 1, 1});
+		shader.loadTextureRegion(new float[] {0, 0, 1, 1});
+		shader.stop();
+		gl.endFrame();
+		check(gl.getLastFrame(RecordingBackend.Counter.UNIFORM_UPLOADS) == 0, "inactive uniforms are not uploaded");
+		check(
+			shader.getUniformHits("textureRegion") + shader.getUniformMisses("textureRegion") == 0
+				&& shader.getUniformHits("transformationMatrix") + shader.getUniformMisses("transformationMatrix") == 0,
+			"inactive uniforms are not counted"
+		);
+
+		// After a reload they are active, and get no value until one is loaded.
+		check(shader.reload(), "the shader with active uniforms compiles");
+		gl.endFrame();
+		check(gl.getLastFrame(RecordingBackend.Counter.UNIFORM_UPLOADS) == 0, "a reload doesn't restore values of inactive uniforms");
+		shader.start();
+		shader.loadTextureRegion(new float[] {0, 0, 1, 1});
+		shader.stop();
+		check(shader.getUniformMisses("textureRegion") == 1, "an activated uniform is uploaded when it is loaded");
+
+		shader.cleanUp();
+	}
+
+	private static void checkTexture(Loader loader, HotReloader reloader, File folder) throws IOException, InterruptedException
+	{
+		String fileName = FOLDER + "/texture";
+		ModelTexture texture = new ModelTexture(loader.loadTexture(fileName));
+		int textureID = texture.getID();
+		reloader.watchTexture(fileName, texture, loader);
+
+		// A copy without the attributes gets a new last modified time, so the cache is
+		// written again.
+		Files.copy(
+			new File("res/brick-texture.png").toPath(), new File(folder, "texture.png").toPath(),
+			StandardCopyOption.REPLACE_EXISTING
+		);
+		waitForReload(reloader);
+
+		check(texture.getID() != textureID, "an edited texture gets a new texture");
+		check(loader.getTextureMemory() == loader.getTextureSize(texture.getID()), "the old texture is deleted");
+	}
+
+	private static void checkModel(Loader loader, HotReloader reloader, File folder) throws IOException, InterruptedException
+	{
+		String fileName = FOLDER + "/model";
+		File objFile = new File(folder, "model.obj");
+		RawModel model = OBJLoader.loadObjModel(fileName, loader);
+		int vaoID = model.getVaoID();
+		int vertexCount = model.getVertexCount();
+		reloader.watchModel(fileName, model, loader);
+
+		Files.write(objFile.toPath(), TETRAHEDRON.getBytes(StandardCharsets.UTF_8));
+		waitForReload(reloader);
+		check(model.getVaoID() != vaoID && model.getVertexCount() != vertexCount, "an edited model gets a new VAO");
+		check(model.getVertexCount() == 12, "the edited model has the new triangles");
+
+		// A face with vertices that aren't there keeps the old model.
+		vaoID = model.getVaoID();
+		int failed = reloader.getFailedCount();
+		Files.write(objFile.toPath(), "v 0 0 0\nvt 0 0\nvn 0 1 0\nf 1/1/1 2/1/1 3/1/1\n".getBytes(StandardCharsets.UTF_8));
+		waitForReload(reloader);
+		check(reloader.getFailedCount() > failed && model.getVaoID() == vaoID, "a broken model keeps the old VAO");
+	}
+
+	private static void checkManaged(Loader loader, HotReloader reloader, File folder) throws IOException, InterruptedException
+	{
+		String modelName = FOLDER + "/managed";
+		String textureName = FOLDER + "/managedTexture";
+		File objFile = new File(folder, "managed.obj");
+		ResidencyManager residency = new ResidencyManager(loader);
+		RawModel model = residency.loadModel(modelName);
+		ModelTexture texture = residency.loadTexture(textureName);
+		reloader.watchModel(modelName, residency);
+		reloader.watchTexture(textureName, residency);
+
+		// A resident model and texture are replaced, and the manager counts their new size.
+		int models = loader.getModelCount();
+		int textureID = texture.getID();
+		Files.write(objFile.toPath(), TETRAHEDRON.getBytes(StandardCharsets.UTF_8));
+		waitForReload(reloader);
+		Files.copy(
+			new File("res/brick-texture.png").toPath(), new File(folder, "managedTexture.png").toPath(),
+			StandardCopyOption.REPLACE_EXISTING
+		);
+		waitForReload(reloader);
+		check(model.getVertexCount() == 12, "an edited managed model has the new triangles");
+		check(loader.getModelCount() == models, "the old VAO of a managed model is deleted");
+		check(texture.getID() != textureID && loader.getTextureSize(textureID) == 0, "an edited managed texture is replaced");
+		check(
+			residency.getResidentBytes() == model.getSizeInBytes() + loader.getTextureSize(texture.getID()),
+			"the manager counts the size of the reloaded model and texture"
+		);
+
+		// An evicted model isn't loaded by the reload, but gets the new version when
+		// it is drawn again.
+		residency.setBudget(0);
+		residency.endFrame();
+		check(! residency.isResident(model), "the managed model is evicted");
+		models = loader.getModelCount();
+		Files.copy(new File("res/stall.obj").toPath(), objFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		waitForReload(reloader);
+		check(! residency.isResident(model) && loader.getModelCount() == models, "an evicted managed model isn't loaded by a reload");
+
+		residency.use(model);
+		check(model.getVertexCount() != 12 && loader.getModelCount() == models + 1, "an evicted managed model is drawn with the new version");
+		check(residency.getResidentBytes() == model.getSizeInBytes(), "the manager counts the size of the new version");
+
+		residency.release(model);
+		residency.release(texture);
+		check(loader.getModelCount() == models && residency.getResidentBytes() == 0, "releasing the managed model deletes it");
+	}
+
+	/**
+	 * Edit the fragment shader a number of times, and print the time from writing
+	 * the file to the end of the frame that reloaded it.
+	 */
+	private static void measureLatency(HotReloader reloader, StaticShader shader, File fragmentFile, int edits)
+		throws IOException, InterruptedException
+	{
+		long total = 0;
+		long max = 0;
+		for (int i = 0; i < edits; i++) {
+			int programID = shader.getProgramID();
+
+			long start = System.nanoTime();
+			append(fragmentFile, "// edit " + i + "\n");
+			while (shader.getProgramID() == programID) {
+				runFrame(reloader);
+				check(System.nanoTime() - start < TIMEOUT_MILLIS * 1000000, "edit " + i + " is reloaded");
+			}
+			long millis = (System.nanoTime() - start) / 1000000;
+
+			total += millis;
+			max = Math.max(max, millis);
+			settle(reloader);
+		}
+
+		System.out.printf(
+			"%d shader edits, %.1f ms frames: edit to screen %.1f ms average, %d ms max%n",
+			edits, (double) FRAME_MILLIS, (double) total / edits, max
+		);
+		System.out.printf(
+			"Change received to frame shown: %.1f ms average, %.1f ms max (%d reloads, %d failed, %d overflows)%n",
+			reloader.getAverageLatencyMillis(), reloader.getMaxLatencyMillis(), reloader.getReloadCount(), reloader.getFailedCount(),
+			reloader.getOverflowCount()
+		);
+		check(reloader.getLastLatencyMillis() > 0, "the latency is measured to the frame after the reload");
+	}
+
+	/**
+	 * Run frames until the reloader tried to reload something.
+	 */
+	private static void waitForReload(HotReloader reloader) throws InterruptedException
+	{
+		int attempts = reloader.getReloadCount() + reloader.getFailedCount();
+		long start = System.nanoTime();
+		while (reloader.getReloadCount() + reloader.getFailedCount() == attempts) {
+			runFrame(reloader);
+			check(System.nanoTime() - start < TIMEOUT_MILLIS * 1000000, "the edit is picked up");
+		}
+		settle(reloader);
+	}
+
+	/**
+	 * A single write can give more than one event, which may arrive a frame later.
+	 * Run a few more frames, so they don't count for the next edit.
+	 */
+	private static void settle(HotReloader reloader) throws InterruptedException
+	{
+		for (int i = 0; i < 10; i++) {
+			runFrame(reloader);
+		}
+	}
+
+	private static void runFrame(HotReloader reloader) throws InterruptedException
+	{
+		reloader.processChanges();
+		Thread.sleep(FRAME_MILLIS);
+		reloader.frameShown();
+	}
+
+	private static void append(File file, String text) throws IOException
+	{
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+	}
+
+	private static void createFiles(File folder) throws IOException
+	{
+		deleteFolder(folder);
+		if (! folder.mkdirs()) {
+			throw new IOException("Could not create [" + folder + "]");
+		}
+
+		Files.copy(new File("src/shaders/vertexShader.vsh").toPath(), new File(folder, "vertexShader.vsh").toPath());
+		Files.copy(new File("src/shaders/fragmentShader.fsh").toPath(), new File(folder, "fragmentShader.fsh").toPath());
+		Files.copy(new File("res/stall.obj").toPath(), new File(folder, "model.obj").toPath());
+		Files.copy(new File("res/stallTexture.png").toPath(), new File(folder, "texture.png").toPath());
+		Files.copy(new File("res/stall.obj").toPath(), new File(folder, "managed.obj").toPath());
+		Files.copy(new File("res/stallTexture.png").toPath(), new File(folder, "managedTexture.png").toPath());
+	}
+
+	private static void deleteFolder(File folder)
+	{
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		folder.delete();
+	}
+
+	private static void check(boolean condition, String description)
+	{
+		if (! condition) {
+			System.err.println("Check failed: " + description);
+			System.exit(-1);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package engineTester;
+
+import models.ModelData;
+import renderEngine.MeshSimplifier;
+import renderEngine.OBJFileParser;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <p>Checks the levels of detail the MeshSimplifier makes of a model.</p>
+ *
+ * <p>The model is simplified to half of its triangles again and again. For every
+ * level the error reported by the simplifier is compared with the error that is
+ * actually there: the largest distance from a vertex of the full detail model to
+ * the surface of the simplified one. The levels also have to get simpler and their
+ * errors may only grow. No OpenGL is needed.</p>
+ *
+ * <p>Usage: LevelOfDetailCheck [model]</p>
+ */
+public class LevelOfDetailCheck
+{
+	private static final int MAX_LEVELS = 6;
+
+	public static void main(String[] args) throws IOException
+	{
+		String name = args.length > 0 ? args[0] : "stall";
+		ModelData original = new OBJFileParser().parse(new File("res/" + name + ".obj"));
+		float size = getRadius(original.getBounds());
+
+		System.out.printf(
+			"Model [%s]: %d triangles, %d vertices, radius %.3f%n",
+			name, original.getIndices().length / 3, original.getVertexCount(), size
+		);
+
+		MeshSimplifier simplifier = new MeshSimplifier(original);
+		int triangles = original.getIndices().length / 3;
+		float lastError = 0;
+
+		for (int level = 1; level < MAX_LEVELS; level++) {
+			long start = System.nanoTime();
+			ModelData simplified = simplifier.simplify(triangles / 2);
+			double millis = (System.nanoTime() - start) / 1e6;
+
+			int simplifiedTriangles = simplified.getIndices().length / 3;
+			float error = simplifier.getError();
+			float measured = measureError(original, simplified);
+
+			System.out.printf(
+				"Level %d: %4d triangles, %4d vertices, reported error %.4f (%.2f%%), measured error %.4f (%.2f%%), %.2f ms%n",
+				level, simplifiedTriangles, simplified.getVertexCount(),
+				error, error / size * 100, measured, measured / size * 100, millis
+			);
+
+			check(simplifiedTriangles == simplifier.getTriangleCount(), "the mesh has as many triangles as reported");
+			check(simplifiedTriangles <= triangles, "a level never has more triangles than the level before it");
+			check(error >= lastError, "the error never shrinks");
+			check(measured <= error * 2 + size * 1e-4f, "the measured error stays within twice the reported error");
+			checkBounds(original.getBounds(), simplified.getBounds());
+
+			if (simplifiedTriangles > triangles * 0.9f) {
+				System.out.println("No more edges can be collapsed");
+				break;
+			}
+
+			triangles = simplifiedTriangles;
+			lastError = error;
+		}
+
+		System.out.println("All level of detail checks passed");
+	}
+
+	private static void check(boolean condition, String description)
+	{
+		if (! condition) {
+			System.err.println("Check failed: " + description);
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * The simplified mesh only uses vertices of the original one, so it can never
+	 * be larger.
+	 */
+	private static void checkBounds(float[] original, float[] simplified)
+	{
+		for (int axis = 0; axis < 3; axis++) {
+			check(simplified[axis] >= original[axis] && simplified[axis + 3] <= original[axis + 3], "the bounds never grow");
+		}
+	}
+
+	private static float getRadius(float[] bounds)
+	{
+		float halfX = (bounds[3] - bounds[0]) / 2;
+		float halfY = (bounds[4] - bounds[1]) / 2;
+		float halfZ = (bounds[5] - bounds[2]) / 2;
+
+		return (float) Math.sqrt(halfX * halfX + halfY * halfY + halfZ * halfZ);
+	}
+
+	/**
+	 * Find the largest distance from a vertex of the original mesh to the nearest
+	 * triangle of the simplified mesh.
+	 */
+	private static float measureError(ModelData original, ModelData simplified)
+	{
+		float[] points = original.getVertices();
+		float[] vertices = simplified.getVertices();
+		int[] indices = simplified.getIndices();
+
+		double maxDistance = 0;
+		for (int point = 0; point < points.length; point += 3) {
+			double nearest = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < indices.length; i += 3) {
+				nearest = Math.min(nearest, distanceToTriangle(
+					points, point, vertices, indices[i] * 3, indices[i + 1] * 3, indices[i + 2] * 3
+				));
+			}
+
+			maxDistance = Math.max(maxDistance, nearest);
+		}
+
+		return (float) Math.sqrt(maxDistance);
+	}
+
+	/**
+	 * Calculate the squared distance from a point to a triangle, by finding the
+	 * closest point on the triangle (from Real-Time Collision Detection, 5.1.5).
+	 */
+	private static double distanceToTriangle(float[] points, int p, float[] vertices, int a, int b, int c)
+	{
+		double abx = vertices[b] - vertices[a], aby = vertices[b + 1] - vertices[a + 1], abz = vertices[b + 2] - vertices[a + 2];
+		double acx = vertices[c] - vertices[a], acy = vertices[c + 1] - vertices[a + 1], acz = vertices[c + 2] - vertices[a + 2];
+		double apx = points[p] - vertices[a], apy = points[p + 1] - vertices[a + 1], apz = points[p + 2] - vertices[a + 2];
+
+		double d1 = abx * apx + aby * apy + abz * apz;
+		double d2 = acx * apx + acy * apy + acz * apz;
+		if (d1 <= 0 && d2 <= 0) {
+			return squaredDistance(points, p, vertices[a], vertices[a + 1], vertices[a + 2]);
+		}
+
+		double bpx = points[p] - vertices[b], bpy = points[p + 1] - vertices[b + 1], bpz = points[p + 2] - vertices[b + 2];
+		double d3 = abx * bpx + aby * bpy + abz * bpz;
+		double d4 = acx * bpx + acy * bpy + acz * bpz;
+		if (d3 >= 0 && d4 <= d3) {
+			return squaredDistance(points, p, vertices[b], vertices[b + 1], vertices[b + 2]);
+		}
+
+		double vc = d1 * d4 - d3 * d2;
+		if (vc <= 0 && d1 >= 0 && d3 <= 0) {
+			double v = d1 / (d1 - d3);
+			return squaredDistance(points, p, vertices[a] + v * abx, vertices[a + 1] + v * aby, vertices[a + 2] + v * abz);
+		}
+
+		double cpx = points[p] - vertices[c], cpy = points[p + 1] - vertices[c + 1], cpz = points[p + 2] - vertices[c + 2];
+		double d5 = abx * cpx + aby * cpy + abz * cpz;
+		double d6 = acx * cpx + acy * cpy + acz * cpz;
+		if (d6 >= 0 && d5 <= d6) {
+			return squaredDistance(points, p, vertices[c], vertices[c + 1], vertices[c + 2]);
+		}
+
+		double vb = d5 * d2 - d1 * d6;
+		if (vb <= 0 && d2 >= 0 && d6 <= 0) {
+			double w = d2 / (d2 - d6);
+			return squaredDistance(points, p, vertices[a] + w * acx, vertices[a + 1] + w * acy, vertices[a + 2] + w * acz);
+		}
+
+		double va = d3 * d6 - d5 * d4;
+		if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0) {
+			double w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+			return squaredDistance(
+				points, p,
+				vertices[b] + w * (vertices[c] - vertices[b]),
+				vertices[b + 1] + w * (vertices[c + 1] - vertices[b + 1]),
+				vertices[b + 2] + w * (vertices[c + 2] - vertices[b + 2])
+			);
+		}
+
+		double denominator = 1 / (va + vb + vc);
+		double v = vb * denominator;
+		double w = vc * denominator;
+
+		return squaredDistance(
+			points, p,
+			vertices[a] + abx * v + acx * w,
+			vertices[a + 1] + aby * v + acy * w,
+			vertices[a + 2] + abz * v + acz * w
+		);
+	}
+
+	private static double squaredDistance(float[] points, int p, double x, double y, double z)
+	{
+		double dx = points[p] - x;
+		double dy = points[p + 1] - y;
+		double dz = points[p + 2] - z;
+
+		return dx * dx + dy * dy + dz * dz;
+	}
+}
@@ -0,0 +1,170 @@
+package engineTester;
+
+import entities.Camera;
+import entities.Light;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import renderEngine.LightClusterer;
+import toolbox.Maths;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>Measures how long it takes to assign point lights to clusters on the CPU.</p>
+ *
+ * <p>For 100, 1000 and 10000 lights scattered in front of the camera, the lights are
+ * clustered with a single worker and with a worker for every core (at least two).
+ * Before timing, random points in the view are checked: every light that reaches a
+ * point has to be in the list of the cluster the fragment shader would pick for
+ * that point.</p>
+ *
+ * <p>No OpenGL is needed.</p>
+ *
+ * <p>Usage: LightClusterBenchmark [frames]</p>
+ */
+public class LightClusterBenchmark
+{
+	private static final int[] LIGHT_COUNTS = {100, 1000, 10000};
+
+	private static final int TILES_X = 16;
+	private static final int TILES_Y = 9;
+	private static final int SLICES = 24;
+
+	private static final float FOV = 70;
+	private static final float NEAR_PLANE = 0.1f;
+	private static final float FAR_PLANE = 1000;
+
+	private static final int CHECKED_POINTS = 20000;
+
+	public static void main(String[] args)
+	{
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		Matrix4f projectionMatrix = createProjectionMatrix();
+		Matrix4f viewMatrix = Maths.createViewMatrix(new Camera());
+
+		for (int lightCount : LIGHT_COUNTS) {
+			List<Light> lights = createLights(lightCount);
+
+			// Always try more than one worker, so the parallel path is checked as well.
+			for (int workers : new int[] {1, Math.max(2, cores)}) {
+				LightClusterer clusterer = new LightClusterer(TILES_X, TILES_Y, SLICES, NEAR_PLANE, FAR_PLANE, workers);
+
+				clusterer.cluster(lights, viewMatrix, projectionMatrix);
+				check(clusterer, lights, projectionMatrix);
+
+				for (int i = 0; i < frames; i++) {
+					clusterer.cluster(lights, viewMatrix, projectionMatrix);
+				}
+
+				long start = System.nanoTime();
+				for (int i = 0; i < frames; i++) {
+					clusterer.cluster(lights, viewMatrix, projectionMatrix);
+				}
+				long nanos = System.nanoTime() - start;
+
+				System.out.printf(
+					"%5d lights, %d worker(s): %8.3f ms per frame, %7d indices, %.1f lights per cluster%n",
+					lightCount, workers, nanos / 1e6 / frames, clusterer.getLightIndexCount(),
+					(double) clusterer.getLightIndexCount() / clusterer.getClusterCount()
+				);
+
+				clusterer.cleanUp();
+			}
+		}
+	}
+
+	/**
+	 * Check that every light reaching a random point in the view is in the cluster
+	 * of that point.
+	 */
+	private static void check(LightClusterer clusterer, List<Light> lights, Matrix4f projectionMatrix)
+	{
+		Random random = new Random(7);
+		int[] offsets = clusterer.getClusterOffsets();
+		int[] counts = clusterer.getClusterCounts();
+		int[] indices = clusterer.getLightIndices();
+
+		for (int i = 0; i < CHECKED_POINTS; i++) {
+			float ndcX = random.nextFloat() * 2 - 1;
+			float ndcY = random.nextFloat() * 2 - 1;
+			float depth = NEAR_PLANE + random.nextFloat() * 300;
+
+			// The camera is at the origin looking down the negative z axis, so view space
+			// is world space.
+			float x = ndcX * depth / projectionMatrix.m00;
+			float y = ndcY * depth / projectionMatrix.m11;
+			float z = -depth;
+
+			int cluster = clusterer.getCluster(ndcX, ndcY, depth);
+
+			for (int light = 0; light < lights.size(); light++) {
+				Vector3f position = lights.get(light).getPosition();
+				float dx = position.x - x;
+				float dy = position.y - y;
+				float dz = position.z - z;
+				float range = lights.get(light).getRange();
+
+				if (dx * dx + dy * dy + dz * dz < range * range && ! contains(indices, offsets[cluster], counts[cluster], light)) {
+					System.err.println("Light " + light + " reaches a point in cluster " + cluster + ", but isn't in it");
+					System.exit(-1);
+				}
+			}
+		}
+	}
+
+	private static boolean contains(int[] indices, int offset, int count, int light)
+	{
+		for (int i = offset; i < offset + count; i++) {
+			if (indices[i] == light) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Scatter lights of different ranges in the view of the camera.
+	 */
+	private static List<Light> createLights(int count)
+	{
+		Random random = new Random(42);
+
+		List<Light> lights = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			float depth = 5 + random.nextFloat() * 295;
+			Vector3f position = new Vector3f(
+				(random.nextFloat() * 2 - 1) * depth * 0.7f,
+				(random.nextFloat() * 2 - 1) * depth * 0.4f,
+				-depth
+			);
+			Vector3f colour = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat());
+
+			lights.add(new Light(position, colour, 1 + random.nextFloat() * 4));
+		}
+
+		return lights;
+	}
+
+	private static Matrix4f createProjectionMatrix()
+	{
+		Matrix4f projectionMatrix = new Matrix4f();
+		float aspectRatio = 16f / 9f;
+		float yScale = (float) ((1f / Math.tan(Math.toRadians(FOV / 2f))) * aspectRatio);
+		float xScale = yScale / aspectRatio;
+		float frustumLength = FAR_PLANE - NEAR_PLANE;
+
+		projectionMatrix.m00 = xScale;
+		projectionMatrix.m11 = yScale;
+		projectionMatrix.m22 = -((FAR_PLANE + NEAR_PLANE) / frustumLength);
+		projectionMatrix.m23 = -1;
+		projectionMatrix.m32 = -((2 * NEAR_PLANE * FAR_PLANE) / frustumLength);
+		projectionMatrix.m33 = 0;
+
+		return projectionMatrix;
+	}
+}
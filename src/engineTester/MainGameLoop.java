@@ -2,49 +2,98 @@ package engineTester;
 
 import entities.Camera;
 import entities.Entity;
+import entities.EntityStore;
 import entities.Light;
 import models.TexturedModel;
-import org.lwjgl.opengl.Display;
 import org.lwjgl.util.vector.Vector3f;
 import renderEngine.*;
 import models.RawModel;
 import textures.ModelTexture;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
 public class MainGameLoop
 {
 	public static void main(String[] args)
 	{
-		DisplayManager.createDisplay();
+		GraphicsBackend gl = new LwjglBackend();
+		DisplayManager.createDisplay(gl);
 
-		Loader loader = new Loader();
+		Loader loader = new Loader(gl);
 
-		// Load the OBJ model.
-		RawModel model = OBJLoader.loadObjModel("dragon", loader);
+		// Load the OBJ model and its texture in the background, and wait until
+		// both are uploaded.
+		AssetPipeline assets = new AssetPipeline(loader);
+		CompletableFuture<RawModel> model = assets.loadModel("dragon");
+		CompletableFuture<Integer> textureID = assets.loadTexture("white");
+		assets.finishAll();
 
-		TexturedModel texturedModel = new TexturedModel(model, new ModelTexture(loader.loadTexture("white")));
+		TexturedModel texturedModel = new TexturedModel(model.join(), new ModelTexture(textureID.join()));
 		ModelTexture texture = texturedModel.getTexture();
 
 		texture.setShineDamper(25);
 		texture.setReflectivity(1);
 
-		Entity entity = new Entity(texturedModel, new Vector3f(0, -3, -25), 0, 0, 0, 1);
+		EntityStore entities = new EntityStore();
+		Entity entity = new Entity(entities, texturedModel, new Vector3f(0, -3, -25), 0, 0, 0, 1);
 		Light light = new Light(new Vector3f(200, 200, 100), new Vector3f(1, 1, 1));
 
+		// Two coloured point lights on either side of the model.
+		Light redLight = new Light(new Vector3f(-8, 2, -22), new Vector3f(1, 0.2f, 0.2f), 15);
+		Light blueLight = new Light(new Vector3f(8, 2, -22), new Vector3f(0.2f, 0.2f, 1), 15);
+
+		// The camera is moved by the simulation, and the render camera is the camera
+		// interpolated between the last two ticks.
 		Camera camera = new Camera();
+		Camera renderCamera = new Camera();
+
+		MasterRenderer renderer = new MasterRenderer(gl);
+
+		// Reload the shaders, the model and its texture when they are edited. The
+		// game still runs without it.
+		HotReloader reloader = null;
+		try {
+			reloader = new HotReloader();
+			renderer.watchShaders(reloader);
+			reloader.watchModel("dragon", texturedModel.getRawModel(), loader);
+			reloader.watchTexture("white", texture, loader);
+		} catch (IOException e) {
+			System.err.println("Could not watch the asset files, hot reloading is off");
+			e.printStackTrace();
+		}
+
+		GameLoop loop = new GameLoop(GameLoop.DEFAULT_TICK_RATE);
+		while (! DisplayManager.isCloseRequested()) {
+			// Reload what was edited since the last frame, before drawing this one.
+			if (reloader != null) {
+				reloader.processChanges();
+			}
 
-		MasterRenderer renderer = new MasterRenderer();
-		while (! Display.isCloseRequested()) {
-			camera.move();
+			loop.runFrame(camera::move);
+			camera.interpolate(loop.getAlpha(), renderCamera);
+			renderer.beginFrame(renderCamera);
 
 			// Start the shader program. Render the model, and finally stop
 			// it again.
 			renderer.processEntity(entity);
+			renderer.processLight(redLight);
+			renderer.processLight(blueLight);
 
-			renderer.render(light, camera);
+			renderer.render(light, renderCamera);
 			DisplayManager.updateDisplay();
+
+			// The edits that were reloaded are on the screen now.
+			if (reloader != null) {
+				reloader.frameShown();
+			}
 		}
 
 		// Clean everything up if we close the program.
+		if (reloader != null) {
+			reloader.cleanUp();
+		}
+		assets.cleanUp();
 		renderer.cleanUp();
 		loader.cleanUp();
 		DisplayManager.closeDisplay();
@@ -0,0 +1,181 @@
+package engineTester;
+
+import entities.Camera;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import toolbox.Maths;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * <p>Compares the allocation free transformation and view matrix functions in
+ * Maths with the original ones that build the matrix with general multiplies.</p>
+ *
+ * <p>First a large number of random inputs is fed to both versions, and every
+ * element of the resulting matrices has to match within a small epsilon. After
+ * that both versions are timed, and the nanoseconds and bytes allocated per call
+ * are reported.</p>
+ *
+ * <p>Usage: MathsBenchmark [iterations]</p>
+ */
+public class MathsBenchmark
+{
+	private static final float EPSILON = 1e-4f;
+	private static final int CHECKED_INPUTS = 1000000;
+
+	private static volatile float sink;
+
+	public static void main(String[] args)
+	{
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+
+		checkEquivalence();
+
+		Vector3f[] positions = new Vector3f[1024];
+		float[] angles = new float[1024];
+		Random random = new Random(1);
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = new Vector3f(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 100);
+			angles[i] = random.nextFloat() * 720 - 360;
+		}
+
+		Matrix4f dest = new Matrix4f();
+		FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
+
+		for (int run = 0; run < 2; run++) {
+			boolean report = run == 1;
+
+			long start = System.nanoTime();
+			long allocated = Allocations.allocatedBytes();
+			for (int i = 0; i < iterations; i++) {
+				int j = i & 1023;
+				Matrix4f matrix = Maths.createTransformationMatrix(positions[j], angles[j], angles[1023 - j], angles[j ^ 7], 1.5f);
+				sink += matrix.m30;
+			}
+			report(report, "transformation (original)", iterations, System.nanoTime() - start, Allocations.allocatedBytes() - allocated);
+
+			start = System.nanoTime();
+			allocated = Allocations.allocatedBytes();
+			for (int i = 0; i < iterations; i++) {
+				int j = i & 1023;
+				Maths.createTransformationMatrix(positions[j], angles[j], angles[1023 - j], angles[j ^ 7], 1.5f, dest);
+				sink += dest.m30;
+			}
+			report(report, "transformation (in place)", iterations, System.nanoTime() - start, Allocations.allocatedBytes() - allocated);
+
+			start = System.nanoTime();
+			allocated = Allocations.allocatedBytes();
+			for (int i = 0; i < iterations; i++) {
+				int j = i & 1023;
+				buffer.clear();
+				Maths.storeTransformationMatrix(positions[j], angles[j], angles[1023 - j], angles[j ^ 7], 1.5f, buffer);
+				sink += buffer.get(12);
+			}
+			report(report, "transformation (buffer)", iterations, System.nanoTime() - start, Allocations.allocatedBytes() - allocated);
+
+			Camera camera = new Camera();
+
+			start = System.nanoTime();
+			allocated = Allocations.allocatedBytes();
+			for (int i = 0; i < iterations; i++) {
+				int j = i & 1023;
+				camera.setPitch(angles[j]);
+				Matrix4f matrix = Maths.createViewMatrix(camera);
+				sink += matrix.m30;
+			}
+			report(report, "view (original)", iterations, System.nanoTime() - start, Allocations.allocatedBytes() - allocated);
+
+			start = System.nanoTime();
+			allocated = Allocations.allocatedBytes();
+			for (int i = 0; i < iterations; i++) {
+				int j = i & 1023;
+				camera.setPitch(angles[j]);
+				Maths.createViewMatrix(camera, dest);
+				sink += dest.m30;
+			}
+			report(report, "view (in place)", iterations, System.nanoTime() - start, Allocations.allocatedBytes() - allocated);
+		}
+	}
+
+	/**
+	 * Feed random inputs to the original and the new functions, and stop with an
+	 * error as soon as a result differs by more than the epsilon.
+	 */
+	private static void checkEquivalence()
+	{
+		Random random = new Random(42);
+		Matrix4f dest = new Matrix4f();
+		FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
+		float[] stored = new float[16];
+		Camera camera = new Camera();
+
+		for (int i = 0; i < CHECKED_INPUTS; i++) {
+			Vector3f translation = new Vector3f(randomFloat(random), randomFloat(random), randomFloat(random));
+			float rx = random.nextFloat() * 720 - 360;
+			float ry = random.nextFloat() * 720 - 360;
+			float rz = random.nextFloat() * 720 - 360;
+			float scale = random.nextFloat() * 10;
+
+			Matrix4f expected = Maths.createTransformationMatrix(translation, rx, ry, rz, scale);
+
+			Maths.createTransformationMatrix(translation, rx, ry, rz, scale, dest);
+			check(expected, toArray(dest), "createTransformationMatrix(dest)");
+
+			buffer.clear();
+			Maths.storeTransformationMatrix(translation, rx, ry, rz, scale, buffer);
+			buffer.flip();
+			buffer.get(stored);
+			check(expected, stored, "storeTransformationMatrix");
+
+			camera.getPosition().set(randomFloat(random), randomFloat(random), randomFloat(random));
+			camera.setPitch(rx);
+			camera.setYaw(ry);
+			check(Maths.createViewMatrix(camera), toArray(Maths.createViewMatrix(camera, dest)), "createViewMatrix(dest)");
+		}
+
+		System.out.println("All " + CHECKED_INPUTS + " random inputs match within " + EPSILON);
+	}
+
+	private static float randomFloat(Random random)
+	{
+		return random.nextFloat() * 200 - 100;
+	}
+
+	private static float[] toArray(Matrix4f matrix)
+	{
+		FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
+		matrix.store(buffer);
+		buffer.flip();
+
+		float[] array = new float[16];
+		buffer.get(array);
+
+		return array;
+	}
+
+	private static void check(Matrix4f expected, float[] actual, String function)
+	{
+		float[] expectedArray = toArray(expected);
+
+		for (int i = 0; i < 16; i++) {
+			// Compare relative to the size of the values, since translations can be large.
+			float tolerance = EPSILON * Math.max(1, Math.abs(expectedArray[i]));
+			if (Math.abs(expectedArray[i] - actual[i]) > tolerance) {
+				System.err.println(function + " differs at element " + i + ": " + expectedArray[i] + " vs " + actual[i]);
+				System.exit(-1);
+			}
+		}
+	}
+
+	private static void report(boolean report, String label, int iterations, long nanos, long allocated)
+	{
+		if (report) {
+			System.out.printf(
+				"%-28s %8.2f ns/op %8.2f bytes/op%n",
+				label, (double) nanos / iterations, (double) allocated / iterations
+			);
+		}
+	}
+}
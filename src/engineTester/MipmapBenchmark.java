@@ -0,0 +1,227 @@
+package engineTester;
+
+import org.lwjgl.BufferUtils;
+import renderEngine.DisplayManager;
+import renderEngine.Loader;
+import renderEngine.RecordingBackend;
+import textures.MipmapGenerator;
+import textures.TextureData;
+import textures.TextureDecoder;
+import textures.TextureQuality;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>Checks the mipmaps of the MipmapGenerator, times it, and prints the texture
+ * memory of every texture quality.</p>
+ *
+ * <p>The checks: the levels have the right sizes, also for odd sizes; a texture of
+ * a single colour keeps exactly that colour in every level; black and white pixels
+ * average to the sRGB value of half the light, not to 128; and a big texture, which
+ * is filtered in parallel, matches a plain filter calculated in doubles.</p>
+ *
+ * <p>The time is measured on the common fork join pool. Run with
+ * -Djava.util.concurrent.ForkJoinPool.common.parallelism=1 to compare with a
+ * single thread.</p>
+ *
+ * <p>Usage: MipmapBenchmark [texture size] [rounds]</p>
+ */
+public class MipmapBenchmark
+{
+	private static final int WARMUP_ROUNDS = 5;
+
+	public static void main(String[] args)
+	{
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		checkLevelSizes();
+		checkSolidColours();
+		checkLinearAverage();
+		checkAgainstReference();
+		System.out.println("Mipmap checks passed");
+
+		TextureData texture = createNoise(size, size, new Random(42));
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			MipmapGenerator.generate(texture);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			MipmapGenerator.generate(texture);
+		}
+		double millis = (System.nanoTime() - start) / 1e6 / rounds;
+		System.out.printf(
+			"%dx%d texture: %.2f ms for the mip chain on %d threads (%.1f Mpixels/s read)%n",
+			size, size, millis, ForkJoinPool.getCommonPoolParallelism(), size * (double) size * 4 / 3 / millis / 1000
+		);
+
+		printMemoryPerQuality();
+	}
+
+	private static void checkLevelSizes()
+	{
+		TextureData texture = MipmapGenerator.generate(createNoise(37, 5, new Random(1)));
+		int[][] expected = {{37, 5}, {18, 2}, {9, 1}, {4, 1}, {2, 1}, {1, 1}};
+
+		check(texture.getLevelCount() == expected.length, "a 37x5 texture has 6 levels");
+		for (int level = 0; level < expected.length; level++) {
+			check(
+				texture.getLevelWidth(level) == expected[level][0] && texture.getLevelHeight(level) == expected[level][1]
+					&& texture.getLevel(level).capacity() == expected[level][0] * expected[level][1] * 4,
+				"level " + level + " of a 37x5 texture is " + expected[level][0] + "x" + expected[level][1]
+			);
+		}
+
+		check(MipmapGenerator.generate(createNoise(64, 64, new Random(2)), 3).getLevelCount() == 3, "the levels can be limited");
+	}
+
+	/**
+	 * Averaging four equal values has to give the same value back, for every value.
+	 */
+	private static void checkSolidColours()
+	{
+		for (int value = 0; value < 256; value++) {
+			ByteBuffer pixels = BufferUtils.createByteBuffer(8 * 8 * 4);
+			for (int i = 0; i < pixels.capacity(); i++) {
+				pixels.put(i, (byte) value);
+			}
+
+			TextureData texture = MipmapGenerator.generate(new TextureData(8, 8, pixels));
+			for (int level = 1; level < texture.getLevelCount(); level++) {
+				ByteBuffer levelPixels = texture.getLevel(level);
+				for (int i = 0; i < levelPixels.capacity(); i++) {
+					check((levelPixels.get(i) & 0xff) == value, "value " + value + " stays the same in level " + level);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Half black and half white pixels are half the light, which is 188 in sRGB.
+	 * Alpha isn't stored in sRGB, so it averages to 128.
+	 */
+	private static void checkLinearAverage()
+	{
+		ByteBuffer pixels = BufferUtils.createByteBuffer(2 * 2 * 4);
+		for (int pixel = 0; pixel < 4; pixel++) {
+			byte value = (byte) (pixel % 2 == 0 ? 255 : 0);
+			for (int channel = 0; channel < 4; channel++) {
+				pixels.put(pixel * 4 + channel, value);
+			}
+		}
+
+		ByteBuffer level = MipmapGenerator.generate(new TextureData(2, 2, pixels)).getLevel(1);
+		check((level.get(0) & 0xff) == 188, "black and white average to 188, not " + (level.get(0) & 0xff));
+		check((level.get(3) & 0xff) == 128, "alpha averages to 128, not " + (level.get(3) & 0xff));
+	}
+
+	/**
+	 * The levels of a texture big enough to be filtered in parallel have to match a
+	 * filter that calculates everything in doubles, within one step.
+	 */
+	private static void checkAgainstReference()
+	{
+		TextureData texture = MipmapGenerator.generate(createNoise(515, 1030, new Random(3)));
+
+		for (int level = 1; level < texture.getLevelCount(); level++) {
+			ByteBuffer source = texture.getLevel(level - 1);
+			ByteBuffer actual = texture.getLevel(level);
+			int sourceWidth = texture.getLevelWidth(level - 1);
+			int sourceHeight = texture.getLevelHeight(level - 1);
+			int width = texture.getLevelWidth(level);
+			int height = texture.getLevelHeight(level);
+
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					for (int channel = 0; channel < 4; channel++) {
+						double sum = 0;
+						for (int dy = 0; dy < 2; dy++) {
+							for (int dx = 0; dx < 2; dx++) {
+								int sx = Math.min(x * 2 + dx, sourceWidth - 1);
+								int sy = Math.min(y * 2 + dy, sourceHeight - 1);
+								int value = source.get((sy * sourceWidth + sx) * 4 + channel) & 0xff;
+								sum += channel == 3 ? value / 255.0 : toLinear(value / 255.0);
+							}
+						}
+
+						double expected = channel == 3 ? sum / 4 * 255 : toSrgb(sum / 4) * 255;
+						int value = actual.get((y * width + x) * 4 + channel) & 0xff;
+						check(Math.abs(value - expected) <= 1, "pixel " + x + ", " + y + " of level " + level + " matches the reference");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Load the textures of the scene at every quality, and compare the memory they
+	 * use with the full size images without mipmaps.
+	 */
+	private static void printMemoryPerQuality()
+	{
+		RecordingBackend gl = new RecordingBackend();
+		DisplayManager.createDisplay(gl);
+		String[] fileNames = {"stallTexture", "brick-texture", "white"};
+
+		long fullSize = 0;
+		for (String fileName : fileNames) {
+			try {
+				fullSize += TextureDecoder.decode(new File("res/" + fileName + ".png")).getSizeInBytes();
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+
+		TextureQuality original = TextureQuality.getGlobal();
+		for (TextureQuality quality : TextureQuality.values()) {
+			TextureQuality.setGlobal(quality);
+			Loader loader = new Loader(gl);
+			loader.setCompressTextures(false);
+			for (String fileName : fileNames) {
+				loader.loadTexture(fileName);
+			}
+
+			System.out.printf(
+				"%-6s texture memory %8.1f KB (%.3fx the images without mipmaps), max anisotropy %.0f%n",
+				quality, loader.getTextureMemory() / 1024.0, (double) loader.getTextureMemory() / fullSize, quality.getMaxAnisotropy()
+			);
+			loader.cleanUp();
+		}
+		TextureQuality.setGlobal(original);
+
+		DisplayManager.closeDisplay();
+	}
+
+	private static double toLinear(double srgb)
+	{
+		return srgb <= 0.04045 ? srgb / 12.92 : Math.pow((srgb + 0.055) / 1.055, 2.4);
+	}
+
+	private static double toSrgb(double linear)
+	{
+		return linear <= 0.0031308 ? linear * 12.92 : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+	}
+
+	private static TextureData createNoise(int width, int height, Random random)
+	{
+		ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+		for (int i = 0; i < pixels.capacity(); i++) {
+			pixels.put(i, (byte) random.nextInt(256));
+		}
+
+		return new TextureData(width, height, pixels);
+	}
+
+	private static void check(boolean condition, String description)
+	{
+		if (! condition) {
+			System.err.println("Check failed: " + description);
+			System.exit(-1);
+		}
+	}
+}
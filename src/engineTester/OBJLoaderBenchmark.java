@@ -0,0 +1,108 @@
+package engineTester;
+
+import models.ModelData;
+import renderEngine.OBJFileParser;
+import renderEngine.OBJLoader;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <p>Compares the streaming OBJFileParser with the original line based OBJ loader.</p>
+ *
+ * <p>Both loaders parse the same file over and over again. For each of them the
+ * throughput in MB/s and the number of bytes allocated per parsed file are
+ * reported. Before measuring anything, the output of both loaders is compared to
+ * make sure they produce the same triangles. This needs no OpenGL context.</p>
+ *
+ * <p>Usage: OBJLoaderBenchmark [model name] [iterations]</p>
+ */
+public class OBJLoaderBenchmark
+{
+	private static final int WARMUP_ITERATIONS = 200;
+
+	public static void main(String[] args) throws IOException
+	{
+		String name = args.length > 0 ? args[0] : "stall";
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+		File file = new File("res/" + name + ".obj");
+		double megabytes = file.length() / (1024.0 * 1024.0);
+
+		OBJFileParser parser = new OBJFileParser();
+
+		ModelData expected = OBJLoader.readObjModelLineByLine(name);
+		ModelData actual = parser.parse(file);
+
+		if (! sameTriangles(expected, actual)) {
+			System.err.println("The OBJFileParser triangles differ from the line based loader!");
+			System.exit(-1);
+		}
+
+		System.out.println("Model [" + name + "]: " + actual.getVertexCount() + " vertices, "
+			+ actual.getIndices().length / 3 + " triangles, vertex reuse ratio "
+			+ actual.getVertexReuseRatio() + " (line based: " + expected.getVertexCount() + " vertices)");
+
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			OBJLoader.readObjModelLineByLine(name);
+			parser.parse(file);
+		}
+
+		long start = System.nanoTime();
+		long allocated = Allocations.allocatedBytes();
+		for (int i = 0; i < iterations; i++) {
+			OBJLoader.readObjModelLineByLine(name);
+		}
+		report("line based", iterations, megabytes, System.nanoTime() - start, Allocations.allocatedBytes() - allocated);
+
+		start = System.nanoTime();
+		allocated = Allocations.allocatedBytes();
+		for (int i = 0; i < iterations; i++) {
+			parser.parse(file);
+		}
+		report("streaming", iterations, megabytes, System.nanoTime() - start, Allocations.allocatedBytes() - allocated);
+	}
+
+	/**
+	 * Print the results of a single run.
+	 *
+	 * @param  label       The name of the loader
+	 * @param  iterations  The number of files parsed
+	 * @param  megabytes   The size of a single file in MB
+	 * @param  nanos       The total time spent
+	 * @param  allocated   The total number of bytes allocated
+	 */
+	private static void report(String label, int iterations, double megabytes, long nanos, long allocated)
+	{
+		double seconds = nanos / 1e9;
+		System.out.printf(
+			"%-12s %8.2f MB/s %10.3f ms/file %12d bytes allocated/file%n",
+			label,
+			megabytes * iterations / seconds,
+			seconds * 1000 / iterations,
+			allocated / iterations
+		);
+	}
+
+	/**
+	 * Check if two models describe the same triangles. The line based loader only
+	 * has one vertex per position, while the parser creates a vertex for every
+	 * unique combination, so the vertex positions are compared per index.
+	 */
+	private static boolean sameTriangles(ModelData a, ModelData b)
+	{
+		if (a.getIndices().length != b.getIndices().length) {
+			return false;
+		}
+
+		for (int i = 0; i < a.getIndices().length; i++) {
+			for (int j = 0; j < 3; j++) {
+				if (a.getVertices()[a.getIndices()[i] * 3 + j] != b.getVertices()[b.getIndices()[i] * 3 + j]) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+}
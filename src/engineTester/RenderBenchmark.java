@@ -0,0 +1,128 @@
+package engineTester;
+
+import entities.Camera;
+import entities.Entity;
+import entities.EntityStore;
+import entities.Light;
+import models.RawModel;
+import models.TexturedModel;
+import org.lwjgl.util.vector.Vector3f;
+import renderEngine.*;
+import textures.ModelTexture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>Profiles the CPU side of the render path without a GPU.</p>
+ *
+ * <p>A scene with a number of entities is rendered through the RecordingBackend,
+ * which doesn't draw anything but counts every call. For every frame the time spent
+ * in beginFrame(), processEntity() and render() is measured, and the counts of the last frame
+ * are printed afterwards. The models have levels of detail, and the triangles drawn
+ * are compared with drawing every entity at full detail.</p>
+ *
+ * <p>Usage: RenderBenchmark [entity count] [frames] [instanced|per-entity]</p>
+ */
+public class RenderBenchmark
+{
+	private static final int WARMUP_FRAMES = 200;
+
+	private static final int MAX_LEVELS = 4;
+
+	public static void main(String[] args)
+	{
+		int entityCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		boolean instancing = args.length <= 2 || ! args[2].equals("per-entity");
+
+		RecordingBackend gl = new RecordingBackend();
+		DisplayManager.createDisplay(gl);
+
+		// A scene of two models, three textures and two materials mixed together, so
+		// batches share a VAO or a texture with other batches.
+		Loader loader = new Loader(gl);
+		RawModel[][] models = {
+			OBJLoader.loadObjModelLevels("stall", loader, MAX_LEVELS),
+			OBJLoader.loadObjModelLevels("stall", loader, MAX_LEVELS)
+		};
+		int[] textureIDs = {loader.loadTexture("stallTexture"), loader.loadTexture("brick-texture"), loader.loadTexture("white")};
+
+		List<TexturedModel> texturedModels = new ArrayList<>();
+		for (RawModel[] model : models) {
+			for (int textureID : textureIDs) {
+				for (int shineDamper = 1; shineDamper <= 10; shineDamper += 9) {
+					ModelTexture texture = new ModelTexture(textureID);
+					texture.setShineDamper(shineDamper);
+					texturedModels.add(new TexturedModel(model, texture));
+				}
+			}
+		}
+
+		Random random = new Random(42);
+		EntityStore store = new EntityStore(entityCount);
+		List<Entity> entities = new ArrayList<>();
+		for (int i = 0; i < entityCount; i++) {
+			TexturedModel texturedModel = texturedModels.get(random.nextInt(texturedModels.size()));
+			Vector3f position = new Vector3f(
+				random.nextFloat() * 400 - 200,
+				random.nextFloat() * 20 - 10,
+				random.nextFloat() * -400
+			);
+			entities.add(new Entity(store, texturedModel, position, 0, random.nextFloat() * 360, 0, 1));
+		}
+
+		Light light = new Light(new Vector3f(200, 200, 100), new Vector3f(1, 1, 1));
+		Camera camera = new Camera();
+		MasterRenderer renderer = new MasterRenderer(gl);
+		renderer.setInstancing(instancing);
+
+		for (int i = 0; i < WARMUP_FRAMES; i++) {
+			renderFrame(renderer, entities, light, camera);
+		}
+
+		renderer.resetUniformStatistics();
+		long start = System.nanoTime();
+		for (int i = 0; i < frames; i++) {
+			renderFrame(renderer, entities, light, camera);
+		}
+		long nanos = System.nanoTime() - start;
+
+		System.out.printf(
+			"%d entities (%s): %.3f ms per frame%n",
+			entityCount, instancing ? "instanced" : "per-entity", nanos / 1e6 / frames
+		);
+		System.out.println("Last frame: " + gl.describeLastFrame() + ", matrix_updates=" + renderer.getMatrixUpdates()
+			+ ", visible=" + renderer.getVisibleEntities() + ", culled=" + renderer.getCulledEntities());
+		System.out.printf(
+			"Uniform uploads skipped per frame: %.1f of %.1f%n",
+			(double) renderer.getUniformHits() / frames,
+			(double) (renderer.getUniformHits() + renderer.getUniformMisses()) / frames
+		);
+		System.out.println("Skipped/total per uniform: " + renderer.describeUniformStatistics());
+
+		long triangles = renderer.getSubmittedTriangles();
+		renderer.setLodPixelError(0);
+		renderFrame(renderer, entities, light, camera);
+		System.out.printf(
+			"Triangles per frame: %d with %d levels of detail, %d at full detail%n",
+			triangles, models[0].length, renderer.getSubmittedTriangles()
+		);
+
+		renderer.cleanUp();
+		loader.cleanUp();
+		DisplayManager.closeDisplay();
+	}
+
+	private static void renderFrame(MasterRenderer renderer, List<Entity> entities, Light light, Camera camera)
+	{
+		renderer.beginFrame(camera);
+		for (Entity entity : entities) {
+			renderer.processEntity(entity);
+		}
+
+		renderer.render(light, camera);
+		DisplayManager.updateDisplay();
+	}
+}
@@ -0,0 +1,179 @@
+package engineTester;
+
+import entities.Camera;
+import entities.Entity;
+import entities.EntityStore;
+import entities.Light;
+import models.RawModel;
+import models.TexturedModel;
+import org.lwjgl.util.vector.Vector3f;
+import renderEngine.*;
+import textures.ModelTexture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * <p>Measures how building the render list scales with the number of threads.</p>
+ *
+ * <p>Every frame, every entity is rotated a little, so its transformation matrix has
+ * to be calculated again, and then it is culled, gets a level of detail and is
+ * added to the render queue. That is done with processEntities() on 1, 2, 4, ...
+ * threads, up to the number of processors (or the given number of threads), and
+ * the CPU time of building the list and of the whole frame is printed for each.
+ * The frame is drawn through the RecordingBackend, so no GPU is needed.</p>
+ *
+ * <p>Before timing, a frame is built with processEntity() on a single thread and
+ * with processEntities() on every number of threads, and all of them have to draw
+ * exactly the same.</p>
+ *
+ * <p>Usage: RenderListBenchmark [entity count] [frames] [max threads]</p>
+ */
+public class RenderListBenchmark
+{
+	private static final int WARMUP_FRAMES = 30;
+
+	private static final int MAX_LEVELS = 4;
+
+	public static void main(String[] args)
+	{
+		int entityCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		RecordingBackend gl = new RecordingBackend();
+		DisplayManager.createDisplay(gl);
+
+		Loader loader = new Loader(gl);
+		RawModel[] levels = OBJLoader.loadObjModelLevels("stall", loader, MAX_LEVELS);
+		int[] textureIDs = {loader.loadTexture("stallTexture"), loader.loadTexture("brick-texture"), loader.loadTexture("white")};
+
+		List<TexturedModel> texturedModels = new ArrayList<>();
+		for (int textureID : textureIDs) {
+			texturedModels.add(new TexturedModel(levels, new ModelTexture(textureID)));
+		}
+
+		Random random = new Random(42);
+		EntityStore store = new EntityStore(entityCount);
+		List<Entity> entities = new ArrayList<>();
+		for (int i = 0; i < entityCount; i++) {
+			TexturedModel texturedModel = texturedModels.get(random.nextInt(texturedModels.size()));
+			Vector3f position = new Vector3f(
+				random.nextFloat() * 600 - 300,
+				random.nextFloat() * 20 - 10,
+				random.nextFloat() * -600
+			);
+			entities.add(new Entity(store, texturedModel, position, 0, random.nextFloat() * 360, 0, 1));
+		}
+
+		Light light = new Light(new Vector3f(200, 200, 100), new Vector3f(1, 1, 1));
+		Camera camera = new Camera();
+		MasterRenderer renderer = new MasterRenderer(gl);
+
+		List<Integer> threadCounts = new ArrayList<>();
+		for (int threads = 1; threads < maxThreads; threads *= 2) {
+			threadCounts.add(threads);
+		}
+		threadCounts.add(maxThreads);
+
+		checkSameFrame(gl, renderer, entities, light, camera, threadCounts);
+
+		System.out.printf(
+			"%d entities, %d frames, %d processors%n",
+			entityCount, frames, Runtime.getRuntime().availableProcessors()
+		);
+
+		Consumer<Entity> update = entity -> entity.increaseRotation(0, 0.5f, 0);
+		double singleThreadBuild = 0;
+		for (int threads : threadCounts) {
+			renderer.setRenderListThreads(threads);
+
+			for (int i = 0; i < WARMUP_FRAMES; i++) {
+				renderFrame(renderer, entities, update, light, camera);
+			}
+
+			long buildNanos = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < frames; i++) {
+				buildNanos += renderFrame(renderer, entities, update, light, camera);
+			}
+			long frameNanos = System.nanoTime() - start;
+
+			double build = buildNanos / 1e6 / frames;
+			if (threads == 1) {
+				singleThreadBuild = build;
+			}
+
+			System.out.printf(
+				"%2d threads: build %.3f ms (%.2fx), frame %.3f ms, matrix updates %d, visible %d%n",
+				threads, build, singleThreadBuild / build, frameNanos / 1e6 / frames,
+				renderer.getMatrixUpdates(), renderer.getVisibleEntities()
+			);
+		}
+
+		renderer.cleanUp();
+		loader.cleanUp();
+		DisplayManager.closeDisplay();
+	}
+
+	/**
+	 * Render a frame, and return the time it took to build the render list.
+	 */
+	private static long renderFrame(MasterRenderer renderer, List<Entity> entities, Consumer<Entity> update, Light light, Camera camera)
+	{
+		long start = System.nanoTime();
+		renderer.beginFrame(camera);
+		renderer.processEntities(entities, update);
+		long buildNanos = System.nanoTime() - start;
+
+		renderer.render(light, camera);
+		DisplayManager.updateDisplay();
+
+		return buildNanos;
+	}
+
+	/**
+	 * Check that a frame built on any number of threads draws exactly the same as a
+	 * frame built entity by entity.
+	 */
+	private static void checkSameFrame(
+		RecordingBackend gl, MasterRenderer renderer, List<Entity> entities, Light light, Camera camera, List<Integer> threadCounts
+	) {
+		// The first frame also counts loading the scene and setting up the shaders,
+		// so the second frame is the one to compare with.
+		String expected = null;
+		for (int frame = 0; frame < 2; frame++) {
+			renderer.beginFrame(camera);
+			for (Entity entity : entities) {
+				renderer.processEntity(entity);
+			}
+			renderer.render(light, camera);
+			DisplayManager.updateDisplay();
+			expected = describeFrame(gl, renderer);
+		}
+
+		for (int threads : threadCounts) {
+			renderer.setRenderListThreads(threads);
+			renderer.beginFrame(camera);
+			renderer.processEntities(entities);
+			renderer.render(light, camera);
+			DisplayManager.updateDisplay();
+
+			String actual = describeFrame(gl, renderer);
+			if (! actual.equals(expected)) {
+				System.err.println("The frame built on " + threads + " threads is different");
+				System.err.println("  expected: " + expected);
+				System.err.println("  actual:   " + actual);
+				System.exit(-1);
+			}
+		}
+	}
+
+	private static String describeFrame(RecordingBackend gl, MasterRenderer renderer)
+	{
+		return gl.describeLastFrame() + ", visible=" + renderer.getVisibleEntities()
+			+ ", culled=" + renderer.getCulledEntities() + ", triangles=" + renderer.getSubmittedTriangles();
+	}
+}
@@ -0,0 +1,276 @@
+package engineTester;
+
+import entities.Camera;
+import entities.Entity;
+import entities.EntityStore;
+import entities.Light;
+import models.RawModel;
+import models.TexturedModel;
+import org.lwjgl.util.vector.Vector3f;
+import renderEngine.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>Walks through a level that doesn't fit in its video memory budget, and checks
+ * that the ResidencyManager keeps it within the budget.</p>
+ *
+ * <p>The level is a row of zones, each with a model and a texture of its own (copies
+ * of the stall and its textures, in a temporary folder in res). The camera sees a
+ * few zones at a time and moves on to the next zone every few frames, twice along
+ * the whole row. The budget only fits some more zones than are visible, so zones
+ * that are left behind are evicted, and loaded again from the caches the second
+ * time around.</p>
+ *
+ * <p>The checks: after every frame the resident models and textures fit in the
+ * budget, everything that was drawn is resident, the second walk loads evicted
+ * zones again, nothing is evicted with a budget that fits everything, and
+ * releasing every user deletes every model and texture. Then the files of a zone
+ * are deleted while it is evicted: it isn't drawn, the game keeps running, and it
+ * is drawn again once the files are back.</p>
+ *
+ * <p>Usage: ResidencyBenchmark [zones] [visible zones] [budget in zones]</p>
+ */
+public class ResidencyBenchmark
+{
+	private static final int ENTITIES_PER_ZONE = 50;
+	private static final int FRAMES_PER_ZONE = 10;
+
+	private static final String FOLDER = "residency";
+
+	public static void main(String[] args) throws IOException
+	{
+		int zoneCount = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int visibleZones = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int budgetZones = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+
+		File folder = new File("res/" + FOLDER);
+		try {
+			createZoneFiles(folder, zoneCount);
+
+			RecordingBackend gl = new RecordingBackend();
+			DisplayManager.createDisplay(gl);
+
+			walk(gl, zoneCount, visibleZones, budgetZones, true);
+			walk(gl, zoneCount, visibleZones, zoneCount, false);
+			checkMissingFiles(gl, folder);
+
+			DisplayManager.closeDisplay();
+		} finally {
+			deleteFolder(folder);
+		}
+
+		System.out.println("Residency checks passed");
+	}
+
+	/**
+	 * Walk twice along the zones, with a budget of a number of zones.
+	 */
+	private static void walk(RecordingBackend gl, int zoneCount, int visibleZones, int budgetZones, boolean print)
+	{
+		Loader loader = new Loader(gl);
+		ResidencyManager residency = new ResidencyManager(loader, Long.MAX_VALUE);
+		MasterRenderer renderer = new MasterRenderer(gl);
+		renderer.setResidencyManager(residency);
+
+		Random random = new Random(42);
+		EntityStore store = new EntityStore(zoneCount * ENTITIES_PER_ZONE);
+		List<TexturedModel> models = new ArrayList<>();
+		List<List<Entity>> zones = new ArrayList<>();
+		for (int zone = 0; zone < zoneCount; zone++) {
+			TexturedModel model = residency.loadTexturedModel(FOLDER + "/model" + zone, FOLDER + "/texture" + zone);
+			models.add(model);
+
+			List<Entity> entities = new ArrayList<>();
+			for (int i = 0; i < ENTITIES_PER_ZONE; i++) {
+				Vector3f position = new Vector3f(random.nextFloat() * 100 - 50, 0, -50 - random.nextFloat() * 100);
+				entities.add(new Entity(store, model, position, 0, random.nextFloat() * 360, 0, 1));
+			}
+			zones.add(entities);
+		}
+
+		// Every zone is about the same size, so this fits the given number of zones.
+		long zoneBytes = residency.getResidentBytes() / zoneCount;
+		long budget = zoneBytes * budgetZones;
+		residency.setBudget(budget);
+
+		Light light = new Light(new Vector3f(200, 200, 100), new Vector3f(1, 1, 1));
+		Camera camera = new Camera();
+		long peakBytes = 0;
+		long firstWalkReloads = 0;
+		long renderNanos = 0;
+		int frames = 0;
+
+		for (int pass = 0; pass < 2; pass++) {
+			for (int first = 0; first + visibleZones <= zoneCount; first++) {
+				for (int i = 0; i < FRAMES_PER_ZONE; i++) {
+					long start = System.nanoTime();
+					renderer.beginFrame(camera);
+					for (int zone = first; zone < first + visibleZones; zone++) {
+						renderer.processEntities(zones.get(zone));
+					}
+					renderer.render(light, camera);
+					renderNanos += System.nanoTime() - start;
+					frames++;
+
+					peakBytes = Math.max(peakBytes, residency.getResidentBytes());
+					check(residency.getResidentBytes() <= budget, "the resident models and textures fit in the budget");
+					for (int zone = first; zone < first + visibleZones; zone++) {
+						TexturedModel model = models.get(zone);
+						check(
+							residency.isResident(model.getRawModel()) && residency.isResident(model.getTexture())
+								&& model.getRawModel().getVaoID() != 0 && model.getTexture().getID() != 0,
+							"zone " + zone + " is resident after it was drawn"
+						);
+					}
+				}
+			}
+
+			if (pass == 0) {
+				firstWalkReloads = residency.getReloadCount();
+			}
+		}
+
+		if (budgetZones < zoneCount) {
+			check(residency.getEvictionCount() > 0, "zones are evicted with a budget of " + budgetZones + " zones");
+			check(residency.getReloadCount() > firstWalkReloads, "evicted zones are loaded again on the second walk");
+		} else {
+			check(residency.getEvictionCount() == 0, "nothing is evicted when everything fits");
+		}
+
+		if (print) {
+			System.out.printf(
+				"%d zones of %.1f KB, %d visible, budget %.1f KB (%d zones)%n",
+				zoneCount, zoneBytes / 1024.0, visibleZones, budget / 1024.0, budgetZones
+			);
+			System.out.printf(
+				"Peak resident %.1f KB, %d evictions, %d reloads, reload latency %.3f ms average, %.3f ms max%n",
+				peakBytes / 1024.0, residency.getEvictionCount(), residency.getReloadCount(),
+				residency.getAverageReloadMillis(), residency.getMaxReloadMillis()
+			);
+			System.out.printf("%.3f ms per frame, including reloads%n", renderNanos / 1e6 / frames);
+		}
+
+		for (TexturedModel model : models) {
+			residency.release(model);
+		}
+		check(residency.getResidentBytes() == 0 && residency.getResidentCount() == 0, "releasing every user deletes everything");
+		check(loader.getTextureMemory() == 0, "releasing every user deletes every texture");
+
+		renderer.cleanUp();
+		loader.cleanUp();
+	}
+
+	/**
+	 * Delete the files of an evicted zone, and of a zone that was never there, and
+	 * check that they are skipped until the files can be read.
+	 */
+	private static void checkMissingFiles(RecordingBackend gl, File folder) throws IOException
+	{
+		Loader loader = new Loader(gl);
+		ResidencyManager residency = new ResidencyManager(loader, 0);
+		MasterRenderer renderer = new MasterRenderer(gl);
+		renderer.setResidencyManager(residency);
+
+		EntityStore store = new EntityStore();
+		TexturedModel model = residency.loadTexturedModel(FOLDER + "/model0", FOLDER + "/texture0");
+		List<Entity> entities = new ArrayList<>();
+		entities.add(new Entity(store, model, new Vector3f(0, 0, -50), 0, 0, 0, 1));
+
+		Light light = new Light(new Vector3f(200, 200, 100), new Vector3f(1, 1, 1));
+		Camera camera = new Camera();
+
+		// Draw it once, then skip a frame, so the budget of 0 evicts it.
+		check(drawCalls(gl, renderer, light, camera, entities) > 0, "the zone is drawn");
+		drawCalls(gl, renderer, light, camera, new ArrayList<>());
+		check(! residency.isResident(model.getRawModel()), "the zone is evicted");
+
+		for (File file : folder.listFiles()) {
+			if (file.getName().startsWith("model0.")) {
+				Files.delete(file.toPath());
+			}
+		}
+
+		check(drawCalls(gl, renderer, light, camera, entities) == 0, "a zone without files isn't drawn");
+		check(residency.getFailedLoadCount() == 1, "a zone without files stays evicted");
+
+		// A model that was never there doesn't end the game either.
+		RawModel missing = residency.loadModel(FOLDER + "/missing");
+		check(! residency.isResident(missing) && residency.getFailedLoadCount() == 2, "a missing model is evicted from the start");
+
+		Files.copy(
+			new File("res/stall.obj").toPath(), new File(folder, "model0.obj").toPath(),
+			StandardCopyOption.COPY_ATTRIBUTES
+		);
+		int frames = 0;
+		while (drawCalls(gl, renderer, light, camera, entities) == 0) {
+			check(++frames <= ResidencyManager.RETRY_FRAMES, "the zone is drawn again once its files are back");
+		}
+		check(residency.getFailedLoadCount() == 2, "a failed load isn't tried again every frame");
+
+		residency.release(missing);
+		residency.release(model);
+		renderer.cleanUp();
+		loader.cleanUp();
+	}
+
+	private static long drawCalls(RecordingBackend gl, MasterRenderer renderer, Light light, Camera camera, List<Entity> entities)
+	{
+		gl.endFrame();
+		renderer.beginFrame(camera);
+		renderer.processEntities(entities);
+		renderer.render(light, camera);
+		gl.endFrame();
+
+		return gl.getLastFrame(RecordingBackend.Counter.DRAW_CALLS);
+	}
+
+	/**
+	 * Copy the stall model and a texture for every zone. The copies keep the last
+	 * modified time, and get caches of their own on the first load.
+	 */
+	private static void createZoneFiles(File folder, int zoneCount) throws IOException
+	{
+		deleteFolder(folder);
+		if (! folder.mkdirs()) {
+			throw new IOException("Could not create [" + folder + "]");
+		}
+
+		String[] textures = {"stallTexture", "brick-texture"};
+		for (int zone = 0; zone < zoneCount; zone++) {
+			Files.copy(
+				new File("res/stall.obj").toPath(), new File(folder, "model" + zone + ".obj").toPath(),
+				StandardCopyOption.COPY_ATTRIBUTES
+			);
+			Files.copy(
+				new File("res/" + textures[zone % textures.length] + ".png").toPath(), new File(folder, "texture" + zone + ".png").toPath(),
+				StandardCopyOption.COPY_ATTRIBUTES
+			);
+		}
+	}
+
+	private static void deleteFolder(File folder)
+	{
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		folder.delete();
+	}
+
+	private static void check(boolean condition, String description)
+	{
+		if (! condition) {
+			System.err.println("Check failed: " + description);
+			System.exit(-1);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package engineTester;
+
+import entities.Light;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import renderEngine.FrameUniformBuffer;
+import toolbox.Std140Layout;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Checks the std140 packing of uniform blocks on the CPU.</p>
+ *
+ * <p>If an offset is wrong, the shader silently reads garbage, so the layout rules
+ * are checked against offsets worked out by hand from the std140 rules, and the
+ * frame data is packed and read back at those offsets. No OpenGL is needed.</p>
+ *
+ * <p>Usage: Std140LayoutCheck</p>
+ */
+public class Std140LayoutCheck
+{
+	private static int checks;
+
+	public static void main(String[] args)
+	{
+		checkLayoutRules();
+		checkFrameLayout();
+		checkFramePacking();
+
+		System.out.println("All " + checks + " std140 checks passed");
+	}
+
+	private static void checkLayoutRules()
+	{
+		// A vec3 is aligned to 16 bytes, but a float fits in its last 4 bytes.
+		Std140Layout layout = new Std140Layout();
+		check("float", 0, layout.addFloat());
+		check("vec3 after float", 16, layout.addVec3());
+		check("float after vec3", 28, layout.addFloat());
+		check("vec2 after float", 32, layout.addVec2());
+		check("mat4 after vec2", 48, layout.addMat4());
+		check("block size", 112, layout.getSize());
+
+		// Array elements are aligned to 16 bytes, even for floats.
+		layout = new Std140Layout();
+		check("float", 0, layout.addFloat());
+		check("float[4]", 16, layout.addArray(4, 4));
+		check("float[] stride", 16, Std140Layout.getArrayStride(4));
+		check("mat4[] stride", 64, Std140Layout.getArrayStride(64));
+		check("vec4 after float[4]", 80, layout.addVec4());
+		check("int after vec4", 96, layout.addInt());
+		check("block size rounded up", 112, layout.getSize());
+	}
+
+	private static void checkFrameLayout()
+	{
+		check("viewMatrix", 0, FrameUniformBuffer.VIEW_MATRIX_OFFSET);
+		check("projectionMatrix", 64, FrameUniformBuffer.PROJECTION_MATRIX_OFFSET);
+		check("viewProjectionMatrix", 128, FrameUniformBuffer.VIEW_PROJECTION_MATRIX_OFFSET);
+		check("cameraPosition", 192, FrameUniformBuffer.CAMERA_POSITION_OFFSET);
+		check("lightPosition", 208, FrameUniformBuffer.LIGHT_POSITION_OFFSET);
+		check("lightColour", 224, FrameUniformBuffer.LIGHT_COLOUR_OFFSET);
+		check("FrameData size", 240, FrameUniformBuffer.SIZE);
+	}
+
+	private static void checkFramePacking()
+	{
+		// Give every matrix element a different value, so a swapped row and column shows.
+		Matrix4f view = numberedMatrix(100);
+		Matrix4f projection = numberedMatrix(200);
+		Matrix4f viewProjection = numberedMatrix(300);
+		Vector3f cameraPosition = new Vector3f(1, 2, 3);
+		Light light = new Light(new Vector3f(4, 5, 6), new Vector3f(7, 8, 9));
+
+		ByteBuffer data = BufferUtils.createByteBuffer(FrameUniformBuffer.SIZE);
+		FrameUniformBuffer.store(view, projection, viewProjection, cameraPosition, light, data);
+
+		check("buffer limit", FrameUniformBuffer.SIZE, data.limit());
+
+		// Column major: the element of column c and row r is at (c * 4 + r) * 4 bytes.
+		for (int column = 0; column < 4; column++) {
+			for (int row = 0; row < 4; row++) {
+				int index = column * 4 + row;
+				check("viewMatrix[" + column + "][" + row + "]", 100 + index, data.getFloat(FrameUniformBuffer.VIEW_MATRIX_OFFSET + index * 4));
+				check("projectionMatrix[" + column + "][" + row + "]", 200 + index, data.getFloat(FrameUniformBuffer.PROJECTION_MATRIX_OFFSET + index * 4));
+				check("viewProjectionMatrix[" + column + "][" + row + "]", 300 + index, data.getFloat(FrameUniformBuffer.VIEW_PROJECTION_MATRIX_OFFSET + index * 4));
+			}
+		}
+
+		for (int i = 0; i < 3; i++) {
+			check("cameraPosition[" + i + "]", 1 + i, data.getFloat(FrameUniformBuffer.CAMERA_POSITION_OFFSET + i * 4));
+			check("lightPosition[" + i + "]", 4 + i, data.getFloat(FrameUniformBuffer.LIGHT_POSITION_OFFSET + i * 4));
+			check("lightColour[" + i + "]", 7 + i, data.getFloat(FrameUniformBuffer.LIGHT_COLOUR_OFFSET + i * 4));
+		}
+	}
+
+	private static Matrix4f numberedMatrix(int first)
+	{
+		Matrix4f matrix = new Matrix4f();
+		matrix.m00 = first;      matrix.m01 = first + 1;  matrix.m02 = first + 2;  matrix.m03 = first + 3;
+		matrix.m10 = first + 4;  matrix.m11 = first + 5;  matrix.m12 = first + 6;  matrix.m13 = first + 7;
+		matrix.m20 = first + 8;  matrix.m21 = first + 9;  matrix.m22 = first + 10; matrix.m23 = first + 11;
+		matrix.m30 = first + 12; matrix.m31 = first + 13; matrix.m32 = first + 14; matrix.m33 = first + 15;
+
+		return matrix;
+	}
+
+	private static void check(String what, float expected, float actual)
+	{
+		checks++;
+
+		if (expected != actual) {
+			System.err.println(what + ": expected " + expected + " but was " + actual);
+			System.exit(-1);
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package engineTester;
+
+import entities.Camera;
+import entities.Entity;
+import entities.EntityStore;
+import entities.Light;
+import models.RawModel;
+import models.TexturedModel;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.util.vector.Vector3f;
+import renderEngine.*;
+import textures.AtlasPacker;
+import textures.ModelTexture;
+import textures.TextureAtlas;
+import textures.TextureData;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>Measures how well and how fast textures are packed into atlas pages, and what
+ * the atlas saves when rendering.</p>
+ *
+ * <p>Sets of random rectangles are packed into pages, and for each set the number of
+ * pages, the occupancy and the time to pack it are printed. Every packing is checked:
+ * all rectangles have to be inside their page, and no two may overlap.</p>
+ *
+ * <p>Then an atlas is built from generated textures, and every pixel of every region,
+ * and of its padding, is compared with the texture it came from.</p>
+ *
+ * <p>Last, a scene of props with a texture each is rendered through the
+ * RecordingBackend, once with a texture per prop and once with the textures in an
+ * atlas, and the texture binds and draw calls of a frame are printed. Materials of
+ * the same page with different filter settings have to end up in different
+ * instanced draw calls.</p>
+ *
+ * <p>Usage: TextureAtlasBenchmark [rectangle count] [rounds] [page size]</p>
+ */
+public class TextureAtlasBenchmark
+{
+	private static final int WARMUP_ROUNDS = 20;
+
+	private static final int PROP_TEXTURES = 200;
+	private static final int PROP_ENTITIES = 5000;
+
+	/**
+	 * Creates the size of a random rectangle, as width and height.
+	 */
+	private interface SizeDistribution
+	{
+		int[] next(Random random);
+	}
+
+	public static void main(String[] args)
+	{
+		int rectCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		int pageSize = args.length > 2 ? Integer.parseInt(args[2]) : TextureAtlas.DEFAULT_PAGE_SIZE;
+
+		System.out.printf("%d rectangles, %dx%d pages, %d rounds%n", rectCount, pageSize, pageSize, rounds);
+		System.out.printf("%-16s %6s %10s %10s %10s%n", "", "pages", "occupancy", "trimmed", "ms");
+		benchmarkPacking("any size", rectCount, rounds, pageSize,
+			random -> new int[] {16 + random.nextInt(241), 16 + random.nextInt(241)});
+		benchmarkPacking("power of two", rectCount, rounds, pageSize,
+			random -> new int[] {16 << random.nextInt(5), 16 << random.nextInt(5)});
+		benchmarkPacking("squares", rectCount, rounds, pageSize,
+			random -> {
+				int side = 16 + random.nextInt(241);
+				return new int[] {side, side};
+			});
+		benchmarkPacking("strips", rectCount, rounds, pageSize,
+			random -> random.nextBoolean()
+				? new int[] {8 + random.nextInt(25), 64 + random.nextInt(449)}
+				: new int[] {64 + random.nextInt(449), 8 + random.nextInt(25)});
+
+		checkAtlasPixels();
+		compareRendering();
+	}
+
+	private static void benchmarkPacking(String label, int rectCount, int rounds, int pageSize, SizeDistribution sizes)
+	{
+		Random random = new Random(42);
+		int[] widths = new int[rectCount];
+		int[] heights = new int[rectCount];
+		long area = 0;
+		for (int i = 0; i < rectCount; i++) {
+			int[] size = sizes.next(random);
+			widths[i] = size[0];
+			heights[i] = size[1];
+			area += (long) size[0] * size[1];
+		}
+
+		int[] pageOfRect = new int[rectCount];
+		int[] positions = new int[rectCount * 2];
+		List<AtlasPacker> packers = TextureAtlas.pack(widths, heights, pageSize, pageOfRect, positions);
+		checkPacking(label, widths, heights, packers, pageOfRect, positions);
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			TextureAtlas.pack(widths, heights, pageSize, pageOfRect, positions);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			TextureAtlas.pack(widths, heights, pageSize, pageOfRect, positions);
+		}
+		long nanos = System.nanoTime() - start;
+
+		// The occupancy of the full pages, and of the pages cut off after the last
+		// rectangle, which is what the atlas uploads.
+		long pageArea = 0;
+		long trimmedArea = 0;
+		for (AtlasPacker packer : packers) {
+			pageArea += (long) packer.getWidth() * packer.getHeight();
+			trimmedArea += (long) packer.getUsedWidth() * packer.getUsedHeight();
+		}
+
+		System.out.printf(
+			"%-16s %6d %9.1f%% %9.1f%% %10.3f%n",
+			label, packers.size(), 100.0 * area / pageArea, 100.0 * area / trimmedArea, nanos / 1e6 / rounds
+		);
+	}
+
+	/**
+	 * Every rectangle has to be inside its page, and rectangles in the same page may
+	 * not overlap.
+	 */
+	private static void checkPacking(
+		String label, int[] widths, int[] heights, List<AtlasPacker> packers, int[] pageOfRect, int[] positions
+	) {
+		for (int i = 0; i < widths.length; i++) {
+			AtlasPacker page = packers.get(pageOfRect[i]);
+			int x = positions[i * 2];
+			int y = positions[i * 2 + 1];
+			check(
+				x >= 0 && y >= 0 && x + widths[i] <= page.getWidth() && y + heights[i] <= page.getHeight(),
+				label + ": rectangle " + i + " is inside its page"
+			);
+
+			for (int j = i + 1; j < widths.length; j++) {
+				if (pageOfRect[j] != pageOfRect[i]) {
+					continue;
+				}
+
+				int otherX = positions[j * 2];
+				int otherY = positions[j * 2 + 1];
+				boolean apart = x + widths[i] <= otherX || otherX + widths[j] <= x
+					|| y + heights[i] <= otherY || otherY + heights[j] <= y;
+				check(apart, label + ": rectangles " + i + " and " + j + " don't overlap");
+			}
+		}
+	}
+
+	/**
+	 * Build an atlas with small pages, so there are several, and check that every
+	 * region holds its texture and that the padding repeats the edges.
+	 */
+	private static void checkAtlasPixels()
+	{
+		Random random = new Random(7);
+		List<TextureData> textures = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			textures.add(createTexture(i, 1 + random.nextInt(64), 1 + random.nextInt(64)));
+		}
+		// One texture that doesn't fit in a page, and gets a page of its own.
+		textures.add(createTexture(100, 300, 20));
+
+		int padding = 2;
+		TextureAtlas atlas = TextureAtlas.build(textures, 256, padding);
+
+		for (int i = 0; i < textures.size(); i++) {
+			TextureData texture = textures.get(i);
+			TextureAtlas.Region region = atlas.getRegion(i);
+			TextureData page = atlas.getPage(region.getPage());
+
+			check(page.getWidth() % 4 == 0 && page.getHeight() % 4 == 0, "pages are a multiple of 4 pixels");
+
+			for (int y = -padding; y < texture.getHeight() + padding; y++) {
+				for (int x = -padding; x < texture.getWidth() + padding; x++) {
+					int sourceX = Math.max(0, Math.min(texture.getWidth() - 1, x));
+					int sourceY = Math.max(0, Math.min(texture.getHeight() - 1, y));
+					int expected = texture.getPixels().getInt((sourceY * texture.getWidth() + sourceX) * 4);
+					int actual = page.getPixels().getInt(((region.getY() + y) * page.getWidth() + region.getX() + x) * 4);
+
+					check(expected == actual, "pixel " + x + ", " + y + " of texture " + i + " is in the atlas");
+				}
+			}
+
+			float[] textureRegion = region.getTextureRegion();
+			check(
+				Math.abs(textureRegion[0] * page.getWidth() - region.getX()) < 1e-3
+					&& Math.abs(textureRegion[1] * page.getHeight() - region.getY()) < 1e-3
+					&& Math.abs(textureRegion[2] * page.getWidth() - texture.getWidth()) < 1e-3
+					&& Math.abs(textureRegion[3] * page.getHeight() - texture.getHeight()) < 1e-3,
+				"the texture coordinates of texture " + i + " match its pixels"
+			);
+		}
+
+		System.out.printf(
+			"Atlas check passed: %d textures in %d pages, %.1f%% occupancy%n",
+			textures.size(), atlas.getPageCount(), atlas.getOccupancy() * 100
+		);
+	}
+
+	/**
+	 * Render a scene of props with a texture each, first with separate textures and
+	 * then with all textures in an atlas.
+	 */
+	private static void compareRendering()
+	{
+		RecordingBackend gl = new RecordingBackend();
+		DisplayManager.createDisplay(gl);
+		Loader loader = new Loader(gl);
+		RawModel[] levels = OBJLoader.loadObjModelLevels("stall", loader, 1);
+
+		Random random = new Random(42);
+		List<TextureData> textures = new ArrayList<>();
+		for (int i = 0; i < PROP_TEXTURES; i++) {
+			textures.add(createTexture(i, 32 << random.nextInt(3), 32 << random.nextInt(3)));
+		}
+
+		List<TexturedModel> separate = new ArrayList<>();
+		for (TextureData texture : textures) {
+			separate.add(new TexturedModel(levels, new ModelTexture(loader.loadTexture(texture))));
+		}
+
+		TextureAtlas atlas = TextureAtlas.build(textures);
+		List<TexturedModel> packed = new ArrayList<>();
+		for (ModelTexture texture : loader.loadTextureAtlas(atlas)) {
+			packed.add(new TexturedModel(levels, texture));
+		}
+
+		EntityStore store = new EntityStore(PROP_ENTITIES);
+		List<Entity> entities = new ArrayList<>();
+		int[] modelOfEntity = new int[PROP_ENTITIES];
+		for (int i = 0; i < PROP_ENTITIES; i++) {
+			modelOfEntity[i] = random.nextInt(PROP_TEXTURES);
+			Vector3f position = new Vector3f(
+				random.nextFloat() * 200 - 100,
+				random.nextFloat() * 20 - 10,
+				random.nextFloat() * -200 - 20
+			);
+			entities.add(new Entity(store, separate.get(modelOfEntity[i]), position, 0, random.nextFloat() * 360, 0, 1));
+		}
+
+		Light light = new Light(new Vector3f(200, 200, 100), new Vector3f(1, 1, 1));
+		Camera camera = new Camera();
+		MasterRenderer renderer = new MasterRenderer(gl);
+
+		System.out.printf(
+			"%d entities with %d textures, atlas of %d pages (%.1f%% occupancy)%n",
+			PROP_ENTITIES, PROP_TEXTURES, atlas.getPageCount(), atlas.getOccupancy() * 100
+		);
+		for (boolean instancing : new boolean[] {false, true}) {
+			renderer.setInstancing(instancing);
+
+			for (int i = 0; i < entities.size(); i++) {
+				entities.get(i).setModel(separate.get(modelOfEntity[i]));
+			}
+			String separateFrame = renderScene(gl, renderer, entities, light, camera);
+
+			for (int i = 0; i < entities.size(); i++) {
+				entities.get(i).setModel(packed.get(modelOfEntity[i]));
+			}
+			String atlasFrame = renderScene(gl, renderer, entities, light, camera);
+
+			String label = instancing ? "instanced" : "per-entity";
+			System.out.println(label + ", separate textures: " + separateFrame);
+			System.out.println(label + ", atlas:             " + atlasFrame);
+		}
+
+		checkSamplerBatches(gl, renderer, store, packed, light, camera);
+
+		renderer.cleanUp();
+		loader.cleanUp();
+		DisplayManager.closeDisplay();
+	}
+
+	/**
+	 * Two materials on the same atlas page with different filter settings can't be
+	 * drawn with the same instanced draw call, the second one needs its own sampler.
+	 */
+	private static void checkSamplerBatches(
+		RecordingBackend gl, MasterRenderer renderer, EntityStore store, List<TexturedModel> packed, Light light, Camera camera
+	) {
+		TexturedModel first = packed.get(0);
+		TexturedModel second = null;
+		for (TexturedModel model : packed.subList(1, packed.size())) {
+			if (model.getTexture().getID() == first.getTexture().getID()) {
+				second = model;
+				break;
+			}
+		}
+		check(second != null, "the atlas has a page with more than one texture");
+
+		List<Entity> entities = new ArrayList<>();
+		entities.add(new Entity(store, first, new Vector3f(0, 0, -30), 0, 0, 0, 1));
+		entities.add(new Entity(store, second, new Vector3f(0, 0, -30), 0, 0, 0, 1));
+		renderer.setInstancing(true);
+
+		renderScene(gl, renderer, entities, light, camera);
+		check(gl.getLastFrame(RecordingBackend.Counter.DRAW_CALLS) == 1, "materials with the same settings share a draw call");
+
+		second.getTexture().setLodBias(first.getTexture().getLodBias() + 1);
+		renderScene(gl, renderer, entities, light, camera);
+		check(gl.getLastFrame(RecordingBackend.Counter.DRAW_CALLS) == 2, "materials with different samplers get a draw call each");
+		second.getTexture().setLodBias(first.getTexture().getLodBias());
+
+		for (Entity entity : entities) {
+			entity.remove();
+		}
+	}
+
+	private static String renderScene(RecordingBackend gl, MasterRenderer renderer, List<Entity> entities, Light light, Camera camera)
+	{
+		// The first frame also counts setting things up, so the second one is used.
+		for (int frame = 0; frame < 2; frame++) {
+			renderer.beginFrame(camera);
+			renderer.processEntities(entities);
+			renderer.render(light, camera);
+			DisplayManager.updateDisplay();
+		}
+
+		return String.format(
+			"texture binds %d, draw calls %d, uniform uploads %d",
+			gl.getLastFrame(RecordingBackend.Counter.TEXTURE_BINDS),
+			gl.getLastFrame(RecordingBackend.Counter.DRAW_CALLS),
+			gl.getLastFrame(RecordingBackend.Counter.UNIFORM_UPLOADS)
+		);
+	}
+
+	/**
+	 * Create a texture with a pattern that changes from pixel to pixel and from
+	 * texture to texture, so a pixel copied to the wrong place is noticed.
+	 */
+	private static TextureData createTexture(int index, int width, int height)
+	{
+		ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				pixels.putInt((index * 1000003 + y * 1009 + x) * 0x9e3779b1);
+			}
+		}
+		pixels.flip();
+
+		return new TextureData(width, height, pixels);
+	}
+
+	private static void check(boolean condition, String description)
+	{
+		if (! condition) {
+			System.err.println("Check failed: " + description);
+			System.exit(-1);
+		}
+	}
+}
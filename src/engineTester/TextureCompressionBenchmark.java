@@ -0,0 +1,284 @@
+package engineTester;
+
+import org.lwjgl.BufferUtils;
+import renderEngine.DisplayManager;
+import renderEngine.Loader;
+import renderEngine.RecordingBackend;
+import renderEngine.TextureCache;
+import textures.BlockCompressor;
+import textures.CompressedTextureData;
+import textures.CompressedTextureData.Format;
+import textures.MipmapGenerator;
+import textures.TextureData;
+import textures.TextureDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>Checks the quality of the BlockCompressor, times it, and compares loading
+ * textures from the compressed texture cache with decoding their PNGs.</p>
+ *
+ * <p>The quality is the PSNR of the decoded blocks against the original pixels, for
+ * the textures of the scene and a few generated ones. Photos and game textures
+ * usually come out above 30 dB in BC1; random noise is the worst case and only
+ * has to stay above a much lower limit. A texture of a single colour that 565 can
+ * store exactly has to come back exactly.</p>
+ *
+ * <p>The time is measured on the common fork join pool. Run with
+ * -Djava.util.concurrent.ForkJoinPool.common.parallelism=1 to compare with a
+ * single thread.</p>
+ *
+ * <p>Usage: TextureCompressionBenchmark [texture size] [rounds]</p>
+ */
+public class TextureCompressionBenchmark
+{
+	private static final int WARMUP_ROUNDS = 3;
+
+	private static final String[] TEXTURES = {"stallTexture", "brick-texture", "white"};
+
+	public static void main(String[] args) throws IOException
+	{
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		checkQuality();
+		checkExactColours();
+		checkOddSizes();
+		checkCacheRoundTrip();
+		System.out.println("Compression checks passed");
+
+		TextureData texture = createGradient(size, size, true);
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			BlockCompressor.compress(texture, Format.BC1);
+		}
+		for (Format format : Format.values()) {
+			long start = System.nanoTime();
+			for (int i = 0; i < rounds; i++) {
+				BlockCompressor.compress(texture, format);
+			}
+			double millis = (System.nanoTime() - start) / 1e6 / rounds;
+			System.out.printf(
+				"%dx%d %s: %.2f ms on %d threads (%.1f Mpixels/s)%n",
+				size, size, format, millis, ForkJoinPool.getCommonPoolParallelism(), size * (double) size / millis / 1000
+			);
+		}
+
+		compareLoading();
+	}
+
+	/**
+	 * Print the PSNR of the scene textures and generated textures, and check it
+	 * against a lower limit for each.
+	 */
+	private static void checkQuality() throws IOException
+	{
+		for (String fileName : TEXTURES) {
+			checkPsnr(fileName, TextureDecoder.decode(new File("res/" + fileName + ".png")), 30);
+		}
+
+		checkPsnr("gradient", createGradient(256, 256, true), 35);
+		checkPsnr("gradient with alpha", createGradient(256, 256, false), 35);
+		checkPsnr("noise", createNoise(256, 256, new Random(4)), 10);
+	}
+
+	private static void checkPsnr(String name, TextureData texture, double minimum)
+	{
+		CompressedTextureData compressed = BlockCompressor.compress(texture);
+		ByteBuffer decoded = BlockCompressor.decompressLevel(
+			compressed.getLevel(0), texture.getWidth(), texture.getHeight(), compressed.getFormat()
+		);
+
+		double psnr = psnr(texture.getPixels(), decoded, texture.getWidth() * texture.getHeight());
+		System.out.printf("%-20s %s %4dx%-4d PSNR %6.2f dB%n", name, compressed.getFormat(), texture.getWidth(), texture.getHeight(), psnr);
+		check(psnr >= minimum, name + " has a PSNR of at least " + minimum + " dB");
+		check(compressed.getFormat() == (BlockCompressor.isOpaque(texture) ? Format.BC1 : Format.BC3), name + " uses BC3 only for alpha");
+	}
+
+	/**
+	 * Every colour that 565 stores exactly, and every alpha value, has to come back
+	 * exactly from a block of a single colour.
+	 */
+	private static void checkExactColours()
+	{
+		Random random = new Random(5);
+		for (int i = 0; i < 500; i++) {
+			int red = expand(random.nextInt(32), 5);
+			int green = expand(random.nextInt(64), 6);
+			int blue = expand(random.nextInt(32), 5);
+			int alpha = random.nextInt(256);
+
+			ByteBuffer pixels = BufferUtils.createByteBuffer(4 * 4 * 4);
+			for (int pixel = 0; pixel < 16; pixel++) {
+				pixels.put((byte) red).put((byte) green).put((byte) blue).put((byte) alpha);
+			}
+			pixels.flip();
+
+			ByteBuffer decoded = BlockCompressor.decompressLevel(BlockCompressor.compressLevel(pixels, 4, 4, Format.BC3), 4, 4, Format.BC3);
+			for (int j = 0; j < pixels.capacity(); j++) {
+				check(decoded.get(j) == pixels.get(j), "colour " + red + ", " + green + ", " + blue + ", " + alpha + " comes back exactly");
+			}
+		}
+	}
+
+	/**
+	 * Levels with sizes that are not a multiple of 4 still get whole blocks, and
+	 * every level of the mip chain is compressed. The small levels of this gradient
+	 * change in more than one direction within a block, which no BC1 block can store
+	 * well, so the limit is low.
+	 */
+	private static void checkOddSizes()
+	{
+		TextureData texture = MipmapGenerator.generate(createGradient(37, 5, true));
+		CompressedTextureData compressed = BlockCompressor.compress(texture);
+
+		check(compressed.getLevelCount() == texture.getLevelCount(), "every level is compressed");
+		for (int level = 0; level < compressed.getLevelCount(); level++) {
+			int width = compressed.getLevelWidth(level);
+			int height = compressed.getLevelHeight(level);
+			check(
+				compressed.getLevel(level).capacity() == ((width + 3) / 4) * ((height + 3) / 4) * 8,
+				"level " + level + " of a 37x5 texture has whole blocks"
+			);
+
+			ByteBuffer decoded = BlockCompressor.decompressLevel(compressed.getLevel(level), width, height, Format.BC1);
+			check(psnr(texture.getLevel(level), decoded, width * height) > 20, "level " + level + " of a 37x5 texture decodes");
+		}
+	}
+
+	/**
+	 * The cache has to give back the same blocks, and has to be ignored when the
+	 * source file changes.
+	 */
+	private static void checkCacheRoundTrip() throws IOException
+	{
+		File sourceFile = new File("res/stallTexture.png");
+		File cacheFile = File.createTempFile("stallTexture", ".ctex");
+		cacheFile.deleteOnExit();
+
+		CompressedTextureData compressed = BlockCompressor.compress(MipmapGenerator.generate(TextureDecoder.decode(sourceFile)));
+		TextureCache.write(compressed, sourceFile.length(), sourceFile.lastModified(), cacheFile);
+
+		CompressedTextureData read = TextureCache.read(cacheFile, sourceFile);
+		check(read != null, "the cache can be read back");
+		check(read.getFormat() == compressed.getFormat() && read.getLevelCount() == compressed.getLevelCount(), "the cache keeps the format and levels");
+		for (int level = 0; level < read.getLevelCount(); level++) {
+			check(read.getLevel(level).equals(compressed.getLevel(level)), "level " + level + " of the cache has the same blocks");
+		}
+
+		check(TextureCache.read(cacheFile, new File("res/brick-texture.png")) == null, "a cache of another source file is ignored");
+	}
+
+	/**
+	 * Load the scene textures from their PNGs and from the cache, and compare the
+	 * time it takes and the texture memory they use.
+	 */
+	private static void compareLoading()
+	{
+		RecordingBackend gl = new RecordingBackend();
+		DisplayManager.createDisplay(gl);
+
+		// The first compressed load writes the cache.
+		Loader loader = new Loader(gl);
+		for (String fileName : TEXTURES) {
+			loader.loadTexture(fileName);
+		}
+		loader.cleanUp();
+
+		long[] memory = new long[2];
+		double[] millis = new double[2];
+		for (int compressed = 0; compressed < 2; compressed++) {
+			loader = new Loader(gl);
+			loader.setCompressTextures(compressed == 1);
+
+			long start = System.nanoTime();
+			for (String fileName : TEXTURES) {
+				loader.loadTexture(fileName);
+			}
+			millis[compressed] = (System.nanoTime() - start) / 1e6;
+			memory[compressed] = loader.getTextureMemory();
+			loader.cleanUp();
+		}
+
+		System.out.printf("PNG + mipmaps: %8.2f ms, %8.1f KB of texture memory%n", millis[0], memory[0] / 1024.0);
+		System.out.printf(
+			"Cache:         %8.2f ms, %8.1f KB of texture memory (%.3fx)%n",
+			millis[1], memory[1] / 1024.0, (double) memory[1] / memory[0]
+		);
+
+		DisplayManager.closeDisplay();
+	}
+
+	/**
+	 * Calculate the PSNR of the colour channels, and of alpha when the original has
+	 * alpha.
+	 */
+	private static double psnr(ByteBuffer original, ByteBuffer decoded, int pixels)
+	{
+		boolean alpha = false;
+		for (int i = 0; i < pixels && ! alpha; i++) {
+			alpha = original.get(i * 4 + 3) != (byte) 255;
+		}
+
+		int channels = alpha ? 4 : 3;
+		double squaredError = 0;
+		for (int i = 0; i < pixels; i++) {
+			for (int channel = 0; channel < channels; channel++) {
+				int difference = (original.get(i * 4 + channel) & 0xff) - (decoded.get(i * 4 + channel) & 0xff);
+				squaredError += difference * difference;
+			}
+		}
+
+		double meanSquaredError = squaredError / ((double) pixels * channels);
+		if (meanSquaredError == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		return 10 * Math.log10(255 * 255 / meanSquaredError);
+	}
+
+	private static int expand(int value, int bits)
+	{
+		return (value << (8 - bits)) | (value >> (2 * bits - 8));
+	}
+
+	/**
+	 * A smooth gradient in all channels, opaque or with alpha going from 0 to 255.
+	 */
+	private static TextureData createGradient(int width, int height, boolean opaque)
+	{
+		ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int offset = (y * width + x) * 4;
+				pixels.put(offset, (byte) (x * 255 / Math.max(1, width - 1)));
+				pixels.put(offset + 1, (byte) (y * 255 / Math.max(1, height - 1)));
+				pixels.put(offset + 2, (byte) ((x + y) * 255 / Math.max(1, width + height - 2)));
+				pixels.put(offset + 3, opaque ? (byte) 255 : (byte) (y * 255 / Math.max(1, height - 1)));
+			}
+		}
+
+		return new TextureData(width, height, pixels);
+	}
+
+	private static TextureData createNoise(int width, int height, Random random)
+	{
+		ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+		for (int i = 0; i < pixels.capacity(); i++) {
+			pixels.put(i, (byte) (i % 4 == 3 ? 255 : random.nextInt(256)));
+		}
+
+		return new TextureData(width, height, pixels);
+	}
+
+	private static void check(boolean condition, String description)
+	{
+		if (! condition) {
+			System.err.println("Check failed: " + description);
+			System.exit(-1);
+		}
+	}
+}
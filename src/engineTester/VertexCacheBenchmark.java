@@ -0,0 +1,176 @@
+package engineTester;
+
+import models.ModelData;
+import renderEngine.OBJFileParser;
+import renderEngine.VertexCacheOptimizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <p>Measures how well the VertexCacheOptimizer uses the post transform vertex cache.</p>
+ *
+ * <p>The bundled model is very small, so a large grid mesh with its triangles
+ * shuffled is optimized as well. For both, the vertex cache is simulated before
+ * and after optimizing, as a FIFO cache of 16 and 32 vertices and an LRU cache of
+ * 32 vertices, and the ACMR (transformed vertices per triangle) and ATVR
+ * (transformed vertices per unique vertex) are reported. Before that the optimized
+ * mesh is checked to draw exactly the same triangles. No OpenGL is needed.</p>
+ *
+ * <p>Usage: VertexCacheBenchmark [model] [grid size]</p>
+ */
+public class VertexCacheBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		String name = args.length > 0 ? args[0] : "stall";
+		int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+
+		ModelData model = new OBJFileParser().parse(new File("res/" + name + ".obj"));
+		run("Model [" + name + "]", model);
+		run("Shuffled " + gridSize + "x" + gridSize + " grid", createGrid(gridSize));
+	}
+
+	private static void run(String label, ModelData original)
+	{
+		// Optimize a few times first, so the timing doesn't include the JIT.
+		for (int i = 0; i < 3; i++) {
+			VertexCacheOptimizer.optimize(original);
+		}
+
+		long start = System.nanoTime();
+		ModelData optimized = VertexCacheOptimizer.optimize(original);
+		double millis = (System.nanoTime() - start) / 1e6;
+
+		if (! sameTriangles(original, optimized)) {
+			System.err.println(label + ": the optimized mesh draws different triangles");
+			System.exit(-1);
+		}
+
+		System.out.printf(
+			"%s: %d triangles, %d vertices, optimized in %.2f ms%n",
+			label, original.getIndices().length / 3, original.getVertexCount(), millis
+		);
+		report("  before   ", original);
+		report("  cache    ", new ModelData(
+			original.getVertices(), original.getTextureCoords(), original.getNormals(),
+			VertexCacheOptimizer.optimizeVertexCache(original.getIndices(), original.getVertexCount())
+		));
+		report("  optimized", optimized);
+	}
+
+	private static void report(String label, ModelData data)
+	{
+		int[] indices = data.getIndices();
+		int vertexCount = data.getVertexCount();
+		float triangles = indices.length / 3f;
+
+		int fifo16 = VertexCacheOptimizer.countFifoMisses(indices, vertexCount, 16);
+		int fifo32 = VertexCacheOptimizer.countFifoMisses(indices, vertexCount, 32);
+		int lru32 = VertexCacheOptimizer.countLruMisses(indices, vertexCount, 32);
+
+		System.out.printf(
+			"%s  ACMR fifo16 %.3f, fifo32 %.3f, lru32 %.3f   ATVR fifo16 %.3f, fifo32 %.3f, lru32 %.3f%n",
+			label, fifo16 / triangles, fifo32 / triangles, lru32 / triangles,
+			(float) fifo16 / vertexCount, (float) fifo32 / vertexCount, (float) lru32 / vertexCount
+		);
+	}
+
+	/**
+	 * Compare the triangles of two meshes by the positions, texture coordinates and
+	 * normals of their corners, regardless of the order of the triangles.
+	 */
+	private static boolean sameTriangles(ModelData a, ModelData b)
+	{
+		if (a.getIndices().length != b.getIndices().length) {
+			return false;
+		}
+
+		String[] trianglesA = describeTriangles(a);
+		String[] trianglesB = describeTriangles(b);
+		Arrays.sort(trianglesA);
+		Arrays.sort(trianglesB);
+
+		return Arrays.equals(trianglesA, trianglesB);
+	}
+
+	private static String[] describeTriangles(ModelData data)
+	{
+		int[] indices = data.getIndices();
+		String[] triangles = new String[indices.length / 3];
+
+		for (int triangle = 0; triangle < triangles.length; triangle++) {
+			StringBuilder description = new StringBuilder();
+			for (int corner = 0; corner < 3; corner++) {
+				int vertex = indices[triangle * 3 + corner];
+				description.append(data.getVertices()[vertex * 3]).append(',')
+					.append(data.getVertices()[vertex * 3 + 1]).append(',')
+					.append(data.getVertices()[vertex * 3 + 2]).append(',')
+					.append(data.getTextureCoords()[vertex * 2]).append(',')
+					.append(data.getTextureCoords()[vertex * 2 + 1]).append(',')
+					.append(data.getNormals()[vertex * 3]).append(',')
+					.append(data.getNormals()[vertex * 3 + 1]).append(',')
+					.append(data.getNormals()[vertex * 3 + 2]).append(';');
+			}
+			triangles[triangle] = description.toString();
+		}
+
+		return triangles;
+	}
+
+	/**
+	 * Create a flat grid of quads, with its triangles in random order. This is about
+	 * the worst order a model file can have.
+	 */
+	private static ModelData createGrid(int size)
+	{
+		int vertexCount = (size + 1) * (size + 1);
+		float[] vertices = new float[vertexCount * 3];
+		float[] textureCoords = new float[vertexCount * 2];
+		float[] normals = new float[vertexCount * 3];
+
+		for (int z = 0; z <= size; z++) {
+			for (int x = 0; x <= size; x++) {
+				int vertex = z * (size + 1) + x;
+				vertices[vertex * 3] = x;
+				vertices[vertex * 3 + 2] = z;
+				textureCoords[vertex * 2] = (float) x / size;
+				textureCoords[vertex * 2 + 1] = (float) z / size;
+				normals[vertex * 3 + 1] = 1;
+			}
+		}
+
+		int[] triangles = new int[size * size * 2];
+		for (int i = 0; i < triangles.length; i++) {
+			triangles[i] = i;
+		}
+		Random random = new Random(42);
+		for (int i = triangles.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = triangles[i];
+			triangles[i] = triangles[j];
+			triangles[j] = swap;
+		}
+
+		int[] indices = new int[triangles.length * 3];
+		for (int i = 0; i < triangles.length; i++) {
+			int quad = triangles[i] / 2;
+			int topLeft = (quad / size) * (size + 1) + quad % size;
+			int bottomLeft = topLeft + size + 1;
+
+			if (triangles[i] % 2 == 0) {
+				indices[i * 3] = topLeft;
+				indices[i * 3 + 1] = bottomLeft;
+				indices[i * 3 + 2] = topLeft + 1;
+			} else {
+				indices[i * 3] = topLeft + 1;
+				indices[i * 3 + 1] = bottomLeft;
+				indices[i * 3 + 2] = bottomLeft + 1;
+			}
+		}
+
+		return new ModelData(vertices, textureCoords, normals, indices);
+	}
+}
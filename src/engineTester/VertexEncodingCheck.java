@@ -0,0 +1,229 @@
+package engineTester;
+
+import models.ModelData;
+import models.RawModel;
+import org.lwjgl.opengl.GL11;
+import renderEngine.Loader;
+import renderEngine.OBJFileParser;
+import renderEngine.RecordingBackend;
+import toolbox.VertexEncoding;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <p>Checks the packing of the compact vertex format on the CPU.</p>
+ *
+ * <p>Every encoding is packed and unpacked again, for edge values and a lot of
+ * random values, and the error has to stay within what 16 bits can store. Then a
+ * model is loaded in the float and in the compact format, and the memory of both
+ * is compared, also when it comes from buffers like the mesh cache gives. No
+ * OpenGL is needed.</p>
+ *
+ * <p>Usage: VertexEncodingCheck [model]</p>
+ */
+public class VertexEncodingCheck
+{
+	private static final int RANDOM_VALUES = 1000000;
+
+	/**
+	 * The largest angle between a normal and its packed version, in degrees. With
+	 * 16 bits per component the octahedral encoding stays well below this.
+	 */
+	private static final double MAX_NORMAL_ERROR = 0.01;
+
+	private static int checks;
+
+	public static void main(String[] args) throws IOException
+	{
+		Random random = new Random(42);
+
+		checkNormalized(random);
+		checkHalf(random);
+		checkOctahedral(random);
+
+		String name = args.length > 0 ? args[0] : "stall";
+		ModelData model = new OBJFileParser().parse(new File("res/" + name + ".obj"));
+		checkModel(name, model);
+
+		System.out.println("All " + checks + " vertex encoding checks passed");
+	}
+
+	private static void checkNormalized(Random random)
+	{
+		check("snorm16 of -1", -1, VertexEncoding.decodeSnorm16(VertexEncoding.encodeSnorm16(-1)), 0);
+		check("snorm16 of 0", 0, VertexEncoding.decodeSnorm16(VertexEncoding.encodeSnorm16(0)), 0);
+		check("snorm16 of 1", 1, VertexEncoding.decodeSnorm16(VertexEncoding.encodeSnorm16(1)), 0);
+		check("snorm16 of -32768 is clamped", -1, VertexEncoding.decodeSnorm16((short) -32768), 0);
+		check("snorm16 of 2 is clamped", 1, VertexEncoding.decodeSnorm16(VertexEncoding.encodeSnorm16(2)), 0);
+		check("unorm16 of 0", 0, VertexEncoding.decodeUnorm16(VertexEncoding.encodeUnorm16(0)), 0);
+		check("unorm16 of 1", 1, VertexEncoding.decodeUnorm16(VertexEncoding.encodeUnorm16(1)), 0);
+		check("unorm16 of -1 is clamped", 0, VertexEncoding.decodeUnorm16(VertexEncoding.encodeUnorm16(-1)), 0);
+
+		// Rounding to the nearest step is off by at most half a step, plus the rounding
+		// of the float division when unpacking.
+		for (int i = 0; i < RANDOM_VALUES; i++) {
+			float value = random.nextFloat() * 2 - 1;
+			check("snorm16 of " + value, value, VertexEncoding.decodeSnorm16(VertexEncoding.encodeSnorm16(value)), 0.5f / 32767 + Math.ulp(1f));
+
+			value = random.nextFloat();
+			check("unorm16 of " + value, value, VertexEncoding.decodeUnorm16(VertexEncoding.encodeUnorm16(value)), 0.5f / 65535 + Math.ulp(1f));
+		}
+	}
+
+	private static void checkHalf(Random random)
+	{
+		check("half of 0", 0, VertexEncoding.decodeHalf(VertexEncoding.encodeHalf(0)), 0);
+		check("half of 1", 1, VertexEncoding.decodeHalf(VertexEncoding.encodeHalf(1)), 0);
+		check("half of -2.5", -2.5f, VertexEncoding.decodeHalf(VertexEncoding.encodeHalf(-2.5f)), 0);
+		check("largest half", 65504, VertexEncoding.decodeHalf(VertexEncoding.encodeHalf(65504)), 0);
+		check("smallest subnormal half", 1f / (1 << 24), VertexEncoding.decodeHalf(VertexEncoding.encodeHalf(1f / (1 << 24))), 0);
+		checkTrue("too large for a half", Float.isInfinite(VertexEncoding.decodeHalf(VertexEncoding.encodeHalf(1e6f))));
+		checkTrue("NaN stays NaN", Float.isNaN(VertexEncoding.decodeHalf(VertexEncoding.encodeHalf(Float.NaN))));
+
+		// 1 + 2^-11 is exactly between two halves, and rounds to the even one.
+		check("half rounds to even", 1, VertexEncoding.decodeHalf(VertexEncoding.encodeHalf(1 + 1f / 2048)), 0);
+
+		// A half has 11 bits of precision, so rounding is off by at most 2^-11 of
+		// the value. Texture coordinates that tile a few hundred times are tested.
+		for (int i = 0; i < RANDOM_VALUES; i++) {
+			float value = (random.nextFloat() * 2 - 1) * 512;
+			check("half of " + value, value, VertexEncoding.decodeHalf(VertexEncoding.encodeHalf(value)), Math.abs(value) / 2048);
+		}
+	}
+
+	private static void checkOctahedral(Random random)
+	{
+		// The axes and the diagonals are the corners and the folds of the octahedron.
+		float[][] edges = {
+			{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1},
+			{1, 1, 1}, {-1, -1, -1}, {1, -1, -1}, {-1, 1, -1}, {1, 1, 0}, {0, -1, -1}
+		};
+		for (float[] edge : edges) {
+			checkNormal(edge[0], edge[1], edge[2]);
+		}
+
+		for (int i = 0; i < RANDOM_VALUES; i++) {
+			checkNormal((float) random.nextGaussian(), (float) random.nextGaussian(), (float) random.nextGaussian());
+		}
+	}
+
+	private static void checkNormal(float x, float y, float z)
+	{
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		x /= length;
+		y /= length;
+		z /= length;
+
+		short[] packed = new short[2];
+		float[] unpacked = new float[3];
+		VertexEncoding.encodeOctahedral(x, y, z, packed, 0);
+		VertexEncoding.decodeOctahedral(packed[0], packed[1], unpacked);
+
+		// The acos of a dot product this close to 1 loses too much precision, so the
+		// angle is found from the length of the cross product as well.
+		double crossX = (double) y * unpacked[2] - (double) z * unpacked[1];
+		double crossY = (double) z * unpacked[0] - (double) x * unpacked[2];
+		double crossZ = (double) x * unpacked[1] - (double) y * unpacked[0];
+		double dot = (double) x * unpacked[0] + (double) y * unpacked[1] + (double) z * unpacked[2];
+		double degrees = Math.toDegrees(Math.atan2(Math.sqrt(crossX * crossX + crossY * crossY + crossZ * crossZ), dot));
+		checkTrue("normal (" + x + ", " + y + ", " + z + ") is off by " + degrees + " degrees", degrees <= MAX_NORMAL_ERROR);
+	}
+
+	/**
+	 * Load a model in both formats, compare their memory, and check that every
+	 * position survives being packed relative to the bounds of the model.
+	 */
+	private static void checkModel(String name, ModelData model)
+	{
+		RecordingBackend gl = new RecordingBackend();
+		Loader loader = new Loader(gl);
+		RawModel full = loader.loadToVAO(model.getVertices(), model.getTextureCoords(), model.getNormals(), model.getIndices());
+
+		loader.setCompactVertices(true);
+		RawModel compact = loader.loadToVAO(model.getVertices(), model.getTextureCoords(), model.getNormals(), model.getIndices());
+		gl.endFrame();
+
+		checkTrue("the compact model is compact", compact.isCompact());
+		checkTrue("the compact model has 16 bit indices", compact.getIndexType() == GL11.GL_UNSIGNED_SHORT);
+		checkTrue(
+			"the uploaded bytes match the sizes of the models",
+			gl.getTotal(RecordingBackend.Counter.BUFFER_BYTES_UPLOADED) == full.getSizeInBytes() + compact.getSizeInBytes()
+		);
+
+		// A model from the mesh cache comes in little endian buffers, and has to be
+		// just as compact.
+		RawModel cached = loader.loadToVAO(
+			toBuffer(model.getVertices()), toBuffer(model.getTextureCoords()), toBuffer(model.getNormals()), toBuffer(model.getIndices())
+		);
+		checkTrue("a model from buffers is compact", cached.isCompact());
+		checkTrue("a model from buffers has the size of one from arrays", cached.getSizeInBytes() == compact.getSizeInBytes());
+		checkTrue(
+			"a model from buffers has the same position scale",
+			Arrays.equals(cached.getPositionScale(), compact.getPositionScale())
+				&& Arrays.equals(cached.getPositionOffset(), compact.getPositionOffset())
+		);
+
+		float[] vertices = model.getVertices();
+		float[] scale = compact.getPositionScale();
+		float[] offset = compact.getPositionOffset();
+		float maxError = 0;
+		for (int i = 0; i < vertices.length; i++) {
+			int axis = i % 3;
+			short packed = VertexEncoding.encodeSnorm16((vertices[i] - offset[axis]) / scale[axis]);
+			float unpacked = VertexEncoding.decodeSnorm16(packed) * scale[axis] + offset[axis];
+			float error = Math.abs(unpacked - vertices[i]);
+
+			check("position " + i, vertices[i], unpacked, scale[axis] / 32767 + Math.ulp(vertices[i]));
+			maxError = Math.max(maxError, error);
+		}
+
+		int vertexCount = model.getVertexCount();
+		System.out.printf(
+			"Model [%s]: %d vertices, %d triangles, largest position error %.6f%n",
+			name, vertexCount, model.getIndices().length / 3, maxError
+		);
+		System.out.printf(
+			"  float:   %7d bytes (%d bytes per vertex, 32 bit indices)%n",
+			full.getSizeInBytes(), 32
+		);
+		System.out.printf(
+			"  compact: %7d bytes (%d bytes per vertex, 16 bit indices), %.1f%% of float%n",
+			compact.getSizeInBytes(), Loader.COMPACT_STRIDE, compact.getSizeInBytes() * 100.0 / full.getSizeInBytes()
+		);
+	}
+
+	private static ByteBuffer toBuffer(float[] data)
+	{
+		ByteBuffer buffer = ByteBuffer.allocateDirect(data.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.asFloatBuffer().put(data);
+
+		return buffer;
+	}
+
+	private static ByteBuffer toBuffer(int[] data)
+	{
+		ByteBuffer buffer = ByteBuffer.allocateDirect(data.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.asIntBuffer().put(data);
+
+		return buffer;
+	}
+
+	private static void check(String description, float expected, float actual, float tolerance)
+	{
+		checkTrue(description + ": expected " + expected + ", got " + actual, Math.abs(expected - actual) <= tolerance);
+	}
+
+	private static void checkTrue(String description, boolean condition)
+	{
+		checks++;
+		if (! condition) {
+			System.err.println("Check failed: " + description);
+			System.exit(-1);
+		}
+	}
+}
@@ -5,6 +5,11 @@ import org.lwjgl.util.vector.Vector3f;
 
 public class Camera
 {
+	/**
+	 * The speed of the camera in units per second.
+	 */
+	private static final float SPEED = 2.4f;
+
 	private Vector3f position = new Vector3f(0, 0, 0);
 
 	private float pitch;
@@ -13,30 +18,66 @@ public class Camera
 
 	private float roll;
 
+	// The state at the tick before the last one, to interpolate from.
+	private Vector3f previousPosition = new Vector3f(0, 0, 0);
+	private float previousPitch;
+	private float previousYaw;
+	private float previousRoll;
+
 	public Camera()
 	{
 
 	}
 
-	public void move()
+	/**
+	 * Move the camera with the keyboard for one tick of the game loop.
+	 *
+	 * @param  delta  The length of the tick in seconds
+	 */
+	public void move(float delta)
 	{
+		previousPosition.set(position);
+		previousPitch = pitch;
+		previousYaw = yaw;
+		previousRoll = roll;
+
+		float distance = SPEED * delta;
+
 		if (Keyboard.isKeyDown(Keyboard.KEY_W)) {
-			position.z -= 0.02f;
+			position.z -= distance;
 		}
 
 		if (Keyboard.isKeyDown(Keyboard.KEY_S)) {
-			position.z += 0.02f;
+			position.z += distance;
 		}
 
 		if (Keyboard.isKeyDown(Keyboard.KEY_D)) {
-			position.x += 0.02f;
+			position.x += distance;
 		}
 
 		if (Keyboard.isKeyDown(Keyboard.KEY_A)) {
-			position.x -= 0.02f;
+			position.x -= distance;
 		}
 	}
 
+	/**
+	 * Store the camera as it is between the last two ticks in another camera, to
+	 * render a frame that falls between two ticks with.
+	 *
+	 * @param  alpha  How far the frame is from the tick before the last one (0) to
+	 *                the last one (1)
+	 * @param  dest   The camera to store the interpolated camera in
+	 */
+	public void interpolate(float alpha, Camera dest)
+	{
+		dest.position.x = previousPosition.x + (position.x - previousPosition.x) * alpha;
+		dest.position.y = previousPosition.y + (position.y - previousPosition.y) * alpha;
+		dest.position.z = previousPosition.z + (position.z - previousPosition.z) * alpha;
+		dest.pitch = previousPitch + (pitch - previousPitch) * alpha;
+		dest.yaw = previousYaw + (yaw - previousYaw) * alpha;
+		dest.roll = previousRoll + (roll - previousRoll) * alpha;
+	}
+
 	public Vector3f getPosition()
 	{
 		return position;
@@ -47,11 +88,21 @@ public class Camera
 		return pitch;
 	}
 
+	public void setPitch(float pitch)
+	{
+		this.pitch = pitch;
+	}
+
 	public float getYaw()
 	{
 		return yaw;
 	}
 
+	public void setYaw(float yaw)
+	{
+		this.yaw = yaw;
+	}
+
 	public float getRoll()
 	{
 		return roll;
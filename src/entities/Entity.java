@@ -1,23 +1,99 @@
 package entities;
 
 import models.TexturedModel;
+import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
 
+import java.nio.FloatBuffer;
+
+/**
+ * A view on an entity in an EntityStore. The position, rotation, scale, model and
+ * transformation matrix of the entity live in the arrays of the store, the view
+ * only knows the store and the handle of the entity.
+ */
 public class Entity
 {
-	private TexturedModel model;
-	private Vector3f position;
-	private float rotX, rotY, rotZ;
-	private float scale;
+	private final EntityStore store;
+	private final int handle;
 
+	/**
+	 * A copy of the matrix, for the method that returns a Matrix4f. It is only
+	 * created when it is asked for.
+	 */
+	private Matrix4f transformationMatrix;
+
+	/**
+	 * Create a new entity in the default store, see EntityStore.setDefault(). The
+	 * entity stays in the store until it is removed, or the store is replaced and no
+	 * longer used.
+	 *
+	 * @param  model     The model of the entity
+	 * @param  position  The position, which is copied
+	 * @param  rotX      The rotation around the x axis
+	 * @param  rotY      The rotation around the y axis
+	 * @param  rotZ      The rotation around the z axis
+	 * @param  scale     The scale
+	 */
 	public Entity(TexturedModel model, Vector3f position, float rotX, float rotY, float rotZ, float scale)
 	{
-		this.model = model;
-		this.position = position;
-		this.rotX = rotX;
-		this.rotY = rotY;
-		this.rotZ = rotZ;
-		this.scale = scale;
+		this(EntityStore.getDefault(), model, position, rotX, rotY, rotZ, scale);
+	}
+
+	/**
+	 * Create a new entity in a store. The store keeps the entity, and this view,
+	 * until the entity is removed or the store itself is no longer used.
+	 *
+	 * @param  store     The store to add the entity to
+	 * @param  model     The model of the entity
+	 * @param  position  The position, which is copied
+	 * @param  rotX      The rotation around the x axis
+	 * @param  rotY      The rotation around the y axis
+	 * @param  rotZ      The rotation around the z axis
+	 * @param  scale     The scale
+	 */
+	public Entity(EntityStore store, TexturedModel model, Vector3f position, float rotX, float rotY, float rotZ, float scale)
+	{
+		this.store = store;
+		this.handle = store.create(model, position.x, position.y, position.z, rotX, rotY, rotZ, scale);
+		store.setView(handle, this);
+	}
+
+	/**
+	 * Create the view on an entity that is already in a store.
+	 */
+	Entity(EntityStore store, int handle)
+	{
+		this.store = store;
+		this.handle = handle;
+	}
+
+	public EntityStore getStore()
+	{
+		return store;
+	}
+
+	public int getHandle()
+	{
+		return handle;
+	}
+
+	/**
+	 * Check whether the entity is still in its store. All other methods fail on an
+	 * entity that was removed.
+	 *
+	 * @return True if the entity exists
+	 */
+	public boolean isAlive()
+	{
+		return store.isAlive(handle);
+	}
+
+	/**
+	 * Remove the entity from its store.
+	 */
+	public void remove()
+	{
+		store.remove(handle);
 	}
 
 	/**
@@ -29,82 +105,171 @@ public class Entity
 	 */
 	public void increasePosition(float dx, float dy, float dz)
 	{
-		this.position.x += dx;
-		this.position.y += dy;
-		this.position.z += dz;
+		store.increasePosition(store.indexOf(handle), dx, dy, dz);
 	}
 
 	/**
 	 * Rotate the entity.
 	 *
 	 * @param  dx  The amount of rotation around the x axis.
- 	 * @param  dy  The amount of rotation around the y axis.
+	 * @param  dy  The amount of rotation around the y axis.
 	 * @param  dz  The amount of rotation around the z axis.
 	 */
 	public void increaseRotation(float dx, float dy, float dz)
 	{
-		this.rotX += dx;
-		this.rotY += dy;
-		this.rotZ += dz;
+		store.increaseRotation(store.indexOf(handle), dx, dy, dz);
+	}
+
+	/**
+	 * Calculate the transformation matrix again if the entity moved, rotated or
+	 * scaled since the last time.
+	 *
+	 * @return True if the matrix had to be calculated again
+	 */
+	public boolean updateTransformationMatrix()
+	{
+		return store.updateTransformationMatrix(store.indexOf(handle));
+	}
+
+	/**
+	 * Get the transformation matrix of the entity, calculating it first if needed.
+	 * The matrix is a copy, changing it doesn't change the entity.
+	 *
+	 * @return The transformation matrix
+	 */
+	public Matrix4f getTransformationMatrix()
+	{
+		if (transformationMatrix == null) {
+			transformationMatrix = new Matrix4f();
+		}
+
+		return store.storeTransformationMatrix(store.indexOf(handle), transformationMatrix);
+	}
+
+	/**
+	 * Put the transformation matrix of the entity in a float buffer, in the order of
+	 * Matrix4f.store(), calculating it first if needed.
+	 *
+	 * @param  dest  The buffer to put the matrix in
+	 */
+	public void storeTransformationMatrix(FloatBuffer dest)
+	{
+		store.storeTransformationMatrix(store.indexOf(handle), dest);
+	}
+
+	/**
+	 * Store the bounding sphere of the entity in the world. The bounding sphere of
+	 * the model is moved with the transformation matrix, and its radius is scaled.
+	 * Rotation doesn't change the radius of a sphere.
+	 *
+	 * @param  dest    The array to store the sphere in, as (x, y, z, radius)
+	 * @param  offset  The index in the array to start at
+	 */
+	public void storeBoundingSphere(float[] dest, int offset)
+	{
+		store.storeBoundingSphere(store.indexOf(handle), dest, offset);
+	}
+
+	/**
+	 * Mark the transformation matrix as outdated. The setters do this themselves,
+	 * this is only needed after changing the arrays of the store directly.
+	 */
+	public void markTransformDirty()
+	{
+		store.markDirty(store.indexOf(handle));
+	}
+
+	public boolean isTransformDirty()
+	{
+		return store.isDirty(store.indexOf(handle));
 	}
 
 	public TexturedModel getModel()
 	{
-		return model;
+		return store.getModel(store.indexOf(handle));
 	}
 
 	public void setModel(TexturedModel model)
 	{
-		this.model = model;
+		store.setModel(store.indexOf(handle), model);
 	}
 
+	/**
+	 * Get a copy of the position of the entity. The position lives in the store, so
+	 * changing the vector doesn't move the entity, use setPosition() or
+	 * increasePosition() for that.
+	 *
+	 * @return A new vector with the position
+	 * @deprecated Use storePosition(), which doesn't create a vector every call
+	 */
+	@Deprecated
 	public Vector3f getPosition()
 	{
-		return position;
+		return storePosition(new Vector3f());
+	}
+
+	/**
+	 * Copy the position of the entity into a vector. Changing the vector doesn't
+	 * move the entity, use setPosition() or increasePosition() for that.
+	 *
+	 * @param  dest  The vector to copy the position into
+	 * @return The destination vector
+	 */
+	public Vector3f storePosition(Vector3f dest)
+	{
+		float[] positions = store.getPositions();
+		int index = store.indexOf(handle) * 3;
+
+		dest.set(positions[index], positions[index + 1], positions[index + 2]);
+
+		return dest;
 	}
 
 	public void setPosition(Vector3f position)
 	{
-		this.position = position;
+		store.setPosition(store.indexOf(handle), position.x, position.y, position.z);
 	}
 
 	public float getRotX()
 	{
-		return rotX;
+		return store.getRotations()[store.indexOf(handle) * 3];
 	}
 
 	public void setRotX(float rotX)
 	{
-		this.rotX = rotX;
+		int index = store.indexOf(handle);
+		store.setRotation(index, rotX, getRotY(), getRotZ());
 	}
 
 	public float getRotY()
 	{
-		return rotY;
+		return store.getRotations()[store.indexOf(handle) * 3 + 1];
 	}
 
 	public void setRotY(float rotY)
 	{
-		this.rotY = rotY;
+		int index = store.indexOf(handle);
+		store.setRotation(index, getRotX(), rotY, getRotZ());
 	}
 
 	public float getRotZ()
 	{
-		return rotZ;
+		return store.getRotations()[store.indexOf(handle) * 3 + 2];
 	}
 
 	public void setRotZ(float rotZ)
 	{
-		this.rotZ = rotZ;
+		int index = store.indexOf(handle);
+		store.setRotation(index, getRotX(), getRotY(), rotZ);
 	}
 
 	public float getScale()
 	{
-		return scale;
+		return store.getScale(store.indexOf(handle));
 	}
 
 	public void setScale(float scale)
 	{
-		this.scale = scale;
+		store.setScale(store.indexOf(handle), scale);
 	}
 }
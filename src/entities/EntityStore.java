@@ -0,0 +1,589 @@
+package entities;
+
+import models.RawModel;
+import models.TexturedModel;
+import org.lwjgl.util.vector.Matrix4f;
+import toolbox.Maths;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * <p>Stores entities as a structure of arrays.</p>
+ *
+ * <p>Instead of an object per entity with a Vector3f and a Matrix4f of its own, all
+ * positions are in one float array, all rotations in another, and so on. A loop
+ * over all entities then reads memory from front to back, instead of following a
+ * pointer to a different place in the heap for every entity and every vector.</p>
+ *
+ * <p>The entities are packed at the front of the arrays: removing an entity moves
+ * the last entity into its place. That keeps loops free of holes, but it means the
+ * index of an entity can change. Entities are therefore referred to by a handle,
+ * which stays the same for as long as the entity exists. A handle is made of a slot
+ * number and the generation of the slot. The slot knows where its entity is in the
+ * arrays, and every time a slot is reused its generation goes up, so a handle of a
+ * removed entity is never mistaken for the entity that took its slot.</p>
+ *
+ * <pre>
+ * [ generation (12) | slot (20) ]
+ * </pre>
+ *
+ * <p>The Entity class is a view on an entity in a store. Every entity has a single
+ * view, which keeps the old Entity API working. Loops that care about speed use the
+ * index methods and the arrays of the store directly.</p>
+ *
+ * <p>A store keeps its entities until they are removed, so a game usually has a
+ * store per level or scene, and drops the whole store with it. Entities created
+ * without a store go to the default store, which the scene sets with
+ * setDefault() when it starts.</p>
+ *
+ * <p>Creating and removing entities is not thread safe. Different entities may be
+ * changed and updated from different threads at the same time.</p>
+ */
+public class EntityStore
+{
+	private static final int SLOT_BITS = 20;
+	private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+	private static final int GENERATION_MASK = (1 << (32 - SLOT_BITS)) - 1;
+
+	/**
+	 * The largest number of entities a store can hold.
+	 */
+	public static final int MAX_ENTITIES = 1 << SLOT_BITS;
+
+	/**
+	 * No entity ever has this handle, as generations start at 1.
+	 */
+	public static final int NO_HANDLE = 0;
+
+	/**
+	 * The store entities created with the constructor of Entity without a store are
+	 * added to.
+	 */
+	private static EntityStore defaultStore;
+
+	// The entities, packed at the front of the arrays. Entity i has its position at
+	// positions[i * 3], its matrix at matrices[i * 16], and so on.
+	private float[] positions;
+	private float[] rotations;
+	private float[] scales;
+	private float[] matrices;
+	private boolean[] dirty;
+	private int[] modelIDs;
+	private int[] handles;
+	private int size;
+
+	// The slots the handles point to. A free slot has an index of -1, and already
+	// has the generation its next entity gets.
+	private int[] slotIndices;
+	private int[] slotGenerations;
+	private Entity[] slotViews;
+	private int slotCount;
+
+	// The slots of removed entities, to reuse first.
+	private int[] freeSlots;
+	private int freeSlotCount;
+
+	/**
+	 * The models get small numbers, so the store only keeps an int per entity.
+	 */
+	private TexturedModel[] models = new TexturedModel[16];
+	private Map<TexturedModel, Integer> modelIDsByModel = new IdentityHashMap<>();
+
+	/**
+	 * Create a new, empty store.
+	 */
+	public EntityStore()
+	{
+		this(1024);
+	}
+
+	/**
+	 * Create a new, empty store with room for a number of entities. The store grows
+	 * when more entities are added.
+	 *
+	 * @param  capacity  The number of entities to make room for
+	 */
+	public EntityStore(int capacity)
+	{
+		capacity = Math.max(1, capacity);
+
+		positions = new float[capacity * 3];
+		rotations = new float[capacity * 3];
+		scales = new float[capacity];
+		matrices = new float[capacity * 16];
+		dirty = new boolean[capacity];
+		modelIDs = new int[capacity];
+		handles = new int[capacity];
+
+		slotIndices = new int[capacity];
+		slotGenerations = new int[capacity];
+		slotViews = new Entity[capacity];
+		freeSlots = new int[capacity];
+	}
+
+	/**
+	 * Set the store entities created without a store are added to. A scene sets a
+	 * store of its own when it starts, so its entities are dropped with it, instead
+	 * of staying in the store of the scene before it.
+	 *
+	 * @param  store  The default store, or null to create a new one when it is needed
+	 */
+	public static synchronized void setDefault(EntityStore store)
+	{
+		defaultStore = store;
+	}
+
+	/**
+	 * Get the store entities created without a store are added to. When no scene
+	 * set one, a store is created, which is kept until another one is set.
+	 *
+	 * @return The default store
+	 */
+	public static synchronized EntityStore getDefault()
+	{
+		if (defaultStore == null) {
+			defaultStore = new EntityStore();
+		}
+
+		return defaultStore;
+	}
+
+	/**
+	 * Add an entity to the store.
+	 *
+	 * @param  model  The model of the entity
+	 * @param  x      The x of the position
+	 * @param  y      The y of the position
+	 * @param  z      The z of the position
+	 * @param  rotX   The rotation around the x axis
+	 * @param  rotY   The rotation around the y axis
+	 * @param  rotZ   The rotation around the z axis
+	 * @param  scale  The scale
+	 * @return The handle of the new entity
+	 */
+	public int create(TexturedModel model, float x, float y, float z, float rotX, float rotY, float rotZ, float scale)
+	{
+		if (size == handles.length) {
+			if (size == MAX_ENTITIES) {
+				throw new IllegalStateException("An entity store can't hold more than " + MAX_ENTITIES + " entities");
+			}
+			grow(Math.min(MAX_ENTITIES, size * 2));
+		}
+
+		int slot;
+		if (freeSlotCount > 0) {
+			slot = freeSlots[--freeSlotCount];
+		} else {
+			slot = slotCount++;
+			slotGenerations[slot] = 1;
+		}
+
+		int generation = slotGenerations[slot];
+		slotIndices[slot] = size;
+
+		int index = size++;
+		int handle = (generation << SLOT_BITS) | slot;
+		handles[index] = handle;
+		modelIDs[index] = getModelID(model);
+		positions[index * 3] = x;
+		positions[index * 3 + 1] = y;
+		positions[index * 3 + 2] = z;
+		rotations[index * 3] = rotX;
+		rotations[index * 3 + 1] = rotY;
+		rotations[index * 3 + 2] = rotZ;
+		scales[index] = scale;
+		dirty[index] = true;
+
+		return handle;
+	}
+
+	/**
+	 * Remove an entity. The last entity in the arrays takes its place, so the index
+	 * of that entity changes. Its handle stays the same.
+	 *
+	 * @param  handle  The handle of the entity
+	 */
+	public void remove(int handle)
+	{
+		int index = indexOf(handle);
+		int slot = handle & SLOT_MASK;
+		int last = --size;
+
+		if (index != last) {
+			System.arraycopy(positions, last * 3, positions, index * 3, 3);
+			System.arraycopy(rotations, last * 3, rotations, index * 3, 3);
+			System.arraycopy(matrices, last * 16, matrices, index * 16, 16);
+			scales[index] = scales[last];
+			dirty[index] = dirty[last];
+			modelIDs[index] = modelIDs[last];
+			handles[index] = handles[last];
+			slotIndices[handles[index] & SLOT_MASK] = index;
+		}
+
+		// Moving to the next generation right away makes every handle of the removed
+		// entity invalid. Generation 0 is skipped, so NO_HANDLE is never valid.
+		int generation = (slotGenerations[slot] + 1) & GENERATION_MASK;
+		slotGenerations[slot] = generation == 0 ? 1 : generation;
+		slotIndices[slot] = -1;
+		slotViews[slot] = null;
+		freeSlots[freeSlotCount++] = slot;
+	}
+
+	/**
+	 * Check whether a handle belongs to an entity that is still in the store.
+	 *
+	 * @param  handle  The handle
+	 * @return True if the entity exists
+	 */
+	public boolean isAlive(int handle)
+	{
+		int slot = handle & SLOT_MASK;
+
+		return slot < slotCount && slotGenerations[slot] == handle >>> SLOT_BITS;
+	}
+
+	/**
+	 * Find where an entity is in the arrays. The index is only valid until the next
+	 * entity is removed.
+	 *
+	 * @param  handle  The handle of the entity
+	 * @return The index of the entity
+	 */
+	public int indexOf(int handle)
+	{
+		if (! isAlive(handle)) {
+			throw new IllegalStateException("Entity " + Integer.toHexString(handle) + " was removed");
+		}
+
+		return slotIndices[handle & SLOT_MASK];
+	}
+
+	/**
+	 * Get the handle of the entity at an index.
+	 *
+	 * @param  index  The index of the entity
+	 * @return The handle of the entity
+	 */
+	public int getHandle(int index)
+	{
+		return handles[index];
+	}
+
+	/**
+	 * Get the view on an entity. Every entity has a single view.
+	 *
+	 * @param  handle  The handle of the entity
+	 * @return The view
+	 */
+	public Entity getEntity(int handle)
+	{
+		indexOf(handle);
+
+		int slot = handle & SLOT_MASK;
+		if (slotViews[slot] == null) {
+			slotViews[slot] = new Entity(this, handle);
+		}
+
+		return slotViews[slot];
+	}
+
+	/**
+	 * Make a view the view of an entity.
+	 */
+	void setView(int handle, Entity view)
+	{
+		slotViews[handle & SLOT_MASK] = view;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public TexturedModel getModel(int index)
+	{
+		return models[modelIDs[index]];
+	}
+
+	public void setModel(int index, TexturedModel model)
+	{
+		modelIDs[index] = getModelID(model);
+	}
+
+	/**
+	 * Get the number of a model. Entities with the same model have the same number.
+	 *
+	 * @param  index  The index of the entity
+	 * @return The number of its model
+	 */
+	public int getModelID(int index)
+	{
+		return modelIDs[index];
+	}
+
+	public void setPosition(int index, float x, float y, float z)
+	{
+		positions[index * 3] = x;
+		positions[index * 3 + 1] = y;
+		positions[index * 3 + 2] = z;
+		dirty[index] = true;
+	}
+
+	public void increasePosition(int index, float dx, float dy, float dz)
+	{
+		positions[index * 3] += dx;
+		positions[index * 3 + 1] += dy;
+		positions[index * 3 + 2] += dz;
+		dirty[index] = true;
+	}
+
+	public void setRotation(int index, float rotX, float rotY, float rotZ)
+	{
+		rotations[index * 3] = rotX;
+		rotations[index * 3 + 1] = rotY;
+		rotations[index * 3 + 2] = rotZ;
+		dirty[index] = true;
+	}
+
+	public void increaseRotation(int index, float dx, float dy, float dz)
+	{
+		rotations[index * 3] += dx;
+		rotations[index * 3 + 1] += dy;
+		rotations[index * 3 + 2] += dz;
+		dirty[index] = true;
+	}
+
+	public float getScale(int index)
+	{
+		return scales[index];
+	}
+
+	public void setScale(int index, float scale)
+	{
+		scales[index] = scale;
+		dirty[index] = true;
+	}
+
+	/**
+	 * Mark the transformation matrix of an entity as outdated. The setters do this
+	 * themselves, this is only needed after changing the arrays directly.
+	 *
+	 * @param  index  The index of the entity
+	 */
+	public void markDirty(int index)
+	{
+		dirty[index] = true;
+	}
+
+	/**
+	 * Mark the transformation matrices of all entities as outdated, after changing
+	 * the arrays of the store in a loop over all entities.
+	 */
+	public void markAllDirty()
+	{
+		Arrays.fill(dirty, 0, size, true);
+	}
+
+	public boolean isDirty(int index)
+	{
+		return dirty[index];
+	}
+
+	/**
+	 * Calculate the transformation matrix of an entity again if it moved, rotated or
+	 * scaled since the last time.
+	 *
+	 * @param  index  The index of the entity
+	 * @return True if the matrix had to be calculated again
+	 */
+	public boolean updateTransformationMatrix(int index)
+	{
+		if (! dirty[index]) {
+			return false;
+		}
+
+		Maths.storeTransformationMatrix(
+			positions[index * 3], positions[index * 3 + 1], positions[index * 3 + 2],
+			rotations[index * 3], rotations[index * 3 + 1], rotations[index * 3 + 2],
+			scales[index], matrices, index * 16
+		);
+		dirty[index] = false;
+
+		return true;
+	}
+
+	/**
+	 * Calculate the transformation matrices of all entities that changed, in a
+	 * single pass over the arrays.
+	 *
+	 * @return The number of matrices that were calculated
+	 */
+	public int updateTransformationMatrices()
+	{
+		int updates = 0;
+		for (int index = 0; index < size; index++) {
+			if (updateTransformationMatrix(index)) {
+				updates++;
+			}
+		}
+
+		return updates;
+	}
+
+	/**
+	 * Copy the transformation matrix of an entity into a Matrix4f, calculating it
+	 * first if needed.
+	 *
+	 * @param  index  The index of the entity
+	 * @param  dest   The matrix to copy into
+	 * @return The destination matrix
+	 */
+	public Matrix4f storeTransformationMatrix(int index, Matrix4f dest)
+	{
+		updateTransformationMatrix(index);
+
+		float[] m = matrices;
+		int offset = index * 16;
+		dest.m00 = m[offset];
+		dest.m01 = m[offset + 1];
+		dest.m02 = m[offset + 2];
+		dest.m03 = m[offset + 3];
+		dest.m10 = m[offset + 4];
+		dest.m11 = m[offset + 5];
+		dest.m12 = m[offset + 6];
+		dest.m13 = m[offset + 7];
+		dest.m20 = m[offset + 8];
+		dest.m21 = m[offset + 9];
+		dest.m22 = m[offset + 10];
+		dest.m23 = m[offset + 11];
+		dest.m30 = m[offset + 12];
+		dest.m31 = m[offset + 13];
+		dest.m32 = m[offset + 14];
+		dest.m33 = m[offset + 15];
+
+		return dest;
+	}
+
+	/**
+	 * Put the transformation matrix of an entity in a float buffer, in the order of
+	 * Matrix4f.store(), calculating it first if needed.
+	 *
+	 * @param  index  The index of the entity
+	 * @param  dest   The buffer to put the matrix in
+	 */
+	public void storeTransformationMatrix(int index, FloatBuffer dest)
+	{
+		updateTransformationMatrix(index);
+		dest.put(matrices, index * 16, 16);
+	}
+
+	/**
+	 * Store the bounding sphere of an entity in the world. The bounding sphere of
+	 * the model is moved with the transformation matrix, and its radius is scaled.
+	 * Rotation doesn't change the radius of a sphere.
+	 *
+	 * @param  index   The index of the entity
+	 * @param  dest    The array to store the sphere in, as (x, y, z, radius)
+	 * @param  offset  The index in the array to start at
+	 */
+	public void storeBoundingSphere(int index, float[] dest, int offset)
+	{
+		updateTransformationMatrix(index);
+
+		RawModel rawModel = models[modelIDs[index]].getRawModel();
+		float[] m = matrices;
+		int matrix = index * 16;
+
+		float cx = rawModel.getBoundsCenterX();
+		float cy = rawModel.getBoundsCenterY();
+		float cz = rawModel.getBoundsCenterZ();
+
+		dest[offset] = m[matrix] * cx + m[matrix + 4] * cy + m[matrix + 8] * cz + m[matrix + 12];
+		dest[offset + 1] = m[matrix + 1] * cx + m[matrix + 5] * cy + m[matrix + 9] * cz + m[matrix + 13];
+		dest[offset + 2] = m[matrix + 2] * cx + m[matrix + 6] * cy + m[matrix + 10] * cz + m[matrix + 14];
+		dest[offset + 3] = rawModel.getBoundsRadius() * Math.abs(scales[index]);
+	}
+
+	/**
+	 * Get the positions of all entities, as (x, y, z) for every index. The array is
+	 * replaced when the store grows. Call markDirty() after changing a position.
+	 *
+	 * @return The positions
+	 */
+	public float[] getPositions()
+	{
+		return positions;
+	}
+
+	/**
+	 * Get the rotations of all entities, as (x, y, z) in degrees for every index.
+	 * The array is replaced when the store grows. Call markDirty() after changing a
+	 * rotation.
+	 *
+	 * @return The rotations
+	 */
+	public float[] getRotations()
+	{
+		return rotations;
+	}
+
+	/**
+	 * Get the scales of all entities. The array is replaced when the store grows.
+	 * Call markDirty() after changing a scale.
+	 *
+	 * @return The scales
+	 */
+	public float[] getScales()
+	{
+		return scales;
+	}
+
+	/**
+	 * Get the transformation matrices of all entities, 16 floats for every index in
+	 * the order of Matrix4f.store(). A matrix is only up to date after it has been
+	 * updated. The array is replaced when the store grows.
+	 *
+	 * @return The matrices
+	 */
+	public float[] getMatrices()
+	{
+		return matrices;
+	}
+
+	private int getModelID(TexturedModel model)
+	{
+		Integer id = modelIDsByModel.get(model);
+		if (id == null) {
+			id = modelIDsByModel.size();
+			modelIDsByModel.put(model, id);
+
+			if (id == models.length) {
+				models = Arrays.copyOf(models, models.length * 2);
+			}
+			models[id] = model;
+		}
+
+		return id;
+	}
+
+	private void grow(int capacity)
+	{
+		positions = Arrays.copyOf(positions, capacity * 3);
+		rotations = Arrays.copyOf(rotations, capacity * 3);
+		scales = Arrays.copyOf(scales, capacity);
+		matrices = Arrays.copyOf(matrices, capacity * 16);
+		dirty = Arrays.copyOf(dirty, capacity);
+		modelIDs = Arrays.copyOf(modelIDs, capacity);
+		handles = Arrays.copyOf(handles, capacity);
+
+		// There are never more slots than entities plus free slots, and free slots
+		// are always reused first, so the slots grow with the entities.
+		slotIndices = Arrays.copyOf(slotIndices, capacity);
+		slotGenerations = Arrays.copyOf(slotGenerations, capacity);
+		slotViews = Arrays.copyOf(slotViews, capacity);
+		freeSlots = Arrays.copyOf(freeSlots, capacity);
+	}
+}
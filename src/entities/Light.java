@@ -14,6 +14,12 @@ public class Light
 	 */
 	private Vector3f colour;
 
+	/**
+	 * The distance at which the light has faded out completely. Lights without a
+	 * range reach everything.
+	 */
+	private float range = Float.POSITIVE_INFINITY;
+
 	/**
 	 * Create a new Light instance with a given position and colour.
 	 *
@@ -26,6 +32,19 @@ public class Light
 		this.colour = colour;
 	}
 
+	/**
+	 * Create a new point light, that fades out with the distance.
+	 *
+	 * @param position  The Vector3f position of the light.
+	 * @param colour    The colour of the light, in RGB value.
+	 * @param range     The distance at which the light has faded out completely.
+	 */
+	public Light(Vector3f position, Vector3f colour, float range)
+	{
+		this(position, colour);
+		this.range = range;
+	}
+
 	/**
 	 * Get the position of the light.
 	 *
@@ -55,4 +74,14 @@ public class Light
 	{
 		this.colour = colour;
 	}
+
+	public float getRange()
+	{
+		return range;
+	}
+
+	public void setRange(float range)
+	{
+		this.range = range;
+	}
 }
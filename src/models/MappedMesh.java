@@ -0,0 +1,85 @@
+package models;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The vertex data of a model as read from a binary mesh cache file. The buffers
+ * point directly into the memory mapped file, so they can be handed to OpenGL
+ * without copying them into arrays first.
+ */
+public class MappedMesh
+{
+	private ByteBuffer vertices;
+	private ByteBuffer textureCoords;
+	private ByteBuffer normals;
+	private ByteBuffer indices;
+
+	private int vertexCount;
+	private int indexCount;
+
+	private float[] bounds;
+
+	/**
+	 * Create a new mapped mesh.
+	 *
+	 * @param  vertices       The vertex positions (3 floats per vertex)
+	 * @param  textureCoords  The texture coordinates (2 floats per vertex)
+	 * @param  normals        The normal vectors (3 floats per vertex)
+	 * @param  indices        The indices (1 int per index)
+	 * @param  vertexCount    The number of vertices
+	 * @param  indexCount     The number of indices
+	 * @param  bounds         The bounds as (minX, minY, minZ, maxX, maxY, maxZ)
+	 */
+	public MappedMesh(
+		ByteBuffer vertices,
+		ByteBuffer textureCoords,
+		ByteBuffer normals,
+		ByteBuffer indices,
+		int vertexCount,
+		int indexCount,
+		float[] bounds
+	) {
+		this.vertices = vertices;
+		this.textureCoords = textureCoords;
+		this.normals = normals;
+		this.indices = indices;
+		this.vertexCount = vertexCount;
+		this.indexCount = indexCount;
+		this.bounds = bounds;
+	}
+
+	public ByteBuffer getVertices()
+	{
+		return vertices;
+	}
+
+	public ByteBuffer getTextureCoords()
+	{
+		return textureCoords;
+	}
+
+	public ByteBuffer getNormals()
+	{
+		return normals;
+	}
+
+	public ByteBuffer getIndices()
+	{
+		return indices;
+	}
+
+	public int getVertexCount()
+	{
+		return vertexCount;
+	}
+
+	public int getIndexCount()
+	{
+		return indexCount;
+	}
+
+	public float[] getBounds()
+	{
+		return bounds;
+	}
+}
@@ -0,0 +1,147 @@
+package models;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The raw vertex data of a model as it comes out of a model file, before it is
+ * uploaded to the graphics card. This is exactly what the Loader needs to create
+ * a VAO for the model.
+ */
+public class ModelData
+{
+	private float[] vertices;
+	private float[] textureCoords;
+	private float[] normals;
+	private int[] indices;
+
+	// The axis aligned bounds of the positions, calculated when first needed.
+	private float[] bounds;
+
+	/**
+	 * Create a new model data instance.
+	 *
+	 * @param  vertices       The vertex positions (x, y, z)
+	 * @param  textureCoords  The texture coordinates (u, v)
+	 * @param  normals        The normal vectors (x, y, z)
+	 * @param  indices        The indices
+	 */
+	public ModelData(float[] vertices, float[] textureCoords, float[] normals, int[] indices)
+	{
+		this.vertices = vertices;
+		this.textureCoords = textureCoords;
+		this.normals = normals;
+		this.indices = indices;
+	}
+
+	public float[] getVertices()
+	{
+		return vertices;
+	}
+
+	public float[] getTextureCoords()
+	{
+		return textureCoords;
+	}
+
+	public float[] getNormals()
+	{
+		return normals;
+	}
+
+	public int[] getIndices()
+	{
+		return indices;
+	}
+
+	/**
+	 * Get the number of unique vertices in the model.
+	 *
+	 * @return The vertex count
+	 */
+	public int getVertexCount()
+	{
+		return vertices.length / 3;
+	}
+
+	/**
+	 * Get the average number of times every unique vertex is used by the index
+	 * buffer. Without indexing every triangle corner would need a vertex of its
+	 * own, so a ratio of 4 means the vertex buffers are a quarter of that size.
+	 *
+	 * @return The vertex reuse ratio
+	 */
+	public float getVertexReuseRatio()
+	{
+		int vertexCount = getVertexCount();
+
+		return vertexCount == 0 ? 0 : (float) indices.length / vertexCount;
+	}
+
+	/**
+	 * Get the axis aligned bounding box around all vertex positions.
+	 *
+	 * @return The bounds as (minX, minY, minZ, maxX, maxY, maxZ)
+	 */
+	public float[] getBounds()
+	{
+		if (bounds == null) {
+			bounds = calculateBounds(vertices);
+		}
+
+		return bounds;
+	}
+
+	/**
+	 * Calculate the axis aligned bounding box around a list of positions.
+	 *
+	 * @param  vertices  The vertex positions (x, y, z)
+	 * @return The bounds as (minX, minY, minZ, maxX, maxY, maxZ)
+	 */
+	public static float[] calculateBounds(float[] vertices)
+	{
+		if (vertices.length == 0) {
+			return new float[6];
+		}
+
+		float[] bounds = {
+			Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+			Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY
+		};
+
+		for (int i = 0; i < vertices.length; i += 3) {
+			for (int axis = 0; axis < 3; axis++) {
+				bounds[axis] = Math.min(bounds[axis], vertices[i + axis]);
+				bounds[axis + 3] = Math.max(bounds[axis + 3], vertices[i + axis]);
+			}
+		}
+
+		return bounds;
+	}
+
+	/**
+	 * Calculate the axis aligned bounding box around positions in a buffer.
+	 *
+	 * @param  vertices  The vertex positions (x, y, z), from the start to the limit
+	 * @return The bounds as (minX, minY, minZ, maxX, maxY, maxZ)
+	 */
+	public static float[] calculateBounds(FloatBuffer vertices)
+	{
+		if (vertices.limit() == 0) {
+			return new float[6];
+		}
+
+		float[] bounds = {
+			Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+			Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY
+		};
+
+		for (int i = 0; i < vertices.limit(); i += 3) {
+			for (int axis = 0; axis < 3; axis++) {
+				bounds[axis] = Math.min(bounds[axis], vertices.get(i + axis));
+				bounds[axis + 3] = Math.max(bounds[axis + 3], vertices.get(i + axis));
+			}
+		}
+
+		return bounds;
+	}
+}
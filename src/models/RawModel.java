@@ -1,10 +1,41 @@
 package models;
 
+import org.lwjgl.opengl.GL11;
+
 public class RawModel
 {
 	private int vaoID;
 	private int vertexCount;
 
+	/**
+	 * A sphere around all the vertices of the model, in model space. A model without
+	 * bounds gets an infinite radius, so it is never culled.
+	 */
+	private float boundsCenterX, boundsCenterY, boundsCenterZ;
+	private float boundsRadius = Float.POSITIVE_INFINITY;
+
+	/**
+	 * How far a simplified level of detail may be from the full detail model, in the
+	 * units of the model. 0 for a model that isn't simplified.
+	 */
+	private float error;
+
+	/**
+	 * How the vertex data is stored. Compact models store their positions relative to
+	 * their bounds, so the shader needs the scale and offset to get them back. Their
+	 * normals are octahedral encoded, and their indices may be shorts.
+	 */
+	private int indexType = GL11.GL_UNSIGNED_INT;
+	private boolean compact;
+	private float[] positionScale = {1, 1, 1};
+	private float[] positionOffset = {0, 0, 0};
+
+	// The size of the vertex and index buffers of the model.
+	private long sizeInBytes;
+
+	// Whether the VAO has the instance attributes of the InstancedRenderer set up.
+	private boolean instanceAttributes;
+
 	public RawModel(int vaoID, int vertexCount)
 	{
 		this.vaoID = vaoID;
@@ -20,4 +51,151 @@ public class RawModel
 	{
 		return vertexCount;
 	}
+
+	/**
+	 * Set the bounds of the model from its axis aligned bounding box. The bounding
+	 * sphere is the sphere through the corners of the box.
+	 *
+	 * @param  bounds  The bounds as (minX, minY, minZ, maxX, maxY, maxZ)
+	 */
+	public void setBounds(float[] bounds)
+	{
+		boundsCenterX = (bounds[0] + bounds[3]) / 2;
+		boundsCenterY = (bounds[1] + bounds[4]) / 2;
+		boundsCenterZ = (bounds[2] + bounds[5]) / 2;
+
+		float halfX = (bounds[3] - bounds[0]) / 2;
+		float halfY = (bounds[4] - bounds[1]) / 2;
+		float halfZ = (bounds[5] - bounds[2]) / 2;
+		boundsRadius = (float) Math.sqrt(halfX * halfX + halfY * halfY + halfZ * halfZ);
+	}
+
+	public float getBoundsCenterX()
+	{
+		return boundsCenterX;
+	}
+
+	public float getBoundsCenterY()
+	{
+		return boundsCenterY;
+	}
+
+	public float getBoundsCenterZ()
+	{
+		return boundsCenterZ;
+	}
+
+	public float getBoundsRadius()
+	{
+		return boundsRadius;
+	}
+
+	public float getError()
+	{
+		return error;
+	}
+
+	public void setError(float error)
+	{
+		this.error = error;
+	}
+
+	/**
+	 * Get the type of the indices, as passed to glDrawElements().
+	 *
+	 * @return GL_UNSIGNED_INT or GL_UNSIGNED_SHORT
+	 */
+	public int getIndexType()
+	{
+		return indexType;
+	}
+
+	public void setIndexType(int indexType)
+	{
+		this.indexType = indexType;
+	}
+
+	/**
+	 * Mark the model as stored in the compact vertex format.
+	 *
+	 * @param  positionScale   The scale that turns the stored positions into model space
+	 * @param  positionOffset  The offset that is added after scaling
+	 */
+	public void setCompact(float[] positionScale, float[] positionOffset)
+	{
+		this.compact = true;
+		this.positionScale = positionScale;
+		this.positionOffset = positionOffset;
+	}
+
+	public boolean isCompact()
+	{
+		return compact;
+	}
+
+	public float[] getPositionScale()
+	{
+		return positionScale;
+	}
+
+	public float[] getPositionOffset()
+	{
+		return positionOffset;
+	}
+
+	public long getSizeInBytes()
+	{
+		return sizeInBytes;
+	}
+
+	public void setSizeInBytes(long sizeInBytes)
+	{
+		this.sizeInBytes = sizeInBytes;
+	}
+
+	public boolean hasInstanceAttributes()
+	{
+		return instanceAttributes;
+	}
+
+	public void setInstanceAttributes(boolean instanceAttributes)
+	{
+		this.instanceAttributes = instanceAttributes;
+	}
+
+	/**
+	 * Take over the VAO and the vertex format of another model of the same mesh. A
+	 * model that was evicted from video memory gets its buffers back this way, so
+	 * everything that uses the model keeps using the same object. The bounds and
+	 * the error stay as they are, unless the model has no bounds yet.
+	 *
+	 * @param  loaded  The model that was just loaded
+	 */
+	public void replaceBuffers(RawModel loaded)
+	{
+		if (boundsRadius == Float.POSITIVE_INFINITY) {
+			boundsCenterX = loaded.boundsCenterX;
+			boundsCenterY = loaded.boundsCenterY;
+			boundsCenterZ = loaded.boundsCenterZ;
+			boundsRadius = loaded.boundsRadius;
+		}
+
+		vaoID = loaded.vaoID;
+		vertexCount = loaded.vertexCount;
+		indexType = loaded.indexType;
+		compact = loaded.compact;
+		positionScale = loaded.positionScale;
+		positionOffset = loaded.positionOffset;
+		sizeInBytes = loaded.sizeInBytes;
+		instanceAttributes = loaded.instanceAttributes;
+	}
+
+	/**
+	 * Forget the VAO of the model, after it was deleted.
+	 */
+	public void releaseBuffers()
+	{
+		vaoID = 0;
+		instanceAttributes = false;
+	}
 }
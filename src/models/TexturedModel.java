@@ -4,7 +4,11 @@ import textures.ModelTexture;
 
 public class TexturedModel
 {
-	private RawModel rawModel;
+	/**
+	 * The levels of detail of the model, from the full detail model to the simplest
+	 * one. A model without simplified versions has a single level.
+	 */
+	private RawModel[] levels;
 	private ModelTexture texture;
 
 	/**
@@ -15,13 +19,74 @@ public class TexturedModel
 	 */
 	public TexturedModel(RawModel model, ModelTexture texture)
 	{
-		this.rawModel = model;
+		this(new RawModel[] {model}, texture);
+	}
+
+	/**
+	 * Create a new textured model with several levels of detail.
+	 *
+	 * @param  levels   The levels of detail, starting with the full detail model
+	 * @param  texture  A texture object used as the texture
+	 */
+	public TexturedModel(RawModel[] levels, ModelTexture texture)
+	{
+		this.levels = levels;
 		this.texture = texture;
 	}
 
+	/**
+	 * Get the full detail model.
+	 *
+	 * @return The first level of detail
+	 */
 	public RawModel getRawModel()
 	{
-		return rawModel;
+		return levels[0];
+	}
+
+	/**
+	 * Get a level of detail of the model.
+	 *
+	 * @param  level  The level, 0 is full detail
+	 * @return The model of that level
+	 */
+	public RawModel getRawModel(int level)
+	{
+		return levels[level];
+	}
+
+	public int getLevelCount()
+	{
+		return levels.length;
+	}
+
+	/**
+	 * <p>Pick the simplest level of detail that looks the same as the full detail
+	 * model at a size on the screen.</p>
+	 *
+	 * <p>The error of a level is relative to the size of the model, so it can be
+	 * turned into pixels using the size of the model on the screen. The error of
+	 * the levels only grows, so the last level that is still precise enough wins.</p>
+	 *
+	 * @param  projectedRadius  The radius of the bounding sphere on the screen, in pixels
+	 * @param  maxPixelError    The largest error in pixels that is allowed
+	 * @return The level of detail to draw
+	 */
+	public int selectLevel(float projectedRadius, float maxPixelError)
+	{
+		float radius = levels[0].getBoundsRadius();
+		if (Float.isInfinite(radius) || radius == 0) {
+			return 0;
+		}
+
+		float pixelsPerUnit = projectedRadius / radius;
+		for (int level = levels.length - 1; level > 0; level--) {
+			if (levels[level].getError() * pixelsPerUnit <= maxPixelError) {
+				return level;
+			}
+		}
+
+		return 0;
 	}
 
 	public ModelTexture getTexture()
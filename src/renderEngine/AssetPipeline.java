@@ -0,0 +1,276 @@
+package renderEngine;
+
+import models.MappedMesh;
+import models.ModelData;
+import models.RawModel;
+import textures.CompressedTextureData;
+import textures.MipmapGenerator;
+import textures.TextureData;
+import textures.TextureDecoder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>Loads models and textures in the background.</p>
+ *
+ * <p>Reading and decoding files is slow, but doesn't need OpenGL at all. So a pool
+ * of worker threads does all of that work, while the GL thread only does the actual
+ * uploads. Every decoded asset is put in an upload queue, and processUploads()
+ * (called on the GL thread once per frame) uploads as many of them as fit in the
+ * upload budget. That way loading assets while the game runs never causes one very
+ * long frame.</p>
+ *
+ * <p>Loading returns a future right away, which completes on the GL thread as soon
+ * as the asset is uploaded.</p>
+ */
+public class AssetPipeline
+{
+	/**
+	 * The default amount of data uploaded per frame.
+	 */
+	public static final long DEFAULT_UPLOAD_BUDGET = 8 * 1024 * 1024;
+
+	private AssetUploader uploader;
+	private long uploadBudget;
+
+	private ExecutorService workers;
+
+	// Assets that are decoded and waiting to be uploaded on the GL thread.
+	private Queue<PendingUpload<?>> uploads = new ConcurrentLinkedQueue<>();
+
+	// The number of assets that are requested but not uploaded yet.
+	private AtomicInteger pending = new AtomicInteger();
+
+	// Every worker thread gets a parser of its own, so the parser buffers are reused.
+	private ThreadLocal<OBJFileParser> parsers = ThreadLocal.withInitial(OBJFileParser::new);
+
+	private volatile boolean compressTextures = true;
+
+	/**
+	 * Create a new asset pipeline with a worker for every core.
+	 *
+	 * @param  uploader  The uploader used on the GL thread, usually the Loader
+	 */
+	public AssetPipeline(AssetUploader uploader)
+	{
+		this(uploader, Runtime.getRuntime().availableProcessors(), DEFAULT_UPLOAD_BUDGET);
+	}
+
+	/**
+	 * Create a new asset pipeline.
+	 *
+	 * @param  uploader      The uploader used on the GL thread, usually the Loader
+	 * @param  workerCount   The number of worker threads that decode assets
+	 * @param  uploadBudget  The number of bytes to upload per frame at most
+	 */
+	public AssetPipeline(AssetUploader uploader, int workerCount, long uploadBudget)
+	{
+		this.uploader = uploader;
+		this.uploadBudget = uploadBudget;
+
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "asset-worker-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		};
+
+		this.workers = Executors.newFixedThreadPool(workerCount, threadFactory);
+	}
+
+	/**
+	 * Choose whether textures are loaded block compressed, from the compressed
+	 * texture cache. This is on by default.
+	 *
+	 * @param  compressTextures  True to load compressed textures
+	 */
+	public void setCompressTextures(boolean compressTextures)
+	{
+		this.compressTextures = compressTextures;
+	}
+
+	/**
+	 * Load an OBJ model in the background. The binary mesh cache is used when
+	 * it is valid, otherwise the OBJ is parsed and the cache is written.
+	 *
+	 * @param  filename  The model to load (relative to the res folder, without extension)
+	 * @return A future that completes with the model once it is uploaded
+	 */
+	public CompletableFuture<RawModel> loadModel(String filename)
+	{
+		return submit(() -> {
+			File objFile = OBJLoader.getObjFile(filename);
+			File cacheFile = OBJLoader.getCacheFile(filename);
+
+			MappedMesh cached = MeshCache.read(cacheFile, objFile);
+			if (cached != null) {
+				ByteBuffer indices = cached.getIndices();
+				long bytes = cached.getVertices().remaining() + cached.getTextureCoords().remaining()
+					+ cached.getNormals().remaining() + indices.remaining();
+
+				return new PendingUpload<>(bytes, () -> {
+					RawModel model = uploader.loadToVAO(
+						cached.getVertices(), cached.getTextureCoords(), cached.getNormals(), indices
+					);
+					model.setBounds(cached.getBounds());
+
+					return model;
+				});
+			}
+
+			ModelData data = OBJLoader.parseAndCache(objFile, cacheFile, parsers.get());
+			long bytes = (data.getVertices().length + data.getTextureCoords().length
+				+ data.getNormals().length + data.getIndices().length) * 4L;
+
+			return new PendingUpload<>(bytes, () -> uploader.loadToVAO(
+				data.getVertices(), data.getTextureCoords(), data.getNormals(), data.getIndices()
+			));
+		});
+	}
+
+	/**
+	 * Load a PNG texture in the background. With compressed textures on, the
+	 * compressed texture cache is used, and written first if it isn't valid.
+	 *
+	 * @param  filename  The texture to load (relative to the res folder, without extension)
+	 * @return A future that completes with the texture ID once it is uploaded
+	 */
+	public CompletableFuture<Integer> loadTexture(String filename)
+	{
+		return submit(() -> {
+			if (compressTextures) {
+				CompressedTextureData data = TextureCache.load(filename);
+
+				return new PendingUpload<>(data.getSizeInBytes(), () -> uploader.loadCompressedTexture(data));
+			}
+
+			// The mipmaps are made here as well, so the GL thread only uploads them.
+			TextureData data = MipmapGenerator.generate(TextureDecoder.decode(new File("res/" + filename + ".png")));
+
+			return new PendingUpload<>(data.getSizeInBytes(), () -> uploader.loadTexture(data));
+		});
+	}
+
+	/**
+	 * Upload decoded assets until the upload budget for this frame is used up. At
+	 * least one asset is uploaded if one is waiting, so an asset larger than the
+	 * budget still gets uploaded. This must be called on the GL thread.
+	 *
+	 * @return The number of assets uploaded
+	 */
+	public int processUploads()
+	{
+		long bytesLeft = uploadBudget;
+		int uploaded = 0;
+
+		PendingUpload<?> upload;
+		while ((uploaded == 0 || bytesLeft > 0) && (upload = uploads.poll()) != null) {
+			upload.run();
+			bytesLeft -= upload.bytes;
+			uploaded++;
+			pending.decrementAndGet();
+		}
+
+		return uploaded;
+	}
+
+	/**
+	 * Keep uploading until every requested asset is loaded. This must be called on
+	 * the GL thread, and is meant for loading screens where we just want to wait
+	 * for everything.
+	 */
+	public void finishAll()
+	{
+		while (pending.get() > 0) {
+			if (processUploads() == 0) {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Get the number of assets that are requested but not uploaded yet.
+	 *
+	 * @return The number of pending assets
+	 */
+	public int getPendingCount()
+	{
+		return pending.get();
+	}
+
+	/**
+	 * Stop the worker threads.
+	 */
+	public void cleanUp()
+	{
+		workers.shutdownNow();
+	}
+
+	/**
+	 * Run a decode task on the worker pool and queue its result for uploading.
+	 *
+	 * @param  task  The task decoding the asset
+	 * @return A future that completes once the asset is uploaded
+	 */
+	private <T> CompletableFuture<T> submit(DecodeTask<T> task)
+	{
+		CompletableFuture<T> future = new CompletableFuture<>();
+		pending.incrementAndGet();
+
+		workers.execute(() -> {
+			try {
+				PendingUpload<T> upload = task.decode();
+				upload.future = future;
+				uploads.add(upload);
+			} catch (Exception e) {
+				pending.decrementAndGet();
+				future.completeExceptionally(e);
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * The part of loading an asset that runs on a worker thread.
+	 */
+	private interface DecodeTask<T>
+	{
+		PendingUpload<T> decode() throws Exception;
+	}
+
+	/**
+	 * A decoded asset waiting to be uploaded on the GL thread.
+	 */
+	private static class PendingUpload<T>
+	{
+		private long bytes;
+		private Supplier<T> upload;
+		private CompletableFuture<T> future;
+
+		private PendingUpload(long bytes, Supplier<T> upload)
+		{
+			this.bytes = bytes;
+			this.upload = upload;
+		}
+
+		private void run()
+		{
+			try {
+				future.complete(upload.get());
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package renderEngine;
+
+import models.RawModel;
+import textures.CompressedTextureData;
+import textures.TextureData;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The part of the Loader that actually talks to the graphics card. The asset
+ * pipeline only uploads through this interface, so it can run without OpenGL by
+ * giving it a stub implementation.
+ */
+public interface AssetUploader
+{
+	/**
+	 * Upload model data from arrays into a new VAO.
+	 *
+	 * @param  positions      The vertex positions
+	 * @param  textureCoords  The texture coordinates
+	 * @param  normals        The normal vectors
+	 * @param  indices        The indices
+	 * @return A new RawModel object
+	 */
+	RawModel loadToVAO(float[] positions, float[] textureCoords, float[] normals, int[] indices);
+
+	/**
+	 * Upload model data from buffers into a new VAO.
+	 *
+	 * @param  positions      The vertex positions (3 floats per vertex)
+	 * @param  textureCoords  The texture coordinates (2 floats per vertex)
+	 * @param  normals        The normal vectors (3 floats per vertex)
+	 * @param  indices        The indices (1 int per index)
+	 * @return A new RawModel object
+	 */
+	RawModel loadToVAO(ByteBuffer positions, ByteBuffer textureCoords, ByteBuffer normals, ByteBuffer indices);
+
+	/**
+	 * Upload decoded pixels into a new texture.
+	 *
+	 * @param  texture  The decoded texture
+	 * @return The ID of the new texture
+	 */
+	int loadTexture(TextureData texture);
+
+	/**
+	 * Upload a block compressed texture into a new texture.
+	 *
+	 * @param  texture  The compressed texture with its mipmaps
+	 * @return The ID of the new texture
+	 */
+	int loadCompressedTexture(CompressedTextureData texture);
+}
@@ -0,0 +1,23 @@
+package renderEngine;
+
+/**
+ * <p>A source of time for the game loop.</p>
+ *
+ * <p>The game normally uses the system clock, but the game loop can be given any
+ * other clock. A clock that is moved forward by hand makes it possible to check
+ * exactly how the loop behaves with slow, fast or uneven frames.</p>
+ */
+public interface Clock
+{
+	/**
+	 * The clock of the JVM, which is monotonic and precise to the nanosecond.
+	 */
+	Clock SYSTEM = System::nanoTime;
+
+	/**
+	 * Get the current time. Only the difference between two times means anything.
+	 *
+	 * @return The time in nanoseconds
+	 */
+	long nanoTime();
+}
@@ -0,0 +1,194 @@
+package renderEngine;
+
+import entities.Light;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.util.vector.Matrix4f;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+
+/**
+ * <p>Uploads the point lights and their clusters for clustered forward lighting.</p>
+ *
+ * <p>Every frame the LightClusterer finds the lights of every cluster, and the result
+ * is uploaded into three buffer textures the fragment shader reads with texelFetch():</p>
+ *
+ * <ul>
+ *     <li>The lights, two texels per light: the position and range, and the colour.</li>
+ *     <li>The clusters, one texel per cluster: the offset in the light index list and
+ *     the number of lights.</li>
+ *     <li>The light index list itself.</li>
+ * </ul>
+ *
+ * <p>Buffer textures are used instead of uniform arrays, because the number of lights
+ * and indices changes every frame and can be much larger than a uniform block.</p>
+ */
+public class ClusteredLighting
+{
+	/**
+	 * The texture units the buffer textures are bound to.
+	 */
+	public static final int LIGHT_DATA_UNIT = 1;
+	public static final int CLUSTER_UNIT = 2;
+	public static final int LIGHT_INDEX_UNIT = 3;
+
+	private GraphicsBackend gl;
+	private LightClusterer clusterer;
+
+	private int lightDataBufferID;
+	private int clusterBufferID;
+	private int lightIndexBufferID;
+
+	private int lightDataTextureID;
+	private int clusterTextureID;
+	private int lightIndexTextureID;
+
+	// Reused every frame, and only replaced when they are too small.
+	private FloatBuffer lightData = BufferUtils.createFloatBuffer(64 * 8);
+	private IntBuffer clusters;
+	private IntBuffer lightIndices = BufferUtils.createIntBuffer(1024);
+
+	/**
+	 * Create the buffers and buffer textures.
+	 *
+	 * @param  gl         The graphics backend
+	 * @param  clusterer  The clusterer that assigns the lights to clusters
+	 */
+	public ClusteredLighting(GraphicsBackend gl, LightClusterer clusterer)
+	{
+		this.gl = gl;
+		this.clusterer = clusterer;
+
+		clusters = BufferUtils.createIntBuffer(clusterer.getClusterCount() * 2);
+
+		lightDataBufferID = gl.genBuffers();
+		clusterBufferID = gl.genBuffers();
+		lightIndexBufferID = gl.genBuffers();
+
+		lightDataTextureID = createBufferTexture(lightDataBufferID, GL30.GL_RGBA32F);
+		clusterTextureID = createBufferTexture(clusterBufferID, GL30.GL_RG32UI);
+		lightIndexTextureID = createBufferTexture(lightIndexBufferID, GL30.GL_R32UI);
+	}
+
+	/**
+	 * Cluster the lights for this frame, and upload the result.
+	 *
+	 * @param  lights            The point lights
+	 * @param  viewMatrix        The view matrix of the camera
+	 * @param  projectionMatrix  The projection matrix
+	 */
+	public void update(List<Light> lights, Matrix4f viewMatrix, Matrix4f projectionMatrix)
+	{
+		clusterer.cluster(lights, viewMatrix, projectionMatrix);
+
+		if (lightData.capacity() < lights.size() * 8) {
+			lightData = BufferUtils.createFloatBuffer(lights.size() * 8);
+		}
+
+		lightData.clear();
+		for (Light light : lights) {
+			// A range of infinity would turn into NaN in the shader.
+			lightData.put(light.getPosition().x).put(light.getPosition().y).put(light.getPosition().z);
+			lightData.put(Math.min(light.getRange(), Float.MAX_VALUE));
+			lightData.put(light.getColour().x).put(light.getColour().y).put(light.getColour().z).put(0);
+		}
+		lightData.flip();
+
+		int[] offsets = clusterer.getClusterOffsets();
+		int[] counts = clusterer.getClusterCounts();
+		clusters.clear();
+		for (int cluster = 0; cluster < offsets.length; cluster++) {
+			clusters.put(offsets[cluster]).put(counts[cluster]);
+		}
+		clusters.flip();
+
+		int indexCount = clusterer.getLightIndexCount();
+		if (lightIndices.capacity() < indexCount) {
+			lightIndices = BufferUtils.createIntBuffer(Math.max(indexCount, lightIndices.capacity() * 2));
+		}
+		lightIndices.clear();
+		lightIndices.put(clusterer.getLightIndices(), 0, indexCount);
+		lightIndices.flip();
+
+		upload(lightDataBufferID, lightData);
+		upload(clusterBufferID, clusters);
+		upload(lightIndexBufferID, lightIndices);
+	}
+
+	/**
+	 * Bind the buffer textures to their texture units.
+	 */
+	public void bind()
+	{
+		gl.activeTexture(GL13.GL_TEXTURE0 + LIGHT_DATA_UNIT);
+		gl.bindTexture(GL31.GL_TEXTURE_BUFFER, lightDataTextureID);
+		gl.activeTexture(GL13.GL_TEXTURE0 + CLUSTER_UNIT);
+		gl.bindTexture(GL31.GL_TEXTURE_BUFFER, clusterTextureID);
+		gl.activeTexture(GL13.GL_TEXTURE0 + LIGHT_INDEX_UNIT);
+		gl.bindTexture(GL31.GL_TEXTURE_BUFFER, lightIndexTextureID);
+
+		gl.activeTexture(GL13.GL_TEXTURE0);
+	}
+
+	public LightClusterer getClusterer()
+	{
+		return clusterer;
+	}
+
+	/**
+	 * Delete the buffers and textures, and stop the clusterer.
+	 */
+	public void cleanUp()
+	{
+		gl.deleteTextures(lightDataTextureID);
+		gl.deleteTextures(clusterTextureID);
+		gl.deleteTextures(lightIndexTextureID);
+
+		gl.deleteBuffers(lightDataBufferID);
+		gl.deleteBuffers(clusterBufferID);
+		gl.deleteBuffers(lightIndexBufferID);
+
+		clusterer.cleanUp();
+	}
+
+	/**
+	 * Create a texture that reads its texels straight from a buffer.
+	 *
+	 * @param  bufferID        The buffer to read from
+	 * @param  internalFormat  The format of the texels in the buffer
+	 * @return The ID of the texture
+	 */
+	private int createBufferTexture(int bufferID, int internalFormat)
+	{
+		// The buffer needs storage before a texture can use it.
+		gl.bindBuffer(GL31.GL_TEXTURE_BUFFER, bufferID);
+		gl.bufferData(GL31.GL_TEXTURE_BUFFER, 16, GL15.GL_STREAM_DRAW);
+		gl.bindBuffer(GL31.GL_TEXTURE_BUFFER, 0);
+
+		int textureID = gl.genTextures();
+		gl.bindTexture(GL31.GL_TEXTURE_BUFFER, textureID);
+		gl.texBuffer(GL31.GL_TEXTURE_BUFFER, internalFormat, bufferID);
+		gl.bindTexture(GL31.GL_TEXTURE_BUFFER, 0);
+
+		return textureID;
+	}
+
+	private void upload(int bufferID, FloatBuffer data)
+	{
+		gl.bindBuffer(GL31.GL_TEXTURE_BUFFER, bufferID);
+		gl.bufferData(GL31.GL_TEXTURE_BUFFER, data, GL15.GL_STREAM_DRAW);
+		gl.bindBuffer(GL31.GL_TEXTURE_BUFFER, 0);
+	}
+
+	private void upload(int bufferID, IntBuffer data)
+	{
+		gl.bindBuffer(GL31.GL_TEXTURE_BUFFER, bufferID);
+		gl.bufferData(GL31.GL_TEXTURE_BUFFER, data, GL15.GL_STREAM_DRAW);
+		gl.bindBuffer(GL31.GL_TEXTURE_BUFFER, 0);
+	}
+}
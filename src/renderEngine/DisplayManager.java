@@ -1,34 +1,84 @@
 package renderEngine;
 
-import org.lwjgl.LWJGLException;
-import org.lwjgl.opengl.*;
-
 public class DisplayManager
 {
+	/**
+	 * How the frame rate is limited.
+	 */
+	public enum FrameMode
+	{
+		/**
+		 * Render frames as fast as possible.
+		 */
+		UNCAPPED,
+
+		/**
+		 * Wait for the vertical sync of the monitor, so the frame rate matches the
+		 * refresh rate of the monitor.
+		 */
+		VSYNC,
+
+		/**
+		 * Sleep to stay below the frame rate cap.
+		 */
+		CAPPED
+	}
+
 	private static final int WIDTH = 1280;
 	private static final int HEIGHT = 720;
 
 	private static final int FPS_CAP = 120;
 
+	/**
+	 * The graphics backend the window is created with.
+	 */
+	private static GraphicsBackend gl;
+
+	private static FrameMode frameMode = FrameMode.CAPPED;
+	private static int fpsCap = FPS_CAP;
+
 	/**
 	 * Create a new game window.
+	 *
+	 * @param  backend  The graphics backend to create the window with
+	 */
+	public static void createDisplay(GraphicsBackend backend)
+	{
+		gl = backend;
+
+		gl.createDisplay(WIDTH, HEIGHT, "OpenGL");
+		gl.viewport(0, 0, WIDTH, HEIGHT);
+		gl.setVSync(frameMode == FrameMode.VSYNC);
+	}
+
+	/**
+	 * Choose how the frame rate is limited. This can be changed at any time, also
+	 * before the window is created.
+	 *
+	 * @param  mode  The frame mode
 	 */
-	public static void createDisplay()
+	public static void setFrameMode(FrameMode mode)
 	{
-		// Make sure we use at least OpenGL 3.3
-		ContextAttribs attribs = new ContextAttribs(3, 3)
-			.withForwardCompatible(true)
-			.withProfileCore(true);
+		frameMode = mode;
 
-		try {
-			Display.setDisplayMode(new DisplayMode(WIDTH, HEIGHT));
-			Display.create(new PixelFormat(), attribs);
-			Display.setTitle("OpenGL");
-		} catch (LWJGLException e) {
-			e.printStackTrace();
+		if (gl != null) {
+			gl.setVSync(mode == FrameMode.VSYNC);
 		}
+	}
 
-		GL11.glViewport(0, 0, WIDTH, HEIGHT);
+	public static FrameMode getFrameMode()
+	{
+		return frameMode;
+	}
+
+	/**
+	 * Set the frame rate cap of the CAPPED frame mode.
+	 *
+	 * @param  cap  The largest number of frames per second
+	 */
+	public static void setFpsCap(int cap)
+	{
+		fpsCap = cap;
 	}
 
 	/**
@@ -36,8 +86,17 @@ public class DisplayManager
 	 */
 	public static void updateDisplay()
 	{
-		Display.sync(FPS_CAP);
-		Display.update();
+		gl.updateDisplay(frameMode == FrameMode.CAPPED ? fpsCap : 0);
+	}
+
+	/**
+	 * Check if the user wants to close the window.
+	 *
+	 * @return True if the window should close
+	 */
+	public static boolean isCloseRequested()
+	{
+		return gl.isCloseRequested();
 	}
 
 	/**
@@ -45,6 +104,6 @@ public class DisplayManager
 	 */
 	public static void closeDisplay()
 	{
-		Display.destroy();
+		gl.destroyDisplay();
 	}
 }
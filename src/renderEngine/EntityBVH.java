@@ -0,0 +1,465 @@
+package renderEngine;
+
+import entities.Entity;
+import toolbox.Frustum;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A bounding volume hierarchy over the bounding spheres of a set of entities.</p>
+ *
+ * <p>Testing every entity against the view frustum is a linear scan, which gets slow
+ * with tens of thousands of static entities. The hierarchy groups nearby entities
+ * in a tree of axis aligned boxes, where every box contains the boxes of its
+ * children. A query starts at the root: a box completely outside the frustum
+ * rejects its whole subtree at once, and a box completely inside accepts its whole
+ * subtree without testing a single entity. Only the entities in boxes that cross a
+ * plane of the frustum are tested one by one.</p>
+ *
+ * <p>The tree is built with the surface area heuristic, binned to keep the build
+ * fast: the entities of a node are split where the summed surface areas of the two
+ * halves, weighted by their entity counts, are smallest. A smaller box is less
+ * likely to cross the frustum, so this keeps queries cheap.</p>
+ *
+ * <p>When entities move, refit() grows and shrinks the boxes to fit again without
+ * changing the structure of the tree. That is much cheaper than building again,
+ * but the tree gets worse when entities move far from where they were at build
+ * time.</p>
+ */
+public class EntityBVH
+{
+	/**
+	 * Nodes with at most this many entities are never split.
+	 */
+	private static final int MIN_LEAF_SIZE = 2;
+
+	/**
+	 * Nodes with more entities than this are always split.
+	 */
+	private static final int MAX_LEAF_SIZE = 16;
+
+	/**
+	 * The number of bins the surface area heuristic tries to split at, per node.
+	 */
+	private static final int BIN_COUNT = 16;
+
+	/**
+	 * The entities, ordered so every node covers a consecutive range of them.
+	 */
+	private Entity[] items;
+
+	/**
+	 * The world bounding sphere of every entity, as (x, y, z, radius).
+	 */
+	private float[] spheres;
+
+	/**
+	 * Entities of models without bounds can't be put in a box, so they are always
+	 * returned by a query.
+	 */
+	private List<Entity> unbounded = new ArrayList<>();
+
+	/**
+	 * The nodes of the tree in depth first order, so the left child of a node is
+	 * always the next node. A node is a leaf when its right child is 0.
+	 */
+	private float[] nodeBounds;
+	private int[] nodeStart;
+	private int[] nodeCount;
+	private int[] nodeRight;
+	private int nodes;
+
+	// The stack used while querying, big enough for the deepest path in the tree.
+	private int[] stack;
+	private int depth;
+
+	// The bins used while building.
+	private int[] binCounts = new int[BIN_COUNT];
+	private float[] binBounds = new float[BIN_COUNT * 6];
+	private float[] rightAreas = new float[BIN_COUNT];
+
+	/**
+	 * Build a hierarchy over a set of entities.
+	 *
+	 * @param  entities  The entities to put in the hierarchy
+	 */
+	public EntityBVH(List<Entity> entities)
+	{
+		List<Entity> bounded = new ArrayList<>(entities.size());
+		for (Entity entity : entities) {
+			if (Float.isInfinite(entity.getModel().getRawModel().getBoundsRadius())) {
+				unbounded.add(entity);
+			} else {
+				bounded.add(entity);
+			}
+		}
+
+		items = bounded.toArray(new Entity[0]);
+		spheres = new float[items.length * 4];
+		for (int i = 0; i < items.length; i++) {
+			items[i].storeBoundingSphere(spheres, i * 4);
+		}
+
+		// A binary tree with at least one entity per leaf has less than twice as
+		// many nodes as entities.
+		int maxNodes = Math.max(1, items.length * 2);
+		nodeBounds = new float[maxNodes * 6];
+		nodeStart = new int[maxNodes];
+		nodeCount = new int[maxNodes];
+		nodeRight = new int[maxNodes];
+
+		buildNode(0, items.length, 1);
+		stack = new int[depth + 1];
+	}
+
+	/**
+	 * Find all entities that may be visible in the frustum.
+	 *
+	 * @param  frustum  The view frustum
+	 * @param  visible  The list the visible entities are added to
+	 */
+	public void query(Frustum frustum, List<Entity> visible)
+	{
+		visible.addAll(unbounded);
+
+		if (items.length == 0) {
+			return;
+		}
+
+		int top = 0;
+		stack[top++] = 0;
+
+		while (top > 0) {
+			int node = stack[--top];
+			int b = node * 6;
+			int start = nodeStart[node];
+			int end = start + nodeCount[node];
+
+			int result = frustum.classifyBox(
+				nodeBounds[b], nodeBounds[b + 1], nodeBounds[b + 2], nodeBounds[b + 3], nodeBounds[b + 4], nodeBounds[b + 5]
+			);
+
+			if (result == Frustum.OUTSIDE) {
+				continue;
+			}
+
+			// Every entity of the subtree is inside, no need to look any further.
+			if (result == Frustum.INSIDE) {
+				for (int i = start; i < end; i++) {
+					visible.add(items[i]);
+				}
+				continue;
+			}
+
+			if (nodeRight[node] == 0) {
+				for (int i = start; i < end; i++) {
+					int s = i * 4;
+					if (frustum.intersectsSphere(spheres[s], spheres[s + 1], spheres[s + 2], spheres[s + 3])) {
+						visible.add(items[i]);
+					}
+				}
+			} else {
+				stack[top++] = nodeRight[node];
+				stack[top++] = node + 1;
+			}
+		}
+	}
+
+	/**
+	 * Fit the boxes around the entities again, after some of them moved. The
+	 * transformation matrices of moved entities are calculated again as well.
+	 *
+	 * @return The number of transformation matrices calculated
+	 */
+	public int refit()
+	{
+		int matrixUpdates = 0;
+
+		for (int i = 0; i < items.length; i++) {
+			if (items[i].updateTransformationMatrix()) {
+				items[i].storeBoundingSphere(spheres, i * 4);
+				matrixUpdates++;
+			}
+		}
+
+		if (matrixUpdates == 0) {
+			return 0;
+		}
+
+		// Children always come after their parent, so walking the nodes backwards
+		// fits every child before its parent.
+		for (int node = nodes - 1; node >= 0; node--) {
+			if (nodeRight[node] == 0) {
+				fitToItems(node, nodeStart[node], nodeStart[node] + nodeCount[node]);
+			} else {
+				fitToChildren(node);
+			}
+		}
+
+		return matrixUpdates;
+	}
+
+	/**
+	 * Get the number of entities in the hierarchy.
+	 *
+	 * @return The number of entities
+	 */
+	public int size()
+	{
+		return items.length + unbounded.size();
+	}
+
+	/**
+	 * Get the number of nodes in the tree.
+	 *
+	 * @return The number of nodes
+	 */
+	public int getNodeCount()
+	{
+		return nodes;
+	}
+
+	/**
+	 * Build the node for a range of entities, and split it further if that's worth it.
+	 *
+	 * @param  start  The first entity of the node
+	 * @param  end    The end of the range (exclusive)
+	 * @param  level  The depth of the node in the tree, the root is 1
+	 * @return The index of the node
+	 */
+	private int buildNode(int start, int end, int level)
+	{
+		int node = nodes++;
+		depth = Math.max(depth, level);
+
+		nodeStart[node] = start;
+		nodeCount[node] = end - start;
+		nodeRight[node] = 0;
+		fitToItems(node, start, end);
+
+		int count = end - start;
+		if (count <= MIN_LEAF_SIZE) {
+			return node;
+		}
+
+		// Split along the longest axis of the box around the centers.
+		float[] centroidBounds = centroidBounds(start, end);
+		int axis = 0;
+		float extent = centroidBounds[3] - centroidBounds[0];
+		for (int a = 1; a < 3; a++) {
+			if (centroidBounds[a + 3] - centroidBounds[a] > extent) {
+				axis = a;
+				extent = centroidBounds[a + 3] - centroidBounds[a];
+			}
+		}
+
+		// All centers in the same spot, so there is no way to split them.
+		if (extent <= 0) {
+			return node;
+		}
+
+		float min = centroidBounds[axis];
+		float scale = BIN_COUNT / extent;
+		int split = findBestSplit(node, start, end, axis, min, scale);
+
+		if (split < 0) {
+			if (count <= MAX_LEAF_SIZE) {
+				return node;
+			}
+
+			// Splitting is not worth it according to the heuristic, but the node is too
+			// big to be a leaf. Split in the middle instead.
+			split = BIN_COUNT / 2;
+		}
+
+		int mid = partition(start, end, axis, min, scale, split);
+
+		if (mid == start || mid == end) {
+			mid = (start + end) / 2;
+		}
+
+		buildNode(start, mid, level + 1);
+		nodeRight[node] = buildNode(mid, end, level + 1);
+
+		return node;
+	}
+
+	/**
+	 * Sort the entities of a node in bins along an axis, and find the bin boundary
+	 * with the lowest surface area heuristic cost.
+	 *
+	 * @return The first bin of the right half, or -1 if a leaf is cheaper
+	 */
+	private int findBestSplit(int node, int start, int end, int axis, float min, float scale)
+	{
+		for (int i = 0; i < BIN_COUNT; i++) {
+			binCounts[i] = 0;
+			resetBounds(binBounds, i * 6);
+		}
+
+		for (int i = start; i < end; i++) {
+			int bin = bin(i, axis, min, scale);
+			binCounts[bin]++;
+			growBounds(binBounds, bin * 6, i);
+		}
+
+		// Sweep from the right to know the area of every right half.
+		float[] bounds = new float[6];
+		resetBounds(bounds, 0);
+		for (int i = BIN_COUNT - 1; i > 0; i--) {
+			unionBounds(bounds, binBounds, i * 6);
+			rightAreas[i] = surfaceArea(bounds, 0);
+		}
+
+		// Then sweep from the left, and compare the cost of every split.
+		resetBounds(bounds, 0);
+		int leftCount = 0;
+		float bestCost = Float.POSITIVE_INFINITY;
+		int bestSplit = -1;
+		for (int i = 1; i < BIN_COUNT; i++) {
+			unionBounds(bounds, binBounds, (i - 1) * 6);
+			leftCount += binCounts[i - 1];
+
+			int rightCount = (end - start) - leftCount;
+			if (leftCount == 0 || rightCount == 0) {
+				continue;
+			}
+
+			float cost = surfaceArea(bounds, 0) * leftCount + rightAreas[i] * rightCount;
+			if (cost < bestCost) {
+				bestCost = cost;
+				bestSplit = i;
+			}
+		}
+
+		float leafCost = surfaceArea(nodeBounds, node * 6) * (end - start);
+
+		return bestCost < leafCost ? bestSplit : -1;
+	}
+
+	/**
+	 * Move the entities that end up left of the split to the front of the range.
+	 *
+	 * @return The index of the first entity of the right half
+	 */
+	private int partition(int start, int end, int axis, float min, float scale, int split)
+	{
+		int left = start;
+		int right = end - 1;
+
+		while (left <= right) {
+			if (bin(left, axis, min, scale) < split) {
+				left++;
+			} else {
+				swap(left, right--);
+			}
+		}
+
+		return left;
+	}
+
+	/**
+	 * Get the bin the center of an entity falls in.
+	 */
+	private int bin(int item, int axis, float min, float scale)
+	{
+		return Math.min(BIN_COUNT - 1, (int) ((spheres[item * 4 + axis] - min) * scale));
+	}
+
+	private void swap(int a, int b)
+	{
+		Entity item = items[a];
+		items[a] = items[b];
+		items[b] = item;
+
+		for (int i = 0; i < 4; i++) {
+			float value = spheres[a * 4 + i];
+			spheres[a * 4 + i] = spheres[b * 4 + i];
+			spheres[b * 4 + i] = value;
+		}
+	}
+
+	private float[] centroidBounds(int start, int end)
+	{
+		float[] bounds = new float[6];
+		resetBounds(bounds, 0);
+
+		for (int i = start; i < end; i++) {
+			for (int a = 0; a < 3; a++) {
+				float center = spheres[i * 4 + a];
+				bounds[a] = Math.min(bounds[a], center);
+				bounds[a + 3] = Math.max(bounds[a + 3], center);
+			}
+		}
+
+		return bounds;
+	}
+
+	private void fitToItems(int node, int start, int end)
+	{
+		resetBounds(nodeBounds, node * 6);
+		for (int i = start; i < end; i++) {
+			growBounds(nodeBounds, node * 6, i);
+		}
+	}
+
+	private void fitToChildren(int node)
+	{
+		int b = node * 6;
+		int left = (node + 1) * 6;
+		int right = nodeRight[node] * 6;
+
+		for (int a = 0; a < 3; a++) {
+			nodeBounds[b + a] = Math.min(nodeBounds[left + a], nodeBounds[right + a]);
+			nodeBounds[b + a + 3] = Math.max(nodeBounds[left + a + 3], nodeBounds[right + a + 3]);
+		}
+	}
+
+	/**
+	 * Grow a box so it contains the bounding sphere of an entity.
+	 */
+	private void growBounds(float[] bounds, int offset, int item)
+	{
+		float radius = spheres[item * 4 + 3];
+
+		for (int a = 0; a < 3; a++) {
+			float center = spheres[item * 4 + a];
+			bounds[offset + a] = Math.min(bounds[offset + a], center - radius);
+			bounds[offset + a + 3] = Math.max(bounds[offset + a + 3], center + radius);
+		}
+	}
+
+	private static void unionBounds(float[] bounds, float[] other, int offset)
+	{
+		for (int a = 0; a < 3; a++) {
+			bounds[a] = Math.min(bounds[a], other[offset + a]);
+			bounds[a + 3] = Math.max(bounds[a + 3], other[offset + a + 3]);
+		}
+	}
+
+	/**
+	 * Make a box empty, so growing it with anything results in that thing.
+	 */
+	private static void resetBounds(float[] bounds, int offset)
+	{
+		for (int a = 0; a < 3; a++) {
+			bounds[offset + a] = Float.POSITIVE_INFINITY;
+			bounds[offset + a + 3] = Float.NEGATIVE_INFINITY;
+		}
+	}
+
+	private static float surfaceArea(float[] bounds, int offset)
+	{
+		float dx = bounds[offset + 3] - bounds[offset];
+		float dy = bounds[offset + 4] - bounds[offset + 1];
+		float dz = bounds[offset + 5] - bounds[offset + 2];
+
+		// An empty box has negative sizes.
+		if (dx < 0 || dy < 0 || dz < 0) {
+			return 0;
+		}
+
+		return 2 * (dx * dy + dy * dz + dz * dx);
+	}
+}
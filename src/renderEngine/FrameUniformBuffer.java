@@ -0,0 +1,166 @@
+package renderEngine;
+
+import entities.Camera;
+import entities.Light;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import toolbox.Maths;
+import toolbox.Std140Layout;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A uniform buffer with everything that is the same for a whole frame: the view,
+ * projection and view-projection matrices, the camera position and the light.</p>
+ *
+ * <p>Instead of uploading these as separate uniforms to every shader program, they
+ * are written into one buffer once per frame. Every shader program declares the
+ * same FrameData uniform block and reads it from binding point 0, so switching
+ * programs doesn't need any uploads at all. The matching block in the shaders:</p>
+ *
+ * <pre>
+ * layout(std140) uniform FrameData
+ * {
+ *     mat4 viewMatrix;
+ *     mat4 projectionMatrix;
+ *     mat4 viewProjectionMatrix;
+ *     vec3 cameraPosition;
+ *     vec3 lightPosition;
+ *     vec3 lightColour;
+ * };
+ * </pre>
+ */
+public class FrameUniformBuffer
+{
+	/**
+	 * The name of the uniform block in the shaders, and its binding point.
+	 */
+	public static final String BLOCK_NAME = "FrameData";
+	public static final int BINDING = 0;
+
+	private static final Std140Layout LAYOUT = new Std140Layout();
+
+	/**
+	 * The offsets of the members of the block, in the order of the shader.
+	 */
+	public static final int VIEW_MATRIX_OFFSET = LAYOUT.addMat4();
+	public static final int PROJECTION_MATRIX_OFFSET = LAYOUT.addMat4();
+	public static final int VIEW_PROJECTION_MATRIX_OFFSET = LAYOUT.addMat4();
+	public static final int CAMERA_POSITION_OFFSET = LAYOUT.addVec3();
+	public static final int LIGHT_POSITION_OFFSET = LAYOUT.addVec3();
+	public static final int LIGHT_COLOUR_OFFSET = LAYOUT.addVec3();
+
+	public static final int SIZE = LAYOUT.getSize();
+
+	private GraphicsBackend gl;
+
+	private int uboID;
+
+	// Reused every frame, so filling the buffer doesn't allocate anything.
+	private ByteBuffer data = BufferUtils.createByteBuffer(SIZE);
+	private Matrix4f viewMatrix = new Matrix4f();
+	private Matrix4f viewProjectionMatrix = new Matrix4f();
+
+	/**
+	 * Create the uniform buffer and bind it to its binding point.
+	 *
+	 * @param  gl  The graphics backend
+	 */
+	public FrameUniformBuffer(GraphicsBackend gl)
+	{
+		this.gl = gl;
+
+		uboID = gl.genBuffers();
+		gl.bindBuffer(GL31.GL_UNIFORM_BUFFER, uboID);
+		gl.bufferData(GL31.GL_UNIFORM_BUFFER, SIZE, GL15.GL_DYNAMIC_DRAW);
+		gl.bindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+
+		gl.bindBufferBase(GL31.GL_UNIFORM_BUFFER, BINDING, uboID);
+	}
+
+	/**
+	 * Fill the buffer with the data of this frame.
+	 *
+	 * @param  projectionMatrix  The projection matrix
+	 * @param  camera            The camera from which the player views the scene
+	 * @param  light             The lightsource to use in the scene
+	 */
+	public void update(Matrix4f projectionMatrix, Camera camera, Light light)
+	{
+		Maths.createViewMatrix(camera, viewMatrix);
+		Matrix4f.mul(projectionMatrix, viewMatrix, viewProjectionMatrix);
+
+		store(viewMatrix, projectionMatrix, viewProjectionMatrix, camera.getPosition(), light, data);
+
+		gl.bindBuffer(GL31.GL_UNIFORM_BUFFER, uboID);
+		gl.bufferSubData(GL31.GL_UNIFORM_BUFFER, 0, data);
+		gl.bindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+	}
+
+	/**
+	 * Pack the frame data into a buffer with the std140 layout. The buffer has to be
+	 * at least SIZE bytes, and is ready to be uploaded afterwards.
+	 *
+	 * @param  viewMatrix            The view matrix
+	 * @param  projectionMatrix      The projection matrix
+	 * @param  viewProjectionMatrix  The projection matrix times the view matrix
+	 * @param  cameraPosition        The position of the camera
+	 * @param  light                 The lightsource to use in the scene
+	 * @param  dest                  The buffer to pack the data in
+	 */
+	public static void store(Matrix4f viewMatrix, Matrix4f projectionMatrix, Matrix4f viewProjectionMatrix,
+		Vector3f cameraPosition, Light light, ByteBuffer dest)
+	{
+		dest.clear();
+
+		putMatrix(dest, VIEW_MATRIX_OFFSET, viewMatrix);
+		putMatrix(dest, PROJECTION_MATRIX_OFFSET, projectionMatrix);
+		putMatrix(dest, VIEW_PROJECTION_MATRIX_OFFSET, viewProjectionMatrix);
+		putVector(dest, CAMERA_POSITION_OFFSET, cameraPosition);
+		putVector(dest, LIGHT_POSITION_OFFSET, light.getPosition());
+		putVector(dest, LIGHT_COLOUR_OFFSET, light.getColour());
+
+		dest.limit(SIZE);
+	}
+
+	/**
+	 * Delete the uniform buffer.
+	 */
+	public void cleanUp()
+	{
+		gl.deleteBuffers(uboID);
+	}
+
+	/**
+	 * Store a matrix column by column, the way OpenGL expects it.
+	 */
+	private static void putMatrix(ByteBuffer dest, int offset, Matrix4f matrix)
+	{
+		dest.putFloat(offset, matrix.m00);
+		dest.putFloat(offset + 4, matrix.m01);
+		dest.putFloat(offset + 8, matrix.m02);
+		dest.putFloat(offset + 12, matrix.m03);
+		dest.putFloat(offset + 16, matrix.m10);
+		dest.putFloat(offset + 20, matrix.m11);
+		dest.putFloat(offset + 24, matrix.m12);
+		dest.putFloat(offset + 28, matrix.m13);
+		dest.putFloat(offset + 32, matrix.m20);
+		dest.putFloat(offset + 36, matrix.m21);
+		dest.putFloat(offset + 40, matrix.m22);
+		dest.putFloat(offset + 44, matrix.m23);
+		dest.putFloat(offset + 48, matrix.m30);
+		dest.putFloat(offset + 52, matrix.m31);
+		dest.putFloat(offset + 56, matrix.m32);
+		dest.putFloat(offset + 60, matrix.m33);
+	}
+
+	private static void putVector(ByteBuffer dest, int offset, Vector3f vector)
+	{
+		dest.putFloat(offset, vector.x);
+		dest.putFloat(offset + 4, vector.y);
+		dest.putFloat(offset + 8, vector.z);
+	}
+}
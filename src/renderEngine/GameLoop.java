@@ -0,0 +1,192 @@
+package renderEngine;
+
+/**
+ * <p>Schedules the simulation of the game at a fixed rate, independent of the
+ * frame rate.</p>
+ *
+ * <p>Every frame, the time since the last frame is added to an accumulator. The
+ * simulation then ticks as many times as whole ticks fit in the accumulator, and
+ * the rest is kept for the next frame. A fast machine renders several frames per
+ * tick, a slow one runs several ticks per frame, but the game always moves at the
+ * same speed, and a tick is always the same length so the simulation behaves the
+ * same everywhere.</p>
+ *
+ * <p>The time left in the accumulator is a fraction of a tick. The renderer uses
+ * it to interpolate between the state of the last two ticks, so movement stays
+ * smooth when the frame rate and the tick rate don't match.</p>
+ *
+ * <p>The time comes from a Clock, so a loop can be driven by a fake clock.</p>
+ */
+public class GameLoop
+{
+	/**
+	 * Something that is simulated at the fixed rate of the game loop.
+	 */
+	public interface Simulation
+	{
+		/**
+		 * Advance the simulation by one tick.
+		 *
+		 * @param  delta  The length of a tick in seconds
+		 */
+		void tick(float delta);
+	}
+
+	public static final int DEFAULT_TICK_RATE = 60;
+
+	/**
+	 * The longest frame time that is simulated. After a long stall (loading, a
+	 * breakpoint, dragging the window) the simulation would otherwise have to
+	 * catch up with a lot of ticks, which makes the next frame slow as well, and
+	 * so on. The game slows down instead.
+	 */
+	private static final long MAX_FRAME_TIME = 250000000L;
+
+	/**
+	 * How much the newest frame time counts in the average frame time.
+	 */
+	private static final double AVERAGE_WEIGHT = 0.05;
+
+	private final Clock clock;
+	private final long tickLength;
+	private final float tickSeconds;
+
+	private long lastTime;
+	private boolean started;
+	private long accumulator;
+
+	private long frameTime;
+	private double averageFrameTime;
+	private long frameCount;
+	private long tickCount;
+	private float alpha;
+
+	/**
+	 * Create a game loop that uses the system clock.
+	 *
+	 * @param  tickRate  The number of ticks per second
+	 */
+	public GameLoop(int tickRate)
+	{
+		this(Clock.SYSTEM, tickRate);
+	}
+
+	/**
+	 * Create a game loop.
+	 *
+	 * @param  clock     The clock to measure the time with
+	 * @param  tickRate  The number of ticks per second
+	 */
+	public GameLoop(Clock clock, int tickRate)
+	{
+		if (tickRate <= 0) {
+			throw new IllegalArgumentException("The tick rate must be positive, got " + tickRate);
+		}
+
+		this.clock = clock;
+		this.tickLength = Math.round(1e9 / tickRate);
+		this.tickSeconds = tickLength / 1e9f;
+	}
+
+	/**
+	 * Start measuring time. This is done by the first frame as well, but a loop
+	 * can be started earlier to count the time between creating the window and
+	 * the first frame.
+	 */
+	public void start()
+	{
+		lastTime = clock.nanoTime();
+		started = true;
+	}
+
+	/**
+	 * Run the ticks that are due this frame, and work out how far the frame is
+	 * between the last two ticks.
+	 *
+	 * @param  simulation  The simulation to tick
+	 * @return The number of ticks that were run
+	 */
+	public int runFrame(Simulation simulation)
+	{
+		if (! started) {
+			start();
+		}
+
+		long now = clock.nanoTime();
+		frameTime = now - lastTime;
+		lastTime = now;
+
+		averageFrameTime = frameCount == 0
+			? frameTime
+			: averageFrameTime + (frameTime - averageFrameTime) * AVERAGE_WEIGHT;
+		frameCount++;
+
+		// The time is kept in whole nanoseconds, so no time is lost to rounding
+		// however many frames are run.
+		accumulator += Math.min(frameTime, MAX_FRAME_TIME);
+
+		int ticks = 0;
+		while (accumulator >= tickLength) {
+			simulation.tick(tickSeconds);
+			accumulator -= tickLength;
+			ticks++;
+		}
+		tickCount += ticks;
+
+		alpha = (float) accumulator / tickLength;
+
+		return ticks;
+	}
+
+	/**
+	 * Get how far the current frame is between the last tick and the next one,
+	 * to interpolate the state of the last two ticks with.
+	 *
+	 * @return A value from 0 (at the last tick) up to 1 (at the next tick)
+	 */
+	public float getAlpha()
+	{
+		return alpha;
+	}
+
+	/**
+	 * Get the length of a tick.
+	 *
+	 * @return The length of a tick in seconds
+	 */
+	public float getTickSeconds()
+	{
+		return tickSeconds;
+	}
+
+	/**
+	 * Get the time between the start of the last frame and the one before it.
+	 *
+	 * @return The frame time in milliseconds
+	 */
+	public float getFrameTime()
+	{
+		return frameTime / 1e6f;
+	}
+
+	/**
+	 * Get the frame time averaged over roughly the last few dozen frames, which is
+	 * steadier than the time of a single frame.
+	 *
+	 * @return The average frame time in milliseconds
+	 */
+	public float getAverageFrameTime()
+	{
+		return (float) (averageFrameTime / 1e6);
+	}
+
+	public long getFrameCount()
+	{
+		return frameCount;
+	}
+
+	public long getTickCount()
+	{
+		return tickCount;
+	}
+}
@@ -0,0 +1,179 @@
+package renderEngine;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * <p>All the OpenGL and window calls the engine makes.</p>
+ *
+ * <p>The engine never calls LWJGL directly, but always goes through a backend. The
+ * LwjglBackend forwards every call to OpenGL, while the RecordingBackend doesn't
+ * draw anything at all and only counts the calls. That allows running (and timing)
+ * the whole render path on a machine without a GPU.</p>
+ *
+ * <p>The methods are named after the OpenGL functions they stand for, without the
+ * "gl" prefix, and take the same arguments. The constants from the LWJGL GL classes
+ * (GL11.GL_TRIANGLES and so on) are used for the arguments.</p>
+ */
+public interface GraphicsBackend
+{
+	// Window
+
+	void createDisplay(int width, int height, String title);
+
+	/**
+	 * Show the frame, and wait to stay below the frame rate cap.
+	 *
+	 * @param  fpsCap  The largest number of frames per second, 0 to not wait at all
+	 */
+	void updateDisplay(int fpsCap);
+
+	void setVSync(boolean enabled);
+
+	boolean isCloseRequested();
+
+	int getDisplayWidth();
+
+	int getDisplayHeight();
+
+	void destroyDisplay();
+
+	// State
+
+	void enable(int capability);
+
+	void cullFace(int mode);
+
+	void viewport(int x, int y, int width, int height);
+
+	void clearColor(float red, float green, float blue, float alpha);
+
+	void clear(int mask);
+
+	float getFloat(int name);
+
+	// Drawing
+
+	void drawElements(int mode, int count, int type, long indicesOffset);
+
+	void drawElementsInstanced(int mode, int count, int type, long indicesOffset, int instanceCount);
+
+	// Vertex arrays and buffers
+
+	int genVertexArrays();
+
+	void bindVertexArray(int array);
+
+	void deleteVertexArrays(int array);
+
+	void enableVertexAttribArray(int index);
+
+	void disableVertexAttribArray(int index);
+
+	void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset);
+
+	void vertexAttribDivisor(int index, int divisor);
+
+	int genBuffers();
+
+	void bindBuffer(int target, int buffer);
+
+	void bufferData(int target, FloatBuffer data, int usage);
+
+	void bufferData(int target, IntBuffer data, int usage);
+
+	void bufferData(int target, ByteBuffer data, int usage);
+
+	void bufferData(int target, long size, int usage);
+
+	void bufferSubData(int target, long offset, FloatBuffer data);
+
+	void bufferSubData(int target, long offset, ByteBuffer data);
+
+	void bindBufferBase(int target, int index, int buffer);
+
+	void deleteBuffers(int buffer);
+
+	// Textures
+
+	int genTextures();
+
+	void activeTexture(int texture);
+
+	void bindTexture(int target, int texture);
+
+	void texParameteri(int target, int name, int value);
+
+	void pixelStorei(int name, int value);
+
+	void texImage2D(int target, int level, int internalFormat, int width, int height, int border, int format, int type, ByteBuffer pixels);
+
+	void compressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border, ByteBuffer data);
+
+	void deleteTextures(int texture);
+
+	void texBuffer(int target, int internalFormat, int buffer);
+
+	// Samplers
+
+	int genSamplers();
+
+	void bindSampler(int unit, int sampler);
+
+	void samplerParameteri(int sampler, int name, int value);
+
+	void samplerParameterf(int sampler, int name, float value);
+
+	void deleteSamplers(int sampler);
+
+	// Shaders
+
+	int createShader(int type);
+
+	void shaderSource(int shader, CharSequence source);
+
+	void compileShader(int shader);
+
+	int getShaderi(int shader, int name);
+
+	String getShaderInfoLog(int shader, int maxLength);
+
+	void deleteShader(int shader);
+
+	int createProgram();
+
+	void attachShader(int program, int shader);
+
+	void detachShader(int program, int shader);
+
+	void bindAttribLocation(int program, int index, CharSequence name);
+
+	void linkProgram(int program);
+
+	void validateProgram(int program);
+
+	int getProgrami(int program, int name);
+
+	String getProgramInfoLog(int program, int maxLength);
+
+	void useProgram(int program);
+
+	void deleteProgram(int program);
+
+	int getUniformLocation(int program, CharSequence name);
+
+	int getUniformBlockIndex(int program, CharSequence name);
+
+	void uniformBlockBinding(int program, int blockIndex, int binding);
+
+	void uniform1f(int location, float value);
+
+	void uniform1i(int location, int value);
+
+	void uniform3f(int location, float x, float y, float z);
+
+	void uniform4f(int location, float x, float y, float z, float w);
+
+	void uniformMatrix4(int location, boolean transpose, FloatBuffer matrix);
+}
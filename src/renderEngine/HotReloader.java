@@ -0,0 +1,391 @@
+package renderEngine;
+
+import models.ModelData;
+import models.RawModel;
+import shaders.ShaderProgram;
+import textures.ModelTexture;
+import textures.TextureDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <p>Reloads shaders, models and textures when their files change, so they can be
+ * edited while the game runs.</p>
+ *
+ * <p>A thread of its own waits on a WatchService for changes in the folders of the
+ * watched files, and queues the changed files. OpenGL can only be used on the GL
+ * thread, so nothing is reloaded there: the game calls processChanges() between
+ * frames, which reloads every changed file once, however many times it changed
+ * since the last frame. When the watch service lost events, because too many files
+ * changed at once (a bulk save or a checkout), every watched file is reloaded.</p>
+ *
+ * <p>A reload only replaces what is in use when the new version loads: a shader
+ * that doesn't compile, or a file that is still being written, keeps the old
+ * version on the screen, and the next change of the file tries again.</p>
+ *
+ * <p>The latency of a reload is measured from the time the watch thread received
+ * the change to the end of the first frame that shows it: the game calls
+ * frameShown() after the frame that was drawn after processChanges().</p>
+ */
+public class HotReloader
+{
+	private WatchService watchService;
+	private Thread watchThread;
+
+	// The folders that are registered with the watch service.
+	private Set<Path> folders = new HashSet<>();
+
+	// What to do when a file changes. This is only used on the GL thread.
+	private Map<Path, List<BooleanSupplier>> reloads = new HashMap<>();
+
+	/**
+	 * A changed file, and when the watch thread received the change.
+	 */
+	private static class Change
+	{
+		// Null when events were lost, and every watched file may have changed.
+		final Path file;
+		final long receivedNanos;
+
+		Change(Path file, long receivedNanos)
+		{
+			this.file = file;
+			this.receivedNanos = receivedNanos;
+		}
+	}
+
+	// The files that changed, from the watch thread to the GL thread.
+	private Queue<Change> changes = new ConcurrentLinkedQueue<>();
+
+	// When the changes that were reloaded, but not shown yet, were received.
+	private List<Long> shownPending = new ArrayList<>();
+
+	private int reloadCount;
+	private int failedCount;
+	private int overflowCount;
+	private int shownCount;
+	private long lastLatencyNanos;
+	private long totalLatencyNanos;
+	private long maxLatencyNanos;
+
+	/**
+	 * Create a new hot reloader, and start watching.
+	 *
+	 * @throws IOException When the file system can't be watched
+	 */
+	public HotReloader() throws IOException
+	{
+		watchService = FileSystems.getDefault().newWatchService();
+
+		watchThread = new Thread(this::watch, "hot-reload");
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	/**
+	 * Run something when a file changes. It runs on the GL thread, in
+	 * processChanges().
+	 *
+	 * @param  file    The file to watch
+	 * @param  reload  Reloads the file, and returns false if that failed
+	 * @throws IOException When the folder of the file can't be watched
+	 */
+	public void watch(File file, BooleanSupplier reload) throws IOException
+	{
+		Path path = file.toPath().toAbsolutePath().normalize();
+		Path folder = path.getParent();
+
+		if (folders.add(folder)) {
+			folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+
+		reloads.computeIfAbsent(path, key -> new ArrayList<>()).add(reload);
+	}
+
+	/**
+	 * Compile a shader program again when its vertex or fragment shader changes.
+	 *
+	 * @param  program  The shader program
+	 * @throws IOException When the shader folder can't be watched
+	 */
+	public void watchShader(ShaderProgram program) throws IOException
+	{
+		watch(new File(program.getVertexFile()), program::reload);
+		watch(new File(program.getFragmentFile()), program::reload);
+	}
+
+	/**
+	 * Load a texture again when its PNG changes. The model texture gets the new
+	 * texture, and the old one is deleted. The PNG changed, so the compressed
+	 * texture cache isn't read but written again. A texture of a residency manager
+	 * is watched with watchTexture(String, ResidencyManager) instead.
+	 *
+	 * @param  fileName  The name of the texture (relative to the res folder)
+	 * @param  texture   The model texture to give the new texture
+	 * @param  loader    The loader the texture was loaded with
+	 * @throws IOException When the res folder can't be watched
+	 */
+	public void watchTexture(String fileName, ModelTexture texture, Loader loader) throws IOException
+	{
+		watch(TextureCache.getSourceFile(fileName), () -> {
+			int textureID;
+			try {
+				textureID = loader.isCompressTextures()
+					? loader.loadCompressedTexture(TextureCache.reload(fileName))
+					: loader.loadTexture(TextureDecoder.decode(TextureCache.getSourceFile(fileName)));
+			} catch (IOException e) {
+				System.err.println("Could not reload texture [" + fileName + "]");
+				e.printStackTrace();
+				return false;
+			}
+
+			loader.deleteTexture(texture);
+			texture.setID(textureID);
+
+			return true;
+		});
+	}
+
+	/**
+	 * Load a texture of a residency manager again when its PNG changes. The manager
+	 * replaces the texture when it is resident, and keeps its memory count right.
+	 *
+	 * @param  fileName   The name of the texture (relative to the res folder)
+	 * @param  residency  The residency manager the texture was loaded with
+	 * @throws IOException When the res folder can't be watched
+	 */
+	public void watchTexture(String fileName, ResidencyManager residency) throws IOException
+	{
+		watch(TextureCache.getSourceFile(fileName), () -> residency.reloadTexture(fileName));
+	}
+
+	/**
+	 * Load an OBJ model again when the file changes. The model gets the new VAO,
+	 * and the old one is deleted. The mesh cache is written again as well. A model
+	 * of a residency manager is watched with watchModel(String, ResidencyManager)
+	 * instead.
+	 *
+	 * @param  fileName  The name of the model (relative to the res folder)
+	 * @param  model     The model to give the new VAO
+	 * @param  loader    The loader the model was loaded with
+	 * @throws IOException When the res folder can't be watched
+	 */
+	public void watchModel(String fileName, RawModel model, Loader loader) throws IOException
+	{
+		watch(OBJLoader.getObjFile(fileName), () -> {
+			ModelData data;
+			try {
+				data = OBJLoader.parseAndCache(OBJLoader.getObjFile(fileName), OBJLoader.getCacheFile(fileName), new OBJFileParser());
+			} catch (IOException e) {
+				System.err.println("Could not reload model [" + fileName + "]");
+				e.printStackTrace();
+				return false;
+			}
+
+			RawModel loaded = loader.loadToVAO(data.getVertices(), data.getTextureCoords(), data.getNormals(), data.getIndices());
+			loader.deleteModel(model);
+			model.replaceBuffers(loaded);
+			model.setBounds(data.getBounds());
+
+			return true;
+		});
+	}
+
+	/**
+	 * Load an OBJ model of a residency manager again when the file changes. The
+	 * manager gives a resident model the new VAO and keeps its memory count right.
+	 * An evicted model isn't loaded, it gets the new version when it is drawn.
+	 *
+	 * @param  fileName   The name of the model (relative to the res folder)
+	 * @param  residency  The residency manager the model was loaded with
+	 * @throws IOException When the res folder can't be watched
+	 */
+	public void watchModel(String fileName, ResidencyManager residency) throws IOException
+	{
+		watch(OBJLoader.getObjFile(fileName), () -> residency.reloadModel(fileName));
+	}
+
+	/**
+	 * Reload every watched file that changed since the last call. Call this on the
+	 * GL thread, before drawing a frame.
+	 *
+	 * @return The number of files that were reloaded
+	 */
+	public int processChanges()
+	{
+		if (changes.isEmpty()) {
+			return 0;
+		}
+
+		// The first time a file changed since the last call counts for the latency.
+		Map<Path, Long> changed = new LinkedHashMap<>();
+		Change change;
+		while ((change = changes.poll()) != null) {
+			if (change.file != null) {
+				changed.putIfAbsent(change.file, change.receivedNanos);
+				continue;
+			}
+
+			// It isn't known which files changed, so every one of them is reloaded.
+			overflowCount++;
+			for (Path file : reloads.keySet()) {
+				changed.putIfAbsent(file, change.receivedNanos);
+			}
+		}
+
+		int reloaded = 0;
+		for (Map.Entry<Path, Long> entry : changed.entrySet()) {
+			List<BooleanSupplier> actions = reloads.get(entry.getKey());
+			if (actions == null) {
+				continue;
+			}
+
+			boolean success = true;
+			for (BooleanSupplier action : actions) {
+				success &= action.getAsBoolean();
+			}
+
+			if (! success) {
+				failedCount++;
+				continue;
+			}
+
+			shownPending.add(entry.getValue());
+			reloadCount++;
+			reloaded++;
+		}
+
+		return reloaded;
+	}
+
+	/**
+	 * Measure the latency of the reloads of the last processChanges() call. Call
+	 * this on the GL thread, after the frame is shown.
+	 */
+	public void frameShown()
+	{
+		if (shownPending.isEmpty()) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		for (long receivedNanos : shownPending) {
+			lastLatencyNanos = now - receivedNanos;
+			totalLatencyNanos += lastLatencyNanos;
+			maxLatencyNanos = Math.max(maxLatencyNanos, lastLatencyNanos);
+			shownCount++;
+		}
+		shownPending.clear();
+	}
+
+	/**
+	 * Get the number of changed files that were reloaded.
+	 *
+	 * @return The number of reloads
+	 */
+	public int getReloadCount()
+	{
+		return reloadCount;
+	}
+
+	/**
+	 * Get the number of changed files that couldn't be reloaded, and kept their old
+	 * version.
+	 *
+	 * @return The number of failed reloads
+	 */
+	public int getFailedCount()
+	{
+		return failedCount;
+	}
+
+	/**
+	 * Get the number of times the watch service lost events, and every watched file
+	 * was reloaded.
+	 *
+	 * @return The number of overflows
+	 */
+	public int getOverflowCount()
+	{
+		return overflowCount;
+	}
+
+	/**
+	 * Get the time from receiving the change of a file to the end of the first frame
+	 * that shows it, for the last reload that was shown.
+	 *
+	 * @return The latency in milliseconds
+	 */
+	public double getLastLatencyMillis()
+	{
+		return lastLatencyNanos / 1e6;
+	}
+
+	public double getAverageLatencyMillis()
+	{
+		return shownCount == 0 ? 0 : totalLatencyNanos / 1e6 / shownCount;
+	}
+
+	public double getMaxLatencyMillis()
+	{
+		return maxLatencyNanos / 1e6;
+	}
+
+	/**
+	 * Stop watching.
+	 */
+	public void cleanUp()
+	{
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Wait for changes and queue the changed files, until the watch service is
+	 * closed. This runs on the watch thread.
+	 */
+	private void watch()
+	{
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				Path folder = (Path) key.watchable();
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					// Too many events were lost to know which files changed.
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						changes.add(new Change(null, System.nanoTime()));
+						continue;
+					}
+
+					changes.add(new Change(folder.resolve((Path) event.context()), System.nanoTime()));
+				}
+
+				key.reset();
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// cleanUp() closed the watch service.
+		}
+	}
+}
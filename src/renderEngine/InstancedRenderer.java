@@ -0,0 +1,290 @@
+package renderEngine;
+
+import entities.Entity;
+import models.RawModel;
+import models.TexturedModel;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.*;
+import shaders.InstancedShader;
+import textures.ModelTexture;
+
+import java.nio.FloatBuffer;
+
+/**
+ * <p>Renders every batch of entities with a single instanced draw call.</p>
+ *
+ * <p>The normal renderer loads a transformation matrix uniform and issues a draw
+ * call for every single entity. This renderer instead writes the transformation
+ * matrices of a whole batch into one instance VBO, and draws all of them at once
+ * with glDrawElementsInstanced. The vertex shader reads the matrix of the instance
+ * it is drawing from the instance VBO.</p>
+ *
+ * <p>The region of the texture every instance reads from is in the instance VBO as
+ * well. Materials with textures in the same atlas page then only differ in their
+ * region, and are drawn by the same draw call.</p>
+ *
+ * <p>The instance VBO is refilled for every batch. Before writing new data into it,
+ * the old storage is orphaned (by calling glBufferData without data, with the size
+ * of the batch), so the driver can hand us fresh memory instead of waiting until
+ * the GPU is done with the previous batch.</p>
+ */
+public class InstancedRenderer
+{
+	/**
+	 * The maximum number of instances drawn with a single draw call. Bigger batches
+	 * are split in multiple draw calls.
+	 */
+	private static final int MAX_INSTANCES = 10000;
+
+	// A 4x4 matrix consists of 16 floats, followed by the 4 floats of the texture
+	// region.
+	private static final int INSTANCE_DATA_LENGTH = 20;
+
+	private InstancedShader shader;
+
+	private GraphicsBackend gl;
+
+	private SamplerCache samplers;
+
+	private ResidencyManager residency;
+
+	private int instanceVboID;
+
+	private FloatBuffer instanceBuffer = BufferUtils.createFloatBuffer(MAX_INSTANCES * INSTANCE_DATA_LENGTH);
+
+	/**
+	 * Create a new instanced renderer.
+	 *
+	 * @param  gl        The graphics backend to render with
+	 * @param  shader    The instanced shader
+	 * @param  samplers  The samplers with the filter settings of the materials
+	 */
+	public InstancedRenderer(GraphicsBackend gl, InstancedShader shader, SamplerCache samplers)
+	{
+		this.gl = gl;
+		this.shader = shader;
+		this.samplers = samplers;
+
+		instanceVboID = gl.genBuffers();
+	}
+
+	/**
+	 * Set the residency manager that is told which models and textures are drawn,
+	 * so it can load evicted ones again first.
+	 *
+	 * @param  residency  The residency manager, or null for none
+	 */
+	public void setResidencyManager(ResidencyManager residency)
+	{
+		this.residency = residency;
+	}
+
+	/**
+	 * Render all the entities on the screen, one draw call per batch. A batch is a
+	 * run of entities in the sorted queue that use the same model, texture (or atlas
+	 * page), sampler and shine variables. Like the normal renderer, state is only
+	 * changed when the next batch needs a different one.
+	 *
+	 * @param  queue  The sorted render queue
+	 */
+	public void render(RenderQueue queue)
+	{
+		int currentVao = 0;
+		int currentTexture = 0;
+		int currentSampler = 0;
+		ModelTexture currentMaterial = null;
+
+		gl.activeTexture(GL13.GL_TEXTURE0);
+
+		int start = 0;
+		while (start < queue.size()) {
+			TexturedModel model = queue.get(start).getModel();
+			RawModel rawModel = queue.getRawModel(start);
+			ModelTexture texture = model.getTexture();
+
+			// An evicted texture has ID 0 until it is loaded again, so it never ends
+			// up in the batch of a resident texture, and starts a batch of its own. One
+			// that couldn't be loaded is skipped.
+			if (residency != null && (! residency.use(rawModel) || ! residency.use(texture))) {
+				start++;
+				continue;
+			}
+
+			// Find the end of the batch.
+			int end = start + 1;
+			while (end < queue.size() && end - start < MAX_INSTANCES
+				&& rawModel == queue.getRawModel(end) && isSameBatch(model, queue.get(end).getModel())) {
+				end++;
+			}
+
+			// The other materials of an atlas page in the batch are drawn as well, so
+			// they are marked as used too, or they would be evicted while on screen.
+			if (residency != null) {
+				ModelTexture lastUsed = texture;
+				for (int i = start + 1; i < end; i++) {
+					ModelTexture other = queue.get(i).getModel().getTexture();
+					if (other != lastUsed) {
+						residency.use(other);
+						lastUsed = other;
+					}
+				}
+			}
+
+			if (rawModel.getVaoID() != currentVao) {
+				bindRawModel(rawModel);
+				shader.loadVertexFormat(rawModel);
+				currentVao = rawModel.getVaoID();
+			}
+
+			if (texture.getID() != currentTexture) {
+				gl.bindTexture(GL11.GL_TEXTURE_2D, texture.getID());
+				currentTexture = texture.getID();
+			}
+
+			// Different materials can still have the same shine variables, the shader
+			// skips the upload itself when the values didn't change.
+			if (texture != currentMaterial) {
+				int sampler = samplers.getSampler(texture);
+				if (sampler != currentSampler) {
+					gl.bindSampler(0, sampler);
+					currentSampler = sampler;
+				}
+
+				shader.loadShineVariables(texture.getShineDamper(), texture.getReflectivity());
+				currentMaterial = texture;
+			}
+
+			storeInstanceData(queue, start, end - start);
+			gl.drawElementsInstanced(GL11.GL_TRIANGLES, rawModel.getVertexCount(), rawModel.getIndexType(), 0, end - start);
+
+			start = end;
+		}
+
+		if (currentVao != 0) {
+			unbindTexturedModel();
+		}
+
+		// A bound sampler overrides the settings of any texture on the unit, so it
+		// can't stay bound for the other renderers.
+		if (currentSampler != 0) {
+			gl.bindSampler(0, 0);
+		}
+	}
+
+	/**
+	 * Delete the instance VBO.
+	 */
+	public void cleanUp()
+	{
+		gl.deleteBuffers(instanceVboID);
+	}
+
+	/**
+	 * Check whether two textured models with the same level of detail can be drawn
+	 * with the same draw call. Materials in an atlas share a texture, so they also
+	 * need the same sampler: the draw call only uses the sampler of the first.
+	 */
+	private boolean isSameBatch(TexturedModel a, TexturedModel b)
+	{
+		ModelTexture first = a.getTexture();
+		ModelTexture second = b.getTexture();
+
+		return first == second || (
+			first.getID() == second.getID()
+			&& first.getShineDamper() == second.getShineDamper()
+			&& first.getReflectivity() == second.getReflectivity()
+			&& samplers.getSampler(first) == samplers.getSampler(second)
+		);
+	}
+
+	/**
+	 * Bind the VAO of a model, and make sure the VAO reads the transformation
+	 * matrices from the instance VBO.
+	 *
+	 * @param  rawModel  The model to prepare
+	 */
+	private void bindRawModel(RawModel rawModel)
+	{
+		gl.bindVertexArray(rawModel.getVaoID());
+
+		// The attribute pointers are stored in the VAO, so they only have to be set
+		// up once for every VAO. The model keeps track of that, because the ID of a
+		// deleted VAO can be given to a new one.
+		if (! rawModel.hasInstanceAttributes()) {
+			addInstanceAttributes();
+			rawModel.setInstanceAttributes(true);
+		}
+
+		gl.enableVertexAttribArray(0);
+		gl.enableVertexAttribArray(1);
+		gl.enableVertexAttribArray(2);
+		for (int i = 0; i < 4; i++) {
+			gl.enableVertexAttribArray(InstancedShader.TRANSFORMATION_ATTRIBUTE + i);
+		}
+		gl.enableVertexAttribArray(InstancedShader.TEXTURE_REGION_ATTRIBUTE);
+	}
+
+	/**
+	 * Point the transformation matrix and texture region attributes of the bound VAO
+	 * to the instance VBO. Every column of the matrix is a vec4 attribute of its own,
+	 * and the divisor of 1 makes them advance once per instance instead of once per
+	 * vertex.
+	 */
+	private void addInstanceAttributes()
+	{
+		gl.bindBuffer(GL15.GL_ARRAY_BUFFER, instanceVboID);
+
+		for (int column = 0; column < 4; column++) {
+			int attribute = InstancedShader.TRANSFORMATION_ATTRIBUTE + column;
+
+			gl.vertexAttribPointer(attribute, 4, GL11.GL_FLOAT, false, INSTANCE_DATA_LENGTH * 4, column * 4 * 4);
+			gl.vertexAttribDivisor(attribute, 1);
+		}
+
+		gl.vertexAttribPointer(InstancedShader.TEXTURE_REGION_ATTRIBUTE, 4, GL11.GL_FLOAT, false, INSTANCE_DATA_LENGTH * 4, 16 * 4);
+		gl.vertexAttribDivisor(InstancedShader.TEXTURE_REGION_ATTRIBUTE, 1);
+
+		gl.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Write the transformation matrices and texture regions of a batch into the
+	 * instance VBO.
+	 *
+	 * @param  queue  The sorted render queue
+	 * @param  start  The first entity of the batch
+	 * @param  count  The number of entities in the batch
+	 */
+	private void storeInstanceData(RenderQueue queue, int start, int count)
+	{
+		instanceBuffer.clear();
+		for (int i = start; i < start + count; i++) {
+			Entity entity = queue.get(i);
+			entity.storeTransformationMatrix(instanceBuffer);
+			instanceBuffer.put(entity.getModel().getTexture().getTextureRegion());
+		}
+		instanceBuffer.flip();
+
+		gl.bindBuffer(GL15.GL_ARRAY_BUFFER, instanceVboID);
+		// Only as much new storage as the batch needs, a batch of one instance
+		// shouldn't make the driver allocate room for MAX_INSTANCES.
+		gl.bufferData(GL15.GL_ARRAY_BUFFER, (long) instanceBuffer.remaining() * 4, GL15.GL_STREAM_DRAW);
+		gl.bufferSubData(GL15.GL_ARRAY_BUFFER, 0, instanceBuffer);
+		gl.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Unbind the VAO and all of its attribute arrays.
+	 */
+	private void unbindTexturedModel()
+	{
+		gl.disableVertexAttribArray(0);
+		gl.disableVertexAttribArray(1);
+		gl.disableVertexAttribArray(2);
+		for (int i = 0; i < 4; i++) {
+			gl.disableVertexAttribArray(InstancedShader.TRANSFORMATION_ATTRIBUTE + i);
+		}
+		gl.disableVertexAttribArray(InstancedShader.TEXTURE_REGION_ATTRIBUTE);
+		gl.bindVertexArray(0);
+	}
+}
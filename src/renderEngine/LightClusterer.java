@@ -0,0 +1,366 @@
+package renderEngine;
+
+import entities.Light;
+import org.lwjgl.util.vector.Matrix4f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Sorts point lights into the clusters of the view frustum they can reach.</p>
+ *
+ * <p>The view frustum is cut into a grid of clusters: tiles on the screen, and slices
+ * in depth. The slices get thicker further away from the camera (every slice is the
+ * same factor deeper than the one before it), so the clusters stay roughly cube
+ * shaped. Every frame, every light is added to the list of each cluster its sphere
+ * of influence touches. A fragment then only has to look up its own cluster, and
+ * only light itself with the lights in that list instead of with all lights.</p>
+ *
+ * <p>The result is a compact list of light indices: the lights of cluster 0, then the
+ * lights of cluster 1, and so on, with an offset and a count for every cluster.
+ * Cluster (x, y, z) has number x + tilesX * (y + tilesY * z).</p>
+ *
+ * <p>With more than one worker, the slices are divided between the workers. The
+ * clusters of different workers never overlap, so they can fill the shared arrays
+ * without any locking.</p>
+ */
+public class LightClusterer
+{
+	private int tilesX;
+	private int tilesY;
+	private int slices;
+
+	private float nearPlane;
+	private float farPlane;
+	private float logDepthRatio;
+
+	private ExecutorService workers;
+	private List<Callable<Void>> countTasks = new ArrayList<>();
+	private List<Callable<Void>> fillTasks = new ArrayList<>();
+
+	// The clusters every light touches, as (minX, maxX, minY, maxY, minZ, maxZ).
+	// A light that is out of view has minZ > maxZ.
+	private int[] lightClusters = new int[64 * 6];
+	private int lightCount;
+
+	private int[] clusterOffsets;
+	private int[] clusterCounts;
+	private int[] lightIndices = new int[1024];
+	private int lightIndexCount;
+
+	/**
+	 * Create a new light clusterer.
+	 *
+	 * @param  tilesX       The number of tiles across the screen
+	 * @param  tilesY       The number of tiles from the top to the bottom of the screen
+	 * @param  slices       The number of depth slices
+	 * @param  nearPlane    The distance to the near plane
+	 * @param  farPlane     The distance to the far plane
+	 * @param  workerCount  The number of threads that assign lights
+	 */
+	public LightClusterer(int tilesX, int tilesY, int slices, float nearPlane, float farPlane, int workerCount)
+	{
+		this.tilesX = tilesX;
+		this.tilesY = tilesY;
+		this.slices = slices;
+		this.nearPlane = nearPlane;
+		this.farPlane = farPlane;
+		this.logDepthRatio = (float) Math.log(farPlane / nearPlane);
+
+		clusterOffsets = new int[getClusterCount()];
+		clusterCounts = new int[getClusterCount()];
+
+		int chunks = Math.max(1, Math.min(workerCount, slices));
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			int firstSlice = slices * chunk / chunks;
+			int endSlice = slices * (chunk + 1) / chunks;
+
+			countTasks.add(() -> {
+				countLights(firstSlice, endSlice);
+				return null;
+			});
+			fillTasks.add(() -> {
+				fillLights(firstSlice, endSlice);
+				return null;
+			});
+		}
+
+		if (chunks > 1) {
+			AtomicInteger threadNumber = new AtomicInteger();
+			workers = Executors.newFixedThreadPool(chunks, runnable -> {
+				Thread thread = new Thread(runnable, "light-cluster-worker-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Assign the lights to the clusters they reach.
+	 *
+	 * @param  lights            The point lights
+	 * @param  viewMatrix        The view matrix of the camera
+	 * @param  projectionMatrix  The projection matrix
+	 */
+	public void cluster(List<Light> lights, Matrix4f viewMatrix, Matrix4f projectionMatrix)
+	{
+		lightCount = lights.size();
+		if (lightClusters.length < lightCount * 6) {
+			lightClusters = new int[lightCount * 6];
+		}
+
+		for (int i = 0; i < lightCount; i++) {
+			findClusters(lights.get(i), viewMatrix, projectionMatrix.m00, projectionMatrix.m11, i * 6);
+		}
+
+		run(countTasks);
+
+		// Every cluster gets a consecutive part of the index list.
+		lightIndexCount = 0;
+		for (int cluster = 0; cluster < clusterCounts.length; cluster++) {
+			clusterOffsets[cluster] = lightIndexCount;
+			lightIndexCount += clusterCounts[cluster];
+		}
+
+		if (lightIndices.length < lightIndexCount) {
+			lightIndices = new int[Math.max(lightIndexCount, lightIndices.length * 2)];
+		}
+
+		run(fillTasks);
+	}
+
+	/**
+	 * Get the number of the cluster a point in view space falls in, the way the
+	 * fragment shader finds it.
+	 *
+	 * @param  ndcX   The x coordinate on the screen, from -1 to 1
+	 * @param  ndcY   The y coordinate on the screen, from -1 to 1
+	 * @param  depth  The distance in front of the camera
+	 * @return The cluster number
+	 */
+	public int getCluster(float ndcX, float ndcY, float depth)
+	{
+		return toTileX(ndcX) + tilesX * (toTileY(ndcY) + tilesY * toSlice(depth));
+	}
+
+	public int getClusterCount()
+	{
+		return tilesX * tilesY * slices;
+	}
+
+	public int getTilesX()
+	{
+		return tilesX;
+	}
+
+	public int getTilesY()
+	{
+		return tilesY;
+	}
+
+	public int getSlices()
+	{
+		return slices;
+	}
+
+	public float getNearPlane()
+	{
+		return nearPlane;
+	}
+
+	public float getFarPlane()
+	{
+		return farPlane;
+	}
+
+	/**
+	 * Get the index in the light index list of the first light of every cluster.
+	 *
+	 * @return The offsets, by cluster number
+	 */
+	public int[] getClusterOffsets()
+	{
+		return clusterOffsets;
+	}
+
+	/**
+	 * Get the number of lights of every cluster.
+	 *
+	 * @return The counts, by cluster number
+	 */
+	public int[] getClusterCounts()
+	{
+		return clusterCounts;
+	}
+
+	/**
+	 * Get the light index list. Only the first getLightIndexCount() entries are used.
+	 *
+	 * @return The indices of the lights, cluster by cluster
+	 */
+	public int[] getLightIndices()
+	{
+		return lightIndices;
+	}
+
+	public int getLightIndexCount()
+	{
+		return lightIndexCount;
+	}
+
+	/**
+	 * Stop the worker threads.
+	 */
+	public void cleanUp()
+	{
+		if (workers != null) {
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Find the range of clusters the sphere of a light touches.
+	 */
+	private void findClusters(Light light, Matrix4f view, float xScale, float yScale, int offset)
+	{
+		float x = light.getPosition().x;
+		float y = light.getPosition().y;
+		float z = light.getPosition().z;
+		float range = light.getRange();
+
+		// Move the light to view space. The camera looks along the negative z axis.
+		float viewX = view.m00 * x + view.m10 * y + view.m20 * z + view.m30;
+		float viewY = view.m01 * x + view.m11 * y + view.m21 * z + view.m31;
+		float depth = -(view.m02 * x + view.m12 * y + view.m22 * z + view.m32);
+
+		float minDepth = Math.max(nearPlane, depth - range);
+		float maxDepth = Math.min(farPlane, depth + range);
+
+		// The sphere fits in a box from minDepth to maxDepth. The edges of that box end
+		// up furthest to the side on the screen at one of the two depths: the nearest
+		// one for an edge on the outside of the center of the screen, the furthest one
+		// otherwise.
+		float minNdcX = xScale * (viewX - range) / (viewX - range < 0 ? minDepth : maxDepth);
+		float maxNdcX = xScale * (viewX + range) / (viewX + range > 0 ? minDepth : maxDepth);
+		float minNdcY = yScale * (viewY - range) / (viewY - range < 0 ? minDepth : maxDepth);
+		float maxNdcY = yScale * (viewY + range) / (viewY + range > 0 ? minDepth : maxDepth);
+
+		if (minDepth > maxDepth || minNdcX > 1 || maxNdcX < -1 || minNdcY > 1 || maxNdcY < -1) {
+			// Out of view, so the light doesn't touch any cluster.
+			lightClusters[offset + 4] = 1;
+			lightClusters[offset + 5] = 0;
+			return;
+		}
+
+		lightClusters[offset] = toTileX(minNdcX);
+		lightClusters[offset + 1] = toTileX(maxNdcX);
+		lightClusters[offset + 2] = toTileY(minNdcY);
+		lightClusters[offset + 3] = toTileY(maxNdcY);
+		lightClusters[offset + 4] = toSlice(minDepth);
+		lightClusters[offset + 5] = toSlice(maxDepth);
+	}
+
+	/**
+	 * Count the lights of every cluster in a range of slices.
+	 */
+	private void countLights(int firstSlice, int endSlice)
+	{
+		int first = firstSlice * tilesX * tilesY;
+		int end = endSlice * tilesX * tilesY;
+		Arrays.fill(clusterCounts, first, end, 0);
+
+		for (int light = 0; light < lightCount; light++) {
+			int offset = light * 6;
+			int minZ = Math.max(firstSlice, lightClusters[offset + 4]);
+			int maxZ = Math.min(endSlice - 1, lightClusters[offset + 5]);
+
+			for (int slice = minZ; slice <= maxZ; slice++) {
+				for (int tileY = lightClusters[offset + 2]; tileY <= lightClusters[offset + 3]; tileY++) {
+					int row = tilesX * (tileY + tilesY * slice);
+					for (int tileX = lightClusters[offset]; tileX <= lightClusters[offset + 1]; tileX++) {
+						clusterCounts[row + tileX]++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the light indices of every cluster in a range of slices. The counts are
+	 * used as write positions on the way, and end up as counts again.
+	 */
+	private void fillLights(int firstSlice, int endSlice)
+	{
+		int first = firstSlice * tilesX * tilesY;
+		int end = endSlice * tilesX * tilesY;
+		Arrays.fill(clusterCounts, first, end, 0);
+
+		for (int light = 0; light < lightCount; light++) {
+			int offset = light * 6;
+			int minZ = Math.max(firstSlice, lightClusters[offset + 4]);
+			int maxZ = Math.min(endSlice - 1, lightClusters[offset + 5]);
+
+			for (int slice = minZ; slice <= maxZ; slice++) {
+				for (int tileY = lightClusters[offset + 2]; tileY <= lightClusters[offset + 3]; tileY++) {
+					int row = tilesX * (tileY + tilesY * slice);
+					for (int tileX = lightClusters[offset]; tileX <= lightClusters[offset + 1]; tileX++) {
+						int cluster = row + tileX;
+						lightIndices[clusterOffsets[cluster] + clusterCounts[cluster]++] = light;
+					}
+				}
+			}
+		}
+	}
+
+	private int toTileX(float ndcX)
+	{
+		return clamp((int) Math.floor((ndcX + 1) / 2 * tilesX), tilesX);
+	}
+
+	private int toTileY(float ndcY)
+	{
+		return clamp((int) Math.floor((ndcY + 1) / 2 * tilesY), tilesY);
+	}
+
+	private int toSlice(float depth)
+	{
+		return clamp((int) Math.floor(Math.log(depth / nearPlane) / logDepthRatio * slices), slices);
+	}
+
+	private static int clamp(int value, int count)
+	{
+		return Math.max(0, Math.min(count - 1, value));
+	}
+
+	/**
+	 * Run the tasks of all chunks, on the workers if there are any.
+	 */
+	private void run(List<Callable<Void>> tasks)
+	{
+		try {
+			if (workers == null) {
+				tasks.get(0).call();
+				return;
+			}
+
+			for (Future<Void> future : workers.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while clustering lights", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Could not cluster lights", e.getCause());
+		} catch (Exception e) {
+			throw new IllegalStateException("Could not cluster lights", e);
+		}
+	}
+}
@@ -1,27 +1,109 @@
 package renderEngine;
 
+import models.ModelData;
 import models.RawModel;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
 import org.lwjgl.opengl.GL15;
-import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
-import org.newdawn.slick.opengl.Texture;
-import org.newdawn.slick.opengl.TextureLoader;
+import textures.CompressedTextureData;
+import textures.MipmapGenerator;
+import textures.ModelTexture;
+import textures.TextureAtlas;
+import textures.TextureData;
+import textures.TextureDecoder;
+import textures.TextureQuality;
+import toolbox.VertexEncoding;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-public class Loader
+public class Loader implements AssetUploader
 {
-	// Keeps track of all the VAOs and VBOs we create.
-	private List<Integer> vaos = new ArrayList<>();
-	private List<Integer> vbos = new ArrayList<>();
-	private List<Integer> textures = new ArrayList<>();
+	private GraphicsBackend gl;
+
+	// Keeps track of all the VAOs with the VBOs in them, and all textures with
+	// their size, so single models and textures can be deleted again.
+	private Map<Integer, List<Integer>> vaos = new HashMap<>();
+	private Map<Integer, Long> textures = new HashMap<>();
+
+	// The VBOs of the VAO that is being created.
+	private List<Integer> vbos;
+
+	private long textureMemory;
+
+	/**
+	 * <p>The compact vertex format stores every vertex in 16 bytes of a single
+	 * interleaved VBO, instead of 32 bytes spread over three VBOs:</p>
+	 *
+	 * <pre>
+	 *  0  3 x snorm16  position, relative to the bounds of the model (+ 2 bytes padding)
+	 *  8  2 x unorm16  texture coordinates (half floats if they are outside 0 to 1)
+	 * 12  2 x snorm16  octahedral encoded normal
+	 * </pre>
+	 *
+	 * <p>Models with at most 65536 vertices also get 16 bit indices.</p>
+	 */
+	public static final int COMPACT_STRIDE = 16;
+	private static final int COMPACT_TEXTURE_OFFSET = 8;
+	private static final int COMPACT_NORMAL_OFFSET = 12;
+
+	private boolean compactVertices;
+
+	private boolean compressTextures = true;
+
+	/**
+	 * Create a new loader.
+	 *
+	 * @param  gl  The graphics backend to upload the data with
+	 */
+	public Loader(GraphicsBackend gl)
+	{
+		this.gl = gl;
+	}
+
+	/**
+	 * Choose whether models use the compact vertex format. This counts for models
+	 * loaded from arrays and from buffers, like the mapped mesh cache: with the
+	 * compact format on, the buffers are encoded first instead of uploaded as they
+	 * are.
+	 *
+	 * @param  compactVertices  True to use the compact vertex format
+	 */
+	public void setCompactVertices(boolean compactVertices)
+	{
+		this.compactVertices = compactVertices;
+	}
+
+	public boolean isCompactVertices()
+	{
+		return compactVertices;
+	}
+
+	/**
+	 * Choose whether textures loaded by name are block compressed. Compressed
+	 * textures come from the compressed texture cache, see TextureCache. This is on
+	 * by default.
+	 *
+	 * @param  compressTextures  True to load compressed textures
+	 */
+	public void setCompressTextures(boolean compressTextures)
+	{
+		this.compressTextures = compressTextures;
+	}
+
+	public boolean isCompressTextures()
+	{
+		return compressTextures;
+	}
 
 	/**
 	 * Create a new VAO and create a new RawModel in it.
@@ -32,8 +114,13 @@ public class Loader
 	 * @param  indices        The indices
 	 * @return A new RawModel object
 	 */
+	@Override
 	public RawModel loadToVAO(float[] positions, float[] textureCoords, float[] normals, int[] indices)
 	{
+		if (compactVertices) {
+			return loadToCompactVAO(positions, textureCoords, normals, indices);
+		}
+
 		int vaoID = createVAO();
 		bindIndicesBuffer(indices);
 
@@ -43,9 +130,168 @@ public class Loader
 
 		unbindVAO();
 
-		// Create a new model. We divide by three because a position consists
-		// of three elements.
-		return new RawModel(vaoID, indices.length);
+		// Create a new model, with a bounding sphere around all of its positions
+		// so it can be culled when it is out of view.
+		RawModel model = new RawModel(vaoID, indices.length);
+		model.setBounds(ModelData.calculateBounds(positions));
+		model.setSizeInBytes((positions.length + textureCoords.length + normals.length + indices.length) * 4L);
+
+		return model;
+	}
+
+	/**
+	 * Create a new VAO with the vertices in the compact vertex format.
+	 *
+	 * @param  positions      The vertex positions
+	 * @param  textureCoords  The texture coordinates
+	 * @param  normals        The normal vectors
+	 * @param  indices        The indices
+	 * @return A new RawModel object
+	 */
+	public RawModel loadToCompactVAO(float[] positions, float[] textureCoords, float[] normals, int[] indices)
+	{
+		return loadToCompactVAO(FloatBuffer.wrap(positions), FloatBuffer.wrap(textureCoords), FloatBuffer.wrap(normals), IntBuffer.wrap(indices));
+	}
+
+	/**
+	 * Create a new VAO with the vertices in the compact vertex format, from vertices
+	 * in arrays or in a memory mapped mesh cache. Every buffer is read from its start
+	 * to its limit.
+	 */
+	private RawModel loadToCompactVAO(FloatBuffer positions, FloatBuffer textureCoords, FloatBuffer normals, IntBuffer indices)
+	{
+		int vertexCount = positions.limit() / 3;
+		int indexCount = indices.limit();
+		float[] bounds = ModelData.calculateBounds(positions);
+
+		// Every position is stored relative to the center of the bounds, scaled so
+		// the bounds run from -1 to 1. The shader scales it back.
+		float[] scale = new float[3];
+		float[] offset = new float[3];
+		for (int axis = 0; axis < 3; axis++) {
+			offset[axis] = (bounds[axis] + bounds[axis + 3]) / 2;
+			scale[axis] = Math.max((bounds[axis + 3] - bounds[axis]) / 2, Float.MIN_NORMAL);
+		}
+
+		boolean normalizedTextureCoords = true;
+		for (int i = 0; i < textureCoords.limit(); i++) {
+			float coordinate = textureCoords.get(i);
+			if (coordinate < 0 || coordinate > 1) {
+				normalizedTextureCoords = false;
+				break;
+			}
+		}
+
+		ByteBuffer vertices = BufferUtils.createByteBuffer(vertexCount * COMPACT_STRIDE);
+		short[] normal = new short[2];
+		for (int vertex = 0; vertex < vertexCount; vertex++) {
+			for (int axis = 0; axis < 3; axis++) {
+				vertices.putShort(VertexEncoding.encodeSnorm16((positions.get(vertex * 3 + axis) - offset[axis]) / scale[axis]));
+			}
+			vertices.putShort((short) 0);
+
+			for (int i = 0; i < 2; i++) {
+				float coordinate = textureCoords.get(vertex * 2 + i);
+				vertices.putShort(normalizedTextureCoords
+					? VertexEncoding.encodeUnorm16(coordinate)
+					: VertexEncoding.encodeHalf(coordinate));
+			}
+
+			VertexEncoding.encodeOctahedral(normals.get(vertex * 3), normals.get(vertex * 3 + 1), normals.get(vertex * 3 + 2), normal, 0);
+			vertices.putShort(normal[0]).putShort(normal[1]);
+		}
+		vertices.flip();
+
+		int vaoID = createVAO();
+
+		int indexType;
+		long indexBytes;
+		if (vertexCount <= 65536) {
+			ByteBuffer shortIndices = BufferUtils.createByteBuffer(indexCount * 2);
+			for (int i = 0; i < indexCount; i++) {
+				shortIndices.putShort((short) indices.get(i));
+			}
+			shortIndices.flip();
+
+			bindIndicesBuffer(shortIndices);
+			indexType = GL11.GL_UNSIGNED_SHORT;
+			indexBytes = indexCount * 2L;
+		} else {
+			ByteBuffer intIndices = BufferUtils.createByteBuffer(indexCount * 4);
+			intIndices.asIntBuffer().put(indices.duplicate());
+
+			bindIndicesBuffer(intIndices);
+			indexType = GL11.GL_UNSIGNED_INT;
+			indexBytes = indexCount * 4L;
+		}
+
+		int vboID = gl.genBuffers();
+		vbos.add(vboID);
+		gl.bindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
+		gl.bufferData(GL15.GL_ARRAY_BUFFER, vertices, GL15.GL_STATIC_DRAW);
+
+		// All three attributes read from the same VBO, every vertex is a stride further.
+		gl.vertexAttribPointer(0, 3, GL11.GL_SHORT, true, COMPACT_STRIDE, 0);
+		if (normalizedTextureCoords) {
+			gl.vertexAttribPointer(1, 2, GL11.GL_UNSIGNED_SHORT, true, COMPACT_STRIDE, COMPACT_TEXTURE_OFFSET);
+		} else {
+			gl.vertexAttribPointer(1, 2, GL30.GL_HALF_FLOAT, false, COMPACT_STRIDE, COMPACT_TEXTURE_OFFSET);
+		}
+		gl.vertexAttribPointer(2, 2, GL11.GL_SHORT, true, COMPACT_STRIDE, COMPACT_NORMAL_OFFSET);
+		gl.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+		unbindVAO();
+
+		RawModel model = new RawModel(vaoID, indexCount);
+		model.setBounds(bounds);
+		model.setCompact(scale, offset);
+		model.setIndexType(indexType);
+		model.setSizeInBytes((long) vertexCount * COMPACT_STRIDE + indexBytes);
+
+		return model;
+	}
+
+	/**
+	 * Create a new VAO from data that is already in buffers, for example a memory
+	 * mapped mesh cache. The buffers are uploaded as they are, without copying them
+	 * into arrays first. With compact vertices, the vertices are encoded straight
+	 * from the buffers instead.
+	 *
+	 * @param  positions      The vertex positions (3 floats per vertex)
+	 * @param  textureCoords  The texture coordinates (2 floats per vertex)
+	 * @param  normals        The normal vectors (3 floats per vertex)
+	 * @param  indices        The indices (1 int per index)
+	 * @return A new RawModel object
+	 */
+	@Override
+	public RawModel loadToVAO(ByteBuffer positions, ByteBuffer textureCoords, ByteBuffer normals, ByteBuffer indices)
+	{
+		if (compactVertices) {
+			return loadToCompactVAO(
+				positions.asFloatBuffer(), textureCoords.asFloatBuffer(), normals.asFloatBuffer(), indices.asIntBuffer()
+			);
+		}
+
+		int vaoID = createVAO();
+
+		int vboID = gl.genBuffers();
+		vbos.add(vboID);
+		gl.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboID);
+		gl.bufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indices, GL15.GL_STATIC_DRAW);
+
+		storeDataInAttributeList(0, 3, positions);
+		storeDataInAttributeList(1, 2, textureCoords);
+		storeDataInAttributeList(2, 3, normals);
+
+		unbindVAO();
+
+		// Every index is a 4 byte int.
+		RawModel model = new RawModel(vaoID, indices.remaining() / 4);
+		model.setSizeInBytes(
+			(long) positions.remaining() + textureCoords.remaining() + normals.remaining() + indices.remaining()
+		);
+
+		return model;
 	}
 
 	/**
@@ -56,29 +302,249 @@ public class Loader
 	 */
 	public int loadTexture(String fileName)
 	{
-		Texture texture = null;
 		try {
-			texture = TextureLoader.getTexture("PNG", new FileInputStream("res/" + fileName + ".png"));
+			if (compressTextures) {
+				return loadCompressedTexture(TextureCache.load(fileName));
+			}
+
+			return loadTexture(TextureDecoder.decode(new File("res/" + fileName + ".png")));
 		} catch (IOException e) {
 			e.printStackTrace();
+			return 0;
+		}
+	}
+
+	/**
+	 * Load a texture from pixels that were already decoded, for example by the
+	 * asset pipeline. A texture without mipmaps gets a full mip chain first.
+	 *
+	 * @param  data  The decoded texture
+	 * @return The ID of the loaded texture
+	 */
+	@Override
+	public int loadTexture(TextureData data)
+	{
+		if (data.getLevelCount() == 1) {
+			data = MipmapGenerator.generate(data);
+		}
+
+		return uploadTexture(data);
+	}
+
+	/**
+	 * Upload a texture with the levels it has. The biggest levels are skipped as the
+	 * global texture quality says, but the smallest level is always uploaded.
+	 *
+	 * @param  data  The texture and its mipmaps
+	 * @return The ID of the loaded texture
+	 */
+	private int uploadTexture(TextureData data)
+	{
+		int firstLevel = Math.min(TextureQuality.getGlobal().getSkippedLevels(), data.getLevelCount() - 1);
+		int levelCount = data.getLevelCount() - firstLevel;
+
+		int textureID = gl.genTextures();
+
+		// The renderers use samplers with the filter settings of the material, these
+		// settings are only used when no sampler is bound.
+		gl.bindTexture(GL11.GL_TEXTURE_2D, textureID);
+		gl.texParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		gl.texParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		gl.texParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, levelCount - 1);
+
+		// Rows of pixels are not padded, so don't expect any alignment.
+		gl.pixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+		long size = 0;
+		for (int level = firstLevel; level < data.getLevelCount(); level++) {
+			int width = data.getLevelWidth(level);
+			int height = data.getLevelHeight(level);
+
+			gl.texImage2D(
+				GL11.GL_TEXTURE_2D, level - firstLevel, GL11.GL_RGBA8, width, height, 0,
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, data.getLevel(level)
+			);
+			size += width * height * 4;
 		}
 
-		int textureID = texture != null ? texture.getTextureID() : 0;
-		textures.add(textureID);
+		gl.bindTexture(GL11.GL_TEXTURE_2D, 0);
+
+		textures.put(textureID, size);
+		textureMemory += size;
 
 		return textureID;
 	}
 
+	/**
+	 * Upload a block compressed texture. Every level is uploaded as it is, with a
+	 * single call, and the biggest levels are skipped as the global texture quality
+	 * says.
+	 *
+	 * @param  data  The compressed texture and its mipmaps
+	 * @return The ID of the loaded texture
+	 */
+	@Override
+	public int loadCompressedTexture(CompressedTextureData data)
+	{
+		int firstLevel = Math.min(TextureQuality.getGlobal().getSkippedLevels(), data.getLevelCount() - 1);
+		int levelCount = data.getLevelCount() - firstLevel;
+
+		int textureID = gl.genTextures();
+
+		gl.bindTexture(GL11.GL_TEXTURE_2D, textureID);
+		gl.texParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		gl.texParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		gl.texParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, levelCount - 1);
+
+		long size = 0;
+		for (int level = firstLevel; level < data.getLevelCount(); level++) {
+			ByteBuffer blocks = data.getLevel(level);
+
+			gl.compressedTexImage2D(
+				GL11.GL_TEXTURE_2D, level - firstLevel, data.getFormat().getInternalFormat(),
+				data.getLevelWidth(level), data.getLevelHeight(level), 0, blocks
+			);
+			size += blocks.remaining();
+		}
+
+		gl.bindTexture(GL11.GL_TEXTURE_2D, 0);
+
+		textures.put(textureID, size);
+		textureMemory += size;
+
+		return textureID;
+	}
+
+	/**
+	 * Get the memory used by all textures that are loaded, with their mipmaps.
+	 *
+	 * @return The size in bytes
+	 */
+	public long getTextureMemory()
+	{
+		return textureMemory;
+	}
+
+	/**
+	 * Get the number of VAOs that are loaded.
+	 *
+	 * @return The number of models that weren't deleted yet
+	 */
+	public int getModelCount()
+	{
+		return vaos.size();
+	}
+
+	/**
+	 * Get the memory used by a texture, with its mipmaps.
+	 *
+	 * @param  textureID  The ID of the texture
+	 * @return The size in bytes, or 0 if the texture wasn't loaded by this loader
+	 */
+	public long getTextureSize(int textureID)
+	{
+		return textures.getOrDefault(textureID, 0L);
+	}
+
+	/**
+	 * Delete the VAO of a model and the VBOs in it. The model gets VAO ID 0, until
+	 * it gets new buffers with RawModel.replaceBuffers().
+	 *
+	 * @param  model  The model to delete
+	 */
+	public void deleteModel(RawModel model)
+	{
+		List<Integer> buffers = vaos.remove(model.getVaoID());
+		if (buffers == null) {
+			return;
+		}
+
+		buffers.forEach(gl::deleteBuffers);
+		gl.deleteVertexArrays(model.getVaoID());
+		model.releaseBuffers();
+	}
+
+	/**
+	 * Delete a texture. The model texture gets texture ID 0, until it gets a new
+	 * texture with ModelTexture.setID().
+	 *
+	 * @param  texture  The model texture of the texture to delete
+	 */
+	public void deleteTexture(ModelTexture texture)
+	{
+		Long size = textures.remove(texture.getID());
+		if (size == null) {
+			return;
+		}
+
+		gl.deleteTextures(texture.getID());
+		textureMemory -= size;
+		texture.setID(0);
+	}
+
+	/**
+	 * Load texture images into the pages of an atlas, so models that use them can
+	 * share texture binds and draw calls. Only use this for textures that don't
+	 * repeat, see TextureAtlas.
+	 *
+	 * @param  fileNames  The names of the textures (relative to the res folder)
+	 * @return A model texture for every name, which reads its region of a page. A
+	 *         texture that couldn't be loaded gets texture ID 0, like loadTexture().
+	 */
+	public ModelTexture[] loadTextureAtlas(String... fileNames)
+	{
+		List<TextureData> decoded = new ArrayList<>();
+		int[] atlasIndex = new int[fileNames.length];
+		for (int i = 0; i < fileNames.length; i++) {
+			try {
+				decoded.add(TextureDecoder.decode(new File("res/" + fileNames[i] + ".png")));
+				atlasIndex[i] = decoded.size() - 1;
+			} catch (IOException e) {
+				e.printStackTrace();
+				atlasIndex[i] = -1;
+			}
+		}
+
+		ModelTexture[] packed = loadTextureAtlas(TextureAtlas.build(decoded));
+
+		ModelTexture[] textures = new ModelTexture[fileNames.length];
+		for (int i = 0; i < fileNames.length; i++) {
+			textures[i] = atlasIndex[i] < 0 ? new ModelTexture(0) : packed[atlasIndex[i]];
+		}
+
+		return textures;
+	}
+
+	/**
+	 * Upload the pages of an atlas that was already built.
+	 *
+	 * @param  atlas  The atlas
+	 * @return A model texture for every texture in the atlas, in the order the atlas
+	 *         was built from
+	 */
+	public ModelTexture[] loadTextureAtlas(TextureAtlas atlas)
+	{
+		int[] pageIDs = new int[atlas.getPageCount()];
+		for (int page = 0; page < pageIDs.length; page++) {
+			pageIDs[page] = uploadTexture(MipmapGenerator.generate(atlas.getPage(page), atlas.getMipLevelCount()));
+		}
+
+		return atlas.createModelTextures(pageIDs);
+	}
+
 	/**
 	 * Remove all the creates VAOs and VBOs from memory.
 	 */
 	public void cleanUp()
 	{
-		vaos.forEach(GL30::glDeleteVertexArrays);
-
-		vbos.forEach(GL15::glDeleteBuffers);
+		vaos.forEach((vaoID, buffers) -> {
+			buffers.forEach(gl::deleteBuffers);
+			gl.deleteVertexArrays(vaoID);
+		});
+		vaos.clear();
 
-		textures.forEach(GL11::glDeleteTextures);
+		textures.keySet().forEach(gl::deleteTextures);
+		textures.clear();
+		textureMemory = 0;
 	}
 
 	/**
@@ -88,10 +554,11 @@ public class Loader
 	 */
 	private int createVAO()
 	{
-		int vaoID = GL30.glGenVertexArrays();
-		vaos.add(vaoID);
+		int vaoID = gl.genVertexArrays();
+		vbos = new ArrayList<>();
+		vaos.put(vaoID, vbos);
 
-		GL30.glBindVertexArray(vaoID);
+		gl.bindVertexArray(vaoID);
 
 		return vaoID;
 	}
@@ -106,18 +573,37 @@ public class Loader
 	private void storeDataInAttributeList(int attributeNumber, int coordinateSize, float[] data)
 	{
 		// Generate a VBO to store our data.
-		int vboID = GL15.glGenBuffers();
+		int vboID = gl.genBuffers();
 		vbos.add(vboID);
 
-		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
+		gl.bindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
 
 		// Store the data in the VBO.
 		FloatBuffer buffer = storeDataInFloatBuffer(data);
-		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+		gl.bufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
 
 		// Put the VBO in the attribute list of a VAO and unbind the VBO.
-		GL20.glVertexAttribPointer(attributeNumber, coordinateSize, GL11.GL_FLOAT, false, 0, 0);
-		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+		gl.vertexAttribPointer(attributeNumber, coordinateSize, GL11.GL_FLOAT, false, 0, 0);
+		gl.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Store data that is already in a buffer in the attribute list of the VAO.
+	 *
+	 * @param  attributeNumber  The number of the attribute list where we want to store the data
+	 * @param  coordinateSize   The size of each coordinate in the attribute list
+	 * @param  data             The float data we want to store
+	 */
+	private void storeDataInAttributeList(int attributeNumber, int coordinateSize, ByteBuffer data)
+	{
+		int vboID = gl.genBuffers();
+		vbos.add(vboID);
+
+		gl.bindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
+		gl.bufferData(GL15.GL_ARRAY_BUFFER, data, GL15.GL_STATIC_DRAW);
+
+		gl.vertexAttribPointer(attributeNumber, coordinateSize, GL11.GL_FLOAT, false, 0, 0);
+		gl.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
 	}
 
 	/**
@@ -125,19 +611,28 @@ public class Loader
 	 */
 	private void unbindVAO()
 	{
-		GL30.glBindVertexArray(0);
+		gl.bindVertexArray(0);
+	}
+
+	private void bindIndicesBuffer(ByteBuffer indices)
+	{
+		int vboID = gl.genBuffers();
+		vbos.add(vboID);
+
+		gl.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboID);
+		gl.bufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indices, GL15.GL_STATIC_DRAW);
 	}
 
 	private void bindIndicesBuffer(int[] indices)
 	{
 		// Generate a VBO.
-		int vboID = GL15.glGenBuffers();
+		int vboID = gl.genBuffers();
 		vbos.add(vboID);
 
-		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboID);
+		gl.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboID);
 
 		IntBuffer buffer = storeDateInIntBuffer(indices);
-		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+		gl.bufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
 	}
 
 	/**
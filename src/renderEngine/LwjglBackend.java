@@ -0,0 +1,448 @@
+package renderEngine;
+
+import org.lwjgl.LWJGLException;
+import org.lwjgl.opengl.*;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * The graphics backend that forwards every call to OpenGL through LWJGL.
+ */
+public class LwjglBackend implements GraphicsBackend
+{
+	@Override
+	public void createDisplay(int width, int height, String title)
+	{
+		// Make sure we use at least OpenGL 3.3
+		ContextAttribs attribs = new ContextAttribs(3, 3)
+			.withForwardCompatible(true)
+			.withProfileCore(true);
+
+		try {
+			Display.setDisplayMode(new DisplayMode(width, height));
+			Display.create(new PixelFormat(), attribs);
+			Display.setTitle(title);
+		} catch (LWJGLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void updateDisplay(int fpsCap)
+	{
+		if (fpsCap > 0) {
+			Display.sync(fpsCap);
+		}
+		Display.update();
+	}
+
+	@Override
+	public void setVSync(boolean enabled)
+	{
+		Display.setVSyncEnabled(enabled);
+	}
+
+	@Override
+	public boolean isCloseRequested()
+	{
+		return Display.isCloseRequested();
+	}
+
+	@Override
+	public int getDisplayWidth()
+	{
+		return Display.getWidth();
+	}
+
+	@Override
+	public int getDisplayHeight()
+	{
+		return Display.getHeight();
+	}
+
+	@Override
+	public void destroyDisplay()
+	{
+		Display.destroy();
+	}
+
+	@Override
+	public void enable(int capability)
+	{
+		GL11.glEnable(capability);
+	}
+
+	@Override
+	public void cullFace(int mode)
+	{
+		GL11.glCullFace(mode);
+	}
+
+	@Override
+	public void viewport(int x, int y, int width, int height)
+	{
+		GL11.glViewport(x, y, width, height);
+	}
+
+	@Override
+	public void clearColor(float red, float green, float blue, float alpha)
+	{
+		GL11.glClearColor(red, green, blue, alpha);
+	}
+
+	@Override
+	public void clear(int mask)
+	{
+		GL11.glClear(mask);
+	}
+
+	@Override
+	public float getFloat(int name)
+	{
+		return GL11.glGetFloat(name);
+	}
+
+	@Override
+	public void drawElements(int mode, int count, int type, long indicesOffset)
+	{
+		GL11.glDrawElements(mode, count, type, indicesOffset);
+	}
+
+	@Override
+	public void drawElementsInstanced(int mode, int count, int type, long indicesOffset, int instanceCount)
+	{
+		GL31.glDrawElementsInstanced(mode, count, type, indicesOffset, instanceCount);
+	}
+
+	@Override
+	public int genVertexArrays()
+	{
+		return GL30.glGenVertexArrays();
+	}
+
+	@Override
+	public void bindVertexArray(int array)
+	{
+		GL30.glBindVertexArray(array);
+	}
+
+	@Override
+	public void deleteVertexArrays(int array)
+	{
+		GL30.glDeleteVertexArrays(array);
+	}
+
+	@Override
+	public void enableVertexAttribArray(int index)
+	{
+		GL20.glEnableVertexAttribArray(index);
+	}
+
+	@Override
+	public void disableVertexAttribArray(int index)
+	{
+		GL20.glDisableVertexAttribArray(index);
+	}
+
+	@Override
+	public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset)
+	{
+		GL20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+	}
+
+	@Override
+	public void vertexAttribDivisor(int index, int divisor)
+	{
+		GL33.glVertexAttribDivisor(index, divisor);
+	}
+
+	@Override
+	public int genBuffers()
+	{
+		return GL15.glGenBuffers();
+	}
+
+	@Override
+	public void bindBuffer(int target, int buffer)
+	{
+		GL15.glBindBuffer(target, buffer);
+	}
+
+	@Override
+	public void bufferData(int target, FloatBuffer data, int usage)
+	{
+		GL15.glBufferData(target, data, usage);
+	}
+
+	@Override
+	public void bufferData(int target, IntBuffer data, int usage)
+	{
+		GL15.glBufferData(target, data, usage);
+	}
+
+	@Override
+	public void bufferData(int target, ByteBuffer data, int usage)
+	{
+		GL15.glBufferData(target, data, usage);
+	}
+
+	@Override
+	public void bufferData(int target, long size, int usage)
+	{
+		GL15.glBufferData(target, size, usage);
+	}
+
+	@Override
+	public void bufferSubData(int target, long offset, FloatBuffer data)
+	{
+		GL15.glBufferSubData(target, offset, data);
+	}
+
+	@Override
+	public void bufferSubData(int target, long offset, ByteBuffer data)
+	{
+		GL15.glBufferSubData(target, offset, data);
+	}
+
+	@Override
+	public void bindBufferBase(int target, int index, int buffer)
+	{
+		GL30.glBindBufferBase(target, index, buffer);
+	}
+
+	@Override
+	public void deleteBuffers(int buffer)
+	{
+		GL15.glDeleteBuffers(buffer);
+	}
+
+	@Override
+	public int genTextures()
+	{
+		return GL11.glGenTextures();
+	}
+
+	@Override
+	public void activeTexture(int texture)
+	{
+		GL13.glActiveTexture(texture);
+	}
+
+	@Override
+	public void bindTexture(int target, int texture)
+	{
+		GL11.glBindTexture(target, texture);
+	}
+
+	@Override
+	public void texParameteri(int target, int name, int value)
+	{
+		GL11.glTexParameteri(target, name, value);
+	}
+
+	@Override
+	public void pixelStorei(int name, int value)
+	{
+		GL11.glPixelStorei(name, value);
+	}
+
+	@Override
+	public void texImage2D(int target, int level, int internalFormat, int width, int height, int border, int format, int type, ByteBuffer pixels)
+	{
+		GL11.glTexImage2D(target, level, internalFormat, width, height, border, format, type, pixels);
+	}
+
+	@Override
+	public void compressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border, ByteBuffer data)
+	{
+		GL13.glCompressedTexImage2D(target, level, internalFormat, width, height, border, data);
+	}
+
+	@Override
+	public void deleteTextures(int texture)
+	{
+		GL11.glDeleteTextures(texture);
+	}
+
+	@Override
+	public void texBuffer(int target, int internalFormat, int buffer)
+	{
+		GL31.glTexBuffer(target, internalFormat, buffer);
+	}
+
+	@Override
+	public int genSamplers()
+	{
+		return GL33.glGenSamplers();
+	}
+
+	@Override
+	public void bindSampler(int unit, int sampler)
+	{
+		GL33.glBindSampler(unit, sampler);
+	}
+
+	@Override
+	public void samplerParameteri(int sampler, int name, int value)
+	{
+		GL33.glSamplerParameteri(sampler, name, value);
+	}
+
+	@Override
+	public void samplerParameterf(int sampler, int name, float value)
+	{
+		GL33.glSamplerParameterf(sampler, name, value);
+	}
+
+	@Override
+	public void deleteSamplers(int sampler)
+	{
+		GL33.glDeleteSamplers(sampler);
+	}
+
+	@Override
+	public int createShader(int type)
+	{
+		return GL20.glCreateShader(type);
+	}
+
+	@Override
+	public void shaderSource(int shader, CharSequence source)
+	{
+		GL20.glShaderSource(shader, source);
+	}
+
+	@Override
+	public void compileShader(int shader)
+	{
+		GL20.glCompileShader(shader);
+	}
+
+	@Override
+	public int getShaderi(int shader, int name)
+	{
+		return GL20.glGetShaderi(shader, name);
+	}
+
+	@Override
+	public String getShaderInfoLog(int shader, int maxLength)
+	{
+		return GL20.glGetShaderInfoLog(shader, maxLength);
+	}
+
+	@Override
+	public void deleteShader(int shader)
+	{
+		GL20.glDeleteShader(shader);
+	}
+
+	@Override
+	public int createProgram()
+	{
+		return GL20.glCreateProgram();
+	}
+
+	@Override
+	public void attachShader(int program, int shader)
+	{
+		GL20.glAttachShader(program, shader);
+	}
+
+	@Override
+	public void detachShader(int program, int shader)
+	{
+		GL20.glDetachShader(program, shader);
+	}
+
+	@Override
+	public void bindAttribLocation(int program, int index, CharSequence name)
+	{
+		GL20.glBindAttribLocation(program, index, name);
+	}
+
+	@Override
+	public void linkProgram(int program)
+	{
+		GL20.glLinkProgram(program);
+	}
+
+	@Override
+	public void validateProgram(int program)
+	{
+		GL20.glValidateProgram(program);
+	}
+
+	@Override
+	public int getProgrami(int program, int name)
+	{
+		return GL20.glGetProgrami(program, name);
+	}
+
+	@Override
+	public String getProgramInfoLog(int program, int maxLength)
+	{
+		return GL20.glGetProgramInfoLog(program, maxLength);
+	}
+
+	@Override
+	public void useProgram(int program)
+	{
+		GL20.glUseProgram(program);
+	}
+
+	@Override
+	public void deleteProgram(int program)
+	{
+		GL20.glDeleteProgram(program);
+	}
+
+	@Override
+	public int getUniformLocation(int program, CharSequence name)
+	{
+		return GL20.glGetUniformLocation(program, name);
+	}
+
+	@Override
+	public int getUniformBlockIndex(int program, CharSequence name)
+	{
+		return GL31.glGetUniformBlockIndex(program, name);
+	}
+
+	@Override
+	public void uniformBlockBinding(int program, int blockIndex, int binding)
+	{
+		GL31.glUniformBlockBinding(program, blockIndex, binding);
+	}
+
+	@Override
+	public void uniform1i(int location, int value)
+	{
+		GL20.glUniform1i(location, value);
+	}
+
+	@Override
+	public void uniform1f(int location, float value)
+	{
+		GL20.glUniform1f(location, value);
+	}
+
+	@Override
+	public void uniform3f(int location, float x, float y, float z)
+	{
+		GL20.glUniform3f(location, x, y, z);
+	}
+
+	@Override
+	public void uniform4f(int location, float x, float y, float z, float w)
+	{
+		GL20.glUniform4f(location, x, y, z, w);
+	}
+
+	@Override
+	public void uniformMatrix4(int location, boolean transpose, FloatBuffer matrix)
+	{
+		GL20.glUniformMatrix4(location, transpose, matrix);
+	}
+}
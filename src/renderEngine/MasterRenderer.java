@@ -2,31 +2,264 @@ package renderEngine;
 
 import entities.Camera;
 import entities.Entity;
+import entities.EntityStore;
 import entities.Light;
+import models.RawModel;
 import models.TexturedModel;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import shaders.InstancedShader;
 import shaders.StaticShader;
+import toolbox.Frustum;
+import toolbox.Maths;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 
 public class MasterRenderer
 {
 	/**
 	 * The StaticShader instance.
 	 */
-	private StaticShader shader = new StaticShader();
+	private StaticShader shader;
 
 	/**
 	 * The renderer instance.
 	 */
-	private Renderer renderer = new Renderer(shader);
+	private Renderer renderer;
 
 	/**
-	 * A hashmap containing all of the Textured Models and all of their entities.
+	 * The shader and renderer that draw a whole batch with a single draw call.
 	 */
-	private Map<TexturedModel, List<Entity>> entities = new HashMap<>();
+	private InstancedShader instancedShader;
+	private InstancedRenderer instancedRenderer;
+
+	/**
+	 * The samplers with the filter settings of the materials, shared by both
+	 * renderers.
+	 */
+	private SamplerCache samplers;
+
+	/**
+	 * Keeps the models and textures in the budget, if the game uses one.
+	 */
+	private ResidencyManager residency;
+
+	/**
+	 * The camera and light data of the frame, shared by both shaders.
+	 */
+	private FrameUniformBuffer frameUniforms;
+
+	/**
+	 * The point lights of the current frame, and the clustered lighting that makes
+	 * each fragment only look at the lights near it.
+	 */
+	private List<Light> pointLights = new ArrayList<>();
+	private ClusteredLighting clusteredLighting;
+
+	/**
+	 * The size of the cluster grid: tiles across and down the screen, and depth slices.
+	 */
+	private static final int CLUSTER_TILES_X = 16;
+	private static final int CLUSTER_TILES_Y = 9;
+	private static final int CLUSTER_SLICES = 24;
+
+	/**
+	 * Whether batches are drawn with instancing or entity by entity.
+	 */
+	private boolean instancing = true;
+
+	/**
+	 * The number of transformation matrices calculated in the last frame. A scene
+	 * that doesn't move should hardly calculate any matrices.
+	 */
+	private int lastFrameMatrixUpdates;
+
+	/**
+	 * The view frustum of the current frame. Entities outside of it are culled in
+	 * processEntity(), so they never reach the batches. Nothing is culled until
+	 * beginFrame() has been called.
+	 */
+	private Frustum frustum = new Frustum();
+	private Matrix4f viewMatrix = new Matrix4f();
+	private boolean culling;
+	private List<Entity> queryResult = new ArrayList<>();
+
+	/**
+	 * The number of entities culled and kept in the last frame.
+	 */
+	private int lastFrameCulledEntities;
+	private int lastFrameVisibleEntities;
+
+	/**
+	 * The distance from the camera that is sorted as the farthest depth. Entities
+	 * further away all get the same depth.
+	 */
+	private static final float SORT_DISTANCE = 1000;
+
+	/**
+	 * All the entities to draw this frame, sorted on the state they need just
+	 * before rendering.
+	 */
+	private RenderQueue queue = new RenderQueue();
+
+	/**
+	 * The queue of the frame together with the counts of the current frame. Entities
+	 * processed on the calling thread go straight into it, the chunks of the render
+	 * list builder are added to it.
+	 */
+	private RenderListBuilder.Chunk frame = new RenderListBuilder.Chunk(queue);
+
+	/**
+	 * Processes lists of entities on several threads.
+	 */
+	private RenderListBuilder renderListBuilder;
+
+	/**
+	 * Processes an entity for the current frame, on any thread.
+	 */
+	private RenderListBuilder.EntityProcessor entityProcessor = this::processEntity;
+
+	/**
+	 * The position of the camera, to sort entities from front to back.
+	 */
+	private float cameraX, cameraY, cameraZ;
+
+	/**
+	 * The largest error in pixels a simplified level of detail may show by default.
+	 * Every entity is drawn with the simplest level of its model that stays within it.
+	 */
+	public static final float DEFAULT_LOD_PIXEL_ERROR = 1;
+
+	private float lodPixelError = DEFAULT_LOD_PIXEL_ERROR;
+	private int screenHeight;
+
+	/**
+	 * The number of triangles submitted in the last frame.
+	 */
+	private long lastFrameTriangles;
+
+	/**
+	 * Create a new master renderer.
+	 *
+	 * @param  gl  The graphics backend to render with
+	 */
+	public MasterRenderer(GraphicsBackend gl)
+	{
+		shader = new StaticShader(gl);
+		samplers = new SamplerCache(gl);
+		renderer = new Renderer(gl, shader, samplers);
+
+		instancedShader = new InstancedShader(gl);
+		instancedRenderer = new InstancedRenderer(gl, instancedShader, samplers);
+
+		frameUniforms = new FrameUniformBuffer(gl);
+		screenHeight = gl.getDisplayHeight();
+
+		LightClusterer clusterer = new LightClusterer(
+			CLUSTER_TILES_X, CLUSTER_TILES_Y, CLUSTER_SLICES,
+			Renderer.NEAR_PLANE, Renderer.FAR_PLANE, Runtime.getRuntime().availableProcessors()
+		);
+		clusteredLighting = new ClusteredLighting(gl, clusterer);
+		renderListBuilder = new RenderListBuilder(Runtime.getRuntime().availableProcessors());
+
+		for (StaticShader program : new StaticShader[] {shader, instancedShader}) {
+			program.start();
+			program.loadClusterSettings(clusterer, gl.getDisplayWidth(), gl.getDisplayHeight());
+			program.stop();
+		}
+	}
+
+	/**
+	 * Choose between drawing every batch with a single instanced draw call, or
+	 * drawing every entity with a draw call of its own.
+	 *
+	 * @param  instancing  True to use instanced rendering
+	 */
+	public void setInstancing(boolean instancing)
+	{
+		this.instancing = instancing;
+	}
+
+	public boolean isInstancing()
+	{
+		return instancing;
+	}
+
+	/**
+	 * Use a residency manager for the models and textures it manages. The renderers
+	 * tell it what they draw, and at the end of every rendered frame it evicts what
+	 * doesn't fit in its budget.
+	 *
+	 * @param  residency  The residency manager, or null for none
+	 */
+	public void setResidencyManager(ResidencyManager residency)
+	{
+		this.residency = residency;
+		renderer.setResidencyManager(residency);
+		instancedRenderer.setResidencyManager(residency);
+	}
+
+	/**
+	 * Compile the shaders again when their source files change.
+	 *
+	 * @param  reloader  The hot reloader to watch the shader files with
+	 * @throws IOException When the shader folder can't be watched
+	 */
+	public void watchShaders(HotReloader reloader) throws IOException
+	{
+		reloader.watchShader(shader);
+		reloader.watchShader(instancedShader);
+	}
+
+	/**
+	 * Set the number of threads processEntities() uses for lists of entities.
+	 *
+	 * @param  threads  The number of threads, 1 to use only the calling thread
+	 */
+	public void setRenderListThreads(int threads)
+	{
+		if (threads != renderListBuilder.getParallelism()) {
+			renderListBuilder.cleanUp();
+			renderListBuilder = new RenderListBuilder(threads);
+		}
+	}
+
+	public int getRenderListThreads()
+	{
+		return renderListBuilder.getParallelism();
+	}
+
+	/**
+	 * Set the largest error in pixels a simplified level of detail may show. With 0,
+	 * only levels that didn't change the shape at all are used.
+	 *
+	 * @param  lodPixelError  The error in pixels
+	 */
+	public void setLodPixelError(float lodPixelError)
+	{
+		this.lodPixelError = lodPixelError;
+	}
+
+	/**
+	 * Start a new frame, seen from the given camera. Call this before processing
+	 * the entities of the frame, so the entities outside of the view of the camera
+	 * can be culled.
+	 *
+	 * @param  camera  The camera from which the player views the scene
+	 */
+	public void beginFrame(Camera camera)
+	{
+		Maths.createViewMatrix(camera, viewMatrix);
+		frustum.update(renderer.getProjectionMatrix(), viewMatrix);
+		culling = true;
+
+		cameraX = camera.getPosition().x;
+		cameraY = camera.getPosition().y;
+		cameraZ = camera.getPosition().z;
+	}
 
 	/**
 	 * Render all of the entities on the screen.
@@ -37,41 +270,283 @@ public class MasterRenderer
 	public void render(Light sun, Camera camera)
 	{
 		renderer.prepare();
+		queue.sort();
+
+		// Upload the camera and the light once, for all shaders.
+		frameUniforms.update(renderer.getProjectionMatrix(), camera, sun);
+
+		boolean hasPointLights = ! pointLights.isEmpty();
+		if (hasPointLights) {
+			Maths.createViewMatrix(camera, viewMatrix);
+			clusteredLighting.update(pointLights, viewMatrix, renderer.getProjectionMatrix());
+			clusteredLighting.bind();
+		}
+
+		if (instancing) {
+			instancedShader.start();
+			instancedShader.loadPointLights(hasPointLights);
+			instancedRenderer.render(queue);
+			instancedShader.stop();
+		} else {
+			shader.start();
+			shader.loadPointLights(hasPointLights);
+
+			// Render all of the entities in the order of the queue.
+			renderer.render(queue);
+
+			shader.stop();
+		}
+
+		queue.clear();
+		queue.endFrame();
+		pointLights.clear();
+
+		if (residency != null) {
+			residency.endFrame();
+		}
+
+		lastFrameMatrixUpdates = frame.matrixUpdates;
+		lastFrameCulledEntities = frame.culledEntities;
+		lastFrameVisibleEntities = frame.visibleEntities;
+		lastFrameTriangles = frame.triangles;
+		frame.resetCounts();
+	}
+
+	/**
+	 * Get the number of transformation matrices that had to be calculated in the
+	 * last rendered frame.
+	 *
+	 * @return The number of matrix updates
+	 */
+	public int getMatrixUpdates()
+	{
+		return lastFrameMatrixUpdates;
+	}
 
-		// Start the shader and load the light source and camera.
-		shader.start();
-		shader.loadLight(sun);
-		shader.loadViewMatrix(camera);
+	/**
+	 * Get the number of uniform uploads the shaders skipped, because the uniform
+	 * already had the value.
+	 *
+	 * @return The number of skipped uploads
+	 */
+	public long getUniformHits()
+	{
+		return shader.getUniformHits() + instancedShader.getUniformHits();
+	}
 
-		// Render all of the entities as one batch.
-		renderer.render(entities);
+	/**
+	 * Get the number of uniform uploads that went to the driver.
+	 *
+	 * @return The number of uploads
+	 */
+	public long getUniformMisses()
+	{
+		return shader.getUniformMisses() + instancedShader.getUniformMisses();
+	}
 
-		shader.stop();
-		entities.clear();
+	public void resetUniformStatistics()
+	{
+		shader.resetUniformStatistics();
+		instancedShader.resetUniformStatistics();
 	}
 
 	/**
-	 * This method places an entity in the right location in the Hashmap.
+	 * Describe the skipped and total uploads of every uniform of the shader in use.
+	 *
+	 * @return The statistics as text
+	 */
+	public String describeUniformStatistics()
+	{
+		return instancing ? instancedShader.describeUniformStatistics() : shader.describeUniformStatistics();
+	}
+
+	/**
+	 * Get the number of entities that were outside of the view in the last
+	 * rendered frame.
+	 *
+	 * @return The number of culled entities
+	 */
+	public int getCulledEntities()
+	{
+		return lastFrameCulledEntities;
+	}
+
+	/**
+	 * Get the number of entities that were drawn in the last rendered frame.
+	 *
+	 * @return The number of visible entities
+	 */
+	public int getVisibleEntities()
+	{
+		return lastFrameVisibleEntities;
+	}
+
+	/**
+	 * Get the number of triangles drawn in the last rendered frame, with the levels
+	 * of detail that were picked.
+	 *
+	 * @return The number of triangles
+	 */
+	public long getSubmittedTriangles()
+	{
+		return lastFrameTriangles;
+	}
+
+	/**
+	 * Add a point light to the current frame. Point lights only light what is
+	 * within their range, and are assigned to clusters so every fragment only
+	 * looks at the lights that can reach it.
+	 *
+	 * @param  light  The point light
+	 */
+	public void processLight(Light light)
+	{
+		pointLights.add(light);
+	}
+
+	/**
+	 * This method adds an entity to the render queue, unless it is out of view.
 	 *
 	 * @param  entity  The entity to sort
 	 */
 	public void processEntity(Entity entity)
 	{
-		TexturedModel entityModel = entity.getModel();
+		processEntity(entity, frame);
+	}
 
-		// We first check if there is already an existing list of entities for
-		// this model. If not, a new list if entities is created and stored with
-		// the base model used by the entity.
-		List<Entity> batch = entities.get(entityModel);
-		if (batch != null) {
-			batch.add(entity);
-		} else {
-			List<Entity> newBatch = new ArrayList<>();
-			newBatch.add(entity);
+	/**
+	 * Process a list of entities on several threads. The result is the same as
+	 * calling processEntity() for every entity in the list.
+	 *
+	 * @param  entities  The entities to process
+	 */
+	public void processEntities(List<Entity> entities)
+	{
+		renderListBuilder.build(entities, entityProcessor, queue, frame);
+	}
+
+	/**
+	 * Update and process a list of entities on several threads. Every entity is
+	 * updated right before it is processed, on the same thread.
+	 *
+	 * @param  entities  The entities to process
+	 * @param  update    The update of a single entity, which may only change that
+	 *                   entity, as other threads update other entities at the same time
+	 */
+	public void processEntities(List<Entity> entities, Consumer<Entity> update)
+	{
+		renderListBuilder.build(entities, (entity, chunk) -> {
+			update.accept(entity);
+			processEntity(entity, chunk);
+		}, queue, frame);
+	}
+
+	/**
+	 * Process all the entities in a bounding volume hierarchy at once. Only the
+	 * parts of the hierarchy inside the view are visited, so this is much faster
+	 * than processing every entity on its own when there are many of them. Call
+	 * refit() on the hierarchy first when some of its entities moved.
+	 *
+	 * @param  tree  The hierarchy of entities to process
+	 */
+	public void processEntities(EntityBVH tree)
+	{
+		if (! culling) {
+			throw new IllegalStateException("beginFrame() has to be called before processing a hierarchy");
+		}
+
+		queryResult.clear();
+		tree.query(frustum, queryResult);
+
+		for (Entity entity : queryResult) {
+			entity.storeBoundingSphere(frame.sphere, 0);
+			addToQueue(entity, frame);
+		}
+
+		frame.visibleEntities += queryResult.size();
+		frame.culledEntities += tree.size() - queryResult.size();
+	}
 
-			entities.put(entityModel, newBatch);
+	/**
+	 * Update the matrix of an entity, and add it to the queue of a chunk unless it
+	 * is out of view. This only reads the state of the renderer, so it is safe to
+	 * call from several threads for different entities and chunks.
+	 *
+	 * @param  entity  The entity to process
+	 * @param  chunk   The chunk to add it to
+	 */
+	private void processEntity(Entity entity, RenderListBuilder.Chunk chunk)
+	{
+		// Only entities that changed since the last frame need a new matrix.
+		if (entity.updateTransformationMatrix()) {
+			chunk.matrixUpdates++;
+		}
+
+		// The sphere is used for culling and for picking the level of detail.
+		entity.storeBoundingSphere(chunk.sphere, 0);
+
+		if (culling && ! frustum.intersectsSphere(chunk.sphere[0], chunk.sphere[1], chunk.sphere[2], chunk.sphere[3])) {
+			chunk.culledEntities++;
+			return;
 		}
+		chunk.visibleEntities++;
+
+		addToQueue(entity, chunk);
+	}
+
+	/**
+	 * Add an entity to the render queue of a chunk, with its distance to the camera
+	 * and the level of detail to draw it with.
+	 *
+	 * @param  entity  The entity to add
+	 * @param  chunk   The chunk to add it to, with the bounding sphere of the entity
+	 */
+	private void addToQueue(Entity entity, RenderListBuilder.Chunk chunk)
+	{
+		EntityStore store = entity.getStore();
+		float[] positions = store.getPositions();
+		int index = store.indexOf(entity.getHandle()) * 3;
+		float dx = positions[index] - cameraX;
+		float dy = positions[index + 1] - cameraY;
+		float dz = positions[index + 2] - cameraZ;
+		float depth = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / SORT_DISTANCE;
+
+		RawModel model = selectLevel(entity.getModel(), chunk.sphere);
+		chunk.triangles += model.getVertexCount() / 3;
+
+		int shaderID = instancing ? instancedShader.getProgramID() : shader.getProgramID();
+		chunk.queue.add(entity, model, shaderID, depth);
+	}
+
+	/**
+	 * Pick the level of detail of an entity from the size of its bounding sphere on
+	 * the screen.
+	 *
+	 * @param  model   The model of the entity to draw
+	 * @param  sphere  The bounding sphere of the entity
+	 * @return The level of detail of the model
+	 */
+	private RawModel selectLevel(TexturedModel model, float[] sphere)
+	{
+		if (model.getLevelCount() == 1) {
+			return model.getRawModel();
+		}
+
+		float dx = sphere[0] - cameraX;
+		float dy = sphere[1] - cameraY;
+		float dz = sphere[2] - cameraZ;
+		float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+		// The camera is inside the sphere, so the model covers the whole screen.
+		if (distance <= sphere[3]) {
+			return model.getRawModel();
+		}
+
+		// The y scale of the projection turns a size at a distance of 1 into half
+		// the height of the screen.
+		float projectedRadius = sphere[3] / distance * renderer.getProjectionMatrix().m11 * screenHeight / 2;
 
+		return model.getRawModel(model.selectLevel(projectedRadius, lodPixelError));
 	}
 
 	/**
@@ -80,5 +555,11 @@ public class MasterRenderer
 	public void cleanUp()
 	{
 		shader.cleanUp();
+		instancedShader.cleanUp();
+		instancedRenderer.cleanUp();
+		samplers.cleanUp();
+		frameUniforms.cleanUp();
+		clusteredLighting.cleanUp();
+		renderListBuilder.cleanUp();
 	}
 }
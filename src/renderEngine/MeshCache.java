@@ -0,0 +1,196 @@
+package renderEngine;
+
+import models.MappedMesh;
+import models.ModelData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Reads and writes the binary mesh cache.</p>
+ *
+ * <p>Parsing a text model file on every start is slow, so the result of the first
+ * parse is written to a compact binary file. Later runs memory map that file and
+ * hand the mapped buffers straight to OpenGL.</p>
+ *
+ * <p>The file starts with a 64 byte header, followed by the positions, texture
+ * coordinates, normals and indices. Everything is stored little endian, which is
+ * what OpenGL expects on all the platforms we run on.</p>
+ *
+ * <pre>
+ *  0  int    magic ("MSH1")
+ *  4  int    version
+ *  8  long   size of the source file
+ * 16  long   last modified time of the source file
+ * 24  int    vertex count
+ * 28  int    index count
+ * 32  float  bounds (minX, minY, minZ, maxX, maxY, maxZ)
+ * 56  long   CRC32 checksum of everything after the header
+ * </pre>
+ */
+public class MeshCache
+{
+	private static final int MAGIC = 0x3148534d;
+	// Version 2 stores meshes reordered by the VertexCacheOptimizer.
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+
+	/**
+	 * Read a mesh from a cache file. The cache is only used when it was written for
+	 * the current version of the source file and its checksum is correct.
+	 *
+	 * @param  cacheFile   The binary cache file
+	 * @param  sourceFile  The model file the cache was created from
+	 * @return The mapped mesh, or null if there is no valid cache
+	 */
+	public static MappedMesh read(File cacheFile, File sourceFile)
+	{
+		if (! cacheFile.isFile() || ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE) {
+				return null;
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				return null;
+			}
+
+			// The source file changed since the cache was written.
+			if (buffer.getLong(8) != sourceFile.length() || buffer.getLong(16) != sourceFile.lastModified()) {
+				return null;
+			}
+
+			int vertexCount = buffer.getInt(24);
+			int indexCount = buffer.getInt(28);
+
+			long payloadSize = (long) vertexCount * 8 * 4 + (long) indexCount * 4;
+			if (vertexCount < 0 || indexCount < 0 || channel.size() != HEADER_SIZE + payloadSize) {
+				return null;
+			}
+
+			float[] bounds = new float[6];
+			for (int i = 0; i < 6; i++) {
+				bounds[i] = buffer.getFloat(32 + i * 4);
+			}
+
+			ByteBuffer payload = slice(buffer, HEADER_SIZE, (int) payloadSize);
+			if (checksum(payload) != buffer.getLong(56)) {
+				return null;
+			}
+
+			int offset = HEADER_SIZE;
+			ByteBuffer vertices = slice(buffer, offset, vertexCount * 3 * 4);
+			offset += vertexCount * 3 * 4;
+			ByteBuffer textureCoords = slice(buffer, offset, vertexCount * 2 * 4);
+			offset += vertexCount * 2 * 4;
+			ByteBuffer normals = slice(buffer, offset, vertexCount * 3 * 4);
+			offset += vertexCount * 3 * 4;
+			ByteBuffer indices = slice(buffer, offset, indexCount * 4);
+
+			return new MappedMesh(vertices, textureCoords, normals, indices, vertexCount, indexCount, bounds);
+		} catch (IOException e) {
+			System.err.println("Could not read mesh cache [" + cacheFile + "]");
+			e.printStackTrace();
+
+			return null;
+		}
+	}
+
+	/**
+	 * Write a mesh to a cache file. The file is first written under a temporary
+	 * name and then moved in place, so a crash never leaves a half written cache.
+	 *
+	 * @param  data            The model data to store
+	 * @param  sourceSize      The size of the model file, read before it was parsed
+	 * @param  sourceModified  The last modified time of the model file, read before it was parsed
+	 * @param  cacheFile       The binary cache file to write
+	 * @throws IOException When the cache could not be written
+	 */
+	public static void write(ModelData data, long sourceSize, long sourceModified, File cacheFile) throws IOException
+	{
+		int vertexCount = data.getVertexCount();
+		int indexCount = data.getIndices().length;
+		int payloadSize = vertexCount * 8 * 4 + indexCount * 4;
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_SIZE + payloadSize).order(ByteOrder.LITTLE_ENDIAN);
+
+		buffer.position(HEADER_SIZE);
+		buffer.asFloatBuffer().put(data.getVertices());
+		buffer.position(buffer.position() + vertexCount * 3 * 4);
+		buffer.asFloatBuffer().put(data.getTextureCoords());
+		buffer.position(buffer.position() + vertexCount * 2 * 4);
+		buffer.asFloatBuffer().put(data.getNormals());
+		buffer.position(buffer.position() + vertexCount * 3 * 4);
+		buffer.asIntBuffer().put(data.getIndices());
+
+		float[] bounds = data.getBounds();
+
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putLong(8, sourceSize);
+		buffer.putLong(16, sourceModified);
+		buffer.putInt(24, vertexCount);
+		buffer.putInt(28, indexCount);
+		for (int i = 0; i < 6; i++) {
+			buffer.putFloat(32 + i * 4, bounds[i]);
+		}
+		buffer.putLong(56, checksum(slice(buffer, HEADER_SIZE, payloadSize)));
+
+		buffer.rewind();
+
+		// Every write gets a temporary file of its own, so loads of the same model on
+		// several threads never write into the same file.
+		Path tempFile = Files.createTempFile(cacheFile.getAbsoluteFile().getParentFile().toPath(), cacheFile.getName() + ".", ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+
+			Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/**
+	 * Get a part of a buffer as a buffer of its own, without copying anything.
+	 *
+	 * @param  buffer  The buffer to take a part from
+	 * @param  offset  The start of the part in bytes
+	 * @param  length  The length of the part in bytes
+	 * @return A buffer sharing the memory of the original buffer
+	 */
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length)
+	{
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(offset);
+		duplicate.limit(offset + length);
+
+		return duplicate.slice().order(buffer.order());
+	}
+
+	private static long checksum(ByteBuffer payload)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,708 @@
+package renderEngine;
+
+import models.ModelData;
+import toolbox.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * <p>Simplifies a mesh with quadric error metrics, to create lower levels of detail.</p>
+ *
+ * <p>The mesh is simplified by collapsing edges: one end of the edge is moved onto
+ * the other, and the two triangles along the edge disappear. To pick the edge that
+ * changes the shape the least, every position keeps a quadric: the sum of the
+ * squared distances to the planes of all original triangles around it, stored as a
+ * symmetric 4x4 matrix. When an edge collapses, the quadrics of both ends are added
+ * together, so the remaining position still remembers all the planes it replaced.
+ * The cost of a collapse is that quadric evaluated at the position the end is moved
+ * to, and the cheapest edge is always collapsed first.</p>
+ *
+ * <p>A vertex only ever moves onto one of its neighbours (a half edge collapse), so
+ * the simplified mesh uses a subset of the original vertices, and texture
+ * coordinates and normals stay exactly as they were. Some collapses are never
+ * made:</p>
+ *
+ * <ul>
+ *     <li>Positions on an open border don't move, so no holes open up.</li>
+ *     <li>A position that is split into several vertices by a texture seam or a
+ *     hard edge only moves along that seam, so the seam doesn't tear.</li>
+ *     <li>A collapse that would flip a triangle, or join two triangles fans into a
+ *     non-manifold mesh, is skipped.</li>
+ * </ul>
+ *
+ * <p>simplify() can be called several times with a lower triangle count every time,
+ * each call continuing where the last one stopped. That is how a chain of levels of
+ * detail is created.</p>
+ */
+public class MeshSimplifier
+{
+	// A collapse may not turn a triangle more than about 80 degrees.
+	private static final double MIN_NORMAL_COSINE = 0.2;
+
+	private ModelData data;
+
+	// The triangles as three vertex indices each, and whether they have collapsed.
+	private int[] triangles;
+	private boolean[] removed;
+	private int triangleCount;
+
+	// Vertices with exactly the same position share a position number.
+	private int[] positionOf;
+	private int positionCount;
+	private float[] positions;
+	private int[][] positionVertices;
+	private boolean[] locked;
+
+	// The triangles around every position. Removed triangles are cleaned up lazily.
+	private int[][] positionTriangles;
+	private int[] positionTriangleCounts;
+
+	// The quadric of every position, as the 10 unique values of the symmetric matrix.
+	// The planes are weighted by the area of their triangle, and the total area of
+	// the planes in every quadric is kept as well.
+	private double[] quadrics;
+	private double[] areas;
+
+	// A heap of candidate collapses. Every position has a version, which is increased
+	// whenever its neighbourhood changes, so outdated candidates can be skipped.
+	private int[] versions;
+	private double[] candidateCosts = new double[1024];
+	private int[] candidateFrom = new int[1024];
+	private int[] candidateTo = new int[1024];
+	private int[] candidateFromVersion = new int[1024];
+	private int[] candidateToVersion = new int[1024];
+	private int candidateCount;
+	private int[] heap = new int[1024];
+	private int heapSize;
+
+	// Scratch space for a single collapse.
+	private int[] vertexMap;
+	private int[] neighbours = new int[64];
+
+	private double maxSquaredError;
+
+	/**
+	 * Prepare a mesh for simplification.
+	 *
+	 * @param  data  The mesh to simplify, with triangles as its indices
+	 */
+	public MeshSimplifier(ModelData data)
+	{
+		this.data = data;
+		this.triangles = data.getIndices().clone();
+		this.triangleCount = triangles.length / 3;
+		this.removed = new boolean[triangleCount];
+		this.vertexMap = new int[data.getVertexCount()];
+		Arrays.fill(vertexMap, -1);
+
+		weldPositions();
+		buildTriangleLists();
+		lockBorders();
+		computeQuadrics();
+
+		versions = new int[positionCount];
+		for (int position = 0; position < positionCount; position++) {
+			addCandidates(position);
+		}
+	}
+
+	/**
+	 * Collapse edges until the mesh has at most the given number of triangles, or
+	 * until no edge can be collapsed anymore.
+	 *
+	 * @param  targetTriangleCount  The number of triangles to aim for
+	 * @return The simplified mesh
+	 */
+	public ModelData simplify(int targetTriangleCount)
+	{
+		while (triangleCount > targetTriangleCount && heapSize > 0) {
+			int candidate = popCandidate();
+			int from = candidateFrom[candidate];
+			int to = candidateTo[candidate];
+
+			if (candidateFromVersion[candidate] != versions[from] || candidateToVersion[candidate] != versions[to]) {
+				continue;
+			}
+
+			if (canCollapse(from, to)) {
+				maxSquaredError = Math.max(maxSquaredError, candidateCosts[candidate] / (areas[from] + areas[to]));
+				collapse(from, to);
+			}
+		}
+
+		return createModelData();
+	}
+
+	/**
+	 * Get the error of the simplified mesh so far, in the units of the model: the
+	 * largest root mean square distance of a collapsed position to the planes of the
+	 * original triangles it replaced, weighted by their area.
+	 *
+	 * @return The error, 0 as long as nothing has been simplified
+	 */
+	public float getError()
+	{
+		return (float) Math.sqrt(Math.max(0, maxSquaredError));
+	}
+
+	public int getTriangleCount()
+	{
+		return triangleCount;
+	}
+
+	/**
+	 * Give every unique position a number, so the vertices that are split by seams
+	 * still collapse together.
+	 */
+	private void weldPositions()
+	{
+		float[] vertices = data.getVertices();
+		int vertexCount = data.getVertexCount();
+
+		Integer[] order = new Integer[vertexCount];
+		for (int i = 0; i < vertexCount; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> {
+			for (int axis = 0; axis < 3; axis++) {
+				int compare = Float.compare(vertices[a * 3 + axis], vertices[b * 3 + axis]);
+				if (compare != 0) {
+					return compare;
+				}
+			}
+
+			return 0;
+		});
+
+		positionOf = new int[vertexCount];
+		positions = new float[vertexCount * 3];
+		int[] splitCounts = new int[vertexCount];
+
+		for (int i = 0; i < vertexCount; i++) {
+			int vertex = order[i];
+			if (i == 0 || ! samePosition(vertices, vertex, order[i - 1])) {
+				System.arraycopy(vertices, vertex * 3, positions, positionCount * 3, 3);
+				positionCount++;
+			}
+
+			positionOf[vertex] = positionCount - 1;
+			splitCounts[positionCount - 1]++;
+		}
+
+		positionVertices = new int[positionCount][];
+		for (int position = 0; position < positionCount; position++) {
+			positionVertices[position] = new int[splitCounts[position]];
+			splitCounts[position] = 0;
+		}
+		for (int vertex = 0; vertex < vertexCount; vertex++) {
+			int position = positionOf[vertex];
+			positionVertices[position][splitCounts[position]++] = vertex;
+		}
+	}
+
+	private static boolean samePosition(float[] vertices, int a, int b)
+	{
+		return vertices[a * 3] == vertices[b * 3]
+			&& vertices[a * 3 + 1] == vertices[b * 3 + 1]
+			&& vertices[a * 3 + 2] == vertices[b * 3 + 2];
+	}
+
+	private void buildTriangleLists()
+	{
+		positionTriangleCounts = new int[positionCount];
+		for (int corner = 0; corner < triangles.length; corner++) {
+			positionTriangleCounts[positionOf[triangles[corner]]]++;
+		}
+
+		positionTriangles = new int[positionCount][];
+		for (int position = 0; position < positionCount; position++) {
+			positionTriangles[position] = new int[positionTriangleCounts[position]];
+			positionTriangleCounts[position] = 0;
+		}
+
+		for (int triangle = 0; triangle < triangleCount; triangle++) {
+			for (int corner = 0; corner < 3; corner++) {
+				int position = positionOf[triangles[triangle * 3 + corner]];
+				positionTriangles[position][positionTriangleCounts[position]++] = triangle;
+			}
+		}
+	}
+
+	/**
+	 * Lock the positions on edges that only have a triangle on one side.
+	 */
+	private void lockBorders()
+	{
+		LongIntHashMap edgeCounts = new LongIntHashMap(triangles.length);
+		for (int triangle = 0; triangle < triangleCount; triangle++) {
+			for (int corner = 0; corner < 3; corner++) {
+				long key = edgeKey(triangle, corner);
+				edgeCounts.put(key, edgeCounts.get(key, 0) + 1);
+			}
+		}
+
+		locked = new boolean[positionCount];
+		for (int triangle = 0; triangle < triangleCount; triangle++) {
+			for (int corner = 0; corner < 3; corner++) {
+				if (edgeCounts.get(edgeKey(triangle, corner), 0) == 1) {
+					locked[positionOf[triangles[triangle * 3 + corner]]] = true;
+					locked[positionOf[triangles[triangle * 3 + (corner + 1) % 3]]] = true;
+				}
+			}
+		}
+	}
+
+	private long edgeKey(int triangle, int corner)
+	{
+		int a = positionOf[triangles[triangle * 3 + corner]];
+		int b = positionOf[triangles[triangle * 3 + (corner + 1) % 3]];
+
+		return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+	}
+
+	/**
+	 * Add the plane of every triangle to the quadrics of its three positions.
+	 */
+	private void computeQuadrics()
+	{
+		quadrics = new double[positionCount * 10];
+		areas = new double[positionCount];
+		double[] normal = new double[3];
+
+		for (int triangle = 0; triangle < triangleCount; triangle++) {
+			int a = positionOf[triangles[triangle * 3]];
+			int b = positionOf[triangles[triangle * 3 + 1]];
+			int c = positionOf[triangles[triangle * 3 + 2]];
+
+			double length = computeNormal(a, b, c, normal);
+			if (length == 0) {
+				continue;
+			}
+
+			double nx = normal[0] / length;
+			double ny = normal[1] / length;
+			double nz = normal[2] / length;
+			double d = -(nx * positions[a * 3] + ny * positions[a * 3 + 1] + nz * positions[a * 3 + 2]);
+			double area = length / 2;
+
+			for (int position : new int[] {a, b, c}) {
+				int q = position * 10;
+				quadrics[q] += area * nx * nx;
+				quadrics[q + 1] += area * nx * ny;
+				quadrics[q + 2] += area * nx * nz;
+				quadrics[q + 3] += area * nx * d;
+				quadrics[q + 4] += area * ny * ny;
+				quadrics[q + 5] += area * ny * nz;
+				quadrics[q + 6] += area * ny * d;
+				quadrics[q + 7] += area * nz * nz;
+				quadrics[q + 8] += area * nz * d;
+				quadrics[q + 9] += area * d * d;
+				areas[position] += area;
+			}
+		}
+	}
+
+	/**
+	 * Calculate the cost of moving a position onto another one: the sum of both
+	 * quadrics, evaluated at the position it is moved to.
+	 */
+	private double collapseCost(int from, int to)
+	{
+		double x = positions[to * 3];
+		double y = positions[to * 3 + 1];
+		double z = positions[to * 3 + 2];
+
+		int a = from * 10;
+		int b = to * 10;
+		double q0 = quadrics[a] + quadrics[b];
+		double q1 = quadrics[a + 1] + quadrics[b + 1];
+		double q2 = quadrics[a + 2] + quadrics[b + 2];
+		double q3 = quadrics[a + 3] + quadrics[b + 3];
+		double q4 = quadrics[a + 4] + quadrics[b + 4];
+		double q5 = quadrics[a + 5] + quadrics[b + 5];
+		double q6 = quadrics[a + 6] + quadrics[b + 6];
+		double q7 = quadrics[a + 7] + quadrics[b + 7];
+		double q8 = quadrics[a + 8] + quadrics[b + 8];
+		double q9 = quadrics[a + 9] + quadrics[b + 9];
+
+		return q0 * x * x + 2 * q1 * x * y + 2 * q2 * x * z + 2 * q3 * x
+			+ q4 * y * y + 2 * q5 * y * z + 2 * q6 * y
+			+ q7 * z * z + 2 * q8 * z
+			+ q9;
+	}
+
+	/**
+	 * Add the collapses of all edges around a position, in both directions.
+	 */
+	private void addCandidates(int position)
+	{
+		int neighbourCount = findNeighbours(position);
+		for (int i = 0; i < neighbourCount; i++) {
+			int neighbour = neighbours[i];
+			if (! locked[position]) {
+				pushCandidate(position, neighbour);
+			}
+			if (! locked[neighbour]) {
+				pushCandidate(neighbour, position);
+			}
+		}
+	}
+
+	/**
+	 * Find the positions that share a triangle with a position. They are stored in
+	 * the neighbours array.
+	 *
+	 * @return The number of neighbours
+	 */
+	private int findNeighbours(int position)
+	{
+		int count = 0;
+		for (int i = 0; i < positionTriangleCounts[position]; i++) {
+			int triangle = positionTriangles[position][i];
+			for (int corner = 0; corner < 3; corner++) {
+				int neighbour = positionOf[triangles[triangle * 3 + corner]];
+				if (neighbour == position || contains(neighbours, count, neighbour)) {
+					continue;
+				}
+
+				if (count == neighbours.length) {
+					neighbours = Arrays.copyOf(neighbours, count * 2);
+				}
+				neighbours[count++] = neighbour;
+			}
+		}
+
+		return count;
+	}
+
+	private static boolean contains(int[] values, int count, int value)
+	{
+		for (int i = 0; i < count; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Check whether a position can be moved onto a neighbour without tearing a seam,
+	 * flipping a triangle or making the mesh non-manifold. On success, vertexMap
+	 * holds the vertex every vertex of the position is replaced with.
+	 */
+	private boolean canCollapse(int from, int to)
+	{
+		removeCollapsedTriangles(from);
+		removeCollapsedTriangles(to);
+
+		// The two positions may only share the triangles along their edge. If they
+		// have more neighbours in common, the collapse would fold the mesh onto itself.
+		int sharedTriangles = 0;
+		for (int i = 0; i < positionTriangleCounts[from]; i++) {
+			if (hasPosition(positionTriangles[from][i], to)) {
+				sharedTriangles++;
+			}
+		}
+
+		int neighbourCount = findNeighbours(from);
+		int[] fromNeighbours = Arrays.copyOf(neighbours, neighbourCount);
+		int otherCount = findNeighbours(to);
+		int commonNeighbours = 0;
+		for (int neighbour : fromNeighbours) {
+			if (contains(neighbours, otherCount, neighbour)) {
+				commonNeighbours++;
+			}
+		}
+
+		if (sharedTriangles == 0 || commonNeighbours != sharedTriangles) {
+			return false;
+		}
+
+		return mapVertices(from, to) && ! flipsTriangles(from, to);
+	}
+
+	/**
+	 * Find the vertex every vertex of a position turns into. A vertex can only take
+	 * over a vertex of the other position that it shares a triangle along the edge
+	 * with, otherwise its texture coordinates or normal would change.
+	 */
+	private boolean mapVertices(int from, int to)
+	{
+		for (int vertex : positionVertices[from]) {
+			vertexMap[vertex] = -1;
+		}
+
+		for (int i = 0; i < positionTriangleCounts[from]; i++) {
+			int triangle = positionTriangles[from][i];
+			if (! hasPosition(triangle, to)) {
+				continue;
+			}
+
+			int fromVertex = findVertex(triangle, from);
+			int toVertex = findVertex(triangle, to);
+			if (vertexMap[fromVertex] == -1) {
+				vertexMap[fromVertex] = toVertex;
+			} else if (vertexMap[fromVertex] != toVertex) {
+				// The other position is split along the edge, but this one isn't.
+				return false;
+			}
+		}
+
+		// Every vertex of the position that is still in use needs a replacement.
+		for (int i = 0; i < positionTriangleCounts[from]; i++) {
+			if (vertexMap[findVertex(positionTriangles[from][i], from)] == -1) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check whether moving a position would turn any of the triangles that stay
+	 * around it too far, or make them degenerate.
+	 */
+	private boolean flipsTriangles(int from, int to)
+	{
+		double[] before = new double[3];
+		double[] after = new double[3];
+
+		for (int i = 0; i < positionTriangleCounts[from]; i++) {
+			int triangle = positionTriangles[from][i];
+			if (hasPosition(triangle, to)) {
+				continue;
+			}
+
+			int a = positionOf[triangles[triangle * 3]];
+			int b = positionOf[triangles[triangle * 3 + 1]];
+			int c = positionOf[triangles[triangle * 3 + 2]];
+
+			double beforeLength = computeNormal(a, b, c, before);
+			double afterLength = computeNormal(a == from ? to : a, b == from ? to : b, c == from ? to : c, after);
+			if (afterLength == 0) {
+				return true;
+			}
+
+			double dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+			if (dot < MIN_NORMAL_COSINE * beforeLength * afterLength) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Calculate the (not normalized) normal of a triangle of positions.
+	 *
+	 * @return The length of the normal, twice the area of the triangle
+	 */
+	private double computeNormal(int a, int b, int c, double[] normal)
+	{
+		double abx = positions[b * 3] - positions[a * 3];
+		double aby = positions[b * 3 + 1] - positions[a * 3 + 1];
+		double abz = positions[b * 3 + 2] - positions[a * 3 + 2];
+		double acx = positions[c * 3] - positions[a * 3];
+		double acy = positions[c * 3 + 1] - positions[a * 3 + 1];
+		double acz = positions[c * 3 + 2] - positions[a * 3 + 2];
+
+		normal[0] = aby * acz - abz * acy;
+		normal[1] = abz * acx - abx * acz;
+		normal[2] = abx * acy - aby * acx;
+
+		return Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+	}
+
+	/**
+	 * Move a position onto a neighbour. The triangles along the edge are removed, and
+	 * all others take over the vertices found by mapVertices().
+	 */
+	private void collapse(int from, int to)
+	{
+		for (int i = 0; i < positionTriangleCounts[from]; i++) {
+			int triangle = positionTriangles[from][i];
+			if (hasPosition(triangle, to)) {
+				removed[triangle] = true;
+				triangleCount--;
+				continue;
+			}
+
+			for (int corner = 0; corner < 3; corner++) {
+				int vertex = triangles[triangle * 3 + corner];
+				if (positionOf[vertex] == from) {
+					triangles[triangle * 3 + corner] = vertexMap[vertex];
+				}
+			}
+			addTriangle(to, triangle);
+		}
+		positionTriangleCounts[from] = 0;
+		removeCollapsedTriangles(to);
+
+		for (int i = 0; i < 10; i++) {
+			quadrics[to * 10 + i] += quadrics[from * 10 + i];
+		}
+		areas[to] += areas[from];
+
+		// The collapse changed the fans of the position and its neighbours, so all
+		// their collapses have to be checked again.
+		versions[from]++;
+		versions[to]++;
+		int neighbourCount = findNeighbours(to);
+		int[] changed = Arrays.copyOf(neighbours, neighbourCount);
+		for (int neighbour : changed) {
+			versions[neighbour]++;
+		}
+
+		addCandidates(to);
+		for (int neighbour : changed) {
+			addCandidates(neighbour);
+		}
+	}
+
+	private void addTriangle(int position, int triangle)
+	{
+		int count = positionTriangleCounts[position];
+		if (count == positionTriangles[position].length) {
+			positionTriangles[position] = Arrays.copyOf(positionTriangles[position], Math.max(4, count * 2));
+		}
+
+		positionTriangles[position][count] = triangle;
+		positionTriangleCounts[position]++;
+	}
+
+	private void removeCollapsedTriangles(int position)
+	{
+		int count = 0;
+		for (int i = 0; i < positionTriangleCounts[position]; i++) {
+			int triangle = positionTriangles[position][i];
+			if (! removed[triangle]) {
+				positionTriangles[position][count++] = triangle;
+			}
+		}
+
+		positionTriangleCounts[position] = count;
+	}
+
+	private boolean hasPosition(int triangle, int position)
+	{
+		return positionOf[triangles[triangle * 3]] == position
+			|| positionOf[triangles[triangle * 3 + 1]] == position
+			|| positionOf[triangles[triangle * 3 + 2]] == position;
+	}
+
+	private int findVertex(int triangle, int position)
+	{
+		for (int corner = 0; corner < 3; corner++) {
+			if (positionOf[triangles[triangle * 3 + corner]] == position) {
+				return triangles[triangle * 3 + corner];
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Create the mesh of the remaining triangles. Only the vertices that are still
+	 * used are kept, in the order they are first used.
+	 */
+	private ModelData createModelData()
+	{
+		int[] newIndex = new int[data.getVertexCount()];
+		Arrays.fill(newIndex, -1);
+
+		int[] indices = new int[triangleCount * 3];
+		int indexCount = 0;
+		int vertexCount = 0;
+		for (int triangle = 0; triangle < triangles.length / 3; triangle++) {
+			if (removed[triangle]) {
+				continue;
+			}
+
+			for (int corner = 0; corner < 3; corner++) {
+				int vertex = triangles[triangle * 3 + corner];
+				if (newIndex[vertex] == -1) {
+					newIndex[vertex] = vertexCount++;
+				}
+				indices[indexCount++] = newIndex[vertex];
+			}
+		}
+
+		float[] vertices = new float[vertexCount * 3];
+		float[] textureCoords = new float[vertexCount * 2];
+		float[] normals = new float[vertexCount * 3];
+		for (int vertex = 0; vertex < newIndex.length; vertex++) {
+			int index = newIndex[vertex];
+			if (index == -1) {
+				continue;
+			}
+
+			System.arraycopy(data.getVertices(), vertex * 3, vertices, index * 3, 3);
+			System.arraycopy(data.getTextureCoords(), vertex * 2, textureCoords, index * 2, 2);
+			System.arraycopy(data.getNormals(), vertex * 3, normals, index * 3, 3);
+		}
+
+		return new ModelData(vertices, textureCoords, normals, indices);
+	}
+
+	private void pushCandidate(int from, int to)
+	{
+		if (candidateCount == candidateCosts.length) {
+			int capacity = candidateCount * 2;
+			candidateCosts = Arrays.copyOf(candidateCosts, capacity);
+			candidateFrom = Arrays.copyOf(candidateFrom, capacity);
+			candidateTo = Arrays.copyOf(candidateTo, capacity);
+			candidateFromVersion = Arrays.copyOf(candidateFromVersion, capacity);
+			candidateToVersion = Arrays.copyOf(candidateToVersion, capacity);
+		}
+
+		int candidate = candidateCount++;
+		candidateCosts[candidate] = collapseCost(from, to);
+		candidateFrom[candidate] = from;
+		candidateTo[candidate] = to;
+		candidateFromVersion[candidate] = versions[from];
+		candidateToVersion[candidate] = versions[to];
+
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, heapSize * 2);
+		}
+
+		// Sift the new candidate up to its place in the heap.
+		int index = heapSize++;
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (candidateCosts[heap[parent]] <= candidateCosts[candidate]) {
+				break;
+			}
+			heap[index] = heap[parent];
+			index = parent;
+		}
+		heap[index] = candidate;
+	}
+
+	private int popCandidate()
+	{
+		int top = heap[0];
+		int last = heap[--heapSize];
+
+		// Sift the last candidate down from the top.
+		int index = 0;
+		while (true) {
+			int child = index * 2 + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && candidateCosts[heap[child + 1]] < candidateCosts[heap[child]]) {
+				child++;
+			}
+			if (candidateCosts[heap[child]] >= candidateCosts[last]) {
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = last;
+
+		return top;
+	}
+}
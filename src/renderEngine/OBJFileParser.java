@@ -0,0 +1,352 @@
+package renderEngine;
+
+import models.ModelData;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * <p>A streaming OBJ parser that works directly on the bytes of the file.</p>
+ *
+ * <p>Instead of reading the file line by line as Strings, splitting every line and
+ * creating a vector object for every single vertex, this parser reads the file in
+ * fixed size chunks and tokenizes the numbers by hand. All the values end up in
+ * growable primitive arrays, so the only allocations are the final arrays handed
+ * to the Loader. A parser instance can be reused to load multiple files, in which
+ * case even its internal buffers are reused.</p>
+ *
+ * <p>The face corners are turned into unique vertices by the VertexIndexer, so
+ * positions on a texture seam get a vertex for every texture coordinate.</p>
+ */
+public class OBJFileParser
+{
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * Powers of ten that can be represented exactly by a float. Dividing (or
+	 * multiplying) an exact integer mantissa by one of these values is a single,
+	 * correctly rounded operation, so the result is the same as Float.parseFloat.
+	 */
+	private static final float[] FLOAT_POW10 = {
+		1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+
+	/**
+	 * The largest mantissa that still fits in the 24 bits of a float.
+	 */
+	private static final long MAX_EXACT_MANTISSA = 1 << 24;
+
+	private byte[] chunk = new byte[CHUNK_SIZE];
+	private byte[] line = new byte[256];
+	private int lineLength;
+
+	// The position in the current line while tokenizing.
+	private int cursor;
+
+	private float[] positions = new float[3 * 1024];
+	private int positionCount;
+
+	private float[] textures = new float[2 * 1024];
+	private int textureCount;
+
+	private float[] normals = new float[3 * 1024];
+	private int normalCount;
+
+	// The face corners as (position, texture, normal) triplets, zero based.
+	private int[] corners = new int[3 * 1024];
+	private int cornerCount;
+
+	private VertexIndexer indexer = new VertexIndexer();
+
+	/**
+	 * Parse an OBJ file.
+	 *
+	 * @param  file  The OBJ file to parse
+	 * @return The parsed model data
+	 * @throws IOException When the file could not be read
+	 */
+	public ModelData parse(File file) throws IOException
+	{
+		try (InputStream input = new FileInputStream(file)) {
+			return parse(input);
+		}
+	}
+
+	/**
+	 * Parse OBJ data from a stream. The stream is not closed.
+	 *
+	 * @param  input  The stream to read the OBJ data from
+	 * @return The parsed model data
+	 * @throws IOException When the stream could not be read
+	 */
+	public ModelData parse(InputStream input) throws IOException
+	{
+		positionCount = 0;
+		textureCount = 0;
+		normalCount = 0;
+		cornerCount = 0;
+		lineLength = 0;
+
+		int read;
+		while ((read = input.read(chunk, 0, chunk.length)) != -1) {
+			for (int i = 0; i < read; i++) {
+				byte b = chunk[i];
+				if (b == '\n' || b == '\r') {
+					parseLine();
+					lineLength = 0;
+				} else {
+					if (lineLength == line.length) {
+						line = Arrays.copyOf(line, line.length * 2);
+					}
+					line[lineLength++] = b;
+				}
+			}
+		}
+
+		// The last line might not end with a line break.
+		parseLine();
+		lineLength = 0;
+
+		checkCorners();
+
+		return indexer.index(positions, textures, normals, corners, cornerCount);
+	}
+
+	/**
+	 * Check that every face corner uses vertices that are in the file. A file that
+	 * is still being written can have faces before all of their vertices.
+	 *
+	 * @throws IOException When a corner uses a vertex that isn't in the file
+	 */
+	private void checkCorners() throws IOException
+	{
+		for (int corner = 0; corner < cornerCount; corner++) {
+			int position = corners[corner * 3];
+			int texture = corners[corner * 3 + 1];
+			int normal = corners[corner * 3 + 2];
+
+			if (position < 0 || position >= positionCount || texture < -1 || texture >= textureCount
+				|| normal < -1 || normal >= normalCount) {
+				throw new IOException("Face corner " + corner + " uses a vertex that is not in the file");
+			}
+		}
+	}
+
+	/**
+	 * Parse the line currently in the line buffer.
+	 */
+	private void parseLine()
+	{
+		cursor = 0;
+		skipWhitespace();
+
+		if (cursor + 1 >= lineLength) {
+			return;
+		}
+
+		byte first = line[cursor];
+		byte second = line[cursor + 1];
+
+		if (first == 'v' && isWhitespace(second)) {
+			cursor += 1;
+			positions = ensureCapacity(positions, positionCount * 3 + 3);
+			positions[positionCount * 3] = nextFloat();
+			positions[positionCount * 3 + 1] = nextFloat();
+			positions[positionCount * 3 + 2] = nextFloat();
+			positionCount++;
+		} else if (first == 'v' && second == 't') {
+			cursor += 2;
+			textures = ensureCapacity(textures, textureCount * 2 + 2);
+			textures[textureCount * 2] = nextFloat();
+			textures[textureCount * 2 + 1] = nextFloat();
+			textureCount++;
+		} else if (first == 'v' && second == 'n') {
+			cursor += 2;
+			normals = ensureCapacity(normals, normalCount * 3 + 3);
+			normals[normalCount * 3] = nextFloat();
+			normals[normalCount * 3 + 1] = nextFloat();
+			normals[normalCount * 3 + 2] = nextFloat();
+			normalCount++;
+		} else if (first == 'f' && isWhitespace(second)) {
+			cursor += 1;
+			parseFace();
+		}
+	}
+
+	/**
+	 * Parse a face. Faces with more than three corners are split up in a fan of
+	 * triangles around the first corner.
+	 */
+	private void parseFace()
+	{
+		int firstCorner = cornerCount;
+		int cornersInFace = 0;
+
+		skipWhitespace();
+		while (cursor < lineLength) {
+			// Stop at anything that is not an index, like a trailing comment.
+			if (! isDigit(line[cursor]) && line[cursor] != '-') {
+				break;
+			}
+
+			if (cornersInFace >= 3) {
+				// Start a new triangle with the first and the previous corner.
+				appendCorner(firstCorner);
+				appendCorner(cornerCount - 2);
+			}
+
+			corners = ensureCapacity(corners, cornerCount * 3 + 3);
+			corners[cornerCount * 3] = resolveIndex(nextInt(), positionCount);
+			corners[cornerCount * 3 + 1] = -1;
+			corners[cornerCount * 3 + 2] = -1;
+
+			if (cursor < lineLength && line[cursor] == '/') {
+				cursor++;
+				if (cursor < lineLength && line[cursor] != '/') {
+					corners[cornerCount * 3 + 1] = resolveIndex(nextInt(), textureCount);
+				}
+				if (cursor < lineLength && line[cursor] == '/') {
+					cursor++;
+					corners[cornerCount * 3 + 2] = resolveIndex(nextInt(), normalCount);
+				}
+			}
+
+			cornerCount++;
+			cornersInFace++;
+			skipWhitespace();
+		}
+	}
+
+	/**
+	 * Copy an already parsed corner to the end of the corner list.
+	 *
+	 * @param  corner  The index of the corner to copy
+	 */
+	private void appendCorner(int corner)
+	{
+		corners = ensureCapacity(corners, cornerCount * 3 + 3);
+		System.arraycopy(corners, corner * 3, corners, cornerCount * 3, 3);
+		cornerCount++;
+	}
+
+	/**
+	 * Turn a one based OBJ index into a zero based index. Negative indices are
+	 * relative to the end of the elements read so far.
+	 *
+	 * @param  index  The index as written in the file
+	 * @param  count  The number of elements read so far
+	 * @return The zero based index
+	 */
+	private static int resolveIndex(int index, int count)
+	{
+		return index < 0 ? count + index : index - 1;
+	}
+
+	/**
+	 * Read the next integer from the current line.
+	 *
+	 * @return The integer value
+	 */
+	private int nextInt()
+	{
+		skipWhitespace();
+
+		boolean negative = false;
+		if (cursor < lineLength && (line[cursor] == '-' || line[cursor] == '+')) {
+			negative = line[cursor] == '-';
+			cursor++;
+		}
+
+		int value = 0;
+		while (cursor < lineLength && isDigit(line[cursor])) {
+			value = value * 10 + (line[cursor] - '0');
+			cursor++;
+		}
+
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Read the next float from the current line. Numbers that can not be converted
+	 * exactly with a single float operation are handed to Float.parseFloat, so the
+	 * result is always identical to what Float.parseFloat would return.
+	 *
+	 * @return The float value
+	 */
+	private float nextFloat()
+	{
+		skipWhitespace();
+		int start = cursor;
+
+		boolean negative = false;
+		if (cursor < lineLength && (line[cursor] == '-' || line[cursor] == '+')) {
+			negative = line[cursor] == '-';
+			cursor++;
+		}
+
+		long mantissa = 0;
+		int exponent = 0;
+		boolean exact = true;
+
+		while (cursor < lineLength && isDigit(line[cursor])) {
+			mantissa = mantissa * 10 + (line[cursor] - '0');
+			exact &= mantissa < MAX_EXACT_MANTISSA;
+			cursor++;
+		}
+
+		if (cursor < lineLength && line[cursor] == '.') {
+			cursor++;
+			while (cursor < lineLength && isDigit(line[cursor])) {
+				mantissa = mantissa * 10 + (line[cursor] - '0');
+				exact &= mantissa < MAX_EXACT_MANTISSA;
+				exponent--;
+				cursor++;
+			}
+		}
+
+		if (cursor < lineLength && (line[cursor] == 'e' || line[cursor] == 'E')) {
+			cursor++;
+			exponent += nextInt();
+		}
+
+		if (! exact || exponent < -10 || exponent > 10) {
+			return Float.parseFloat(new String(line, start, cursor - start));
+		}
+
+		float value = exponent < 0
+			? (float) mantissa / FLOAT_POW10[-exponent]
+			: (float) mantissa * FLOAT_POW10[exponent];
+
+		return negative ? -value : value;
+	}
+
+	private void skipWhitespace()
+	{
+		while (cursor < lineLength && isWhitespace(line[cursor])) {
+			cursor++;
+		}
+	}
+
+	private static boolean isWhitespace(byte b)
+	{
+		return b == ' ' || b == '\t';
+	}
+
+	private static boolean isDigit(byte b)
+	{
+		return b >= '0' && b <= '9';
+	}
+
+	private static float[] ensureCapacity(float[] array, int capacity)
+	{
+		return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+	}
+
+	private static int[] ensureCapacity(int[] array, int capacity)
+	{
+		return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+	}
+}
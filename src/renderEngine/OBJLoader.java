@@ -1,5 +1,7 @@
 package renderEngine;
 
+import models.MappedMesh;
+import models.ModelData;
 import models.RawModel;
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
@@ -13,14 +15,167 @@ import java.util.List;
  */
 public class OBJLoader
 {
+	/**
+	 * Every level of detail aims for this fraction of the triangles of the level
+	 * before it.
+	 */
+	private static final float LEVEL_REDUCTION = 0.5f;
+
 	/**
 	 * Load an OBJ model and return it as a RawModel instance.
 	 *
+	 * The first time a model is loaded, the parsed data is also written to a binary
+	 * cache file next to the OBJ file. As long as the OBJ file does not change, the
+	 * next loads map that cache file into memory instead of parsing the OBJ again.
+	 *
 	 * @param  filename  The file to load
 	 * @param  loader    The Loader instance
 	 * @return A RawModel of the loaded OBJ model
 	 */
 	public static RawModel loadObjModel(String filename, Loader loader)
+	{
+		try {
+			return tryLoadObjModel(filename, loader);
+		} catch (FileNotFoundException e) {
+			System.err.println("File [" + filename + "] not found");
+			e.printStackTrace();
+			System.exit(-1);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Load an OBJ model like loadObjModel(), but throw when the file can't be read,
+	 * for loads in the middle of a game that may fail without ending it.
+	 *
+	 * @param  filename  The file to load
+	 * @param  loader    The Loader instance
+	 * @return A RawModel of the loaded OBJ model
+	 * @throws IOException When the OBJ file could not be read
+	 */
+	static RawModel tryLoadObjModel(String filename, Loader loader) throws IOException
+	{
+		File objFile = getObjFile(filename);
+		File cacheFile = getCacheFile(filename);
+
+		MappedMesh cached = MeshCache.read(cacheFile, objFile);
+		if (cached != null) {
+			RawModel model = loader.loadToVAO(cached.getVertices(), cached.getTextureCoords(), cached.getNormals(), cached.getIndices());
+			model.setBounds(cached.getBounds());
+
+			return model;
+		}
+
+		ModelData data = parseAndCache(objFile, cacheFile, new OBJFileParser());
+
+		return loader.loadToVAO(data.getVertices(), data.getTextureCoords(), data.getNormals(), data.getIndices());
+	}
+
+	/**
+	 * <p>Load an OBJ model with a chain of simplified levels of detail.</p>
+	 *
+	 * <p>Every level has about half the triangles of the level before it, and knows
+	 * how far it is from the full detail model, so the renderer can pick a level by
+	 * the size of the model on the screen. When the simplifier can't remove at least
+	 * a tenth of the triangles of the last level anymore, the chain stops early.</p>
+	 *
+	 * @param  filename   The file to load
+	 * @param  loader     The Loader instance
+	 * @param  maxLevels  The largest number of levels, including the full detail model
+	 * @return The levels of detail, starting with the full detail model
+	 */
+	public static RawModel[] loadObjModelLevels(String filename, Loader loader, int maxLevels)
+	{
+		ModelData data = null;
+		try {
+			data = new OBJFileParser().parse(getObjFile(filename));
+		} catch (FileNotFoundException e) {
+			System.err.println("File [" + filename + "] not found");
+			e.printStackTrace();
+			System.exit(-1);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+
+		data = VertexCacheOptimizer.optimize(data);
+
+		List<RawModel> levels = new ArrayList<>();
+		levels.add(loader.loadToVAO(data.getVertices(), data.getTextureCoords(), data.getNormals(), data.getIndices()));
+
+		MeshSimplifier simplifier = new MeshSimplifier(data);
+		int triangles = data.getIndices().length / 3;
+		while (levels.size() < maxLevels) {
+			ModelData level = simplifier.simplify((int) (triangles * LEVEL_REDUCTION));
+			if (simplifier.getTriangleCount() > triangles * 0.9f) {
+				break;
+			}
+			triangles = simplifier.getTriangleCount();
+
+			level = VertexCacheOptimizer.optimize(level);
+			RawModel model = loader.loadToVAO(level.getVertices(), level.getTextureCoords(), level.getNormals(), level.getIndices());
+			model.setError(simplifier.getError());
+			levels.add(model);
+		}
+
+		return levels.toArray(new RawModel[0]);
+	}
+
+	/**
+	 * Parse an OBJ file, reorder it for the vertex cache, and write the result to the
+	 * binary mesh cache.
+	 *
+	 * @param  objFile    The OBJ file to parse
+	 * @param  cacheFile  The cache file to write
+	 * @param  parser     The parser to use
+	 * @return The parsed model data
+	 * @throws IOException When the OBJ file could not be read
+	 */
+	static ModelData parseAndCache(File objFile, File cacheFile, OBJFileParser parser) throws IOException
+	{
+		// The OBJ may be saved again while it is parsed, so the cache gets the size and
+		// time of the version that was parsed. A newer one doesn't match it.
+		long sourceSize = objFile.length();
+		long sourceModified = objFile.lastModified();
+
+		ModelData data = VertexCacheOptimizer.optimize(parser.parse(objFile));
+
+		// Failing to write the cache is not fatal, we just parse the OBJ again next time.
+		try {
+			MeshCache.write(data, sourceSize, sourceModified, cacheFile);
+		} catch (IOException e) {
+			System.err.println("Could not write mesh cache [" + cacheFile + "]");
+			e.printStackTrace();
+		}
+
+		return data;
+	}
+
+	static File getObjFile(String filename)
+	{
+		return new File("res/" + filename + ".obj");
+	}
+
+	static File getCacheFile(String filename)
+	{
+		return new File("res/" + filename + ".mesh");
+	}
+
+	/**
+	 * <p>Read an OBJ model line by line using Strings.</p>
+	 *
+	 * <p>This is the original, easy to follow implementation of the loader. It is
+	 * kept as a reference to compare the OBJFileParser against, both in output and
+	 * in speed. It creates a lot of garbage, so don't use it to load large models.</p>
+	 *
+	 * @param  filename  The file to load
+	 * @return The model data of the loaded OBJ model
+	 */
+	public static ModelData readObjModelLineByLine(String filename)
 	{
 		BufferedReader reader = null;
 		try {
@@ -124,7 +279,7 @@ public class OBJLoader
 			indicesArray[i] = indices.get(i);
 		}
 
-		return loader.loadToVAO(verticesArray, textureArray, normalsArray, indicesArray);
+		return new ModelData(verticesArray, textureArray, normalsArray, indicesArray);
 	}
 
 	/**
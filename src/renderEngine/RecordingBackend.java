@@ -0,0 +1,580 @@
+package renderEngine;
+
+import org.lwjgl.opengl.EXTTextureFilterAnisotropic;
+import org.lwjgl.opengl.GL11;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>A graphics backend that doesn't draw anything, but counts what the engine asks
+ * it to do.</p>
+ *
+ * <p>Every call is counted per frame: draw calls, triangles, state changes, bytes
+ * uploaded to buffers and textures, and uniform uploads. A frame ends when the
+ * display is updated (or endFrame() is called), after which the counts of that
+ * frame can be read with getLastFrame(). Together with the fact that it needs no
+ * GPU at all, this makes it possible to profile the CPU side of the render path.</p>
+ */
+public class RecordingBackend implements GraphicsBackend
+{
+	/**
+	 * The things that are counted every frame.
+	 */
+	public enum Counter
+	{
+		DRAW_CALLS,
+		TRIANGLES,
+		STATE_CHANGES,
+		VAO_BINDS,
+		TEXTURE_BINDS,
+		PROGRAM_BINDS,
+		BUFFER_BYTES_UPLOADED,
+		UNIFORM_UPLOADS
+	}
+
+	private long[] currentFrame = new long[Counter.values().length];
+	private long[] lastFrame = new long[Counter.values().length];
+	private long[] total = new long[Counter.values().length];
+
+	private int frameCount;
+
+	// Every generated object and uniform location gets a unique ID.
+	private int nextID = 1;
+
+	private int width = 1280;
+	private int height = 720;
+
+	// Makes every shader fail to compile, to test how errors are handled.
+	private boolean shaderErrors;
+
+	// Uniforms that get location -1, as if the compiler removed them.
+	private Set<String> inactiveUniforms = new HashSet<>();
+
+	/**
+	 * End the current frame. The counts of the frame are available through
+	 * getLastFrame() afterwards, and the counting starts over.
+	 */
+	public void endFrame()
+	{
+		for (int i = 0; i < currentFrame.length; i++) {
+			lastFrame[i] = currentFrame[i];
+			total[i] += currentFrame[i];
+			currentFrame[i] = 0;
+		}
+
+		frameCount++;
+	}
+
+	/**
+	 * Get a count of the last finished frame.
+	 *
+	 * @param  counter  The counter to get
+	 * @return The count
+	 */
+	public long getLastFrame(Counter counter)
+	{
+		return lastFrame[counter.ordinal()];
+	}
+
+	/**
+	 * Get a count of all finished frames together.
+	 *
+	 * @param  counter  The counter to get
+	 * @return The count
+	 */
+	public long getTotal(Counter counter)
+	{
+		return total[counter.ordinal()];
+	}
+
+	/**
+	 * Get the number of finished frames.
+	 *
+	 * @return The number of frames
+	 */
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+
+	/**
+	 * Describe the counts of the last finished frame in a single line.
+	 *
+	 * @return The counts as text
+	 */
+	public String describeLastFrame()
+	{
+		StringBuilder description = new StringBuilder();
+		for (Counter counter : Counter.values()) {
+			if (description.length() > 0) {
+				description.append(", ");
+			}
+			description.append(counter.name().toLowerCase()).append('=').append(lastFrame[counter.ordinal()]);
+		}
+
+		return description.toString();
+	}
+
+	private void count(Counter counter)
+	{
+		currentFrame[counter.ordinal()]++;
+	}
+
+	private void countTriangles(int mode, int indexCount, int instanceCount)
+	{
+		if (mode == GL11.GL_TRIANGLES) {
+			currentFrame[Counter.TRIANGLES.ordinal()] += (long) indexCount / 3 * instanceCount;
+		}
+	}
+
+	private void countBytes(Buffer data, int bytesPerElement)
+	{
+		currentFrame[Counter.BUFFER_BYTES_UPLOADED.ordinal()] += (long) data.remaining() * bytesPerElement;
+	}
+
+	@Override
+	public void createDisplay(int width, int height, String title)
+	{
+		this.width = width;
+		this.height = height;
+	}
+
+	@Override
+	public void updateDisplay(int fpsCap)
+	{
+		endFrame();
+	}
+
+	@Override
+	public void setVSync(boolean enabled)
+	{
+	}
+
+	@Override
+	public boolean isCloseRequested()
+	{
+		return false;
+	}
+
+	@Override
+	public int getDisplayWidth()
+	{
+		return width;
+	}
+
+	@Override
+	public int getDisplayHeight()
+	{
+		return height;
+	}
+
+	@Override
+	public void destroyDisplay()
+	{
+	}
+
+	@Override
+	public void enable(int capability)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void cullFace(int mode)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void viewport(int x, int y, int width, int height)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void clearColor(float red, float green, float blue, float alpha)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void clear(int mask)
+	{
+	}
+
+	/**
+	 * Only the limits the engine asks for are known, as the values of a typical
+	 * graphics card.
+	 */
+	@Override
+	public float getFloat(int name)
+	{
+		if (name == EXTTextureFilterAnisotropic.GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT) {
+			return 16;
+		}
+
+		return 0;
+	}
+
+	@Override
+	public void drawElements(int mode, int count, int type, long indicesOffset)
+	{
+		count(Counter.DRAW_CALLS);
+		countTriangles(mode, count, 1);
+	}
+
+	@Override
+	public void drawElementsInstanced(int mode, int count, int type, long indicesOffset, int instanceCount)
+	{
+		count(Counter.DRAW_CALLS);
+		countTriangles(mode, count, instanceCount);
+	}
+
+	@Override
+	public int genVertexArrays()
+	{
+		return nextID++;
+	}
+
+	@Override
+	public void bindVertexArray(int array)
+	{
+		count(Counter.STATE_CHANGES);
+		count(Counter.VAO_BINDS);
+	}
+
+	@Override
+	public void deleteVertexArrays(int array)
+	{
+	}
+
+	@Override
+	public void enableVertexAttribArray(int index)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void disableVertexAttribArray(int index)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void vertexAttribDivisor(int index, int divisor)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public int genBuffers()
+	{
+		return nextID++;
+	}
+
+	@Override
+	public void bindBuffer(int target, int buffer)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void bufferData(int target, FloatBuffer data, int usage)
+	{
+		countBytes(data, 4);
+	}
+
+	@Override
+	public void bufferData(int target, IntBuffer data, int usage)
+	{
+		countBytes(data, 4);
+	}
+
+	@Override
+	public void bufferData(int target, ByteBuffer data, int usage)
+	{
+		countBytes(data, 1);
+	}
+
+	@Override
+	public void bufferData(int target, long size, int usage)
+	{
+	}
+
+	@Override
+	public void bufferSubData(int target, long offset, FloatBuffer data)
+	{
+		countBytes(data, 4);
+	}
+
+	@Override
+	public void bufferSubData(int target, long offset, ByteBuffer data)
+	{
+		countBytes(data, 1);
+	}
+
+	@Override
+	public void bindBufferBase(int target, int index, int buffer)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void deleteBuffers(int buffer)
+	{
+	}
+
+	@Override
+	public int genTextures()
+	{
+		return nextID++;
+	}
+
+	@Override
+	public void activeTexture(int texture)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void bindTexture(int target, int texture)
+	{
+		count(Counter.STATE_CHANGES);
+		count(Counter.TEXTURE_BINDS);
+	}
+
+	@Override
+	public void texParameteri(int target, int name, int value)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void pixelStorei(int name, int value)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void texImage2D(int target, int level, int internalFormat, int width, int height, int border, int format, int type, ByteBuffer pixels)
+	{
+		if (pixels != null) {
+			countBytes(pixels, 1);
+		}
+	}
+
+	@Override
+	public void compressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border, ByteBuffer data)
+	{
+		countBytes(data, 1);
+	}
+
+	@Override
+	public void deleteTextures(int texture)
+	{
+	}
+
+	@Override
+	public void texBuffer(int target, int internalFormat, int buffer)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public int genSamplers()
+	{
+		return nextID++;
+	}
+
+	@Override
+	public void bindSampler(int unit, int sampler)
+	{
+		count(Counter.STATE_CHANGES);
+	}
+
+	@Override
+	public void samplerParameteri(int sampler, int name, int value)
+	{
+	}
+
+	@Override
+	public void samplerParameterf(int sampler, int name, float value)
+	{
+	}
+
+	@Override
+	public void deleteSamplers(int sampler)
+	{
+	}
+
+	@Override
+	public int createShader(int type)
+	{
+		return nextID++;
+	}
+
+	@Override
+	public void shaderSource(int shader, CharSequence source)
+	{
+	}
+
+	@Override
+	public void compileShader(int shader)
+	{
+	}
+
+	/**
+	 * Make every shader compiled from now on fail, or compile again. The backend
+	 * can't compile GLSL, so this is the way to test the error handling of shaders.
+	 *
+	 * @param  shaderErrors  True to fail every shader
+	 */
+	public void setShaderErrors(boolean shaderErrors)
+	{
+		this.shaderErrors = shaderErrors;
+	}
+
+	/**
+	 * Give uniforms location -1 from now on, like a GLSL compiler does for uniforms
+	 * that aren't used or aren't there. Call it without names to make every uniform
+	 * active again.
+	 *
+	 * @param  names  The names of the uniforms that are inactive
+	 */
+	public void setInactiveUniforms(String... names)
+	{
+		inactiveUniforms = new HashSet<>(Arrays.asList(names));
+	}
+
+	@Override
+	public int getShaderi(int shader, int name)
+	{
+		// Pretend every shader compiles, unless errors were asked for.
+		return shaderErrors ? GL11.GL_FALSE : GL11.GL_TRUE;
+	}
+
+	@Override
+	public String getShaderInfoLog(int shader, int maxLength)
+	{
+		return shaderErrors ? "ERROR: 0:1: recording backend asked to fail" : "";
+	}
+
+	@Override
+	public void deleteShader(int shader)
+	{
+	}
+
+	@Override
+	public int createProgram()
+	{
+		return nextID++;
+	}
+
+	@Override
+	public void attachShader(int program, int shader)
+	{
+	}
+
+	@Override
+	public void detachShader(int program, int shader)
+	{
+	}
+
+	@Override
+	public void bindAttribLocation(int program, int index, CharSequence name)
+	{
+	}
+
+	@Override
+	public void linkProgram(int program)
+	{
+	}
+
+	@Override
+	public void validateProgram(int program)
+	{
+	}
+
+	@Override
+	public int getProgrami(int program, int name)
+	{
+		return GL11.GL_TRUE;
+	}
+
+	@Override
+	public String getProgramInfoLog(int program, int maxLength)
+	{
+		return "";
+	}
+
+	@Override
+	public void useProgram(int program)
+	{
+		count(Counter.STATE_CHANGES);
+		count(Counter.PROGRAM_BINDS);
+	}
+
+	@Override
+	public void deleteProgram(int program)
+	{
+	}
+
+	@Override
+	public int getUniformLocation(int program, CharSequence name)
+	{
+		return inactiveUniforms.contains(name.toString()) ? -1 : nextID++;
+	}
+
+	@Override
+	public int getUniformBlockIndex(int program, CharSequence name)
+	{
+		return nextID++;
+	}
+
+	@Override
+	public void uniformBlockBinding(int program, int blockIndex, int binding)
+	{
+	}
+
+	@Override
+	public void uniform1i(int location, int value)
+	{
+		count(Counter.UNIFORM_UPLOADS);
+	}
+
+	@Override
+	public void uniform1f(int location, float value)
+	{
+		count(Counter.UNIFORM_UPLOADS);
+	}
+
+	@Override
+	public void uniform3f(int location, float x, float y, float z)
+	{
+		count(Counter.UNIFORM_UPLOADS);
+	}
+
+	@Override
+	public void uniform4f(int location, float x, float y, float z, float w)
+	{
+		count(Counter.UNIFORM_UPLOADS);
+	}
+
+	@Override
+	public void uniformMatrix4(int location, boolean transpose, FloatBuffer matrix)
+	{
+		count(Counter.UNIFORM_UPLOADS);
+	}
+}
@@ -0,0 +1,225 @@
+package renderEngine;
+
+import entities.Entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Processes the entities of a frame on several threads at once.</p>
+ *
+ * <p>Updating, culling and sorting entities doesn't need OpenGL, only drawing them
+ * does. So the entities are split into chunks of consecutive entities, and a fork
+ * join pool processes the chunks. Every chunk fills a render queue of its own, so
+ * the threads never share anything they write to and no locks are needed.</p>
+ *
+ * <p>When all chunks are done, their queues are added to the queue that is drawn,
+ * in the order of the chunks. The queue then holds the entities in exactly the
+ * order a single thread would have added them, so the sorted queue, and what is
+ * drawn, doesn't depend on the number of threads.</p>
+ *
+ * <p>With a single thread, or with fewer entities than a chunk, the chunks are
+ * processed on the calling thread, without the pool.</p>
+ */
+public class RenderListBuilder
+{
+	/**
+	 * The number of entities in a chunk. Big enough that handing out a chunk costs
+	 * little compared to processing it, small enough that the threads stay busy
+	 * until the end even when some chunks have more visible entities than others.
+	 */
+	public static final int CHUNK_SIZE = 1024;
+
+	/**
+	 * The work that is done for every entity, on any of the threads.
+	 */
+	public interface EntityProcessor
+	{
+		/**
+		 * Process an entity. Only the entity and the chunk may be changed.
+		 *
+		 * @param  entity  The entity
+		 * @param  chunk   The chunk to add the entity to, and to count in
+		 */
+		void process(Entity entity, Chunk chunk);
+	}
+
+	/**
+	 * The output of one chunk of entities: a render queue and the counts of the
+	 * renderer statistics, which are added together after the chunks are done.
+	 */
+	public static class Chunk
+	{
+		final RenderQueue queue;
+
+		/**
+		 * Room for a bounding sphere, so every chunk can calculate spheres without
+		 * creating arrays.
+		 */
+		final float[] sphere = new float[4];
+
+		int matrixUpdates;
+		int culledEntities;
+		int visibleEntities;
+		long triangles;
+
+		Chunk(RenderQueue queue)
+		{
+			this.queue = queue;
+		}
+
+		/**
+		 * Add the counts of another chunk to this chunk.
+		 */
+		void addCounts(Chunk other)
+		{
+			matrixUpdates += other.matrixUpdates;
+			culledEntities += other.culledEntities;
+			visibleEntities += other.visibleEntities;
+			triangles += other.triangles;
+		}
+
+		void resetCounts()
+		{
+			matrixUpdates = 0;
+			culledEntities = 0;
+			visibleEntities = 0;
+			triangles = 0;
+		}
+	}
+
+	private final int parallelism;
+	private ForkJoinPool pool;
+
+	/**
+	 * The chunks are kept from frame to frame, so their queues don't have to grow
+	 * again every frame.
+	 */
+	private List<Chunk> chunks = new ArrayList<>();
+
+	// The entities and the work of the frame that is being built.
+	private List<Entity> entities;
+	private EntityProcessor processor;
+
+	/**
+	 * Create a new render list builder.
+	 *
+	 * @param  parallelism  The number of threads that process entities
+	 */
+	public RenderListBuilder(int parallelism)
+	{
+		this.parallelism = Math.max(1, parallelism);
+
+		if (this.parallelism > 1) {
+			AtomicInteger threadNumber = new AtomicInteger();
+			pool = new ForkJoinPool(this.parallelism, forkJoinPool -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+				thread.setName("render-list-worker-" + threadNumber.incrementAndGet());
+
+				return thread;
+			}, null, false);
+		}
+	}
+
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * Process all entities, and add the ones the processor keeps to a queue.
+	 *
+	 * @param  entities   The entities to process
+	 * @param  processor  The work to do for every entity
+	 * @param  queue      The queue to add the entities to, which the queues of the
+	 *                    chunks share their material numbers with
+	 * @param  counts     The chunk to add the counts of all chunks to
+	 */
+	public void build(List<Entity> entities, EntityProcessor processor, RenderQueue queue, Chunk counts)
+	{
+		int chunkCount = (entities.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		while (chunks.size() < chunkCount) {
+			chunks.add(new Chunk(new RenderQueue(queue)));
+		}
+
+		this.entities = entities;
+		this.processor = processor;
+
+		try {
+			if (pool == null || chunkCount <= 1) {
+				for (int chunk = 0; chunk < chunkCount; chunk++) {
+					processChunk(chunk);
+				}
+			} else {
+				pool.invoke(new ChunkTask(0, chunkCount));
+			}
+
+			// Merge the chunks in order, on this thread. This is only copying arrays.
+			for (int chunk = 0; chunk < chunkCount; chunk++) {
+				Chunk output = chunks.get(chunk);
+				queue.addAll(output.queue);
+				counts.addCounts(output);
+
+				output.queue.clear();
+				output.resetCounts();
+			}
+		} finally {
+			this.entities = null;
+			this.processor = null;
+		}
+	}
+
+	/**
+	 * Stop the worker threads.
+	 */
+	public void cleanUp()
+	{
+		if (pool != null) {
+			pool.shutdownNow();
+		}
+	}
+
+	private void processChunk(int chunk)
+	{
+		Chunk output = chunks.get(chunk);
+		int end = Math.min(entities.size(), (chunk + 1) * CHUNK_SIZE);
+
+		for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+			processor.process(entities.get(i), output);
+		}
+	}
+
+	/**
+	 * Processes a range of chunks, by splitting it in half until a single chunk is
+	 * left. Idle threads steal the halves that haven't been started yet.
+	 */
+	private class ChunkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int firstChunk;
+		private final int endChunk;
+
+		ChunkTask(int firstChunk, int endChunk)
+		{
+			this.firstChunk = firstChunk;
+			this.endChunk = endChunk;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (endChunk - firstChunk == 1) {
+				processChunk(firstChunk);
+				return;
+			}
+
+			int middle = (firstChunk + endChunk) >>> 1;
+			invokeAll(new ChunkTask(firstChunk, middle), new ChunkTask(middle, endChunk));
+		}
+	}
+}
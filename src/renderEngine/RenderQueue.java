@@ -0,0 +1,389 @@
+package renderEngine;
+
+import entities.Entity;
+import models.RawModel;
+import models.TexturedModel;
+import textures.ModelTexture;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>The list of entities to draw in a frame, sorted to need as few state changes
+ * as possible.</p>
+ *
+ * <p>Every entity gets a 64 bit sort key, made of the state it needs from the most
+ * to the least expensive to change:</p>
+ *
+ * <pre>
+ * [ shader (8) | texture (16) | VAO (16) | material (8) | depth (16) ]
+ * </pre>
+ *
+ * <p>After sorting the keys, all entities using the same shader are next to each
+ * other, within those all entities using the same texture, and so on. The renderers
+ * walk the sorted queue and only change state when the next entity needs a
+ * different one. Entities with exactly the same state are drawn front to back, so
+ * the depth test can throw away hidden pixels before they are shaded.</p>
+ *
+ * <p>The keys are sorted with a radix sort, 8 bits at a time, which takes linear
+ * time. Passes over bits that are the same in every key (like the shader, most of
+ * the time) are skipped. The arrays of the queue are reused every frame.</p>
+ *
+ * <p>Several threads can fill queues of their own at the same time, as long as the
+ * queues share their material numbers. The queues are then added to the queue
+ * that is drawn with addAll().</p>
+ */
+public class RenderQueue
+{
+	private static final int DEPTH_BITS = 16;
+	private static final int MATERIAL_BITS = 8;
+	private static final int VAO_BITS = 16;
+	private static final int TEXTURE_BITS = 16;
+
+	private static final int MATERIAL_SHIFT = DEPTH_BITS;
+	private static final int VAO_SHIFT = MATERIAL_SHIFT + MATERIAL_BITS;
+	private static final int TEXTURE_SHIFT = VAO_SHIFT + VAO_BITS;
+	private static final int SHADER_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+
+	private static final int RADIX_BITS = 8;
+	private static final int RADIX = 1 << RADIX_BITS;
+
+	private long[] keys = new long[1024];
+	private Entity[] items = new Entity[1024];
+	private RawModel[] models = new RawModel[1024];
+	private int size;
+
+	// The second half of every array, the radix sort moves back and forth between them.
+	private long[] sortedKeys = new long[1024];
+	private Entity[] sortedItems = new Entity[1024];
+	private RawModel[] sortedModels = new RawModel[1024];
+
+	private int[] counts = new int[RADIX];
+
+	/**
+	 * The number of frames a material keeps its number after it was last drawn.
+	 */
+	public static final int MATERIAL_TIMEOUT_FRAMES = 60;
+
+	/**
+	 * <p>Materials (the shine variables of a model texture) get a small number, so
+	 * they fit in the sort key. The numbers stay the same from frame to frame, as long
+	 * as the material is drawn. Materials that weren't drawn for a while, like the
+	 * ones of deleted or evicted textures, are forgotten by endFrame(), and their
+	 * numbers are given to new materials.</p>
+	 *
+	 * <p>The key only has room for 256 numbers. With more materials in use, numbers
+	 * are shared: materials with the same number are sorted as one group. They are
+	 * still drawn with their own shine variables, since the renderers compare the
+	 * materials themselves, but they may need a few more state changes.</p>
+	 */
+	private static class MaterialNumbers
+	{
+		final ConcurrentMap<ModelTexture, Material> materials = new ConcurrentHashMap<>();
+		final Queue<Integer> freeIDs = new ConcurrentLinkedQueue<>();
+		final AtomicInteger nextID = new AtomicInteger();
+		volatile int frame;
+
+		Material create()
+		{
+			Integer id = freeIDs.poll();
+
+			return new Material(id != null ? id : nextID.getAndIncrement());
+		}
+	}
+
+	private static class Material
+	{
+		final int id;
+		volatile int lastUsedFrame;
+
+		Material(int id)
+		{
+			this.id = id;
+		}
+	}
+
+	private final MaterialNumbers materialNumbers;
+
+	/**
+	 * Create a new, empty queue.
+	 */
+	public RenderQueue()
+	{
+		this.materialNumbers = new MaterialNumbers();
+	}
+
+	/**
+	 * Create a new, empty queue that numbers materials the same way as another
+	 * queue, so its entities can be added to that queue.
+	 *
+	 * @param  shared  The queue to share the material numbers with
+	 */
+	public RenderQueue(RenderQueue shared)
+	{
+		this.materialNumbers = shared.materialNumbers;
+	}
+
+	/**
+	 * Add an entity to the queue.
+	 *
+	 * @param  entity    The entity to draw
+	 * @param  model     The level of detail of the model of the entity to draw
+	 * @param  shaderID  The ID of the shader program that draws the entity
+	 * @param  depth     The distance to the camera, from 0 (close) to 1 (far away)
+	 */
+	public void add(Entity entity, RawModel model, int shaderID, float depth)
+	{
+		if (size == keys.length) {
+			grow();
+		}
+
+		TexturedModel texturedModel = entity.getModel();
+
+		keys[size] = createKey(
+			shaderID,
+			texturedModel.getTexture().getID(),
+			model.getVaoID(),
+			getMaterialID(texturedModel.getTexture()),
+			depth
+		);
+		items[size] = entity;
+		models[size] = model;
+		size++;
+	}
+
+	/**
+	 * Add all entities of another queue to the end of this queue, in the order they
+	 * were added there. The other queue has to share the material numbers of this
+	 * queue.
+	 *
+	 * @param  other  The queue to add
+	 */
+	public void addAll(RenderQueue other)
+	{
+		while (size + other.size > keys.length) {
+			grow();
+		}
+
+		System.arraycopy(other.keys, 0, keys, size, other.size);
+		System.arraycopy(other.items, 0, items, size, other.size);
+		System.arraycopy(other.models, 0, models, size, other.size);
+		size += other.size;
+	}
+
+	/**
+	 * Build a sort key. IDs that don't fit in their part of the key are wrapped, which
+	 * only makes the order a little worse: the renderers compare the actual state.
+	 *
+	 * @param  shaderID    The ID of the shader program
+	 * @param  textureID   The ID of the texture
+	 * @param  vaoID       The ID of the VAO
+	 * @param  materialID  The number of the material
+	 * @param  depth       The distance to the camera, from 0 to 1
+	 * @return The sort key
+	 */
+	public static long createKey(int shaderID, int textureID, int vaoID, int materialID, float depth)
+	{
+		long quantizedDepth = (long) (Math.max(0, Math.min(1, depth)) * ((1 << DEPTH_BITS) - 1));
+
+		return ((long) (shaderID & 0xff) << SHADER_SHIFT)
+			| ((long) (textureID & 0xffff) << TEXTURE_SHIFT)
+			| ((long) (vaoID & 0xffff) << VAO_SHIFT)
+			| ((long) (materialID & 0xff) << MATERIAL_SHIFT)
+			| quantizedDepth;
+	}
+
+	/**
+	 * Sort the queue on the sort keys. The sort is stable, so entities with the same
+	 * key stay in the order they were added.
+	 */
+	public void sort()
+	{
+		long[] fromKeys = keys;
+		Entity[] fromItems = items;
+		long[] toKeys = sortedKeys;
+		Entity[] toItems = sortedItems;
+		RawModel[] fromModels = models;
+		RawModel[] toModels = sortedModels;
+
+		for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+			if (! countDigits(fromKeys, shift)) {
+				// Every key has the same digit here, so this pass wouldn't change anything.
+				continue;
+			}
+
+			// Turn the counts into the first index of every digit.
+			int index = 0;
+			for (int digit = 0; digit < RADIX; digit++) {
+				int count = counts[digit];
+				counts[digit] = index;
+				index += count;
+			}
+
+			for (int i = 0; i < size; i++) {
+				int target = counts[(int) (fromKeys[i] >>> shift) & (RADIX - 1)]++;
+				toKeys[target] = fromKeys[i];
+				toItems[target] = fromItems[i];
+				toModels[target] = fromModels[i];
+			}
+
+			long[] swapKeys = fromKeys;
+			fromKeys = toKeys;
+			toKeys = swapKeys;
+
+			Entity[] swapItems = fromItems;
+			fromItems = toItems;
+			toItems = swapItems;
+
+			RawModel[] swapModels = fromModels;
+			fromModels = toModels;
+			toModels = swapModels;
+		}
+
+		keys = fromKeys;
+		items = fromItems;
+		sortedKeys = toKeys;
+		sortedItems = toItems;
+		models = fromModels;
+		sortedModels = toModels;
+	}
+
+	/**
+	 * Get an entity of the queue.
+	 *
+	 * @param  index  The position in the queue
+	 * @return The entity
+	 */
+	public Entity get(int index)
+	{
+		return items[index];
+	}
+
+	/**
+	 * Get the level of detail an entity in the queue is drawn with.
+	 *
+	 * @param  index  The position in the queue
+	 * @return The model to draw
+	 */
+	public RawModel getRawModel(int index)
+	{
+		return models[index];
+	}
+
+	/**
+	 * Get the sort key of an entity in the queue.
+	 *
+	 * @param  index  The position in the queue
+	 * @return The sort key
+	 */
+	public long getKey(int index)
+	{
+		return keys[index];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Empty the queue, keeping its arrays for the next frame.
+	 */
+	public void clear()
+	{
+		// Drop the references, so removed entities can be garbage collected.
+		for (int i = 0; i < size; i++) {
+			items[i] = null;
+			sortedItems[i] = null;
+			models[i] = null;
+			sortedModels[i] = null;
+		}
+
+		size = 0;
+	}
+
+	/**
+	 * End the frame: forget the materials that weren't drawn for the last
+	 * MATERIAL_TIMEOUT_FRAMES frames, so the queue doesn't keep deleted textures
+	 * alive and their numbers can be used again. Call this once per frame, when no
+	 * queue that shares the material numbers is being filled.
+	 */
+	public void endFrame()
+	{
+		int frame = materialNumbers.frame;
+
+		Iterator<Material> iterator = materialNumbers.materials.values().iterator();
+		while (iterator.hasNext()) {
+			Material material = iterator.next();
+			if (frame - material.lastUsedFrame >= MATERIAL_TIMEOUT_FRAMES) {
+				iterator.remove();
+				materialNumbers.freeIDs.add(material.id);
+			}
+		}
+
+		materialNumbers.frame = frame + 1;
+	}
+
+	/**
+	 * Get the number of materials that have a number.
+	 *
+	 * @return The number of materials
+	 */
+	public int getMaterialCount()
+	{
+		return materialNumbers.materials.size();
+	}
+
+	/**
+	 * Count how often every digit occurs at a position in the keys.
+	 *
+	 * @return False if all keys have the same digit
+	 */
+	private boolean countDigits(long[] fromKeys, int shift)
+	{
+		for (int digit = 0; digit < RADIX; digit++) {
+			counts[digit] = 0;
+		}
+
+		for (int i = 0; i < size; i++) {
+			counts[(int) (fromKeys[i] >>> shift) & (RADIX - 1)]++;
+		}
+
+		return size > 0 && counts[(int) (fromKeys[0] >>> shift) & (RADIX - 1)] != size;
+	}
+
+	private int getMaterialID(ModelTexture texture)
+	{
+		// Only the first use of a material has to take a number, after that this is
+		// a plain read that never blocks other threads.
+		Material material = materialNumbers.materials.get(texture);
+		if (material == null) {
+			material = materialNumbers.materials.computeIfAbsent(texture, key -> materialNumbers.create());
+		}
+
+		// Every thread writes the same frame, so only the first write of a frame matters.
+		int frame = materialNumbers.frame;
+		if (material.lastUsedFrame != frame) {
+			material.lastUsedFrame = frame;
+		}
+
+		return material.id;
+	}
+
+	private void grow()
+	{
+		int capacity = keys.length * 2;
+
+		keys = Arrays.copyOf(keys, capacity);
+		items = Arrays.copyOf(items, capacity);
+		models = Arrays.copyOf(models, capacity);
+		sortedKeys = new long[capacity];
+		sortedItems = new Entity[capacity];
+		sortedModels = new RawModel[capacity];
+	}
+}
@@ -2,44 +2,56 @@ package renderEngine;
 
 import entities.Entity;
 import models.RawModel;
-import models.TexturedModel;
 import org.lwjgl.opengl.*;
 import org.lwjgl.util.vector.Matrix4f;
 import shaders.StaticShader;
 import textures.ModelTexture;
-import toolbox.Maths;
-
-import java.util.List;
-import java.util.Map;
 
 public class Renderer
 {
 	private static final float FOV = 70;
-	private static final float NEAR_PLANE = 0.1f;
-	private static final float FAR_PLANE = 1000f;
+	static final float NEAR_PLANE = 0.1f;
+	static final float FAR_PLANE = 1000f;
 
 	private Matrix4f projectionMatrix;
 
 	private StaticShader shader;
 
+	private GraphicsBackend gl;
+
+	private SamplerCache samplers;
+
+	private ResidencyManager residency;
+
 	/**
 	 * Create a new renderer instance.
 	 *
-	 * @param  shader  The shader being executed during rendering
+	 * @param  gl        The graphics backend to render with
+	 * @param  shader    The shader being executed during rendering
+	 * @param  samplers  The samplers with the filter settings of the materials
 	 */
-	public Renderer(StaticShader shader)
+	public Renderer(GraphicsBackend gl, StaticShader shader, SamplerCache samplers)
 	{
+		this.gl = gl;
 		this.shader = shader;
+		this.samplers = samplers;
 
 		// Make sure faces that point away of the camera are not rendered.
-		GL11.glEnable(GL11.GL_CULL_FACE);
-		GL11.glCullFace(GL11.GL_BACK);
+		gl.enable(GL11.GL_CULL_FACE);
+		gl.cullFace(GL11.GL_BACK);
 
 		createProjectionMatrix();
+	}
 
-		shader.start();
-		shader.loadProjectionMatrix(projectionMatrix);
-		shader.stop();
+	/**
+	 * Set the residency manager that is told which models and textures are drawn,
+	 * so it can load evicted ones again first.
+	 *
+	 * @param  residency  The residency manager, or null for none
+	 */
+	public void setResidencyManager(ResidencyManager residency)
+	{
+		this.residency = residency;
 	}
 
 	/**
@@ -47,66 +59,112 @@ public class Renderer
 	 */
 	public void prepare()
 	{
-		GL11.glEnable(GL11.GL_DEPTH_TEST);
-		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
-		GL11.glClearColor(0.3f, 0f, 0.0f, 1f);
+		gl.enable(GL11.GL_DEPTH_TEST);
+		gl.clear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
+		gl.clearColor(0.3f, 0f, 0.0f, 1f);
 	}
 
 	/**
 	 * <p>Render all the entities on the screen.</p>
 	 *
-	 * <p>This methods takes in a hashmap which contains textured model and their corresponding
-	 * entities. This allows a more efficient rendering method that only binds a certain model
-	 * once for entities based on the same model.</p>
+	 * <p>The render queue is sorted, so entities that use the same model, texture or
+	 * material are next to each other. The VAO and texture are only changed when the
+	 * next entity needs a different one than the current entity.</p>
 	 *
-	 * <p>For example, we might have a cube model that we render multiple times on the screen. The
-	 * previous render method would bind and unbind the VAO and VBOs for the model for every single
-	 * entity of that model. With this method, we will bind the model once, render all entities in
-	 * one batch, and only then unbind the base model.</p>
+	 * <p>For example, we might have a cube model that we render multiple times on the screen,
+	 * with two different textures. The cube is bound once, then all cubes with the first
+	 * texture are drawn, then the second texture is bound and the rest of the cubes drawn.</p>
 	 *
-	 * @param  entities  The hashmap keyed by a Textured model, which contains a list of all
-	 *                   the entities that are based on that textured model.
+	 * @param  queue  The sorted render queue
 	 */
-	public void render(Map<TexturedModel, List<Entity>> entities)
+	public void render(RenderQueue queue)
 	{
-		for (TexturedModel model : entities.keySet()) {
-			prepareTexturedModel(model);
-			List<Entity> batch = entities.get(model);
+		int currentVao = 0;
+		int currentTexture = 0;
+		int currentSampler = 0;
+		ModelTexture currentMaterial = null;
+		RawModel currentModel = null;
+		boolean modelDrawable = true;
+
+		// Activate texture bank 0. It is used by default by the texture sampler in
+		// the fragment shader.
+		gl.activeTexture(GL13.GL_TEXTURE0);
+
+		for (int i = 0; i < queue.size(); i++) {
+			Entity entity = queue.get(i);
+			RawModel rawModel = queue.getRawModel(i);
+			ModelTexture texture = entity.getModel().getTexture();
+
+			// An evicted model or texture has ID 0 until the residency manager loaded
+			// it again, so that has to happen before the IDs are compared. One that
+			// couldn't be loaded is skipped.
+			if (residency != null) {
+				if (rawModel != currentModel) {
+					modelDrawable = residency.use(rawModel);
+					currentModel = rawModel;
+				}
+				if (! modelDrawable || (texture != currentMaterial && ! residency.use(texture))) {
+					continue;
+				}
+			}
+
+			if (rawModel.getVaoID() != currentVao) {
+				bindRawModel(rawModel);
+				shader.loadVertexFormat(rawModel);
+				currentVao = rawModel.getVaoID();
+			}
 
-			for (Entity entity : batch) {
-				prepareInstance(entity);
-				GL11.glDrawElements(GL11.GL_TRIANGLES, model.getRawModel().getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
+			if (texture.getID() != currentTexture) {
+				gl.bindTexture(GL11.GL_TEXTURE_2D, texture.getID());
+				currentTexture = texture.getID();
 			}
 
+			// Every material change looks at the sampler as well, since materials in
+			// an atlas share a texture but not their filter settings. Different
+			// materials can still have the same shine variables or region, the shader
+			// skips the upload itself when the values didn't change.
+			if (texture != currentMaterial) {
+				int sampler = samplers.getSampler(texture);
+				if (sampler != currentSampler) {
+					gl.bindSampler(0, sampler);
+					currentSampler = sampler;
+				}
+
+				shader.loadShineVariables(texture.getShineDamper(), texture.getReflectivity());
+				shader.loadTextureRegion(texture.getTextureRegion());
+				currentMaterial = texture;
+			}
+
+			prepareInstance(entity);
+			gl.drawElements(GL11.GL_TRIANGLES, rawModel.getVertexCount(), rawModel.getIndexType(), 0);
+		}
+
+		if (currentVao != 0) {
 			unbindTexturedModel();
 		}
+
+		// A bound sampler overrides the settings of any texture on the unit, so it
+		// can't stay bound for the other renderers.
+		if (currentSampler != 0) {
+			gl.bindSampler(0, 0);
+		}
 	}
 
 	/**
-	 * Prepare the model for rendering. This includes enabling the needed VAO and the
-	 * needed attribute lists for storing VBOs. After that, the texture is also bound
-	 * to the model.
+	 * Prepare a model for rendering. This includes enabling the needed VAO and the
+	 * needed attribute lists for storing VBOs.
 	 *
-	 * @param  model  The textured model to prepare
+	 * @param  rawModel  The model to prepare
 	 */
-	private void prepareTexturedModel(TexturedModel model)
+	private void bindRawModel(RawModel rawModel)
 	{
-		RawModel rawModel = model.getRawModel();
+		// Select the VAO and choose the right location in the attribute array. Which
+		// attributes are enabled is stored in the VAO, so this is needed for every VAO.
+		gl.bindVertexArray(rawModel.getVaoID());
 
-		// Select the VAO and choose the right location in the attribute array.
-		GL30.glBindVertexArray(rawModel.getVaoID());
-
-		GL20.glEnableVertexAttribArray(0);
-		GL20.glEnableVertexAttribArray(1);
-		GL20.glEnableVertexAttribArray(2);
-
-		ModelTexture texture = model.getTexture();
-		shader.loadShineVariables(texture.getShineDamper(), texture.getReflectivity());
-
-		// Activate and fill a texture bank. Texture bank 0 is used by default by the
-		// texture sampler in the fragment shader.
-		GL13.glActiveTexture(GL13.GL_TEXTURE0);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, model.getTexture().getID());
+		gl.enableVertexAttribArray(0);
+		gl.enableVertexAttribArray(1);
+		gl.enableVertexAttribArray(2);
 	}
 
 	/**
@@ -114,30 +172,27 @@ public class Renderer
 	 */
 	private void unbindTexturedModel()
 	{
-		GL20.glDisableVertexAttribArray(0);
-		GL20.glDisableVertexAttribArray(1);
-		GL20.glDisableVertexAttribArray(2);
-		GL30.glBindVertexArray(0);
+		gl.disableVertexAttribArray(0);
+		gl.disableVertexAttribArray(1);
+		gl.disableVertexAttribArray(2);
+		gl.bindVertexArray(0);
 	}
 
 	/**
 	 * Prepare a single entity for rendering. The transformation matrix for this
-	 * entity is loaded into the shader uniform location.
+	 * entity is loaded into the shader uniform location. The entity keeps its
+	 * matrix, so it is only calculated again when the entity changed.
 	 *
 	 * @param  entity  The entity to prepare for rendering.
 	 */
 	private void prepareInstance(Entity entity)
 	{
-		// Create a transformation matrix from the entity information.
-		Matrix4f transformationMatrix = Maths.createTransformationMatrix(
-				entity.getPosition(),
-				entity.getRotX(),
-				entity.getRotY(),
-				entity.getRotZ(),
-				entity.getScale()
-		);
-
-		shader.loadTransformationMatrix(transformationMatrix);
+		shader.loadTransformationMatrix(entity.getTransformationMatrix());
+	}
+
+	public Matrix4f getProjectionMatrix()
+	{
+		return projectionMatrix;
 	}
 
 	/**
@@ -145,7 +200,7 @@ public class Renderer
 	 */
 	private void createProjectionMatrix()
 	{
-		float aspectRatio = (float) Display.getWidth() / (float) Display.getHeight();
+		float aspectRatio = (float) gl.getDisplayWidth() / (float) gl.getDisplayHeight();
 		float y_scale = (float) ((1f / Math.tan(Math.toRadians(FOV / 2f))) * aspectRatio);
 		float x_scale = y_scale / aspectRatio;
 		float frustum_length = FAR_PLANE - NEAR_PLANE;
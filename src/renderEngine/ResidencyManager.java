@@ -0,0 +1,617 @@
+package renderEngine;
+
+import models.ModelData;
+import models.RawModel;
+import models.TexturedModel;
+import textures.ModelTexture;
+import textures.TextureDecoder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Keeps the models and textures of a level in video memory within a budget.</p>
+ *
+ * <p>A big open level has more models and textures than fit in video memory, but
+ * only a part of them is drawn at a time. The residency manager loads models and
+ * textures by name and counts their users. Every time a renderer draws one, it is
+ * marked as used in that frame. At the end of a frame, when the loaded models and
+ * textures take more memory than the budget, the ones that weren't drawn for the
+ * longest time are evicted: their VAO or texture is deleted, but the RawModel or
+ * ModelTexture object stays. When an evicted model or texture is drawn again, it
+ * is loaded again from the mesh cache or the compressed texture cache, into the
+ * same object, before it is drawn.</p>
+ *
+ * <p>The resident models and textures are kept in a LinkedHashMap in access order,
+ * so the least recently drawn one is always first. Models and textures that were
+ * drawn in the current frame are never evicted, so a frame that needs more than the
+ * budget goes over it instead of loading the same data over and over again.</p>
+ *
+ * <p>A file that can't be read, because it was deleted or is still being written,
+ * doesn't end the game: the model or texture stays evicted and isn't drawn, and it
+ * is tried again after RETRY_FRAMES frames.</p>
+ *
+ * <p>A file that was edited while the game runs is loaded again with
+ * reloadModel() or reloadTexture(), which the HotReloader calls. An evicted one
+ * isn't loaded, it gets the new version when it is drawn again.</p>
+ *
+ * <p>Only models and textures loaded through the manager are managed. The renderers
+ * ignore everything else, like the pages of a texture atlas, which many model
+ * textures share.</p>
+ */
+public class ResidencyManager
+{
+	public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+	// The frames to wait before loading a file that couldn't be read again.
+	public static final int RETRY_FRAMES = 60;
+
+	/**
+	 * A model or texture that is managed.
+	 */
+	private abstract static class Resource
+	{
+		final String fileName;
+		long bytes;
+		int users;
+		boolean resident = true;
+
+		// The last frame the resource was drawn in.
+		int lastUsedFrame = -1;
+
+		// The last frame loading the resource failed in.
+		int failedFrame = -RETRY_FRAMES;
+
+		Resource(String fileName)
+		{
+			this.fileName = fileName;
+		}
+
+		abstract Object getKey();
+
+		abstract void load(Loader loader) throws IOException;
+
+		/**
+		 * Load a file that changed, without the cache, and replace the loaded
+		 * version with it. The loaded version stays when this fails.
+		 */
+		abstract void reload(Loader loader) throws IOException;
+
+		abstract void unload(Loader loader);
+	}
+
+	private static class ModelResource extends Resource
+	{
+		final RawModel model;
+
+		ModelResource(String fileName, RawModel model)
+		{
+			super(fileName);
+			this.model = model;
+			this.bytes = model.getSizeInBytes();
+		}
+
+		@Override
+		Object getKey()
+		{
+			return model;
+		}
+
+		@Override
+		void load(Loader loader) throws IOException
+		{
+			model.replaceBuffers(OBJLoader.tryLoadObjModel(fileName, loader));
+			bytes = model.getSizeInBytes();
+		}
+
+		@Override
+		void reload(Loader loader) throws IOException
+		{
+			ModelData data = OBJLoader.parseAndCache(OBJLoader.getObjFile(fileName), OBJLoader.getCacheFile(fileName), new OBJFileParser());
+
+			RawModel loaded = loader.loadToVAO(data.getVertices(), data.getTextureCoords(), data.getNormals(), data.getIndices());
+			loader.deleteModel(model);
+			model.replaceBuffers(loaded);
+			model.setBounds(data.getBounds());
+			bytes = model.getSizeInBytes();
+		}
+
+		@Override
+		void unload(Loader loader)
+		{
+			loader.deleteModel(model);
+		}
+	}
+
+	private static class TextureResource extends Resource
+	{
+		final ModelTexture texture;
+
+		TextureResource(String fileName, ModelTexture texture, long bytes)
+		{
+			super(fileName);
+			this.texture = texture;
+			this.bytes = bytes;
+		}
+
+		@Override
+		Object getKey()
+		{
+			return texture;
+		}
+
+		@Override
+		void load(Loader loader) throws IOException
+		{
+			texture.setID(loader.isCompressTextures()
+				? loader.loadCompressedTexture(TextureCache.load(fileName))
+				: loader.loadTexture(TextureDecoder.decode(TextureCache.getSourceFile(fileName))));
+			bytes = loader.getTextureSize(texture.getID());
+		}
+
+		@Override
+		void reload(Loader loader) throws IOException
+		{
+			int textureID = loader.isCompressTextures()
+				? loader.loadCompressedTexture(TextureCache.reload(fileName))
+				: loader.loadTexture(TextureDecoder.decode(TextureCache.getSourceFile(fileName)));
+
+			loader.deleteTexture(texture);
+			texture.setID(textureID);
+			bytes = loader.getTextureSize(textureID);
+		}
+
+		@Override
+		void unload(Loader loader)
+		{
+			loader.deleteTexture(texture);
+		}
+	}
+
+	private Loader loader;
+	private long budget;
+
+	// Every managed model and texture by name, and by the object the renderers see.
+	private Map<String, ModelResource> modelsByName = new HashMap<>();
+	private Map<String, TextureResource> texturesByName = new HashMap<>();
+	private Map<Object, Resource> resources = new IdentityHashMap<>();
+
+	// The resident models and textures, from the least to the most recently drawn.
+	// RawModel and ModelTexture don't override equals(), so they are compared by
+	// identity here as well.
+	private LinkedHashMap<Object, Resource> resident = new LinkedHashMap<>(64, 0.75f, true);
+	private long residentBytes;
+
+	private int frame;
+
+	private long evictions;
+	private long failures;
+	private long reloads;
+	private long reloadNanos;
+	private long maxReloadNanos;
+
+	/**
+	 * Create a new residency manager with the default budget.
+	 *
+	 * @param  loader  The loader to load and delete models and textures with
+	 */
+	public ResidencyManager(Loader loader)
+	{
+		this(loader, DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Create a new residency manager.
+	 *
+	 * @param  loader  The loader to load and delete models and textures with
+	 * @param  budget  The video memory the models and textures may use, in bytes
+	 */
+	public ResidencyManager(Loader loader, long budget)
+	{
+		this.loader = loader;
+		this.budget = budget;
+	}
+
+	/**
+	 * Load an OBJ model, or add a user to it when it was already loaded.
+	 *
+	 * @param  fileName  The model to load (relative to the res folder, without extension)
+	 * @return The model, the same object for every user
+	 */
+	public RawModel loadModel(String fileName)
+	{
+		ModelResource resource = modelsByName.get(fileName);
+		if (resource == null) {
+			// A model without a VAO stands in until the file can be read.
+			resource = new ModelResource(fileName, new RawModel(0, 0));
+			modelsByName.put(fileName, resource);
+			resources.put(resource.model, resource);
+			resource.resident = false;
+			load(resource);
+		}
+
+		resource.users++;
+
+		return resource.model;
+	}
+
+	/**
+	 * Load a texture, or add a user to it when it was already loaded.
+	 *
+	 * @param  fileName  The texture to load (relative to the res folder, without extension)
+	 * @return The model texture, the same object for every user
+	 */
+	public ModelTexture loadTexture(String fileName)
+	{
+		TextureResource resource = texturesByName.get(fileName);
+		if (resource == null) {
+			resource = new TextureResource(fileName, new ModelTexture(0), 0);
+			texturesByName.put(fileName, resource);
+			resources.put(resource.texture, resource);
+			resource.resident = false;
+			load(resource);
+		}
+
+		resource.users++;
+
+		return resource.texture;
+	}
+
+	/**
+	 * Load a model and a texture, and combine them in a textured model.
+	 *
+	 * @param  modelName    The model to load
+	 * @param  textureName  The texture to load
+	 * @return A new textured model, release it with release(TexturedModel)
+	 */
+	public TexturedModel loadTexturedModel(String modelName, String textureName)
+	{
+		return new TexturedModel(loadModel(modelName), loadTexture(textureName));
+	}
+
+	/**
+	 * Remove a user from a model. The model is deleted when it has no users left.
+	 *
+	 * @param  model  A model loaded with loadModel()
+	 */
+	public void release(RawModel model)
+	{
+		Resource resource = resources.get(model);
+		if (resource != null && --resource.users == 0) {
+			modelsByName.remove(resource.fileName);
+			forget(resource);
+		}
+	}
+
+	/**
+	 * Remove a user from a texture. The texture is deleted when it has no users left.
+	 *
+	 * @param  texture  A model texture loaded with loadTexture()
+	 */
+	public void release(ModelTexture texture)
+	{
+		Resource resource = resources.get(texture);
+		if (resource != null && --resource.users == 0) {
+			texturesByName.remove(resource.fileName);
+			forget(resource);
+		}
+	}
+
+	/**
+	 * Remove a user from every level of a textured model and from its texture.
+	 *
+	 * @param  model  A textured model with models and a texture from this manager
+	 */
+	public void release(TexturedModel model)
+	{
+		for (int level = 0; level < model.getLevelCount(); level++) {
+			release(model.getRawModel(level));
+		}
+		release(model.getTexture());
+	}
+
+	/**
+	 * Load a model again after its file was edited. A resident model gets the new
+	 * VAO and the old one is deleted. An evicted model stays evicted, and gets the
+	 * new version when it is drawn again.
+	 *
+	 * @param  fileName  The model that changed (relative to the res folder, without extension)
+	 * @return False if the model is resident and the new version couldn't be loaded
+	 */
+	public boolean reloadModel(String fileName)
+	{
+		return reload(modelsByName.get(fileName));
+	}
+
+	/**
+	 * Load a texture again after its PNG was edited. A resident texture is replaced
+	 * and the old one is deleted. An evicted texture stays evicted, and gets the new
+	 * version when it is drawn again.
+	 *
+	 * @param  fileName  The texture that changed (relative to the res folder, without extension)
+	 * @return False if the texture is resident and the new version couldn't be loaded
+	 */
+	public boolean reloadTexture(String fileName)
+	{
+		return reload(texturesByName.get(fileName));
+	}
+
+	private boolean reload(Resource resource)
+	{
+		if (resource == null) {
+			return true;
+		}
+
+		// A file that couldn't be loaded may be fixed now, so it is tried right away.
+		if (! resource.resident) {
+			resource.failedFrame = -RETRY_FRAMES;
+			return true;
+		}
+
+		long bytes = resource.bytes;
+		try {
+			resource.reload(loader);
+		} catch (IOException e) {
+			System.err.println("Could not reload [" + resource.fileName + "], it keeps the old version");
+			e.printStackTrace();
+			return false;
+		}
+		residentBytes += resource.bytes - bytes;
+
+		return true;
+	}
+
+	/**
+	 * Mark a model as drawn in this frame, and load it again first when it was
+	 * evicted. The renderers call this before they bind the VAO of a model. Models
+	 * that aren't managed are ignored.
+	 *
+	 * @param  model  The model that is about to be drawn
+	 * @return False if the model is evicted and couldn't be loaded, so it can't be drawn
+	 */
+	public boolean use(RawModel model)
+	{
+		return use((Object) model);
+	}
+
+	/**
+	 * Mark a texture as drawn in this frame, and load it again first when it was
+	 * evicted. The renderers call this before they bind a texture. Textures that
+	 * aren't managed are ignored.
+	 *
+	 * @param  texture  The model texture that is about to be drawn
+	 * @return False if the texture is evicted and couldn't be loaded, so it can't be drawn
+	 */
+	public boolean use(ModelTexture texture)
+	{
+		return use((Object) texture);
+	}
+
+	private boolean use(Object key)
+	{
+		// Getting it from the resident map moves it to the end of the access order.
+		Resource resource = resident.get(key);
+		if (resource == null) {
+			resource = resources.get(key);
+			if (resource == null) {
+				return true;
+			}
+
+			if (frame - resource.failedFrame < RETRY_FRAMES) {
+				return false;
+			}
+
+			long start = System.nanoTime();
+			if (! load(resource)) {
+				return false;
+			}
+			long nanos = System.nanoTime() - start;
+
+			reloads++;
+			reloadNanos += nanos;
+			maxReloadNanos = Math.max(maxReloadNanos, nanos);
+		}
+
+		resource.lastUsedFrame = frame;
+
+		return true;
+	}
+
+	/**
+	 * End the frame: evict the least recently drawn models and textures until the
+	 * resident ones fit in the budget again. Call this after rendering the frame.
+	 */
+	public void endFrame()
+	{
+		Iterator<Resource> iterator = resident.values().iterator();
+		while (residentBytes > budget && iterator.hasNext()) {
+			Resource resource = iterator.next();
+
+			// Everything after this one was drawn in this frame as well.
+			if (resource.lastUsedFrame == frame) {
+				break;
+			}
+
+			iterator.remove();
+			residentBytes -= resource.bytes;
+			resource.unload(loader);
+			resource.resident = false;
+			evictions++;
+		}
+
+		frame++;
+	}
+
+	/**
+	 * Set the video memory the models and textures may use. A lower budget takes
+	 * effect at the end of the frame.
+	 *
+	 * @param  budget  The budget in bytes
+	 */
+	public void setBudget(long budget)
+	{
+		this.budget = budget;
+	}
+
+	public long getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * Get the video memory used by the resident models and textures.
+	 *
+	 * @return The size in bytes
+	 */
+	public long getResidentBytes()
+	{
+		return residentBytes;
+	}
+
+	public int getResidentCount()
+	{
+		return resident.size();
+	}
+
+	/**
+	 * Check whether a managed model has its VAO loaded.
+	 *
+	 * @param  model  The model
+	 * @return True if the model is loaded, or isn't managed
+	 */
+	public boolean isResident(RawModel model)
+	{
+		return isResident((Object) model);
+	}
+
+	/**
+	 * Check whether a managed texture is loaded.
+	 *
+	 * @param  texture  The model texture
+	 * @return True if the texture is loaded, or isn't managed
+	 */
+	public boolean isResident(ModelTexture texture)
+	{
+		return isResident((Object) texture);
+	}
+
+	private boolean isResident(Object key)
+	{
+		Resource resource = resources.get(key);
+
+		return resource == null || resource.resident;
+	}
+
+	/**
+	 * Get the number of times a model or texture was evicted.
+	 *
+	 * @return The number of evictions
+	 */
+	public long getEvictionCount()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Get the number of times a model or texture couldn't be loaded, and stayed
+	 * evicted.
+	 *
+	 * @return The number of failed loads
+	 */
+	public long getFailedLoadCount()
+	{
+		return failures;
+	}
+
+	/**
+	 * Get the number of times an evicted model or texture was loaded again.
+	 *
+	 * @return The number of reloads
+	 */
+	public long getReloadCount()
+	{
+		return reloads;
+	}
+
+	/**
+	 * Get the average time it took to load an evicted model or texture again.
+	 *
+	 * @return The time in milliseconds, 0 if nothing was loaded again yet
+	 */
+	public double getAverageReloadMillis()
+	{
+		return reloads == 0 ? 0 : reloadNanos / 1e6 / reloads;
+	}
+
+	/**
+	 * Get the longest time it took to load an evicted model or texture again.
+	 *
+	 * @return The time in milliseconds
+	 */
+	public double getMaxReloadMillis()
+	{
+		return maxReloadNanos / 1e6;
+	}
+
+	/**
+	 * Delete all models and textures of the manager.
+	 */
+	public void cleanUp()
+	{
+		for (Resource resource : resident.values()) {
+			resource.unload(loader);
+		}
+		resident.clear();
+		resources.clear();
+		modelsByName.clear();
+		texturesByName.clear();
+		residentBytes = 0;
+	}
+
+	/**
+	 * Load a model or texture that isn't resident. When the file can't be read, the
+	 * error is logged and the resource stays evicted.
+	 *
+	 * @return True if the resource was loaded
+	 */
+	private boolean load(Resource resource)
+	{
+		try {
+			resource.load(loader);
+		} catch (IOException e) {
+			System.err.println("Could not load [" + resource.fileName + "], it stays evicted");
+			e.printStackTrace();
+			resource.failedFrame = frame;
+			failures++;
+			return false;
+		}
+
+		addResident(resource);
+
+		return true;
+	}
+
+	private void addResident(Resource resource)
+	{
+		resident.put(resource.getKey(), resource);
+		resource.resident = true;
+		residentBytes += resource.bytes;
+	}
+
+	/**
+	 * Delete a model or texture that has no users left.
+	 */
+	private void forget(Resource resource)
+	{
+		if (resource.resident) {
+			resident.remove(resource.getKey());
+			residentBytes -= resource.bytes;
+			resource.unload(loader);
+		}
+		resources.remove(resource.getKey());
+	}
+}
@@ -0,0 +1,104 @@
+package renderEngine;
+
+import org.lwjgl.opengl.EXTTextureFilterAnisotropic;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL14;
+import textures.ModelTexture;
+import textures.TextureQuality;
+import toolbox.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Creates a sampler object for every combination of filter settings in use.</p>
+ *
+ * <p>The filter settings of a texture object are shared by everything that uses the
+ * texture, but every material can have its own settings, and materials in an atlas
+ * share a texture. So the settings are kept in sampler objects instead: a sampler
+ * bound to a texture unit overrides the settings of the texture bound to it.
+ * Materials with the same settings share a sampler, so there are only a handful.</p>
+ */
+public class SamplerCache
+{
+	private GraphicsBackend gl;
+
+	// The sampler ID of every combination of settings that was asked for.
+	private LongIntHashMap samplers = new LongIntHashMap(16);
+	private List<Integer> samplerIDs = new ArrayList<>();
+
+	// The largest anisotropy the graphics card supports, asked for when needed.
+	private float maxAnisotropy = -1;
+
+	public SamplerCache(GraphicsBackend gl)
+	{
+		this.gl = gl;
+	}
+
+	/**
+	 * Get the sampler with the filter settings of a material. The anisotropy is
+	 * limited by the global texture quality and the graphics card.
+	 *
+	 * @param  texture  The material
+	 * @return The ID of the sampler
+	 */
+	public int getSampler(ModelTexture texture)
+	{
+		if (maxAnisotropy < 0) {
+			maxAnisotropy = Math.max(1, gl.getFloat(EXTTextureFilterAnisotropic.GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT));
+		}
+
+		float anisotropy = Math.max(1, Math.min(texture.getAnisotropy(), Math.min(maxAnisotropy, TextureQuality.getGlobal().getMaxAnisotropy())));
+
+		// The anisotropy is kept to 1/16ths, so almost equal values share a sampler.
+		int anisotropySteps = Math.round(anisotropy * 16);
+		long key = ((long) Float.floatToIntBits(texture.getLodBias()) << 32)
+			| ((long) anisotropySteps << 1)
+			| (texture.isTrilinear() ? 1 : 0);
+
+		int sampler = samplers.get(key, 0);
+		if (sampler == 0) {
+			sampler = createSampler(texture.isTrilinear(), anisotropySteps / 16f, texture.getLodBias());
+			samplers.put(key, sampler);
+		}
+
+		return sampler;
+	}
+
+	/**
+	 * Get the number of samplers that were created.
+	 *
+	 * @return The number of samplers
+	 */
+	public int size()
+	{
+		return samplerIDs.size();
+	}
+
+	/**
+	 * Delete all samplers.
+	 */
+	public void cleanUp()
+	{
+		samplerIDs.forEach(gl::deleteSamplers);
+		samplerIDs.clear();
+		samplers.clear();
+	}
+
+	private int createSampler(boolean trilinear, float anisotropy, float lodBias)
+	{
+		int sampler = gl.genSamplers();
+		samplerIDs.add(sampler);
+
+		gl.samplerParameteri(sampler, GL11.GL_TEXTURE_MIN_FILTER, trilinear ? GL11.GL_LINEAR_MIPMAP_LINEAR : GL11.GL_LINEAR_MIPMAP_NEAREST);
+		gl.samplerParameteri(sampler, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		gl.samplerParameteri(sampler, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+		gl.samplerParameteri(sampler, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+		gl.samplerParameterf(sampler, GL14.GL_TEXTURE_LOD_BIAS, lodBias);
+		if (anisotropy > 1) {
+			gl.samplerParameterf(sampler, EXTTextureFilterAnisotropic.GL_TEXTURE_MAX_ANISOTROPY_EXT, anisotropy);
+		}
+
+		return sampler;
+	}
+}
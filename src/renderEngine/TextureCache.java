@@ -0,0 +1,251 @@
+package renderEngine;
+
+import textures.BlockCompressor;
+import textures.CompressedTextureData;
+import textures.CompressedTextureData.Format;
+import textures.MipmapGenerator;
+import textures.TextureDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Reads and writes the compressed texture cache.</p>
+ *
+ * <p>Compressing a texture well takes much longer than decoding its PNG, so it is
+ * done once: the first load decodes the PNG, makes the mipmaps, compresses every
+ * level and writes the blocks to a file next to the PNG. Later runs memory map
+ * that file and upload the blocks as they are, without decoding anything.</p>
+ *
+ * <p>Like a DDS file, the file has a header followed by the blocks of every level,
+ * from the biggest to the smallest. Everything is stored little endian.</p>
+ *
+ * <pre>
+ *  0  int    magic ("CTX1")
+ *  4  int    version
+ *  8  long   size of the source file
+ * 16  long   last modified time of the source file
+ * 24  int    format (0 = BC1, 1 = BC3)
+ * 28  int    width of level 0
+ * 32  int    height of level 0
+ * 36  int    level count
+ * 56  long   CRC32 checksum of everything after the header
+ * </pre>
+ */
+public class TextureCache
+{
+	private static final int MAGIC = 0x31585443;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+
+	/**
+	 * Load a texture from the cache, or compress its PNG and write the cache when
+	 * there is no valid cache.
+	 *
+	 * @param  fileName  The name of the texture (relative to the res folder)
+	 * @return The compressed texture with its mipmaps
+	 * @throws IOException When the PNG could not be decoded
+	 */
+	public static CompressedTextureData load(String fileName) throws IOException
+	{
+		File sourceFile = getSourceFile(fileName);
+		File cacheFile = getCacheFile(fileName);
+
+		CompressedTextureData cached = read(cacheFile, sourceFile);
+		if (cached != null) {
+			return cached;
+		}
+
+		return compressAndCache(sourceFile, cacheFile);
+	}
+
+	/**
+	 * Compress the PNG of a texture and write the cache again, without reading the
+	 * cache first. This is for a PNG that is known to have changed.
+	 *
+	 * @param  fileName  The name of the texture (relative to the res folder)
+	 * @return The compressed texture with its mipmaps
+	 * @throws IOException When the PNG could not be decoded
+	 */
+	public static CompressedTextureData reload(String fileName) throws IOException
+	{
+		return compressAndCache(getSourceFile(fileName), getCacheFile(fileName));
+	}
+
+	private static CompressedTextureData compressAndCache(File sourceFile, File cacheFile) throws IOException
+	{
+		// The PNG may be saved again while it is compressed, so the cache gets the size
+		// and time of the version that was decoded. A newer one doesn't match it.
+		long sourceSize = sourceFile.length();
+		long sourceModified = sourceFile.lastModified();
+
+		CompressedTextureData data = BlockCompressor.compress(MipmapGenerator.generate(TextureDecoder.decode(sourceFile)));
+
+		// Failing to write the cache is not fatal, we just compress the PNG again next time.
+		try {
+			write(data, sourceSize, sourceModified, cacheFile);
+		} catch (IOException e) {
+			System.err.println("Could not write texture cache [" + cacheFile + "]");
+			e.printStackTrace();
+		}
+
+		return data;
+	}
+
+	/**
+	 * Read a texture from a cache file. The cache is only used when it was written
+	 * for the current version of the source file and its checksum is correct.
+	 *
+	 * @param  cacheFile   The cache file
+	 * @param  sourceFile  The PNG the cache was created from
+	 * @return The compressed texture, or null if there is no valid cache
+	 */
+	public static CompressedTextureData read(File cacheFile, File sourceFile)
+	{
+		if (! cacheFile.isFile()) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE) {
+				return null;
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				return null;
+			}
+
+			// The source file changed since the cache was written.
+			if (buffer.getLong(8) != sourceFile.length() || buffer.getLong(16) != sourceFile.lastModified()) {
+				return null;
+			}
+
+			int formatIndex = buffer.getInt(24);
+			int width = buffer.getInt(28);
+			int height = buffer.getInt(32);
+			int levelCount = buffer.getInt(36);
+			if (formatIndex < 0 || formatIndex >= Format.values().length || width <= 0 || height <= 0
+				|| levelCount <= 0 || levelCount > 32) {
+				return null;
+			}
+
+			Format format = Format.values()[formatIndex];
+			long payloadSize = 0;
+			for (int level = 0; level < levelCount; level++) {
+				payloadSize += CompressedTextureData.getLevelSize(format, Math.max(1, width >> level), Math.max(1, height >> level));
+			}
+			if (channel.size() != HEADER_SIZE + payloadSize) {
+				return null;
+			}
+
+			if (checksum(slice(buffer, HEADER_SIZE, (int) payloadSize)) != buffer.getLong(56)) {
+				return null;
+			}
+
+			ByteBuffer[] levels = new ByteBuffer[levelCount];
+			int offset = HEADER_SIZE;
+			for (int level = 0; level < levelCount; level++) {
+				int size = CompressedTextureData.getLevelSize(format, Math.max(1, width >> level), Math.max(1, height >> level));
+				levels[level] = slice(buffer, offset, size);
+				offset += size;
+			}
+
+			return new CompressedTextureData(format, width, height, levels);
+		} catch (IOException e) {
+			System.err.println("Could not read texture cache [" + cacheFile + "]");
+			e.printStackTrace();
+
+			return null;
+		}
+	}
+
+	/**
+	 * Write a texture to a cache file. The file is first written under a temporary
+	 * name and then moved in place, so a crash never leaves a half written cache.
+	 *
+	 * @param  data            The compressed texture to store
+	 * @param  sourceSize      The size of the PNG, read before it was decoded
+	 * @param  sourceModified  The last modified time of the PNG, read before it was decoded
+	 * @param  cacheFile       The cache file to write
+	 * @throws IOException When the cache could not be written
+	 */
+	public static void write(CompressedTextureData data, long sourceSize, long sourceModified, File cacheFile) throws IOException
+	{
+		int payloadSize = data.getSizeInBytes();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_SIZE + payloadSize).order(ByteOrder.LITTLE_ENDIAN);
+
+		buffer.position(HEADER_SIZE);
+		for (int level = 0; level < data.getLevelCount(); level++) {
+			buffer.put(data.getLevel(level).duplicate());
+		}
+
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putLong(8, sourceSize);
+		buffer.putLong(16, sourceModified);
+		buffer.putInt(24, data.getFormat().ordinal());
+		buffer.putInt(28, data.getWidth());
+		buffer.putInt(32, data.getHeight());
+		buffer.putInt(36, data.getLevelCount());
+		buffer.putLong(56, checksum(slice(buffer, HEADER_SIZE, payloadSize)));
+
+		buffer.rewind();
+
+		// Every write gets a temporary file of its own, so loads of the same texture on
+		// several threads never write into the same file.
+		Path tempFile = Files.createTempFile(cacheFile.getAbsoluteFile().getParentFile().toPath(), cacheFile.getName() + ".", ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+
+			Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	static File getSourceFile(String fileName)
+	{
+		return new File("res/" + fileName + ".png");
+	}
+
+	static File getCacheFile(String fileName)
+	{
+		return new File("res/" + fileName + ".ctex");
+	}
+
+	/**
+	 * Get a part of a buffer as a buffer of its own, without copying anything.
+	 */
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length)
+	{
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(offset);
+		duplicate.limit(offset + length);
+
+		return duplicate.slice().order(buffer.order());
+	}
+
+	private static long checksum(ByteBuffer payload)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+
+		return crc.getValue();
+	}
+}
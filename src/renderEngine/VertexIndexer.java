@@ -0,0 +1,122 @@
+package renderEngine;
+
+import models.ModelData;
+import toolbox.LongIntHashMap;
+
+/**
+ * <p>Turns the face corners of a model file into a minimal set of unique vertices
+ * and an index buffer.</p>
+ *
+ * <p>In an OBJ file every face corner points to a position, a texture coordinate
+ * and a normal separately. OpenGL however only has a single index per vertex, so a
+ * vertex is a unique combination of (position, texture, normal). A single position
+ * on a texture seam for example shows up with two different texture coordinates,
+ * so it has to become two vertices. Every combination that was seen before simply
+ * reuses the existing vertex.</p>
+ *
+ * <p>The combinations are looked up in a hash map keyed by the three indices packed
+ * together in a single long, so nothing gets boxed.</p>
+ */
+public class VertexIndexer
+{
+	private static final int POSITION_BITS = 22;
+	private static final int ATTRIBUTE_BITS = 21;
+
+	private static final int MAX_POSITION_INDEX = (1 << POSITION_BITS) - 2;
+	private static final int MAX_ATTRIBUTE_INDEX = (1 << ATTRIBUTE_BITS) - 2;
+
+	private LongIntHashMap lookup = new LongIntHashMap(1024);
+
+	// For every unique vertex, the first corner that created it.
+	private int[] firstCorners = new int[1024];
+
+	/**
+	 * Build the unique vertices and indices for a list of face corners.
+	 *
+	 * @param  positions    The positions read from the file (x, y, z)
+	 * @param  textures     The texture coordinates read from the file (u, v)
+	 * @param  normals      The normals read from the file (x, y, z)
+	 * @param  corners      The face corners as (position, texture, normal) triplets of
+	 *                      zero based indices. A missing texture or normal is -1.
+	 * @param  cornerCount  The number of corners in the corner array
+	 * @return The unique vertex data with its index buffer
+	 */
+	public ModelData index(float[] positions, float[] textures, float[] normals, int[] corners, int cornerCount)
+	{
+		lookup.clear();
+		lookup.ensureCapacity(cornerCount);
+
+		if (firstCorners.length < cornerCount) {
+			firstCorners = new int[cornerCount];
+		}
+
+		int[] indicesArray = new int[cornerCount];
+		int vertexCount = 0;
+
+		for (int i = 0; i < cornerCount; i++) {
+			long key = packKey(corners[i * 3], corners[i * 3 + 1], corners[i * 3 + 2]);
+
+			int vertex = lookup.get(key, -1);
+			if (vertex == -1) {
+				vertex = vertexCount++;
+				firstCorners[vertex] = i;
+				lookup.put(key, vertex);
+			}
+
+			indicesArray[i] = vertex;
+		}
+
+		float[] verticesArray = new float[vertexCount * 3];
+		float[] textureArray = new float[vertexCount * 2];
+		float[] normalsArray = new float[vertexCount * 3];
+
+		for (int vertex = 0; vertex < vertexCount; vertex++) {
+			int corner = firstCorners[vertex];
+			int position = corners[corner * 3];
+			int texture = corners[corner * 3 + 1];
+			int normal = corners[corner * 3 + 2];
+
+			verticesArray[vertex * 3] = positions[position * 3];
+			verticesArray[vertex * 3 + 1] = positions[position * 3 + 1];
+			verticesArray[vertex * 3 + 2] = positions[position * 3 + 2];
+
+			// OpenGL expects the texture origin at the top left, while OBJ files use the
+			// bottom left, so the v coordinate is flipped.
+			if (texture >= 0) {
+				textureArray[vertex * 2] = textures[texture * 2];
+				textureArray[vertex * 2 + 1] = 1 - textures[texture * 2 + 1];
+			}
+
+			if (normal >= 0) {
+				normalsArray[vertex * 3] = normals[normal * 3];
+				normalsArray[vertex * 3 + 1] = normals[normal * 3 + 1];
+				normalsArray[vertex * 3 + 2] = normals[normal * 3 + 2];
+			}
+		}
+
+		return new ModelData(verticesArray, textureArray, normalsArray, indicesArray);
+	}
+
+	/**
+	 * Pack the three indices of a corner in a single long. One is added to every
+	 * index so a missing attribute (-1) is stored as 0, which also makes sure the
+	 * key itself is never 0.
+	 *
+	 * @param  position  The position index
+	 * @param  texture   The texture coordinate index, or -1
+	 * @param  normal    The normal index, or -1
+	 * @return The packed key
+	 */
+	private static long packKey(int position, int texture, int normal)
+	{
+		if (position < 0 || position > MAX_POSITION_INDEX || texture > MAX_ATTRIBUTE_INDEX || normal > MAX_ATTRIBUTE_INDEX) {
+			throw new IllegalArgumentException(
+				"Vertex index out of range (" + position + "/" + texture + "/" + normal + ")"
+			);
+		}
+
+		return ((long) (position + 1) << (2 * ATTRIBUTE_BITS))
+			| ((long) (texture + 1) << ATTRIBUTE_BITS)
+			| (normal + 1);
+	}
+}
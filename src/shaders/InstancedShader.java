@@ -0,0 +1,41 @@
+package shaders;
+
+import renderEngine.GraphicsBackend;
+
+/**
+ * <p>The static shader for instanced rendering.</p>
+ *
+ * <p>Instead of a transformationMatrix uniform that is loaded for every entity, the
+ * vertex shader reads the transformation matrix and the texture region from per
+ * instance attributes. The other uniforms and the fragment shader are the same as
+ * the static shader.</p>
+ */
+public class InstancedShader extends StaticShader
+{
+	private static final String VERTEX_FILE = "src/shaders/instancedVertexShader.vsh";
+	private static final String FRAGMENT_FILE = "src/shaders/fragmentShader.fsh";
+
+	/**
+	 * The first attribute location of the transformation matrix. A matrix uses four
+	 * locations in a row, one for every column.
+	 */
+	public static final int TRANSFORMATION_ATTRIBUTE = 3;
+
+	/**
+	 * The attribute location of the texture region, right after the matrix.
+	 */
+	public static final int TEXTURE_REGION_ATTRIBUTE = 7;
+
+	public InstancedShader(GraphicsBackend gl)
+	{
+		super(gl, VERTEX_FILE, FRAGMENT_FILE);
+	}
+
+	@Override
+	protected void bindAttributes()
+	{
+		super.bindAttributes();
+		super.bindAttribute(TRANSFORMATION_ATTRIBUTE, "transformationMatrix");
+		super.bindAttribute(TEXTURE_REGION_ATTRIBUTE, "textureRegion");
+	}
+}
@@ -5,11 +5,13 @@ import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
+import renderEngine.GraphicsBackend;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 public abstract class ShaderProgram
 {
@@ -17,34 +19,181 @@ public abstract class ShaderProgram
 	private int vertexShaderID;
 	private int fragmentShaderID;
 
+	// The program that is being linked. Attributes are bound to it before linking.
+	private int linkingProgramID;
+
+	private String vertexFile;
+	private String fragmentFile;
+
+	protected GraphicsBackend gl;
+
 	// Float Buffer used for storing a 4x4 matrix.
 	private static FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16);
 
+	// The largest uniform is a 4x4 matrix.
+	private static final int MAX_UNIFORM_SIZE = 16;
+
+	/**
+	 * A uniform keeps its value in the program until something else is uploaded,
+	 * so the program remembers the values it uploaded last. Uploading the same value
+	 * again is skipped (a hit), only changed values go to the driver (a miss).
+	 * The load methods take the index of a uniform in these arrays, which
+	 * getUniformLocation() returns, so every uniform has a value of its own. Uniforms
+	 * the compiler removed all have location -1, they are never uploaded or counted.
+	 */
+	private int uniformCount;
+	private int[] uniformLocations = new int[8];
+	private String[] uniformNames = new String[8];
+	private float[] uniformValues = new float[8 * MAX_UNIFORM_SIZE];
+	private boolean[] uniformLoaded = new boolean[8];
+	private int[] uniformSizes = new int[8];
+	private boolean[] uniformInts = new boolean[8];
+	private long[] uniformHits = new long[8];
+	private long[] uniformMisses = new long[8];
+
+	// The new value of a uniform, before it is compared with the cached value.
+	private float[] newValue = new float[MAX_UNIFORM_SIZE];
+
 	/**
 	 * Create a new Shader Program.
 	 *
+	 * @param gl            The graphics backend to compile and run the program with
 	 * @param vertexFile    Path to the vertex shader
 	 * @param fragmentFile  Path to the fragment shader
 	 */
-	public ShaderProgram(String vertexFile, String fragmentFile)
+	public ShaderProgram(GraphicsBackend gl, String vertexFile, String fragmentFile)
+	{
+		this.gl = gl;
+		this.vertexFile = vertexFile;
+		this.fragmentFile = fragmentFile;
+
+		// Without its shaders the game can't draw anything, so only a reload may fail.
+		if (! createProgram()) {
+			System.exit(-1);
+		}
+
+		// Get all the uniform locations.
+		getAllUniformLocations();
+	}
+
+	/**
+	 * <p>Compile the source files again, and use the new program from now on. Call
+	 * this between frames, on the GL thread.</p>
+	 *
+	 * <p>The old program is only replaced when the new one compiles and links. When
+	 * it doesn't, the errors are printed and the old program stays in use, so a typo
+	 * in a shader doesn't stop the game. The uniform locations are looked up in the
+	 * new program, and every uniform that had a value in the old program gets that
+	 * value again, so settings that are only loaded once survive a reload.</p>
+	 *
+	 * @return True if the new program is used, false if the old one was kept
+	 */
+	public boolean reload()
+	{
+		// The values of the old program, by name.
+		int oldCount = uniformCount;
+		String[] oldNames = uniformNames.clone();
+		float[] oldValues = uniformValues.clone();
+		boolean[] oldLoaded = uniformLoaded.clone();
+		int[] oldSizes = uniformSizes.clone();
+		boolean[] oldInts = uniformInts.clone();
+		long[] oldHits = uniformHits.clone();
+		long[] oldMisses = uniformMisses.clone();
+
+		if (! createProgram()) {
+			return false;
+		}
+
+		uniformCount = 0;
+		getAllUniformLocations();
+
+		start();
+		for (int i = 0; i < oldCount; i++) {
+			int uniform = findUniformByName(oldNames[i]);
+			if (uniform < 0) {
+				continue;
+			}
+
+			uniformHits[uniform] = oldHits[i];
+			uniformMisses[uniform] = oldMisses[i];
+			if (oldLoaded[i] && uniformLocations[uniform] != -1) {
+				System.arraycopy(oldValues, i * MAX_UNIFORM_SIZE, uniformValues, uniform * MAX_UNIFORM_SIZE, MAX_UNIFORM_SIZE);
+				uniformSizes[uniform] = oldSizes[i];
+				uniformInts[uniform] = oldInts[i];
+				uniformLoaded[uniform] = true;
+				uploadCachedValue(uniform);
+			}
+		}
+		stop();
+
+		return true;
+	}
+
+	public String getVertexFile()
+	{
+		return vertexFile;
+	}
+
+	public String getFragmentFile()
+	{
+		return fragmentFile;
+	}
+
+	/**
+	 * Compile both shaders and link them into a new program. Only when that works,
+	 * the new program replaces the old one, which is deleted.
+	 *
+	 * @return True if the new program replaced the old one
+	 */
+	private boolean createProgram()
 	{
 		// Load the vertex and fragment shader.
-		vertexShaderID = loadShader(vertexFile, GL20.GL_VERTEX_SHADER);
-		fragmentShaderID = loadShader(fragmentFile, GL20.GL_FRAGMENT_SHADER);
+		int newVertexShaderID = loadShader(vertexFile, GL20.GL_VERTEX_SHADER);
+		int newFragmentShaderID = loadShader(fragmentFile, GL20.GL_FRAGMENT_SHADER);
+		if (newVertexShaderID == 0 || newFragmentShaderID == 0) {
+			deleteShaders(newVertexShaderID, newFragmentShaderID);
+			return false;
+		}
 
 		// Create a full shader program by attaching the vertex and fragment
 		// shader together in the program.
-		programID = GL20.glCreateProgram();
-		GL20.glAttachShader(programID, vertexShaderID);
-		GL20.glAttachShader(programID, fragmentShaderID);
+		linkingProgramID = gl.createProgram();
+		gl.attachShader(linkingProgramID, newVertexShaderID);
+		gl.attachShader(linkingProgramID, newFragmentShaderID);
 
 		// Link and validate the created program.
 		bindAttributes();
-		GL20.glLinkProgram(programID);
-		GL20.glValidateProgram(programID);
+		gl.linkProgram(linkingProgramID);
 
-		// Get all the uniform locations.
-		getAllUniformLocations();
+		if (gl.getProgrami(linkingProgramID, GL20.GL_LINK_STATUS) == GL11.GL_FALSE) {
+			System.err.println(gl.getProgramInfoLog(linkingProgramID, 500));
+			System.err.println("Could not link shader program [" + vertexFile + ", " + fragmentFile + "]");
+			gl.deleteProgram(linkingProgramID);
+			deleteShaders(newVertexShaderID, newFragmentShaderID);
+			return false;
+		}
+
+		gl.validateProgram(linkingProgramID);
+
+		if (programID != 0) {
+			cleanUp();
+		}
+
+		programID = linkingProgramID;
+		vertexShaderID = newVertexShaderID;
+		fragmentShaderID = newFragmentShaderID;
+
+		return true;
+	}
+
+	private void deleteShaders(int vertexShader, int fragmentShader)
+	{
+		if (vertexShader != 0) {
+			gl.deleteShader(vertexShader);
+		}
+		if (fragmentShader != 0) {
+			gl.deleteShader(fragmentShader);
+		}
 	}
 
 	/**
@@ -53,14 +202,32 @@ public abstract class ShaderProgram
 	protected abstract void getAllUniformLocations();
 
 	/**
-	 * Get the location of a given uniform variable.
+	 * Look up the location of a given uniform variable, and add the uniform to the
+	 * value cache.
 	 *
 	 * @param  uniformName  The name of the uniform variable
-	 * @return An int representing the location of a specific uniform variable
+	 * @return The index of the uniform in the cache, which the load methods take
 	 */
 	protected int getUniformLocation(String uniformName)
 	{
-		return GL20.glGetUniformLocation(programID, uniformName);
+		return addUniform(gl.getUniformLocation(programID, uniformName), uniformName);
+	}
+
+	public int getProgramID()
+	{
+		return programID;
+	}
+
+	/**
+	 * Make a uniform block of the program read its data from a binding point.
+	 *
+	 * @param  blockName  The name of the uniform block in the shader code
+	 * @param  binding    The binding point the uniform buffer is bound to
+	 */
+	protected void bindUniformBlock(String blockName, int binding)
+	{
+		int blockIndex = gl.getUniformBlockIndex(programID, blockName);
+		gl.uniformBlockBinding(programID, blockIndex, binding);
 	}
 
 	/**
@@ -68,7 +235,7 @@ public abstract class ShaderProgram
 	 */
 	public void start()
 	{
-		GL20.glUseProgram(programID);
+		gl.useProgram(programID);
 	}
 
 	/**
@@ -76,7 +243,7 @@ public abstract class ShaderProgram
 	 */
 	public void stop()
 	{
-		GL20.glUseProgram(0);
+		gl.useProgram(0);
 	}
 
 	/**
@@ -86,13 +253,13 @@ public abstract class ShaderProgram
 	public void cleanUp()
 	{
 		stop();
-		GL20.glDetachShader(programID, vertexShaderID);
-		GL20.glDetachShader(programID, fragmentShaderID);
+		gl.detachShader(programID, vertexShaderID);
+		gl.detachShader(programID, fragmentShaderID);
 
-		GL20.glDeleteShader(vertexShaderID);
-		GL20.glDeleteShader(fragmentShaderID);
+		gl.deleteShader(vertexShaderID);
+		gl.deleteShader(fragmentShaderID);
 
-		GL20.glDeleteProgram(programID);
+		gl.deleteProgram(programID);
 	}
 
 	/**
@@ -108,54 +275,335 @@ public abstract class ShaderProgram
 	 */
 	protected void bindAttribute(int attribute, String variableName)
 	{
-		GL20.glBindAttribLocation(programID, attribute, variableName);
+		gl.bindAttribLocation(linkingProgramID, attribute, variableName);
 	}
 
 	/**
 	 * Load a float value in the uniform location.
 	 *
-	 * @param location  The reference to the uniform
-	 * @param value     The value being loaded in the uniform
+	 * @param uniform  The index of the uniform
+	 * @param value    The value being loaded in the uniform
 	 */
-	protected void loadFloat(int location, float value)
+	protected void loadFloat(int uniform, float value)
 	{
-		GL20.glUniform1f(location, value);
+		newValue[0] = value;
+
+		if (updateCache(uniform, 1, false)) {
+			gl.uniform1f(uniformLocations[uniform], value);
+		}
+	}
+
+	/**
+	 * Load an int value in the uniform location, for example the texture unit of
+	 * a sampler.
+	 *
+	 * @param  uniform  The index of the uniform
+	 * @param  value    The value being loaded in the uniform
+	 */
+	protected void loadInt(int uniform, int value)
+	{
+		// Ints are compared through the cache as floats, which is exact for the small
+		// values uniforms like samplers use.
+		newValue[0] = value;
+
+		if (updateCache(uniform, 1, true)) {
+			gl.uniform1i(uniformLocations[uniform], value);
+		}
 	}
 
 	/**
 	 * Load a vector in the uniform location.
 	 *
-	 * @param  location  The reference to the uniform
-	 * @param  vector    The vector being loaded in the location
+	 * @param  uniform  The index of the uniform
+	 * @param  vector   The vector being loaded in the location
+	 */
+	protected void loadVector(int uniform, Vector3f vector)
+	{
+		loadVector(uniform, vector.x, vector.y, vector.z);
+	}
+
+	/**
+	 * Load a vector in the uniform location, without creating a Vector3f.
+	 *
+	 * @param  uniform  The index of the uniform
+	 * @param  x        The x of the vector
+	 * @param  y        The y of the vector
+	 * @param  z        The z of the vector
+	 */
+	protected void loadVector(int uniform, float x, float y, float z)
+	{
+		newValue[0] = x;
+		newValue[1] = y;
+		newValue[2] = z;
+
+		if (updateCache(uniform, 3, false)) {
+			gl.uniform3f(uniformLocations[uniform], x, y, z);
+		}
+	}
+
+	/**
+	 * Load a vec4 in the uniform location.
+	 *
+	 * @param  uniform  The index of the uniform
+	 * @param  x        The x of the vector
+	 * @param  y        The y of the vector
+	 * @param  z        The z of the vector
+	 * @param  w        The w of the vector
 	 */
-	protected void loadVector(int location, Vector3f vector)
+	protected void loadVector(int uniform, float x, float y, float z, float w)
 	{
-		GL20.glUniform3f(location, vector.x, vector.y, vector.z);
+		newValue[0] = x;
+		newValue[1] = y;
+		newValue[2] = z;
+		newValue[3] = w;
+
+		if (updateCache(uniform, 4, false)) {
+			gl.uniform4f(uniformLocations[uniform], x, y, z, w);
+		}
 	}
 
 	/**
 	 * Load a boolean value in the uniform location.
 	 *
-	 * @param  location  The reference to the uniform
-	 * @param  value     The value (0 or 1) being loaded in the location
+	 * @param  uniform  The index of the uniform
+	 * @param  value    The value (0 or 1) being loaded in the location
 	 */
-	protected void loadBoolean(int location, boolean value)
+	protected void loadBoolean(int uniform, boolean value)
 	{
-		GL20.glUniform1f(location, (value) ? 1 : 0);
+		loadFloat(uniform, (value) ? 1 : 0);
 	}
 
 	/**
 	 * Load a matrix in the uniform location.
 	 *
-	 * @param  location  The reference to the uniform
-	 * @param  matrix    The matrix being loaded in the location
+	 * @param  uniform  The index of the uniform
+	 * @param  matrix   The matrix being loaded in the location
 	 */
-	protected void loadMatrix(int location, Matrix4f matrix)
+	protected void loadMatrix(int uniform, Matrix4f matrix)
 	{
+		// The same column major order as Matrix4f.store().
+		newValue[0] = matrix.m00;
+		newValue[1] = matrix.m01;
+		newValue[2] = matrix.m02;
+		newValue[3] = matrix.m03;
+		newValue[4] = matrix.m10;
+		newValue[5] = matrix.m11;
+		newValue[6] = matrix.m12;
+		newValue[7] = matrix.m13;
+		newValue[8] = matrix.m20;
+		newValue[9] = matrix.m21;
+		newValue[10] = matrix.m22;
+		newValue[11] = matrix.m23;
+		newValue[12] = matrix.m30;
+		newValue[13] = matrix.m31;
+		newValue[14] = matrix.m32;
+		newValue[15] = matrix.m33;
+
+		if (! updateCache(uniform, 16, false)) {
+			return;
+		}
+
 		matrix.store(matrixBuffer);
 		matrixBuffer.flip();
 
-		GL20.glUniformMatrix4(location, false, matrixBuffer);
+		gl.uniformMatrix4(uniformLocations[uniform], false, matrixBuffer);
+	}
+
+	/**
+	 * Get the number of uploads of a uniform that were skipped, because the
+	 * uniform already had the value.
+	 *
+	 * @param  uniformName  The name of the uniform
+	 * @return The number of skipped uploads
+	 */
+	public long getUniformHits(String uniformName)
+	{
+		int uniform = findUniformByName(uniformName);
+
+		return uniform < 0 ? 0 : uniformHits[uniform];
+	}
+
+	/**
+	 * Get the number of uploads of a uniform that actually went to the driver.
+	 *
+	 * @param  uniformName  The name of the uniform
+	 * @return The number of uploads
+	 */
+	public long getUniformMisses(String uniformName)
+	{
+		int uniform = findUniformByName(uniformName);
+
+		return uniform < 0 ? 0 : uniformMisses[uniform];
+	}
+
+	/**
+	 * Get the number of skipped uploads of all uniforms together.
+	 *
+	 * @return The number of skipped uploads
+	 */
+	public long getUniformHits()
+	{
+		long hits = 0;
+		for (int i = 0; i < uniformCount; i++) {
+			hits += uniformHits[i];
+		}
+
+		return hits;
+	}
+
+	/**
+	 * Get the number of uploads of all uniforms together that went to the driver.
+	 *
+	 * @return The number of uploads
+	 */
+	public long getUniformMisses()
+	{
+		long misses = 0;
+		for (int i = 0; i < uniformCount; i++) {
+			misses += uniformMisses[i];
+		}
+
+		return misses;
+	}
+
+	/**
+	 * Start counting hits and misses from zero again. The cached values are kept.
+	 */
+	public void resetUniformStatistics()
+	{
+		for (int i = 0; i < uniformCount; i++) {
+			uniformHits[i] = 0;
+			uniformMisses[i] = 0;
+		}
+	}
+
+	/**
+	 * Describe the hits and misses of every uniform in a single line.
+	 *
+	 * @return The statistics as text
+	 */
+	public String describeUniformStatistics()
+	{
+		StringBuilder description = new StringBuilder();
+		for (int i = 0; i < uniformCount; i++) {
+			if (description.length() > 0) {
+				description.append(", ");
+			}
+			description.append(uniformNames[i])
+				.append('=').append(uniformHits[i])
+				.append('/').append(uniformHits[i] + uniformMisses[i]);
+		}
+
+		return description.toString();
+	}
+
+	/**
+	 * Compare the new value of a uniform with the cached value, and store it in the
+	 * cache if it changed.
+	 *
+	 * @param  uniform  The index of the uniform
+	 * @param  size     The number of floats in the new value
+	 * @param  integer  True if the uniform is an int
+	 * @return True if the value changed, and has to be uploaded
+	 */
+	private boolean updateCache(int uniform, int size, boolean integer)
+	{
+		// The program doesn't have the uniform, there is nothing to upload.
+		if (uniformLocations[uniform] == -1) {
+			return false;
+		}
+
+		int offset = uniform * MAX_UNIFORM_SIZE;
+
+		if (uniformLoaded[uniform]) {
+			boolean same = true;
+			for (int i = 0; i < size; i++) {
+				if (uniformValues[offset + i] != newValue[i]) {
+					same = false;
+					break;
+				}
+			}
+
+			if (same) {
+				uniformHits[uniform]++;
+				return false;
+			}
+		}
+
+		System.arraycopy(newValue, 0, uniformValues, offset, size);
+		uniformLoaded[uniform] = true;
+		uniformSizes[uniform] = size;
+		uniformInts[uniform] = integer;
+		uniformMisses[uniform]++;
+
+		return true;
+	}
+
+	/**
+	 * Upload the cached value of a uniform, to a program that doesn't have it yet.
+	 *
+	 * @param  uniform  The index of the uniform in the cache
+	 */
+	private void uploadCachedValue(int uniform)
+	{
+		int location = uniformLocations[uniform];
+		int offset = uniform * MAX_UNIFORM_SIZE;
+
+		switch (uniformSizes[uniform]) {
+			case 1:
+				if (uniformInts[uniform]) {
+					gl.uniform1i(location, (int) uniformValues[offset]);
+				} else {
+					gl.uniform1f(location, uniformValues[offset]);
+				}
+				break;
+			case 3:
+				gl.uniform3f(location, uniformValues[offset], uniformValues[offset + 1], uniformValues[offset + 2]);
+				break;
+			case 4:
+				gl.uniform4f(
+					location, uniformValues[offset], uniformValues[offset + 1], uniformValues[offset + 2], uniformValues[offset + 3]
+				);
+				break;
+			case 16:
+				matrixBuffer.clear();
+				matrixBuffer.put(uniformValues, offset, 16);
+				matrixBuffer.flip();
+				gl.uniformMatrix4(location, false, matrixBuffer);
+				break;
+		}
+	}
+
+	private int findUniformByName(String uniformName)
+	{
+		for (int i = 0; i < uniformCount; i++) {
+			if (uniformNames[i].equals(uniformName)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private int addUniform(int location, String uniformName)
+	{
+		if (uniformCount == uniformLocations.length) {
+			int capacity = uniformCount * 2;
+			uniformLocations = Arrays.copyOf(uniformLocations, capacity);
+			uniformNames = Arrays.copyOf(uniformNames, capacity);
+			uniformValues = Arrays.copyOf(uniformValues, capacity * MAX_UNIFORM_SIZE);
+			uniformLoaded = Arrays.copyOf(uniformLoaded, capacity);
+			uniformSizes = Arrays.copyOf(uniformSizes, capacity);
+			uniformInts = Arrays.copyOf(uniformInts, capacity);
+			uniformHits = Arrays.copyOf(uniformHits, capacity);
+			uniformMisses = Arrays.copyOf(uniformMisses, capacity);
+		}
+
+		uniformLocations[uniformCount] = location;
+		uniformNames[uniformCount] = uniformName;
+		uniformLoaded[uniformCount] = false;
+
+		return uniformCount++;
 	}
 
 	/**
@@ -163,35 +611,32 @@ public abstract class ShaderProgram
 	 *
 	 * @param  file  The filename of the source file
 	 * @param  type  shader type (vertex or fragment)
-	 * @return The ID of the loaded shader.
+	 * @return The ID of the loaded shader, or 0 if it couldn't be read or compiled
 	 */
-	private static int loadShader(String file, int type)
+	private int loadShader(String file, int type)
 	{
 		StringBuilder shaderSource = new StringBuilder();
 
-		try {
-			BufferedReader reader = new BufferedReader(new FileReader(file));
-
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
 			String line;
 			while ((line = reader.readLine()) != null) {
 				shaderSource.append(line).append('\n');
 			}
-
-			reader.close();
 		} catch (IOException e) {
-			System.err.println("Could not read file!");
+			System.err.println("Could not read file [" + file + "]");
 			e.printStackTrace();
-			System.exit(-1);
+			return 0;
 		}
 
-		int shaderID = GL20.glCreateShader(type);
-		GL20.glShaderSource(shaderID, shaderSource);
-		GL20.glCompileShader(shaderID);
+		int shaderID = gl.createShader(type);
+		gl.shaderSource(shaderID, shaderSource);
+		gl.compileShader(shaderID);
 
-		if (GL20.glGetShaderi(shaderID, GL20.GL_COMPILE_STATUS) == GL11.GL_FALSE) {
-			System.out.println(GL20.glGetShaderInfoLog(shaderID, 500));
-			System.err.println("Could not compile shader.");
-			System.exit(-1);
+		if (gl.getShaderi(shaderID, GL20.GL_COMPILE_STATUS) == GL11.GL_FALSE) {
+			System.out.println(gl.getShaderInfoLog(shaderID, 500));
+			System.err.println("Could not compile shader [" + file + "]");
+			gl.deleteShader(shaderID);
+			return 0;
 		}
 
 		return shaderID;
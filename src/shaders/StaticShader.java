@@ -1,27 +1,50 @@
 package shaders;
 
-import entities.Camera;
-import entities.Light;
+import models.RawModel;
 import org.lwjgl.util.vector.Matrix4f;
-import toolbox.Maths;
+import org.lwjgl.util.vector.Vector3f;
+import renderEngine.ClusteredLighting;
+import renderEngine.FrameUniformBuffer;
+import renderEngine.GraphicsBackend;
+import renderEngine.LightClusterer;
 
 public class StaticShader extends ShaderProgram
 {
 	private static final String VERTEX_FILE = "src/shaders/vertexShader.vsh";
 	private static final String FRAGMENT_FILE = "src/shaders/fragmentShader.fsh";
 
-	// All of the uniform locations in the shader program.
-	private int location_transformationMatrix;
-	private int location_projectionMatrix;
-	private int location_viewMatrix;
-	private int location_lightPosition;
-	private int location_lightColour;
-	private int location_shineDamper;
-	private int location_reflectivity;
+	// All of the uniforms in the shader program, by their index in the value cache.
+	// The camera and light are in the frame uniform buffer.
+	private int uniform_transformationMatrix;
+	private int uniform_shineDamper;
+	private int uniform_reflectivity;
+	private int uniform_pointLights;
+	private int uniform_lightData;
+	private int uniform_clusterGrid;
+	private int uniform_lightIndices;
+	private int uniform_clusterScale;
+	private int uniform_clusterBias;
+	private int uniform_clusterDimensions;
+	private int uniform_positionScale;
+	private int uniform_positionOffset;
+	private int uniform_octahedralNormals;
+	private int uniform_textureRegion;
 
-	public StaticShader()
+	public StaticShader(GraphicsBackend gl)
 	{
-		super(VERTEX_FILE, FRAGMENT_FILE);
+		super(gl, VERTEX_FILE, FRAGMENT_FILE);
+	}
+
+	/**
+	 * Create a static shader from other source files, that use the same uniforms.
+	 *
+	 * @param  gl            The graphics backend
+	 * @param  vertexFile    Path to the vertex shader
+	 * @param  fragmentFile  Path to the fragment shader
+	 */
+	protected StaticShader(GraphicsBackend gl, String vertexFile, String fragmentFile)
+	{
+		super(gl, vertexFile, fragmentFile);
 	}
 
 	@Override
@@ -38,13 +61,22 @@ public class StaticShader extends ShaderProgram
 	@Override
 	protected void getAllUniformLocations()
 	{
-		location_transformationMatrix = super.getUniformLocation("transformationMatrix");
-		location_projectionMatrix = super.getUniformLocation("projectionMatrix");
-		location_viewMatrix = super.getUniformLocation("viewMatrix");
-		location_lightPosition = super.getUniformLocation("lightPosition");
-		location_lightColour = super.getUniformLocation("lightColour");
-		location_shineDamper = super.getUniformLocation("shineDamper");
-		location_reflectivity = super.getUniformLocation("reflectivity");
+		uniform_transformationMatrix = super.getUniformLocation("transformationMatrix");
+		uniform_shineDamper = super.getUniformLocation("shineDamper");
+		uniform_reflectivity = super.getUniformLocation("reflectivity");
+		uniform_pointLights = super.getUniformLocation("pointLights");
+		uniform_lightData = super.getUniformLocation("lightData");
+		uniform_clusterGrid = super.getUniformLocation("clusterGrid");
+		uniform_lightIndices = super.getUniformLocation("lightIndices");
+		uniform_clusterScale = super.getUniformLocation("clusterScale");
+		uniform_clusterBias = super.getUniformLocation("clusterBias");
+		uniform_clusterDimensions = super.getUniformLocation("clusterDimensions");
+		uniform_positionScale = super.getUniformLocation("positionScale");
+		uniform_positionOffset = super.getUniformLocation("positionOffset");
+		uniform_octahedralNormals = super.getUniformLocation("octahedralNormals");
+		uniform_textureRegion = super.getUniformLocation("textureRegion");
+
+		super.bindUniformBlock(FrameUniformBuffer.BLOCK_NAME, FrameUniformBuffer.BINDING);
 	}
 
 	/**
@@ -56,50 +88,85 @@ public class StaticShader extends ShaderProgram
 	 */
 	public void loadShineVariables(float damper, float reflectivity)
 	{
-		super.loadFloat(location_shineDamper, damper);
-		super.loadFloat(location_reflectivity, reflectivity);
+		super.loadFloat(uniform_shineDamper, damper);
+		super.loadFloat(uniform_reflectivity, reflectivity);
 	}
 
 	/**
-	 * Load a transformation matrix in the appropriate uniform location.
+	 * Connect the samplers of the point lights to their texture units, and load
+	 * the size of the cluster grid. This only has to be done once.
 	 *
-	 * @param  matrix  The matrix being loaded
+	 * @param  clusterer     The clusterer the point lights are assigned with
+	 * @param  screenWidth   The width of the screen in pixels
+	 * @param  screenHeight  The height of the screen in pixels
 	 */
-	public void loadTransformationMatrix(Matrix4f matrix)
+	public void loadClusterSettings(LightClusterer clusterer, int screenWidth, int screenHeight)
+	{
+		super.loadInt(uniform_lightData, ClusteredLighting.LIGHT_DATA_UNIT);
+		super.loadInt(uniform_clusterGrid, ClusteredLighting.CLUSTER_UNIT);
+		super.loadInt(uniform_lightIndices, ClusteredLighting.LIGHT_INDEX_UNIT);
+
+		// The slice of a depth is log(depth / near) / log(far / near) * slices, which
+		// the shader calculates as log(depth) * scale + bias.
+		float logDepthRatio = (float) Math.log(clusterer.getFarPlane() / clusterer.getNearPlane());
+		float sliceScale = clusterer.getSlices() / logDepthRatio;
+
+		super.loadVector(uniform_clusterScale, new Vector3f(
+			(float) clusterer.getTilesX() / screenWidth,
+			(float) clusterer.getTilesY() / screenHeight,
+			sliceScale
+		));
+		super.loadFloat(uniform_clusterBias, (float) -Math.log(clusterer.getNearPlane()) * sliceScale);
+		super.loadVector(uniform_clusterDimensions, new Vector3f(
+			clusterer.getTilesX(), clusterer.getTilesY(), clusterer.getSlices()
+		));
+	}
+
+	/**
+	 * Turn the point lights on or off.
+	 *
+	 * @param  enabled  True if the point lights of the clusters are used
+	 */
+	public void loadPointLights(boolean enabled)
 	{
-		super.loadMatrix(location_transformationMatrix, matrix);
+		super.loadBoolean(uniform_pointLights, enabled);
 	}
 
 	/**
-	 * Load the light instance in the uniform location in the shader program.
+	 * Load how the vertices of a model are stored, so compact models are unpacked.
+	 * Call this whenever a different model is bound.
 	 *
-	 * @param  light  The Light instance
+	 * @param  model  The model being drawn
 	 */
-	public void loadLight(Light light)
+	public void loadVertexFormat(RawModel model)
 	{
-		super.loadVector(location_lightPosition, light.getPosition());
-		super.loadVector(location_lightColour, light.getColour());
+		float[] scale = model.getPositionScale();
+		float[] offset = model.getPositionOffset();
+
+		super.loadVector(uniform_positionScale, scale[0], scale[1], scale[2]);
+		super.loadVector(uniform_positionOffset, offset[0], offset[1], offset[2]);
+		super.loadBoolean(uniform_octahedralNormals, model.isCompact());
 	}
 
 	/**
-	 * Load a projection matrix in the appropriate uniform location.
+	 * Load the part of the texture a material reads from. Call this whenever a
+	 * different material is used.
 	 *
-	 * @param  projection  The matrix being loaded
+	 * @param  region  The offset (u, v) and the size (width, height) of the region
 	 */
-	public void loadProjectionMatrix(Matrix4f projection)
+	public void loadTextureRegion(float[] region)
 	{
-		super.loadMatrix(location_projectionMatrix, projection);
+		super.loadVector(uniform_textureRegion, region[0], region[1], region[2], region[3]);
 	}
 
 	/**
-	 * Load a view matrix in the appropriate uniform location.
+	 * Load a transformation matrix in the appropriate uniform location.
 	 *
-	 * @param  camera  The camera we create the view matrix from
+	 * @param  matrix  The matrix being loaded
 	 */
-	public void loadViewMatrix(Camera camera)
+	public void loadTransformationMatrix(Matrix4f matrix)
 	{
-		Matrix4f viewMatrix = Maths.createViewMatrix(camera);
-		super.loadMatrix(location_viewMatrix, viewMatrix);
+		super.loadMatrix(uniform_transformationMatrix, matrix);
 	}
 
 }
\ No newline at end of file
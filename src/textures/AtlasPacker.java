@@ -0,0 +1,243 @@
+package textures;
+
+import java.util.Arrays;
+
+/**
+ * <p>Packs rectangles into a page with the MaxRects algorithm.</p>
+ *
+ * <p>The packer keeps a list of free rectangles: the largest empty rectangles of the
+ * page. At first that is the whole page. A new rectangle goes in the top left
+ * corner of the free rectangle where its bottom edge ends up highest, and of those
+ * the one furthest to the left (the bottom-left rule, with y pointing down). Then
+ * every free rectangle the new one overlaps is split into the parts that are still
+ * empty, up to four of them, and free rectangles that lie completely inside another
+ * free rectangle are dropped.</p>
+ *
+ * <p>The bottom-left rule fills the page from the top, so a page that isn't full can
+ * be cut off below the last rectangle. Rules that look for the tightest fit pack a
+ * full page about as well, but spread a half full page out over all of it.</p>
+ *
+ * <p>The free rectangles overlap each other, which is what makes MaxRects pack
+ * tighter than simpler algorithms like a skyline: no empty space is ever given up
+ * because of where an earlier split happened to be made.</p>
+ *
+ * <p>Packing works best when the biggest rectangles are inserted first.</p>
+ */
+public class AtlasPacker
+{
+	private final int width;
+	private final int height;
+
+	// The free rectangles, as x, y, width and height.
+	private int freeCount;
+	private int[] freeRects = new int[64 * 4];
+
+	// The rectangles that came out of splits, before they are added to the free ones.
+	private int splitCount;
+	private int[] splitRects = new int[16 * 4];
+
+	private long usedArea;
+	private int usedWidth;
+	private int usedHeight;
+
+	/**
+	 * Create a packer for an empty page.
+	 *
+	 * @param  width   The width of the page
+	 * @param  height  The height of the page
+	 */
+	public AtlasPacker(int width, int height)
+	{
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("The page has to be at least 1x1, not " + width + "x" + height);
+		}
+
+		this.width = width;
+		this.height = height;
+
+		freeCount = 1;
+		freeRects[2] = width;
+		freeRects[3] = height;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Get the width of the part of the page that is used, from the left edge to the
+	 * right edge of the rightmost rectangle.
+	 *
+	 * @return The used width
+	 */
+	public int getUsedWidth()
+	{
+		return usedWidth;
+	}
+
+	/**
+	 * Get the height of the part of the page that is used, from the top to the
+	 * bottom of the lowest rectangle.
+	 *
+	 * @return The used height
+	 */
+	public int getUsedHeight()
+	{
+		return usedHeight;
+	}
+
+	/**
+	 * Get how much of the page is covered by rectangles.
+	 *
+	 * @return The covered area divided by the area of the page
+	 */
+	public float getOccupancy()
+	{
+		return (float) ((double) usedArea / ((long) width * height));
+	}
+
+	/**
+	 * Find a place for a rectangle, and mark it as used.
+	 *
+	 * @param  rectWidth   The width of the rectangle
+	 * @param  rectHeight  The height of the rectangle
+	 * @return The x and y of the top left corner, or null if the rectangle doesn't fit
+	 */
+	public int[] insert(int rectWidth, int rectHeight)
+	{
+		if (rectWidth <= 0 || rectHeight <= 0) {
+			throw new IllegalArgumentException("A rectangle has to be at least 1x1, not " + rectWidth + "x" + rectHeight);
+		}
+
+		int best = -1;
+		int bestBottom = Integer.MAX_VALUE;
+		int bestX = Integer.MAX_VALUE;
+
+		for (int i = 0; i < freeCount * 4; i += 4) {
+			if (freeRects[i + 2] < rectWidth || freeRects[i + 3] < rectHeight) {
+				continue;
+			}
+
+			int bottom = freeRects[i + 1] + rectHeight;
+			if (bottom < bestBottom || (bottom == bestBottom && freeRects[i] < bestX)) {
+				best = i;
+				bestBottom = bottom;
+				bestX = freeRects[i];
+			}
+		}
+
+		if (best < 0) {
+			return null;
+		}
+
+		int x = freeRects[best];
+		int y = freeRects[best + 1];
+		place(x, y, rectWidth, rectHeight);
+
+		return new int[] {x, y};
+	}
+
+	/**
+	 * Take a rectangle out of the free space.
+	 */
+	private void place(int x, int y, int rectWidth, int rectHeight)
+	{
+		int right = x + rectWidth;
+		int bottom = y + rectHeight;
+
+		// Split every free rectangle that overlaps the new one in the parts that are
+		// still free. The free rectangle itself is replaced by the last one.
+		splitCount = 0;
+		for (int i = 0; i < freeCount * 4; ) {
+			int freeX = freeRects[i];
+			int freeY = freeRects[i + 1];
+			int freeRight = freeX + freeRects[i + 2];
+			int freeBottom = freeY + freeRects[i + 3];
+
+			if (x >= freeRight || right <= freeX || y >= freeBottom || bottom <= freeY) {
+				i += 4;
+				continue;
+			}
+
+			if (x > freeX) {
+				addSplit(freeX, freeY, x - freeX, freeBottom - freeY);
+			}
+			if (right < freeRight) {
+				addSplit(right, freeY, freeRight - right, freeBottom - freeY);
+			}
+			if (y > freeY) {
+				addSplit(freeX, freeY, freeRight - freeX, y - freeY);
+			}
+			if (bottom < freeBottom) {
+				addSplit(freeX, bottom, freeRight - freeX, freeBottom - bottom);
+			}
+
+			freeCount--;
+			System.arraycopy(freeRects, freeCount * 4, freeRects, i, 4);
+		}
+
+		addSplits();
+
+		usedArea += (long) rectWidth * rectHeight;
+		usedWidth = Math.max(usedWidth, right);
+		usedHeight = Math.max(usedHeight, bottom);
+	}
+
+	private void addSplit(int x, int y, int rectWidth, int rectHeight)
+	{
+		if (splitCount * 4 == splitRects.length) {
+			splitRects = Arrays.copyOf(splitRects, splitRects.length * 2);
+		}
+
+		int i = splitCount * 4;
+		splitRects[i] = x;
+		splitRects[i + 1] = y;
+		splitRects[i + 2] = rectWidth;
+		splitRects[i + 3] = rectHeight;
+		splitCount++;
+	}
+
+	/**
+	 * Add the rectangles that came out of the splits to the free rectangles, unless
+	 * they are inside another free rectangle. A split is a part of an old free
+	 * rectangle, and old free rectangles were never inside each other, so an old one
+	 * can't be inside a split and only the splits have to be checked.
+	 */
+	private void addSplits()
+	{
+		for (int s = 0; s < splitCount * 4; s += 4) {
+			boolean contained = false;
+			for (int i = 0; i < freeCount * 4 && ! contained; i += 4) {
+				contained = contains(freeRects, i, splitRects, s);
+			}
+			for (int t = s + 4; t < splitCount * 4 && ! contained; t += 4) {
+				contained = contains(splitRects, t, splitRects, s);
+			}
+			if (contained) {
+				continue;
+			}
+
+			if (freeCount * 4 == freeRects.length) {
+				freeRects = Arrays.copyOf(freeRects, freeRects.length * 2);
+			}
+			System.arraycopy(splitRects, s, freeRects, freeCount * 4, 4);
+			freeCount++;
+		}
+	}
+
+	/**
+	 * Check whether rectangle b is inside rectangle a.
+	 */
+	private static boolean contains(int[] a, int ai, int[] b, int bi)
+	{
+		return b[bi] >= a[ai] && b[bi + 1] >= a[ai + 1]
+			&& b[bi] + b[bi + 2] <= a[ai] + a[ai + 2]
+			&& b[bi + 1] + b[bi + 3] <= a[ai + 1] + a[ai + 3];
+	}
+}
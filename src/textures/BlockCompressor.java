@@ -0,0 +1,584 @@
+package textures;
+
+import org.lwjgl.BufferUtils;
+import textures.CompressedTextureData.Format;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>Compresses textures to BC1 (opaque) or BC3 (with alpha) on the CPU.</p>
+ *
+ * <p>A BC1 block stores two endpoint colours in 16 bits (5 bits red, 6 green, 5
+ * blue), and for every pixel a 2-bit index that picks one of the endpoints or one
+ * of the two colours a third and two thirds of the way between them. So the job of
+ * the encoder is to find the line through colour space that the 16 pixels of the
+ * block lie closest to, and the two endpoints on it:</p>
+ *
+ * <ol>
+ * <li>The direction the colours spread out most in is found with a few steps of
+ * power iteration on their covariance matrix (the principal axis).</li>
+ * <li>The pixels furthest apart along that axis are the first endpoints, and
+ * every pixel gets the index of the nearest of the four colours.</li>
+ * <li>With those indices fixed, the endpoints that give the least squared error
+ * are calculated, and the indices are picked again. This is kept when it is
+ * better than the first try.</li>
+ * </ol>
+ *
+ * <p>A BC3 block is an alpha block followed by a BC1 colour block. The alpha block
+ * stores the lowest and highest alpha of the block, and a 3-bit index per pixel
+ * into those two and the six values evenly between them.</p>
+ *
+ * <p>Blocks don't depend on each other, so big levels are split into bands of block
+ * rows that are compressed in parallel on the common fork join pool.</p>
+ */
+public class BlockCompressor
+{
+	/**
+	 * Levels with fewer blocks than this are compressed on the calling thread.
+	 */
+	private static final int PARALLEL_BLOCKS = 32 * 32;
+
+	private static final int BLOCK_ROWS_PER_TASK = 8;
+
+	// The weight of the first and second endpoint in the colour of every index.
+	private static final float[] WEIGHT_0 = {1, 0, 2 / 3f, 1 / 3f};
+	private static final float[] WEIGHT_1 = {0, 1, 1 / 3f, 2 / 3f};
+
+	/**
+	 * Compress a texture and its mipmaps, in BC1 when every pixel is opaque and in
+	 * BC3 otherwise.
+	 *
+	 * @param  texture  The texture with its mipmaps
+	 * @return The compressed texture
+	 */
+	public static CompressedTextureData compress(TextureData texture)
+	{
+		return compress(texture, isOpaque(texture) ? Format.BC1 : Format.BC3);
+	}
+
+	/**
+	 * Compress a texture and its mipmaps.
+	 *
+	 * @param  texture  The texture with its mipmaps
+	 * @param  format   The block format
+	 * @return The compressed texture
+	 */
+	public static CompressedTextureData compress(TextureData texture, Format format)
+	{
+		ByteBuffer[] levels = new ByteBuffer[texture.getLevelCount()];
+		for (int level = 0; level < levels.length; level++) {
+			levels[level] = compressLevel(
+				texture.getLevel(level), texture.getLevelWidth(level), texture.getLevelHeight(level), format
+			);
+		}
+
+		return new CompressedTextureData(format, texture.getWidth(), texture.getHeight(), levels);
+	}
+
+	/**
+	 * Compress the pixels of a single level.
+	 *
+	 * @param  pixels  The RGBA pixels
+	 * @param  width   The width in pixels
+	 * @param  height  The height in pixels
+	 * @param  format  The block format
+	 * @return The blocks, row by row
+	 */
+	public static ByteBuffer compressLevel(ByteBuffer pixels, int width, int height, Format format)
+	{
+		ByteBuffer blocks = BufferUtils.createByteBuffer(CompressedTextureData.getLevelSize(format, width, height));
+		blocks.order(ByteOrder.LITTLE_ENDIAN);
+
+		int blocksX = (width + 3) / 4;
+		int blocksY = (height + 3) / 4;
+
+		LevelTask task = new LevelTask(pixels, width, height, format, blocks, 0, blocksY);
+		if (blocksX * blocksY < PARALLEL_BLOCKS) {
+			task.compressRows();
+		} else {
+			ForkJoinPool.commonPool().invoke(task);
+		}
+
+		return blocks;
+	}
+
+	/**
+	 * Check whether every pixel of level 0 is fully opaque.
+	 *
+	 * @param  texture  The texture
+	 * @return True if no pixel has an alpha below 255
+	 */
+	public static boolean isOpaque(TextureData texture)
+	{
+		ByteBuffer pixels = texture.getPixels();
+		int end = texture.getWidth() * texture.getHeight() * 4;
+		for (int i = 3; i < end; i += 4) {
+			if (pixels.get(i) != (byte) 255) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decode the blocks of a level back into RGBA pixels, the way the graphics card
+	 * does.
+	 *
+	 * @param  blocks  The blocks of the level
+	 * @param  width   The width in pixels
+	 * @param  height  The height in pixels
+	 * @param  format  The block format
+	 * @return The RGBA pixels
+	 */
+	public static ByteBuffer decompressLevel(ByteBuffer blocks, int width, int height, Format format)
+	{
+		ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+		ByteBuffer source = blocks.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int[] palette = new int[8 * 4];
+
+		int blocksX = (width + 3) / 4;
+		int blocksY = (height + 3) / 4;
+		for (int blockY = 0; blockY < blocksY; blockY++) {
+			for (int blockX = 0; blockX < blocksX; blockX++) {
+				int offset = (blockY * blocksX + blockX) * format.getBlockBytes();
+				int colourOffset = format == Format.BC3 ? offset + 8 : offset;
+
+				// BC3 colour blocks always use four colours, BC1 only when the first
+				// endpoint is the bigger number.
+				int colour0 = source.getShort(colourOffset) & 0xffff;
+				int colour1 = source.getShort(colourOffset + 2) & 0xffff;
+				createPalette(colour0, colour1, format == Format.BC3 || colour0 > colour1, palette);
+				int colourIndices = source.getInt(colourOffset + 4);
+
+				int alpha0 = 255;
+				int alpha1 = 255;
+				long alphaIndices = 0;
+				if (format == Format.BC3) {
+					alpha0 = source.get(offset) & 0xff;
+					alpha1 = source.get(offset + 1) & 0xff;
+					for (int i = 0; i < 6; i++) {
+						alphaIndices |= (long) (source.get(offset + 2 + i) & 0xff) << (i * 8);
+					}
+				}
+
+				for (int i = 0; i < 16; i++) {
+					int x = blockX * 4 + (i & 3);
+					int y = blockY * 4 + (i >> 2);
+					if (x >= width || y >= height) {
+						continue;
+					}
+
+					int index = (colourIndices >>> (i * 2)) & 3;
+					int out = (y * width + x) * 4;
+					pixels.put(out, (byte) palette[index * 4]);
+					pixels.put(out + 1, (byte) palette[index * 4 + 1]);
+					pixels.put(out + 2, (byte) palette[index * 4 + 2]);
+
+					int alpha = format == Format.BC3
+						? alphaValue(alpha0, alpha1, (int) (alphaIndices >>> (i * 3)) & 7)
+						: palette[index * 4 + 3];
+					pixels.put(out + 3, (byte) alpha);
+				}
+			}
+		}
+
+		return pixels;
+	}
+
+	/**
+	 * Create the four colours of a colour block, as RGBA.
+	 *
+	 * @param  colour0     The first endpoint in 565
+	 * @param  colour1     The second endpoint in 565
+	 * @param  fourColours True for two colours between the endpoints, false for
+	 *                     one colour halfway and transparent black
+	 * @param  palette     The array to store the colours in
+	 */
+	private static void createPalette(int colour0, int colour1, boolean fourColours, int[] palette)
+	{
+		expand565(colour0, palette, 0);
+		expand565(colour1, palette, 4);
+		palette[3] = 255;
+		palette[7] = 255;
+
+		for (int channel = 0; channel < 3; channel++) {
+			int a = palette[channel];
+			int b = palette[4 + channel];
+			if (fourColours) {
+				palette[8 + channel] = (2 * a + b) / 3;
+				palette[12 + channel] = (a + 2 * b) / 3;
+			} else {
+				palette[8 + channel] = (a + b) / 2;
+				palette[12 + channel] = 0;
+			}
+		}
+		palette[11] = 255;
+		palette[15] = fourColours ? 255 : 0;
+	}
+
+	private static void expand565(int colour, int[] dest, int offset)
+	{
+		int red = (colour >> 11) & 31;
+		int green = (colour >> 5) & 63;
+		int blue = colour & 31;
+
+		dest[offset] = (red << 3) | (red >> 2);
+		dest[offset + 1] = (green << 2) | (green >> 4);
+		dest[offset + 2] = (blue << 3) | (blue >> 2);
+	}
+
+	private static int to565(float red, float green, float blue)
+	{
+		int r = Math.round(clamp(red) * 31 / 255);
+		int g = Math.round(clamp(green) * 63 / 255);
+		int b = Math.round(clamp(blue) * 31 / 255);
+
+		return (r << 11) | (g << 5) | b;
+	}
+
+	private static float clamp(float value)
+	{
+		return Math.max(0, Math.min(255, value));
+	}
+
+	private static int alphaValue(int alpha0, int alpha1, int index)
+	{
+		if (index == 0) {
+			return alpha0;
+		}
+		if (index == 1) {
+			return alpha1;
+		}
+
+		if (alpha0 > alpha1) {
+			return ((8 - index) * alpha0 + (index - 1) * alpha1) / 7;
+		}
+		if (index == 6) {
+			return 0;
+		}
+		if (index == 7) {
+			return 255;
+		}
+
+		return ((6 - index) * alpha0 + (index - 1) * alpha1) / 5;
+	}
+
+	/**
+	 * Compresses a band of block rows of a level, by splitting it in half until the
+	 * band is small enough.
+	 */
+	private static class LevelTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ByteBuffer pixels;
+		private final int width;
+		private final int height;
+		private final Format format;
+		private final ByteBuffer blocks;
+		private final int firstBlockRow;
+		private final int endBlockRow;
+
+		LevelTask(ByteBuffer pixels, int width, int height, Format format, ByteBuffer blocks, int firstBlockRow, int endBlockRow)
+		{
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+			this.format = format;
+			this.blocks = blocks;
+			this.firstBlockRow = firstBlockRow;
+			this.endBlockRow = endBlockRow;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (endBlockRow - firstBlockRow <= BLOCK_ROWS_PER_TASK) {
+				compressRows();
+				return;
+			}
+
+			int middle = (firstBlockRow + endBlockRow) >>> 1;
+			invokeAll(
+				new LevelTask(pixels, width, height, format, blocks, firstBlockRow, middle),
+				new LevelTask(pixels, width, height, format, blocks, middle, endBlockRow)
+			);
+		}
+
+		void compressRows()
+		{
+			BlockEncoder encoder = new BlockEncoder();
+			int blocksX = (width + 3) / 4;
+
+			for (int blockY = firstBlockRow; blockY < endBlockRow; blockY++) {
+				for (int blockX = 0; blockX < blocksX; blockX++) {
+					encoder.load(pixels, width, height, blockX * 4, blockY * 4);
+
+					int offset = (blockY * blocksX + blockX) * format.getBlockBytes();
+					if (format == Format.BC3) {
+						encoder.encodeAlpha(blocks, offset);
+						offset += 8;
+					}
+					encoder.encodeColour(blocks, offset);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Encodes one block at a time. Every thread has an encoder of its own, with room
+	 * for the pixels and indices of a block.
+	 */
+	private static class BlockEncoder
+	{
+		private final int[] red = new int[16];
+		private final int[] green = new int[16];
+		private final int[] blue = new int[16];
+		private final int[] alpha = new int[16];
+
+		private final int[] palette = new int[4 * 4];
+		private final int[] indices = new int[16];
+		private final int[] bestIndices = new int[16];
+
+		/**
+		 * Read the 16 pixels of a block. Blocks over the edge of the level repeat the
+		 * last column and row.
+		 */
+		void load(ByteBuffer pixels, int width, int height, int x, int y)
+		{
+			for (int i = 0; i < 16; i++) {
+				int pixelX = Math.min(x + (i & 3), width - 1);
+				int pixelY = Math.min(y + (i >> 2), height - 1);
+				int offset = (pixelY * width + pixelX) * 4;
+
+				red[i] = pixels.get(offset) & 0xff;
+				green[i] = pixels.get(offset + 1) & 0xff;
+				blue[i] = pixels.get(offset + 2) & 0xff;
+				alpha[i] = pixels.get(offset + 3) & 0xff;
+			}
+		}
+
+		void encodeColour(ByteBuffer dest, int offset)
+		{
+			// Start with the principal axis of the colours.
+			float meanRed = 0, meanGreen = 0, meanBlue = 0;
+			for (int i = 0; i < 16; i++) {
+				meanRed += red[i];
+				meanGreen += green[i];
+				meanBlue += blue[i];
+			}
+			meanRed /= 16;
+			meanGreen /= 16;
+			meanBlue /= 16;
+
+			float rr = 0, rg = 0, rb = 0, gg = 0, gb = 0, bb = 0;
+			for (int i = 0; i < 16; i++) {
+				float r = red[i] - meanRed;
+				float g = green[i] - meanGreen;
+				float b = blue[i] - meanBlue;
+				rr += r * r;
+				rg += r * g;
+				rb += r * b;
+				gg += g * g;
+				gb += g * b;
+				bb += b * b;
+			}
+
+			float axisRed = 1, axisGreen = 1, axisBlue = 1;
+			for (int iteration = 0; iteration < 4; iteration++) {
+				float r = rr * axisRed + rg * axisGreen + rb * axisBlue;
+				float g = rg * axisRed + gg * axisGreen + gb * axisBlue;
+				float b = rb * axisRed + gb * axisGreen + bb * axisBlue;
+
+				float length = Math.max(Math.abs(r), Math.max(Math.abs(g), Math.abs(b)));
+				if (length < 1e-6f) {
+					break;
+				}
+				axisRed = r / length;
+				axisGreen = g / length;
+				axisBlue = b / length;
+			}
+
+			int min = 0;
+			int max = 0;
+			float minDot = Float.MAX_VALUE;
+			float maxDot = -Float.MAX_VALUE;
+			for (int i = 0; i < 16; i++) {
+				float dot = red[i] * axisRed + green[i] * axisGreen + blue[i] * axisBlue;
+				if (dot < minDot) {
+					minDot = dot;
+					min = i;
+				}
+				if (dot > maxDot) {
+					maxDot = dot;
+					max = i;
+				}
+			}
+
+			int colour0 = to565(red[max], green[max], blue[max]);
+			int colour1 = to565(red[min], green[min], blue[min]);
+			int bestError = fitIndices(colour0, colour1);
+			int bestColour0 = Math.max(colour0, colour1);
+			int bestColour1 = Math.min(colour0, colour1);
+			System.arraycopy(indices, 0, bestIndices, 0, 16);
+
+			// Then improve the endpoints for the indices that were picked.
+			for (int iteration = 0; iteration < 2 && bestError > 0; iteration++) {
+				if (! refineEndpoints()) {
+					break;
+				}
+
+				colour0 = refinedColour0;
+				colour1 = refinedColour1;
+				int error = fitIndices(colour0, colour1);
+				if (error >= bestError) {
+					break;
+				}
+
+				bestError = error;
+				bestColour0 = Math.max(colour0, colour1);
+				bestColour1 = Math.min(colour0, colour1);
+				System.arraycopy(indices, 0, bestIndices, 0, 16);
+			}
+
+			int packed = 0;
+			for (int i = 0; i < 16; i++) {
+				packed |= bestIndices[i] << (i * 2);
+			}
+
+			dest.putShort(offset, (short) bestColour0);
+			dest.putShort(offset + 2, (short) bestColour1);
+			dest.putInt(offset + 4, packed);
+		}
+
+		// The endpoints found by refineEndpoints(), in 565.
+		private int refinedColour0;
+		private int refinedColour1;
+
+		/**
+		 * Find the endpoints with the least squared error for the current indices.
+		 * That is a linear least squares problem for every channel, with the weights
+		 * of the endpoints in the colour of every index.
+		 *
+		 * @return False if all pixels have the same index, so there is nothing to solve
+		 */
+		private boolean refineEndpoints()
+		{
+			float aa = 0, ab = 0, bb = 0;
+			float redA = 0, greenA = 0, blueA = 0;
+			float redB = 0, greenB = 0, blueB = 0;
+			for (int i = 0; i < 16; i++) {
+				float a = WEIGHT_0[indices[i]];
+				float b = WEIGHT_1[indices[i]];
+				aa += a * a;
+				ab += a * b;
+				bb += b * b;
+				redA += a * red[i];
+				greenA += a * green[i];
+				blueA += a * blue[i];
+				redB += b * red[i];
+				greenB += b * green[i];
+				blueB += b * blue[i];
+			}
+
+			float determinant = aa * bb - ab * ab;
+			if (Math.abs(determinant) < 1e-6f) {
+				return false;
+			}
+
+			float scale = 1 / determinant;
+			refinedColour0 = to565(
+				(redA * bb - redB * ab) * scale,
+				(greenA * bb - greenB * ab) * scale,
+				(blueA * bb - blueB * ab) * scale
+			);
+			refinedColour1 = to565(
+				(redB * aa - redA * ab) * scale,
+				(greenB * aa - greenA * ab) * scale,
+				(blueB * aa - blueA * ab) * scale
+			);
+
+			return true;
+		}
+
+		/**
+		 * Pick the nearest of the four colours for every pixel. The endpoints are
+		 * swapped when needed, so the first is the bigger number and the block uses
+		 * four colours.
+		 *
+		 * @return The squared error of the block
+		 */
+		private int fitIndices(int colour0, int colour1)
+		{
+			if (colour0 < colour1) {
+				int swap = colour0;
+				colour0 = colour1;
+				colour1 = swap;
+			}
+
+			// Equal endpoints have no colours in between, only the first one is used.
+			int colourCount = colour0 == colour1 ? 1 : 4;
+			createPalette(colour0, colour1, true, palette);
+
+			int error = 0;
+			for (int i = 0; i < 16; i++) {
+				int best = 0;
+				int bestDistance = Integer.MAX_VALUE;
+				for (int index = 0; index < colourCount; index++) {
+					int r = red[i] - palette[index * 4];
+					int g = green[i] - palette[index * 4 + 1];
+					int b = blue[i] - palette[index * 4 + 2];
+					int distance = r * r + g * g + b * b;
+					if (distance < bestDistance) {
+						bestDistance = distance;
+						best = index;
+					}
+				}
+
+				indices[i] = best;
+				error += bestDistance;
+			}
+
+			return error;
+		}
+
+		void encodeAlpha(ByteBuffer dest, int offset)
+		{
+			int min = 255;
+			int max = 0;
+			for (int i = 0; i < 16; i++) {
+				min = Math.min(min, alpha[i]);
+				max = Math.max(max, alpha[i]);
+			}
+
+			// With the highest alpha first, the block uses eight values. When all
+			// alpha values are the same, every index is 0.
+			long packed = 0;
+			if (max > min) {
+				for (int i = 0; i < 16; i++) {
+					int best = 0;
+					int bestDistance = Integer.MAX_VALUE;
+					for (int index = 0; index < 8; index++) {
+						int distance = Math.abs(alpha[i] - alphaValue(max, min, index));
+						if (distance < bestDistance) {
+							bestDistance = distance;
+							best = index;
+						}
+					}
+
+					packed |= (long) best << (i * 3);
+				}
+			}
+
+			dest.put(offset, (byte) max);
+			dest.put(offset + 1, (byte) min);
+			for (int i = 0; i < 6; i++) {
+				dest.put(offset + 2 + i, (byte) (packed >>> (i * 8)));
+			}
+		}
+	}
+}
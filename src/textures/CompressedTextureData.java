@@ -0,0 +1,144 @@
+package textures;
+
+import org.lwjgl.opengl.EXTTextureCompressionS3TC;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A block compressed texture with its mipmaps, ready to be uploaded as it is.</p>
+ *
+ * <p>Block compression stores every block of 4x4 pixels in a fixed number of bytes,
+ * which the graphics card decodes while sampling. The texture stays compressed in
+ * video memory, so it takes a fraction of the memory of RGBA pixels.</p>
+ */
+public class CompressedTextureData
+{
+	/**
+	 * The block compression formats.
+	 */
+	public enum Format
+	{
+		/**
+		 * 8 bytes per block, half a byte per pixel: two colours and 16 2-bit indices
+		 * that pick one of four colours between them. No alpha.
+		 */
+		BC1(8, EXTTextureCompressionS3TC.GL_COMPRESSED_RGB_S3TC_DXT1_EXT),
+
+		/**
+		 * 16 bytes per block, a byte per pixel: the BC1 colours, with an alpha block
+		 * of two alpha values and 16 3-bit indices in front of them.
+		 */
+		BC3(16, EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT);
+
+		private final int blockBytes;
+		private final int internalFormat;
+
+		Format(int blockBytes, int internalFormat)
+		{
+			this.blockBytes = blockBytes;
+			this.internalFormat = internalFormat;
+		}
+
+		public int getBlockBytes()
+		{
+			return blockBytes;
+		}
+
+		/**
+		 * Get the OpenGL internal format to upload the blocks with.
+		 *
+		 * @return The internal format
+		 */
+		public int getInternalFormat()
+		{
+			return internalFormat;
+		}
+	}
+
+	private Format format;
+	private int width;
+	private int height;
+
+	// The blocks of every level, row by row from the top, starting with level 0.
+	private ByteBuffer[] levels;
+
+	/**
+	 * Create new compressed texture data.
+	 *
+	 * @param  format  The block format
+	 * @param  width   The width of level 0 in pixels
+	 * @param  height  The height of level 0 in pixels
+	 * @param  levels  The blocks of every level
+	 */
+	public CompressedTextureData(Format format, int width, int height, ByteBuffer[] levels)
+	{
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.levels = levels;
+	}
+
+	public Format getFormat()
+	{
+		return format;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	public int getLevelCount()
+	{
+		return levels.length;
+	}
+
+	public ByteBuffer getLevel(int level)
+	{
+		return levels[level];
+	}
+
+	public int getLevelWidth(int level)
+	{
+		return Math.max(1, width >> level);
+	}
+
+	public int getLevelHeight(int level)
+	{
+		return Math.max(1, height >> level);
+	}
+
+	/**
+	 * Get the size of the blocks of a level. A level always has whole blocks, also
+	 * when its size isn't a multiple of 4.
+	 *
+	 * @param  format  The block format
+	 * @param  width   The width of the level in pixels
+	 * @param  height  The height of the level in pixels
+	 * @return The size in bytes
+	 */
+	public static int getLevelSize(Format format, int width, int height)
+	{
+		return ((width + 3) / 4) * ((height + 3) / 4) * format.getBlockBytes();
+	}
+
+	/**
+	 * Get the size of all levels.
+	 *
+	 * @return The size in bytes
+	 */
+	public int getSizeInBytes()
+	{
+		int size = 0;
+		for (int level = 0; level < levels.length; level++) {
+			size += getLevelSize(format, getLevelWidth(level), getLevelHeight(level));
+		}
+
+		return size;
+	}
+}
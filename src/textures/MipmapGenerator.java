@@ -0,0 +1,188 @@
+package textures;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>Creates the mipmaps of a texture on the CPU.</p>
+ *
+ * <p>Every level is made from the level before it with a box filter: a pixel is the
+ * average of the 2x2 pixels it covers. When a side of the level before is odd, the
+ * last column or row is used twice instead of being skipped.</p>
+ *
+ * <p>The colours of a texture are stored in sRGB, where the values aren't
+ * proportional to the amount of light. Averaging those values directly makes
+ * mipmaps darker than the texture, so the colours are turned into linear light,
+ * averaged, and turned back. Alpha is averaged as it is.</p>
+ *
+ * <p>A level can only be made when the level before it is done, but the rows of a
+ * level don't depend on each other. Big levels are split in bands of rows that are
+ * filtered in parallel on the common fork join pool.</p>
+ *
+ * <p>This doesn't need OpenGL, so it can run on the asset workers.</p>
+ */
+public class MipmapGenerator
+{
+	/**
+	 * Levels with fewer pixels than this are filtered on the calling thread, because
+	 * handing them out costs more than it saves.
+	 */
+	private static final int PARALLEL_PIXELS = 128 * 128;
+
+	private static final int ROWS_PER_TASK = 32;
+
+	private static final float[] SRGB_TO_LINEAR = new float[256];
+
+	// Linear light is looked up with this many steps, which is fine enough that even
+	// the darkest sRGB values come back exactly.
+	private static final int LINEAR_STEPS = 1 << 14;
+	private static final byte[] LINEAR_TO_SRGB = new byte[LINEAR_STEPS + 1];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			double srgb = i / 255.0;
+			SRGB_TO_LINEAR[i] = (float) (srgb <= 0.04045 ? srgb / 12.92 : Math.pow((srgb + 0.055) / 1.055, 2.4));
+		}
+
+		for (int i = 0; i <= LINEAR_STEPS; i++) {
+			double linear = (double) i / LINEAR_STEPS;
+			double srgb = linear <= 0.0031308 ? linear * 12.92 : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+			LINEAR_TO_SRGB[i] = (byte) Math.round(srgb * 255);
+		}
+	}
+
+	/**
+	 * Get the number of levels of a full mip chain, down to 1x1.
+	 *
+	 * @param  width   The width of the texture
+	 * @param  height  The height of the texture
+	 * @return The number of levels, including the texture itself
+	 */
+	public static int getLevelCount(int width, int height)
+	{
+		return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+	}
+
+	/**
+	 * Create the full mip chain of a texture.
+	 *
+	 * @param  texture  The texture, of which only level 0 is used
+	 * @return The texture with all its levels
+	 */
+	public static TextureData generate(TextureData texture)
+	{
+		return generate(texture, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Create the mip chain of a texture, up to a number of levels.
+	 *
+	 * @param  texture    The texture, of which only level 0 is used
+	 * @param  maxLevels  The most levels to create, including the texture itself
+	 * @return The texture with its levels
+	 */
+	public static TextureData generate(TextureData texture, int maxLevels)
+	{
+		int levelCount = Math.max(1, Math.min(maxLevels, getLevelCount(texture.getWidth(), texture.getHeight())));
+
+		ByteBuffer[] levels = new ByteBuffer[levelCount];
+		levels[0] = texture.getPixels();
+
+		TextureData result = new TextureData(texture.getWidth(), texture.getHeight(), levels);
+		for (int level = 1; level < levelCount; level++) {
+			int width = result.getLevelWidth(level);
+			int height = result.getLevelHeight(level);
+			levels[level] = BufferUtils.createByteBuffer(width * height * 4);
+
+			LevelTask task = new LevelTask(
+				levels[level - 1], result.getLevelWidth(level - 1), result.getLevelHeight(level - 1),
+				levels[level], width, 0, height
+			);
+			if (width * height < PARALLEL_PIXELS) {
+				task.filterRows();
+			} else {
+				ForkJoinPool.commonPool().invoke(task);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Filters a band of rows of a level, by splitting it in half until the band is
+	 * small enough.
+	 */
+	private static class LevelTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ByteBuffer source;
+		private final int sourceWidth;
+		private final int sourceHeight;
+		private final ByteBuffer dest;
+		private final int width;
+		private final int firstRow;
+		private final int endRow;
+
+		LevelTask(ByteBuffer source, int sourceWidth, int sourceHeight, ByteBuffer dest, int width, int firstRow, int endRow)
+		{
+			this.source = source;
+			this.sourceWidth = sourceWidth;
+			this.sourceHeight = sourceHeight;
+			this.dest = dest;
+			this.width = width;
+			this.firstRow = firstRow;
+			this.endRow = endRow;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (endRow - firstRow <= ROWS_PER_TASK) {
+				filterRows();
+				return;
+			}
+
+			int middle = (firstRow + endRow) >>> 1;
+			invokeAll(
+				new LevelTask(source, sourceWidth, sourceHeight, dest, width, firstRow, middle),
+				new LevelTask(source, sourceWidth, sourceHeight, dest, width, middle, endRow)
+			);
+		}
+
+		void filterRows()
+		{
+			for (int y = firstRow; y < endRow; y++) {
+				int row0 = Math.min(y * 2, sourceHeight - 1) * sourceWidth;
+				int row1 = Math.min(y * 2 + 1, sourceHeight - 1) * sourceWidth;
+
+				for (int x = 0; x < width; x++) {
+					int column0 = Math.min(x * 2, sourceWidth - 1);
+					int column1 = Math.min(x * 2 + 1, sourceWidth - 1);
+
+					int a = (row0 + column0) * 4;
+					int b = (row0 + column1) * 4;
+					int c = (row1 + column0) * 4;
+					int d = (row1 + column1) * 4;
+					int out = (y * width + x) * 4;
+
+					for (int channel = 0; channel < 3; channel++) {
+						float linear = SRGB_TO_LINEAR[source.get(a + channel) & 0xff]
+							+ SRGB_TO_LINEAR[source.get(b + channel) & 0xff]
+							+ SRGB_TO_LINEAR[source.get(c + channel) & 0xff]
+							+ SRGB_TO_LINEAR[source.get(d + channel) & 0xff];
+
+						dest.put(out + channel, LINEAR_TO_SRGB[(int) (linear * (LINEAR_STEPS / 4f) + 0.5f)]);
+					}
+
+					int alpha = (source.get(a + 3) & 0xff) + (source.get(b + 3) & 0xff)
+						+ (source.get(c + 3) & 0xff) + (source.get(d + 3) & 0xff);
+					dest.put(out + 3, (byte) ((alpha + 2) >> 2));
+				}
+			}
+		}
+	}
+}
@@ -16,16 +16,103 @@ public class ModelTexture
 	 */
 	private float shineDamper = 1;
 
+	/**
+	 * The part of the texture the model reads from, as the offset (u, v) and the size
+	 * (width, height) in texture coordinates. Textures in an atlas only use a part of
+	 * their page, all other textures use the whole texture.
+	 */
+	private float[] textureRegion = {0, 0, 1, 1};
+
+	/**
+	 * Blend between the two nearest mipmap levels (trilinear filtering), instead of
+	 * only sampling the nearest one (bilinear filtering). Trilinear filtering hides
+	 * the lines where the level changes, at the cost of twice the texture reads.
+	 */
+	private boolean trilinear = true;
+
+	/**
+	 * The largest number of samples of anisotropic filtering, which keeps surfaces
+	 * seen at a steep angle sharp. 1 turns it off. The texture quality and the
+	 * graphics card can lower it.
+	 */
+	private float anisotropy = 16;
+
+	/**
+	 * Added to the mipmap level the graphics card picks. Positive values use smaller
+	 * levels (blurrier, less texture memory read), negative values bigger ones.
+	 */
+	private float lodBias = 0;
+
 	public ModelTexture(int id)
 	{
 		this.textureID = id;
 	}
 
+	/**
+	 * Create a model texture that reads a part of a texture, like a texture in an
+	 * atlas page.
+	 *
+	 * @param  id             The ID of the texture (the atlas page)
+	 * @param  textureRegion  The offset (u, v) and the size (width, height) of the
+	 *                        part, in texture coordinates
+	 */
+	public ModelTexture(int id, float[] textureRegion)
+	{
+		this.textureID = id;
+		this.textureRegion = textureRegion.clone();
+	}
+
 	public int getID()
 	{
 		return textureID;
 	}
 
+	/**
+	 * Point the model texture to another texture, for example when its texture was
+	 * evicted from video memory and loaded again.
+	 *
+	 * @param  id  The ID of the texture
+	 */
+	public void setID(int id)
+	{
+		this.textureID = id;
+	}
+
+	public float[] getTextureRegion()
+	{
+		return textureRegion;
+	}
+
+	public boolean isTrilinear()
+	{
+		return trilinear;
+	}
+
+	public void setTrilinear(boolean trilinear)
+	{
+		this.trilinear = trilinear;
+	}
+
+	public float getAnisotropy()
+	{
+		return anisotropy;
+	}
+
+	public void setAnisotropy(float anisotropy)
+	{
+		this.anisotropy = anisotropy;
+	}
+
+	public float getLodBias()
+	{
+		return lodBias;
+	}
+
+	public void setLodBias(float lodBias)
+	{
+		this.lodBias = lodBias;
+	}
+
 	public float getShineDamper()
 	{
 		return shineDamper;
@@ -0,0 +1,349 @@
+package textures;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Many small textures packed together in a few big pages.</p>
+ *
+ * <p>Every texture is a texture bind of its own, and entities with different
+ * textures can't be drawn with the same draw call. When the textures of many small
+ * props are copied into one page, all of those props use the same texture, and
+ * only where a model reads from the page differs. That is the region of a texture:
+ * the vertex shader scales and moves the texture coordinates of the model into it.</p>
+ *
+ * <p>The textures are packed with the AtlasPacker, the biggest first. Around every
+ * texture is a border of padding pixels, filled with copies of its edge pixels, so
+ * linear filtering at the edge of a region doesn't blend in the texture next to it.
+ * This only works for models with texture coordinates between 0 and 1: a texture
+ * that repeats over a model has to stay a texture of its own.</p>
+ *
+ * <p>Mipmaps shrink the padding as well: every level has half the padding pixels
+ * of the level before. So a page only gets the levels that still have at least a
+ * pixel of padding, and distant props sample the smallest of those.</p>
+ *
+ * <p>Building an atlas doesn't need OpenGL. The pages are TextureData, which the
+ * Loader uploads like any other texture.</p>
+ */
+public class TextureAtlas
+{
+	public static final int DEFAULT_PAGE_SIZE = 2048;
+
+	public static final int DEFAULT_PADDING = 4;
+
+	/**
+	 * Where a texture ended up in the atlas.
+	 */
+	public static class Region
+	{
+		private final int page;
+
+		// The pixels of the texture in the page, without the padding.
+		private final int x;
+		private final int y;
+		private final int width;
+		private final int height;
+
+		// The same in texture coordinates of the page.
+		private final float[] textureRegion;
+
+		Region(int page, int x, int y, int width, int height, int pageWidth, int pageHeight)
+		{
+			this.page = page;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+
+			textureRegion = new float[] {
+				(float) x / pageWidth, (float) y / pageHeight,
+				(float) width / pageWidth, (float) height / pageHeight
+			};
+		}
+
+		public int getPage()
+		{
+			return page;
+		}
+
+		public int getX()
+		{
+			return x;
+		}
+
+		public int getY()
+		{
+			return y;
+		}
+
+		public int getWidth()
+		{
+			return width;
+		}
+
+		public int getHeight()
+		{
+			return height;
+		}
+
+		/**
+		 * Get the region in texture coordinates of the page.
+		 *
+		 * @return The offset (u, v) and the size (width, height)
+		 */
+		public float[] getTextureRegion()
+		{
+			return textureRegion;
+		}
+	}
+
+	private final List<TextureData> pages;
+	private final Region[] regions;
+	private final float occupancy;
+	private final int padding;
+
+	private TextureAtlas(List<TextureData> pages, Region[] regions, float occupancy, int padding)
+	{
+		this.pages = pages;
+		this.regions = regions;
+		this.occupancy = occupancy;
+		this.padding = padding;
+	}
+
+	/**
+	 * Pack textures into pages of the default size, with the default padding.
+	 *
+	 * @param  textures  The textures to pack
+	 * @return The atlas
+	 */
+	public static TextureAtlas build(List<TextureData> textures)
+	{
+		return build(textures, DEFAULT_PAGE_SIZE, DEFAULT_PADDING);
+	}
+
+	/**
+	 * Pack textures into pages. A texture that is too big for a page gets a page of
+	 * its own, as big as the texture.
+	 *
+	 * <p>The pages are cut off below and to the right of the last texture, so the
+	 * last page isn't mostly empty. The size is kept a multiple of 4, so formats that
+	 * compress blocks of 4x4 pixels can still be used.</p>
+	 *
+	 * @param  textures  The textures to pack
+	 * @param  pageSize  The width and height of a page
+	 * @param  padding   The pixels of padding on every side of a texture
+	 * @return The atlas
+	 */
+	public static TextureAtlas build(List<TextureData> textures, int pageSize, int padding)
+	{
+		int[] widths = new int[textures.size()];
+		int[] heights = new int[textures.size()];
+		for (int i = 0; i < textures.size(); i++) {
+			widths[i] = textures.get(i).getWidth() + padding * 2;
+			heights[i] = textures.get(i).getHeight() + padding * 2;
+		}
+
+		int[] pageOfTexture = new int[textures.size()];
+		int[] positions = new int[textures.size() * 2];
+		List<AtlasPacker> packers = pack(widths, heights, pageSize, pageOfTexture, positions);
+
+		int[] pageWidths = new int[packers.size()];
+		int[] pageHeights = new int[packers.size()];
+		long pagePixels = 0;
+		List<TextureData> pages = new ArrayList<>();
+		for (int page = 0; page < packers.size(); page++) {
+			pageWidths[page] = roundUpTo4(packers.get(page).getUsedWidth());
+			pageHeights[page] = roundUpTo4(packers.get(page).getUsedHeight());
+			pagePixels += (long) pageWidths[page] * pageHeights[page];
+
+			pages.add(new TextureData(
+				pageWidths[page], pageHeights[page],
+				BufferUtils.createByteBuffer(pageWidths[page] * pageHeights[page] * 4)
+			));
+		}
+
+		long texturePixels = 0;
+		Region[] regions = new Region[textures.size()];
+		for (int i = 0; i < textures.size(); i++) {
+			TextureData texture = textures.get(i);
+			int page = pageOfTexture[i];
+			int x = positions[i * 2] + padding;
+			int y = positions[i * 2 + 1] + padding;
+
+			copyWithPadding(texture, pages.get(page), x, y, padding);
+			regions[i] = new Region(page, x, y, texture.getWidth(), texture.getHeight(), pageWidths[page], pageHeights[page]);
+			texturePixels += (long) texture.getWidth() * texture.getHeight();
+		}
+
+		float occupancy = pagePixels == 0 ? 0 : (float) ((double) texturePixels / pagePixels);
+
+		return new TextureAtlas(pages, regions, occupancy, padding);
+	}
+
+	/**
+	 * Pack rectangles into as few pages as possible. The rectangles are inserted
+	 * from big to small, each in the first page it fits in.
+	 *
+	 * @param  widths         The widths of the rectangles
+	 * @param  heights        The heights of the rectangles
+	 * @param  pageSize       The width and height of a page
+	 * @param  pageOfRect     Filled with the page of every rectangle
+	 * @param  positions      Filled with the x and y of every rectangle in its page
+	 * @return The packers of the pages
+	 */
+	public static List<AtlasPacker> pack(int[] widths, int[] heights, int pageSize, int[] pageOfRect, int[] positions)
+	{
+		Integer[] order = new Integer[widths.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		// Longest side first, then the biggest area, so the hardest rectangles are
+		// placed while there is still room for them.
+		Arrays.sort(order, (a, b) -> {
+			int sideA = Math.max(widths[a], heights[a]);
+			int sideB = Math.max(widths[b], heights[b]);
+			if (sideA != sideB) {
+				return Integer.compare(sideB, sideA);
+			}
+
+			return Long.compare((long) widths[b] * heights[b], (long) widths[a] * heights[a]);
+		});
+
+		List<AtlasPacker> packers = new ArrayList<>();
+		for (int i : order) {
+			int[] position = null;
+			int page = 0;
+			for (; page < packers.size() && position == null; page++) {
+				position = packers.get(page).insert(widths[i], heights[i]);
+			}
+
+			if (position == null) {
+				AtlasPacker packer = new AtlasPacker(Math.max(pageSize, widths[i]), Math.max(pageSize, heights[i]));
+				packers.add(packer);
+				position = packer.insert(widths[i], heights[i]);
+				page = packers.size();
+			}
+
+			pageOfRect[i] = page - 1;
+			positions[i * 2] = position[0];
+			positions[i * 2 + 1] = position[1];
+		}
+
+		return packers;
+	}
+
+	public int getPageCount()
+	{
+		return pages.size();
+	}
+
+	public TextureData getPage(int page)
+	{
+		return pages.get(page);
+	}
+
+	/**
+	 * Get where a texture is in the atlas.
+	 *
+	 * @param  texture  The index of the texture in the list the atlas was built from
+	 * @return The region of the texture
+	 */
+	public Region getRegion(int texture)
+	{
+		return regions[texture];
+	}
+
+	/**
+	 * Get how much of the pages is covered by textures. Padding counts as empty.
+	 *
+	 * @return The pixels of all textures divided by the pixels of all pages
+	 */
+	public float getOccupancy()
+	{
+		return occupancy;
+	}
+
+	/**
+	 * Get the number of mipmap levels the pages can have, including the pages
+	 * themselves. Level L has padding / 2^L pixels of padding left, and the levels
+	 * stop before that drops below 1.
+	 *
+	 * @return The number of levels
+	 */
+	public int getMipLevelCount()
+	{
+		return padding <= 0 ? 1 : 32 - Integer.numberOfLeadingZeros(padding);
+	}
+
+	/**
+	 * Create a model texture for every texture in the atlas, that reads its region
+	 * of the uploaded page.
+	 *
+	 * @param  pageIDs  The texture IDs of the uploaded pages
+	 * @return The model textures, in the order the atlas was built from
+	 */
+	public ModelTexture[] createModelTextures(int[] pageIDs)
+	{
+		ModelTexture[] textures = new ModelTexture[regions.length];
+		for (int i = 0; i < regions.length; i++) {
+			textures[i] = new ModelTexture(pageIDs[regions[i].getPage()], regions[i].getTextureRegion());
+		}
+
+		return textures;
+	}
+
+	/**
+	 * Copy a texture into a page, and fill the padding around it with its edge
+	 * pixels.
+	 */
+	private static void copyWithPadding(TextureData texture, TextureData page, int x, int y, int padding)
+	{
+		ByteBuffer source = texture.getPixels().duplicate();
+		ByteBuffer dest = page.getPixels().duplicate();
+		int width = texture.getWidth();
+		int height = texture.getHeight();
+		int rowBytes = width * 4;
+		int pageRowBytes = page.getWidth() * 4;
+
+		for (int row = 0; row < height; row++) {
+			int destRow = (y + row) * pageRowBytes;
+
+			source.limit((row + 1) * rowBytes).position(row * rowBytes);
+			dest.position(destRow + x * 4);
+			dest.put(source);
+
+			// Repeat the first and the last pixel of the row to the left and right.
+			int first = dest.getInt(destRow + x * 4);
+			int last = dest.getInt(destRow + (x + width - 1) * 4);
+			for (int i = 1; i <= padding; i++) {
+				dest.putInt(destRow + (x - i) * 4, first);
+				dest.putInt(destRow + (x + width - 1 + i) * 4, last);
+			}
+		}
+
+		// Repeat the first and the last row, with their padding, above and below.
+		int paddedBytes = (width + padding * 2) * 4;
+		int left = (x - padding) * 4;
+		ByteBuffer firstRow = page.getPixels().duplicate();
+		ByteBuffer lastRow = page.getPixels().duplicate();
+		firstRow.limit(y * pageRowBytes + left + paddedBytes).position(y * pageRowBytes + left);
+		lastRow.limit((y + height - 1) * pageRowBytes + left + paddedBytes).position((y + height - 1) * pageRowBytes + left);
+
+		for (int i = 1; i <= padding; i++) {
+			dest.clear().position((y - i) * pageRowBytes + left);
+			dest.put(firstRow.duplicate());
+			dest.clear().position((y + height - 1 + i) * pageRowBytes + left);
+			dest.put(lastRow.duplicate());
+		}
+	}
+
+	private static int roundUpTo4(int value)
+	{
+		return (value + 3) & ~3;
+	}
+}
@@ -0,0 +1,103 @@
+package textures;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Decoded texture pixels that are ready to be uploaded to the graphics card.</p>
+ *
+ * <p>Besides the full size image, the texture can have its mipmaps: every level is
+ * half as wide and high as the one before (but at least 1 pixel), down to 1x1.</p>
+ */
+public class TextureData
+{
+	private int width;
+	private int height;
+
+	/**
+	 * The pixels of every level as 4 bytes per pixel (red, green, blue, alpha), row
+	 * by row starting at the top of the image. Level 0 is the full size image.
+	 */
+	private ByteBuffer[] levels;
+
+	/**
+	 * Create new texture data without mipmaps.
+	 *
+	 * @param  width   The width in pixels
+	 * @param  height  The height in pixels
+	 * @param  pixels  The RGBA pixels in a direct buffer
+	 */
+	public TextureData(int width, int height, ByteBuffer pixels)
+	{
+		this(width, height, new ByteBuffer[] {pixels});
+	}
+
+	/**
+	 * Create new texture data with mipmaps.
+	 *
+	 * @param  width   The width of level 0 in pixels
+	 * @param  height  The height of level 0 in pixels
+	 * @param  levels  The RGBA pixels of every level in direct buffers, starting
+	 *                 with the full size image
+	 */
+	public TextureData(int width, int height, ByteBuffer[] levels)
+	{
+		this.width = width;
+		this.height = height;
+		this.levels = levels;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Get the pixels of the full size image.
+	 *
+	 * @return The pixels of level 0
+	 */
+	public ByteBuffer getPixels()
+	{
+		return levels[0];
+	}
+
+	public int getLevelCount()
+	{
+		return levels.length;
+	}
+
+	public ByteBuffer getLevel(int level)
+	{
+		return levels[level];
+	}
+
+	public int getLevelWidth(int level)
+	{
+		return Math.max(1, width >> level);
+	}
+
+	public int getLevelHeight(int level)
+	{
+		return Math.max(1, height >> level);
+	}
+
+	/**
+	 * Get the size of the pixel data of all levels.
+	 *
+	 * @return The size in bytes
+	 */
+	public int getSizeInBytes()
+	{
+		int size = 0;
+		for (int level = 0; level < levels.length; level++) {
+			size += getLevelWidth(level) * getLevelHeight(level) * 4;
+		}
+
+		return size;
+	}
+}
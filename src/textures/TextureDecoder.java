@@ -0,0 +1,48 @@
+package textures;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes image files into RGBA pixels. This does not need an OpenGL context, so
+ * it can run on any thread.
+ */
+public class TextureDecoder
+{
+	/**
+	 * Decode an image file.
+	 *
+	 * @param  file  The image file (PNG, or any other format ImageIO can read)
+	 * @return The decoded pixels
+	 * @throws IOException When the file could not be read or decoded
+	 */
+	public static TextureData decode(File file) throws IOException
+	{
+		BufferedImage image = ImageIO.read(file);
+		if (image == null) {
+			throw new IOException("Unsupported image format [" + file + "]");
+		}
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		// getRGB gives every pixel as a single ARGB int, regardless of how the image
+		// is stored, so we only have to move the alpha channel to the back.
+		int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+
+		ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+		for (int pixel : argb) {
+			pixels.put((byte) (pixel >> 16));
+			pixels.put((byte) (pixel >> 8));
+			pixels.put((byte) pixel);
+			pixels.put((byte) (pixel >> 24));
+		}
+		pixels.flip();
+
+		return new TextureData(width, height, pixels);
+	}
+}
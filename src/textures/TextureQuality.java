@@ -0,0 +1,61 @@
+package textures;
+
+/**
+ * <p>The global texture quality setting.</p>
+ *
+ * <p>Lower qualities skip the biggest mipmap levels when textures are uploaded.
+ * Every skipped level halves the width and height of a texture, so it uses a
+ * quarter of the memory. They also lower the largest anisotropic filtering that
+ * materials get, which costs texture reads for surfaces seen at an angle.</p>
+ *
+ * <p>The skipped levels are read when a texture is uploaded, so set the quality
+ * before loading textures. The anisotropy is used from the next frame on.</p>
+ */
+public enum TextureQuality
+{
+	LOW(2, 1),
+	MEDIUM(1, 4),
+	HIGH(0, 16);
+
+	private static volatile TextureQuality global = HIGH;
+
+	private final int skippedLevels;
+	private final float maxAnisotropy;
+
+	TextureQuality(int skippedLevels, float maxAnisotropy)
+	{
+		this.skippedLevels = skippedLevels;
+		this.maxAnisotropy = maxAnisotropy;
+	}
+
+	public static TextureQuality getGlobal()
+	{
+		return global;
+	}
+
+	/**
+	 * Set the quality of the textures that are uploaded from now on.
+	 *
+	 * @param  quality  The new quality
+	 */
+	public static void setGlobal(TextureQuality quality)
+	{
+		global = quality;
+	}
+
+	/**
+	 * Get the number of mipmap levels that aren't uploaded. A texture always keeps
+	 * at least its smallest level.
+	 *
+	 * @return The number of skipped levels
+	 */
+	public int getSkippedLevels()
+	{
+		return skippedLevels;
+	}
+
+	public float getMaxAnisotropy()
+	{
+		return maxAnisotropy;
+	}
+}
@@ -0,0 +1,130 @@
+package toolbox;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+/**
+ * <p>The view frustum of the camera: the part of the world that ends up on the screen.</p>
+ *
+ * <p>The frustum is bounded by six planes (left, right, bottom, top, near and far),
+ * which are extracted straight from the combined projection and view matrix. A point
+ * is inside the frustum when it is in front of all six planes. Anything that lies
+ * completely behind one of the planes can't be seen, so it doesn't have to be drawn
+ * at all.</p>
+ */
+public class Frustum
+{
+	/**
+	 * The results of classifying a box against the frustum.
+	 */
+	public static final int OUTSIDE = 0;
+	public static final int INTERSECTING = 1;
+	public static final int INSIDE = 2;
+
+	private static final int PLANE_COUNT = 6;
+
+	/**
+	 * The planes as (a, b, c, d), so a point is in front of a plane when
+	 * a * x + b * y + c * z + d >= 0. The normals point into the frustum.
+	 */
+	private float[] planes = new float[PLANE_COUNT * 4];
+
+	private Matrix4f clipMatrix = new Matrix4f();
+
+	/**
+	 * Calculate the frustum planes for a camera.
+	 *
+	 * @param  projectionMatrix  The projection matrix
+	 * @param  viewMatrix        The view matrix of the camera
+	 */
+	public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix)
+	{
+		Matrix4f m = Matrix4f.mul(projectionMatrix, viewMatrix, clipMatrix);
+
+		// A point is inside the clip volume when -w <= x, y, z <= w. Every one of those
+		// six inequalities is a plane, built from the rows of the clip matrix. The
+		// fields are named m[column][row], so row r is (m0r, m1r, m2r, m3r).
+		setPlane(0, m.m03 + m.m00, m.m13 + m.m10, m.m23 + m.m20, m.m33 + m.m30);
+		setPlane(1, m.m03 - m.m00, m.m13 - m.m10, m.m23 - m.m20, m.m33 - m.m30);
+		setPlane(2, m.m03 + m.m01, m.m13 + m.m11, m.m23 + m.m21, m.m33 + m.m31);
+		setPlane(3, m.m03 - m.m01, m.m13 - m.m11, m.m23 - m.m21, m.m33 - m.m31);
+		setPlane(4, m.m03 + m.m02, m.m13 + m.m12, m.m23 + m.m22, m.m33 + m.m32);
+		setPlane(5, m.m03 - m.m02, m.m13 - m.m12, m.m23 - m.m22, m.m33 - m.m32);
+	}
+
+	/**
+	 * Check whether a sphere is (partly) inside the frustum. This is conservative:
+	 * a sphere near a corner of the frustum can be reported visible while it isn't,
+	 * but a visible sphere is never reported invisible.
+	 *
+	 * @param  x       The x coordinate of the center
+	 * @param  y       The y coordinate of the center
+	 * @param  z       The z coordinate of the center
+	 * @param  radius  The radius of the sphere
+	 * @return True if the sphere may be visible
+	 */
+	public boolean intersectsSphere(float x, float y, float z, float radius)
+	{
+		for (int i = 0; i < planes.length; i += 4) {
+			float distance = planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3];
+			if (distance < -radius) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check whether an axis aligned box is completely outside, partly inside or
+	 * completely inside the frustum. Like the sphere test this is conservative: a box
+	 * near a corner of the frustum can be reported intersecting while it is outside.
+	 *
+	 * @param  minX  The minimum x coordinate of the box
+	 * @param  minY  The minimum y coordinate of the box
+	 * @param  minZ  The minimum z coordinate of the box
+	 * @param  maxX  The maximum x coordinate of the box
+	 * @param  maxY  The maximum y coordinate of the box
+	 * @param  maxZ  The maximum z coordinate of the box
+	 * @return OUTSIDE, INTERSECTING or INSIDE
+	 */
+	public int classifyBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+	{
+		int result = INSIDE;
+
+		for (int i = 0; i < planes.length; i += 4) {
+			float a = planes[i];
+			float b = planes[i + 1];
+			float c = planes[i + 2];
+			float d = planes[i + 3];
+
+			// The corner of the box furthest along the normal of the plane. If even
+			// that corner is behind the plane, the whole box is.
+			float far = a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY) + c * (c > 0 ? maxZ : minZ) + d;
+			if (far < 0) {
+				return OUTSIDE;
+			}
+
+			// The opposite corner. If that one is behind the plane, the plane cuts
+			// through the box.
+			float near = a * (a > 0 ? minX : maxX) + b * (b > 0 ? minY : maxY) + c * (c > 0 ? minZ : maxZ) + d;
+			if (near < 0) {
+				result = INTERSECTING;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Store a plane, normalized so the plane equation gives the actual distance to it.
+	 */
+	private void setPlane(int plane, float a, float b, float c, float d)
+	{
+		float length = (float) Math.sqrt(a * a + b * b + c * c);
+
+		planes[plane * 4] = a / length;
+		planes[plane * 4 + 1] = b / length;
+		planes[plane * 4 + 2] = c / length;
+		planes[plane * 4 + 3] = d / length;
+	}
+}
@@ -0,0 +1,164 @@
+package toolbox;
+
+import java.util.Arrays;
+
+/**
+ * <p>A hash map from long keys to int values that does not box anything.</p>
+ *
+ * <p>Keys and values are stored in two plain arrays. Collisions are solved with
+ * open addressing: when a slot is taken, we simply look at the next slot until we
+ * find the key or an empty slot. The key 0 is used to mark empty slots, so it can
+ * not be stored in the map.</p>
+ */
+public class LongIntHashMap
+{
+	private static final float MAX_LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+
+	// Capacity - 1. The capacity is always a power of two, so this works as a bit mask.
+	private int mask;
+
+	/**
+	 * Create a new map.
+	 *
+	 * @param  expectedSize  The number of entries the map should hold without growing
+	 */
+	public LongIntHashMap(int expectedSize)
+	{
+		allocate(capacityFor(expectedSize));
+	}
+
+	/**
+	 * Get the value stored for a key.
+	 *
+	 * @param  key           The key, which may not be 0
+	 * @param  defaultValue  The value to return when the key is not in the map
+	 * @return The value stored for the key, or the default value
+	 */
+	public int get(long key, int defaultValue)
+	{
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		return defaultValue;
+	}
+
+	/**
+	 * Store a value for a key, replacing any previous value.
+	 *
+	 * @param  key    The key, which may not be 0
+	 * @param  value  The value to store
+	 */
+	public void put(long key, int value)
+	{
+		if (key == 0) {
+			throw new IllegalArgumentException("The key 0 can not be stored in a LongIntHashMap");
+		}
+
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = key;
+		values[slot] = value;
+
+		if (++size > keys.length * MAX_LOAD_FACTOR) {
+			rehash(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Remove all entries. The map keeps its capacity.
+	 */
+	public void clear()
+	{
+		Arrays.fill(keys, 0);
+		size = 0;
+	}
+
+	/**
+	 * Make sure the map can hold the given number of entries without growing.
+	 *
+	 * @param  expectedSize  The number of entries
+	 */
+	public void ensureCapacity(int expectedSize)
+	{
+		int capacity = capacityFor(expectedSize);
+		if (capacity > keys.length) {
+			rehash(capacity);
+		}
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	private void rehash(int capacity)
+	{
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+
+		allocate(capacity);
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = hash(oldKeys[i]) & mask;
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new long[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Get the smallest power of two capacity that holds the given number of
+	 * entries below the maximum load factor.
+	 */
+	private static int capacityFor(int expectedSize)
+	{
+		int capacity = 16;
+		while (capacity * MAX_LOAD_FACTOR < expectedSize) {
+			capacity <<= 1;
+		}
+
+		return capacity;
+	}
+
+	/**
+	 * Spread the bits of the key, so keys that only differ in their high bits
+	 * still end up in different slots (the finalizer of MurmurHash3).
+	 */
+	private static int hash(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+
+		return (int) key;
+	}
+}
@@ -4,6 +4,8 @@ import entities.Camera;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
 
+import java.nio.FloatBuffer;
+
 public class Maths
 {
 	/**
@@ -64,4 +66,195 @@ public class Maths
 
 		return viewMatrix;
 	}
+
+	/**
+	 * <p>Create a full transformation matrix in an existing matrix, without allocating
+	 * anything.</p>
+	 *
+	 * <p>This gives the same result as createTransformationMatrix(), but instead of
+	 * starting with an identity matrix and multiplying it with a matrix for every
+	 * rotation and for the scale, the final matrix is written out directly. With
+	 * c = cos and s = sin of the rotations, translation * rotX * rotY * rotZ * scale
+	 * works out to:</p>
+	 *
+	 * <pre>
+	 * [ cy*cz                -cy*sz                sy      tx ]
+	 * [ sx*sy*cz + cx*sz     -sx*sy*sz + cx*cz     -sx*cy  ty ]  * scale (except the last column)
+	 * [ -cx*sy*cz + sx*sz    cx*sy*sz + sx*cz      cx*cy   tz ]
+	 * [ 0                    0                     0       1  ]
+	 * </pre>
+	 *
+	 * @param  translation  The translation vector
+	 * @param  rx           The rotation over the X axis
+	 * @param  ry           The rotation over the Y axis
+	 * @param  rz           The rotation over the Z axis
+	 * @param  scale        The scaling factor
+	 * @param  dest         The matrix to write the result into
+	 * @return The destination matrix
+	 */
+	public static Matrix4f createTransformationMatrix(Vector3f translation, float rx, float ry, float rz, float scale, Matrix4f dest)
+	{
+		double radX = Math.toRadians(rx);
+		double radY = Math.toRadians(ry);
+		double radZ = Math.toRadians(rz);
+
+		float sx = (float) Math.sin(radX), cx = (float) Math.cos(radX);
+		float sy = (float) Math.sin(radY), cy = (float) Math.cos(radY);
+		float sz = (float) Math.sin(radZ), cz = (float) Math.cos(radZ);
+
+		// The matrix fields are named m[column][row].
+		dest.m00 = cy * cz * scale;
+		dest.m01 = (sx * sy * cz + cx * sz) * scale;
+		dest.m02 = (-cx * sy * cz + sx * sz) * scale;
+		dest.m03 = 0;
+
+		dest.m10 = -cy * sz * scale;
+		dest.m11 = (-sx * sy * sz + cx * cz) * scale;
+		dest.m12 = (cx * sy * sz + sx * cz) * scale;
+		dest.m13 = 0;
+
+		dest.m20 = sy * scale;
+		dest.m21 = -sx * cy * scale;
+		dest.m22 = cx * cy * scale;
+		dest.m23 = 0;
+
+		dest.m30 = translation.x;
+		dest.m31 = translation.y;
+		dest.m32 = translation.z;
+		dest.m33 = 1;
+
+		return dest;
+	}
+
+	/**
+	 * Write a full transformation matrix straight into a float buffer, in the same
+	 * column by column order Matrix4f.store() uses. The 16 floats are written at the
+	 * current position of the buffer, which is moved past them.
+	 *
+	 * @param  translation  The translation vector
+	 * @param  rx           The rotation over the X axis
+	 * @param  ry           The rotation over the Y axis
+	 * @param  rz           The rotation over the Z axis
+	 * @param  scale        The scaling factor
+	 * @param  dest         The buffer to write the matrix into
+	 */
+	public static void storeTransformationMatrix(Vector3f translation, float rx, float ry, float rz, float scale, FloatBuffer dest)
+	{
+		double radX = Math.toRadians(rx);
+		double radY = Math.toRadians(ry);
+		double radZ = Math.toRadians(rz);
+
+		float sx = (float) Math.sin(radX), cx = (float) Math.cos(radX);
+		float sy = (float) Math.sin(radY), cy = (float) Math.cos(radY);
+		float sz = (float) Math.sin(radZ), cz = (float) Math.cos(radZ);
+
+		dest.put(cy * cz * scale);
+		dest.put((sx * sy * cz + cx * sz) * scale);
+		dest.put((-cx * sy * cz + sx * sz) * scale);
+		dest.put(0);
+
+		dest.put(-cy * sz * scale);
+		dest.put((-sx * sy * sz + cx * cz) * scale);
+		dest.put((cx * sy * sz + sx * cz) * scale);
+		dest.put(0);
+
+		dest.put(sy * scale);
+		dest.put(-sx * cy * scale);
+		dest.put(cx * cy * scale);
+		dest.put(0);
+
+		dest.put(translation.x);
+		dest.put(translation.y);
+		dest.put(translation.z);
+		dest.put(1);
+	}
+
+	/**
+	 * Write a full transformation matrix into a float array, in the same column by
+	 * column order Matrix4f.store() uses.
+	 *
+	 * @param  x       The x of the translation
+	 * @param  y       The y of the translation
+	 * @param  z       The z of the translation
+	 * @param  rx      The rotation over the X axis
+	 * @param  ry      The rotation over the Y axis
+	 * @param  rz      The rotation over the Z axis
+	 * @param  scale   The scaling factor
+	 * @param  dest    The array to write the matrix into
+	 * @param  offset  The index in the array to start at
+	 */
+	public static void storeTransformationMatrix(
+		float x, float y, float z, float rx, float ry, float rz, float scale, float[] dest, int offset
+	) {
+		double radX = Math.toRadians(rx);
+		double radY = Math.toRadians(ry);
+		double radZ = Math.toRadians(rz);
+
+		float sx = (float) Math.sin(radX), cx = (float) Math.cos(radX);
+		float sy = (float) Math.sin(radY), cy = (float) Math.cos(radY);
+		float sz = (float) Math.sin(radZ), cz = (float) Math.cos(radZ);
+
+		dest[offset] = cy * cz * scale;
+		dest[offset + 1] = (sx * sy * cz + cx * sz) * scale;
+		dest[offset + 2] = (-cx * sy * cz + sx * sz) * scale;
+		dest[offset + 3] = 0;
+
+		dest[offset + 4] = -cy * sz * scale;
+		dest[offset + 5] = (-sx * sy * sz + cx * cz) * scale;
+		dest[offset + 6] = (cx * sy * sz + sx * cz) * scale;
+		dest[offset + 7] = 0;
+
+		dest[offset + 8] = sy * scale;
+		dest[offset + 9] = -sx * cy * scale;
+		dest[offset + 10] = cx * cy * scale;
+		dest[offset + 11] = 0;
+
+		dest[offset + 12] = x;
+		dest[offset + 13] = y;
+		dest[offset + 14] = z;
+		dest[offset + 15] = 1;
+	}
+
+	/**
+	 * <p>Create a view matrix in an existing matrix, without allocating anything.</p>
+	 *
+	 * <p>This gives the same result as createViewMatrix(). The rotation part is
+	 * rotX(pitch) * rotY(yaw), and the translation is that rotation applied to the
+	 * negative camera position.</p>
+	 *
+	 * @param  camera  The camera object
+	 * @param  dest    The matrix to write the result into
+	 * @return The destination matrix
+	 */
+	public static Matrix4f createViewMatrix(Camera camera, Matrix4f dest)
+	{
+		double pitch = Math.toRadians(camera.getPitch());
+		double yaw = Math.toRadians(camera.getYaw());
+
+		float sx = (float) Math.sin(pitch), cx = (float) Math.cos(pitch);
+		float sy = (float) Math.sin(yaw), cy = (float) Math.cos(yaw);
+
+		dest.m00 = cy;
+		dest.m01 = sx * sy;
+		dest.m02 = -cx * sy;
+		dest.m03 = 0;
+
+		dest.m10 = 0;
+		dest.m11 = cx;
+		dest.m12 = sx;
+		dest.m13 = 0;
+
+		dest.m20 = sy;
+		dest.m21 = -sx * cy;
+		dest.m22 = cx * cy;
+		dest.m23 = 0;
+
+		Vector3f position = camera.getPosition();
+		dest.m30 = -(dest.m00 * position.x + dest.m10 * position.y + dest.m20 * position.z);
+		dest.m31 = -(dest.m01 * position.x + dest.m11 * position.y + dest.m21 * position.z);
+		dest.m32 = -(dest.m02 * position.x + dest.m12 * position.y + dest.m22 * position.z);
+		dest.m33 = 1;
+
+		return dest;
+	}
 }
@@ -0,0 +1,101 @@
+package toolbox;
+
+/**
+ * <p>Calculates the offsets of the members of a uniform block with the std140 layout.</p>
+ *
+ * <p>With the std140 layout, the position of every member of a uniform block follows
+ * fixed rules, so the CPU can fill the buffer without asking OpenGL for the offsets.
+ * The rules that matter here:</p>
+ *
+ * <ul>
+ *     <li>A float is aligned to 4 bytes, a vec2 to 8 bytes.</li>
+ *     <li>A vec3 and vec4 are aligned to 16 bytes. A vec3 only takes 12 bytes, so a
+ *     float can be put right after it.</li>
+ *     <li>A mat4 is stored as four vec4 columns, aligned to 16 bytes.</li>
+ *     <li>Every element of an array is aligned to 16 bytes, even an array of floats.</li>
+ *     <li>The size of the whole block is rounded up to 16 bytes.</li>
+ * </ul>
+ *
+ * <p>Members are added in the order they are declared in the shader, and every add
+ * method returns the offset of the member in bytes.</p>
+ */
+public class Std140Layout
+{
+	private int size;
+
+	public int addFloat()
+	{
+		return add(4, 4);
+	}
+
+	public int addInt()
+	{
+		return add(4, 4);
+	}
+
+	public int addVec2()
+	{
+		return add(8, 8);
+	}
+
+	public int addVec3()
+	{
+		return add(16, 12);
+	}
+
+	public int addVec4()
+	{
+		return add(16, 16);
+	}
+
+	public int addMat4()
+	{
+		return add(16, 64);
+	}
+
+	/**
+	 * Add an array. Every element starts at a multiple of 16 bytes.
+	 *
+	 * @param  elementSize  The size of a single element in bytes, without padding
+	 * @param  length       The number of elements
+	 * @return The offset of the first element
+	 */
+	public int addArray(int elementSize, int length)
+	{
+		return add(16, getArrayStride(elementSize) * length);
+	}
+
+	/**
+	 * Get the distance between two elements of an array.
+	 *
+	 * @param  elementSize  The size of a single element in bytes, without padding
+	 * @return The stride in bytes
+	 */
+	public static int getArrayStride(int elementSize)
+	{
+		return align(elementSize, 16);
+	}
+
+	/**
+	 * Get the size of the whole block, including the padding at the end.
+	 *
+	 * @return The size in bytes
+	 */
+	public int getSize()
+	{
+		return align(size, 16);
+	}
+
+	private int add(int alignment, int memberSize)
+	{
+		int offset = align(size, alignment);
+		size = offset + memberSize;
+
+		return offset;
+	}
+
+	private static int align(int offset, int alignment)
+	{
+		return (offset + alignment - 1) / alignment * alignment;
+	}
+}
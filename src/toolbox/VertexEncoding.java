@@ -0,0 +1,192 @@
+package toolbox;
+
+/**
+ * <p>Packs vertex data into 16 bit values, and unpacks it again.</p>
+ *
+ * <p>The GPU does the unpacking itself for normalized integers: a signed short
+ * (snorm16) is read as a float from -1 to 1, an unsigned short (unorm16) as a float
+ * from 0 to 1. Half floats are read as floats as well. The decode methods do exactly
+ * what the GPU does, so the error of a packed vertex can be measured on the CPU.</p>
+ */
+public class VertexEncoding
+{
+	/**
+	 * Pack a value from -1 to 1 into a signed normalized short.
+	 *
+	 * @param  value  The value, clamped to -1 to 1
+	 * @return The packed value
+	 */
+	public static short encodeSnorm16(float value)
+	{
+		return (short) Math.round(Math.max(-1, Math.min(1, value)) * 32767);
+	}
+
+	/**
+	 * Unpack a signed normalized short the way OpenGL does.
+	 *
+	 * @param  value  The packed value
+	 * @return The value from -1 to 1
+	 */
+	public static float decodeSnorm16(short value)
+	{
+		return Math.max(value / 32767f, -1);
+	}
+
+	/**
+	 * Pack a value from 0 to 1 into an unsigned normalized short.
+	 *
+	 * @param  value  The value, clamped to 0 to 1
+	 * @return The packed value, to be read as unsigned
+	 */
+	public static short encodeUnorm16(float value)
+	{
+		return (short) Math.round(Math.max(0, Math.min(1, value)) * 65535);
+	}
+
+	/**
+	 * Unpack an unsigned normalized short the way OpenGL does.
+	 *
+	 * @param  value  The packed value
+	 * @return The value from 0 to 1
+	 */
+	public static float decodeUnorm16(short value)
+	{
+		return (value & 0xffff) / 65535f;
+	}
+
+	/**
+	 * Convert a float to a half float, rounding to the nearest half float. Values
+	 * too large for a half float become infinity.
+	 *
+	 * @param  value  The float
+	 * @return The bits of the half float
+	 */
+	public static short encodeHalf(float value)
+	{
+		int bits = Float.floatToIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+		int mantissa = bits & 0x7fffff;
+
+		if (exponent >= 31) {
+			// Too large, infinity or NaN.
+			boolean nan = ((bits >>> 23) & 0xff) == 0xff && mantissa != 0;
+			return (short) (sign | 0x7c00 | (nan ? 0x200 : 0));
+		}
+
+		if (exponent <= 0) {
+			// Too small for a normal half float, so it becomes a subnormal one (or 0).
+			if (exponent < -10) {
+				return (short) sign;
+			}
+
+			mantissa |= 0x800000;
+			int shift = 14 - exponent;
+			int half = mantissa >> shift;
+			int remainder = mantissa & ((1 << shift) - 1);
+			int halfway = 1 << (shift - 1);
+			if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+				half++;
+			}
+
+			return (short) (sign | half);
+		}
+
+		// Round the 23 bit mantissa to 10 bits, to nearest even. A carry out of the
+		// mantissa correctly increases the exponent.
+		int half = (exponent << 10) | (mantissa >> 13);
+		int remainder = mantissa & 0x1fff;
+		if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+			half++;
+		}
+
+		return (short) (sign | half);
+	}
+
+	/**
+	 * Convert a half float to a float.
+	 *
+	 * @param  value  The bits of the half float
+	 * @return The float
+	 */
+	public static float decodeHalf(short value)
+	{
+		int sign = (value & 0x8000) << 16;
+		int exponent = (value >>> 10) & 0x1f;
+		int mantissa = value & 0x3ff;
+
+		if (exponent == 0) {
+			// Subnormal, every step is 2^-24.
+			float magnitude = mantissa * (1f / (1 << 24));
+			return sign != 0 ? -magnitude : magnitude;
+		}
+
+		if (exponent == 31) {
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+		}
+
+		return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+	}
+
+	/**
+	 * <p>Pack a unit normal into two signed normalized shorts with the octahedral
+	 * encoding.</p>
+	 *
+	 * <p>The sphere of directions is projected onto an octahedron, and the octahedron
+	 * is unfolded into a square: the top half is the inner diamond, and the bottom
+	 * half is folded over the corners. This spreads the precision much more evenly
+	 * over all directions than storing just x and y would.</p>
+	 *
+	 * @param  x       The x of the normal
+	 * @param  y       The y of the normal
+	 * @param  z       The z of the normal
+	 * @param  dest    The array to store the two packed values in
+	 * @param  offset  The index in the array to start at
+	 */
+	public static void encodeOctahedral(float x, float y, float z, short[] dest, int offset)
+	{
+		float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+		if (length == 0) {
+			dest[offset] = 0;
+			dest[offset + 1] = 0;
+			return;
+		}
+
+		float u = x / length;
+		float v = y / length;
+
+		if (z < 0) {
+			float foldedU = (1 - Math.abs(v)) * Math.signum(u == 0 ? 1 : u);
+			float foldedV = (1 - Math.abs(u)) * Math.signum(v == 0 ? 1 : v);
+			u = foldedU;
+			v = foldedV;
+		}
+
+		dest[offset] = encodeSnorm16(u);
+		dest[offset + 1] = encodeSnorm16(v);
+	}
+
+	/**
+	 * Unpack an octahedral normal, the same way the vertex shader does.
+	 *
+	 * @param  u     The first packed value
+	 * @param  v     The second packed value
+	 * @param  dest  The array to store the unit normal in, as (x, y, z)
+	 */
+	public static void decodeOctahedral(short u, short v, float[] dest)
+	{
+		float x = decodeSnorm16(u);
+		float y = decodeSnorm16(v);
+		float z = 1 - Math.abs(x) - Math.abs(y);
+
+		// Unfold the corners back onto the bottom half of the octahedron.
+		float t = Math.max(-z, 0);
+		x += x >= 0 ? -t : t;
+		y += y >= 0 ? -t : t;
+
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		dest[0] = x / length;
+		dest[1] = y / length;
+		dest[2] = z / length;
+	}
+}